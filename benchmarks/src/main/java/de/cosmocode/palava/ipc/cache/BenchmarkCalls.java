@@ -0,0 +1,84 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.MapIpcArguments;
+
+/**
+ * Static factory methods for {@link IpcCall}s and {@link IpcArguments} used by benchmarks.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class BenchmarkCalls {
+
+    private BenchmarkCalls() {
+
+    }
+
+    /**
+     * Creates arguments with the given number of entries. The first entry
+     * is always named "id" and holds the given id.
+     *
+     * @param id the id argument
+     * @param size the total number of arguments
+     * @return new arguments
+     */
+    public static IpcArguments arguments(int id, int size) {
+        final IpcArguments arguments = new MapIpcArguments();
+        arguments.put("id", id);
+        for (int i = 1; i < size; i++) {
+            arguments.put("argument" + i, "value of argument " + i);
+        }
+        return arguments;
+    }
+
+    /**
+     * Creates a call which only supports {@link IpcCall#getArguments()}.
+     *
+     * @param arguments the arguments to return
+     * @return a new call
+     */
+    public static IpcCall of(final IpcArguments arguments) {
+        return IpcCall.class.cast(Proxy.newProxyInstance(IpcCall.class.getClassLoader(),
+            new Class<?>[] {IpcCall.class}, new InvocationHandler() {
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if ("getArguments".equals(method.getName())) {
+                        return arguments;
+                    } else if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(proxy);
+                    } else if ("equals".equals(method.getName())) {
+                        return proxy == args[0];
+                    } else if ("toString".equals(method.getName())) {
+                        return "BenchmarkCall " + arguments;
+                    } else {
+                        throw new UnsupportedOperationException(method.toString());
+                    }
+                }
+
+            }));
+    }
+
+}
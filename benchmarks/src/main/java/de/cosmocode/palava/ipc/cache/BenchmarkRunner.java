@@ -0,0 +1,63 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the selected benchmarks once per configured thread count, so contention
+ * regressions show up next to single threaded numbers.
+ *
+ * <p>
+ * The thread counts are read from the {@code threads} system property
+ * (comma separated, default {@value #DEFAULT_THREADS}). All arguments are
+ * passed to JMH as usual, e.g.:
+ * <pre>
+ * java -Dthreads=1,4,16 -jar target/benchmarks.jar GenericIpcCacheServiceBenchmark -f 1
+ * </pre>
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class BenchmarkRunner {
+
+    private static final String DEFAULT_THREADS = "1,2,4,8";
+
+    private BenchmarkRunner() {
+
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args JMH command line arguments
+     * @throws RunnerException if a benchmark failed
+     * @throws CommandLineOptionException if the arguments are invalid
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        final CommandLineOptions options = new CommandLineOptions(args);
+        for (String threads : System.getProperty("threads", DEFAULT_THREADS).split(",")) {
+            new Runner(new OptionsBuilder().parent(options).threads(Integer.parseInt(threads.trim())).build()).run();
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import de.cosmocode.palava.core.Framework;
+import de.cosmocode.palava.core.Palava;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * Measures {@link CacheFilter#filter(IpcCall, IpcCommand, de.cosmocode.palava.ipc.IpcCallFilterChain)}
+ * for cache hits and cache misses.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CacheFilterBenchmark {
+
+    private Framework framework;
+    private CacheFilter filter;
+    private final IpcCommand command = new BenchmarkCommand();
+    private IpcCall hit;
+    private final AtomicInteger ids = new AtomicInteger();
+
+    /**
+     * Starts a fresh framework per iteration, so the miss benchmark does not measure an ever growing map.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() throws IpcCommandExecutionException {
+        framework = Palava.newFramework(new BenchmarkModule(), new Properties());
+        framework.start();
+        filter = framework.getInstance(CacheFilter.class);
+        hit = BenchmarkCalls.of(BenchmarkCalls.arguments(-1, 4));
+        filter.filter(hit, command, ExecutingFilterChain.INSTANCE);
+    }
+
+    /**
+     * Benchmarks a call which is answered from the cache.
+     *
+     * @return the cached result
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Benchmark
+    public Map<String, Object> hit() throws IpcCommandExecutionException {
+        return filter.filter(hit, command, ExecutingFilterChain.INSTANCE);
+    }
+
+    /**
+     * Benchmarks a call which has never been seen before and has to be computed and stored.
+     *
+     * @return the computed result
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Benchmark
+    public Map<String, Object> miss() throws IpcCommandExecutionException {
+        final IpcCall call = BenchmarkCalls.of(BenchmarkCalls.arguments(ids.incrementAndGet(), 4));
+        return filter.filter(call, command, ExecutingFilterChain.INSTANCE);
+    }
+
+    /**
+     * Stops the framework.
+     */
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        framework.stop();
+    }
+
+}
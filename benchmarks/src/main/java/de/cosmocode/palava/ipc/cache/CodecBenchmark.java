@@ -0,0 +1,124 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.cache.codec.BinaryKeyCodec;
+import de.cosmocode.palava.ipc.cache.codec.BinaryResultCodec;
+import de.cosmocode.palava.ipc.cache.codec.JavaSerializationCodec;
+import de.cosmocode.palava.ipc.cache.codec.KeyCodec;
+import de.cosmocode.palava.ipc.cache.codec.ResultCodec;
+
+/**
+ * Compares the round trip latency of java serialization and the binary codecs for keys and
+ * results. The encoded sizes are printed once per fork during setup. Decoded binary results
+ * are read completely, so lazy decoding doesn't skew the comparison.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"java", "binary"})
+    private String codec;
+
+    @Param({"10", "1000"})
+    private int items;
+
+    private KeyCodec keyCodec;
+
+    private ResultCodec resultCodec;
+
+    private CacheKey key;
+
+    private Map<String, Object> result;
+
+    /**
+     * Creates the key and result and prints their encoded sizes.
+     *
+     * @throws IOException should not happen
+     */
+    @Setup
+    public void setUp() throws IOException {
+        if ("java".equals(codec)) {
+            keyCodec = JavaSerializationCodec.INSTANCE;
+            resultCodec = JavaSerializationCodec.INSTANCE;
+        } else {
+            keyCodec = BinaryKeyCodec.INSTANCE;
+            resultCodec = BinaryResultCodec.INSTANCE;
+        }
+        key = new DefaultCacheKey(BenchmarkCommand.class, BenchmarkCalls.arguments(42, 4));
+        result = Maps.newHashMap();
+        for (int i = 0; i < items; i++) {
+            final Map<String, Object> item = Maps.newHashMap();
+            item.put("id", i);
+            item.put("name", "item " + i);
+            item.put("active", i % 2 == 0);
+            item.put("price", i * 1.5);
+            result.put("item" + i, item);
+        }
+        System.out.printf("%n%s codec: key %d bytes, result with %d items %d bytes%n", codec,
+            keyCodec.encodeKey(key).length, items, resultCodec.encodeResult(result).length);
+    }
+
+    /**
+     * Benchmarks encoding and decoding the key.
+     *
+     * @return the decoded key
+     * @throws IOException should not happen
+     */
+    @Benchmark
+    public CacheKey key() throws IOException {
+        return keyCodec.decodeKey(ByteBuffer.wrap(keyCodec.encodeKey(key)));
+    }
+
+    /**
+     * Benchmarks encoding and decoding the result, including reading every entry.
+     *
+     * @return the decoded result's hash code
+     * @throws IOException should not happen
+     */
+    @Benchmark
+    public int result() throws IOException {
+        return resultCodec.decodeResult(ByteBuffer.wrap(resultCodec.encodeResult(result))).hashCode();
+    }
+
+}
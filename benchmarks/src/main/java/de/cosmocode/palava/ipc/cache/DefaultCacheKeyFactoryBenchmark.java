@@ -0,0 +1,71 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Measures {@link DefaultCacheKeyFactory#create(IpcCall, IpcCommand)} including the
+ * hash code computation every map lookup performs on the created key.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DefaultCacheKeyFactoryBenchmark {
+
+    @Param({"2", "256"})
+    private int arguments;
+
+    private IpcCall call;
+    private final IpcCommand command = new BenchmarkCommand();
+
+    /**
+     * Creates the call.
+     */
+    @Setup
+    public void setUp() {
+        call = BenchmarkCalls.of(BenchmarkCalls.arguments(1, arguments));
+    }
+
+    /**
+     * Benchmarks key creation.
+     *
+     * @param hole the blackhole
+     */
+    @Benchmark
+    public void create(Blackhole hole) {
+        final CacheKey key = DefaultCacheKeyFactory.INSTANCE.create(call, command);
+        hole.consume(key.hashCode());
+    }
+
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCallFilterChain;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * A filter chain which directly executes the command.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+enum ExecutingFilterChain implements IpcCallFilterChain {
+
+    INSTANCE;
+
+    @Override
+    public Map<String, Object> filter(IpcCall call, IpcCommand command) throws IpcCommandExecutionException {
+        final Map<String, Object> result = Maps.newLinkedHashMap();
+        command.execute(call, result);
+        return result;
+    }
+
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.core.Framework;
+import de.cosmocode.palava.core.Palava;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * Measures the {@link GenericIpcCacheService} on top of the concurrent map backend.
+ * Run it through {@link BenchmarkRunner} to get results for several thread counts.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GenericIpcCacheServiceBenchmark {
+
+    @Param({"1024", "65536"})
+    private int keys;
+
+    private Framework framework;
+    private IpcCacheService service;
+    private CacheKey[] cacheKeys;
+
+    private final Map<String, Object> result = Maps.newHashMap();
+    private final CacheDecision decision = new EternalDecision();
+
+    private final IpcCommandExecution computation = new IpcCommandExecution() {
+
+        @Override
+        public Map<String, Object> call() {
+            return result;
+        }
+
+    };
+
+    /**
+     * Starts the framework and fills the cache.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Setup
+    public void setUp() throws IpcCommandExecutionException {
+        framework = Palava.newFramework(new BenchmarkModule(), new Properties());
+        framework.start();
+        service = framework.getInstance(GenericIpcCacheService.class);
+        result.put("name", "benchmark");
+        cacheKeys = new CacheKey[keys];
+        for (int i = 0; i < keys; i++) {
+            cacheKeys[i] = new DefaultCacheKey(BenchmarkCommand.class, BenchmarkCalls.arguments(i, 2));
+            service.computeAndStore(cacheKeys[i], decision, computation);
+        }
+    }
+
+    private CacheKey randomKey() {
+        return cacheKeys[ThreadLocalRandom.current().nextInt(keys)];
+    }
+
+    /**
+     * Benchmarks a read of an existing key.
+     *
+     * @return the cached value
+     */
+    @Benchmark
+    public Map<String, Object> read() {
+        return service.read(randomKey());
+    }
+
+    /**
+     * Benchmarks computeAndStore of an existing key.
+     *
+     * @return the cached value
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Benchmark
+    public Map<String, Object> computeAndStore() throws IpcCommandExecutionException {
+        return service.computeAndStore(randomKey(), decision, computation);
+    }
+
+    /**
+     * Stops the framework.
+     */
+    @TearDown
+    public void tearDown() {
+        framework.stop();
+    }
+
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+import com.google.inject.name.Names;
+
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.store.OffHeapIpcCacheServiceModule;
+import de.cosmocode.palava.ipc.cache.store.StoreConfig;
+
+/**
+ * Compares tail latencies of the heap and the off-heap cache with a large working set
+ * and a mix of hits and churning writes. Forks run with a small young generation so
+ * old-gen collections of the heap variant show up in the upper percentiles; run with
+ * {@code -prof gc} to see the collection counts next to the latencies.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g", "-Xmn256m", "-XX:MaxDirectMemorySize=6g"})
+public class HeapVsOffHeapBenchmark {
+
+    @Param({"heap", "offHeap"})
+    private String store;
+
+    @Param({"1000000"})
+    private int entries;
+
+    @Param({"1024"})
+    private int valueSize;
+
+    private IpcCacheService service;
+
+    private final List<CacheKey> keys = Lists.newArrayList();
+
+    private final CacheDecision decision = new EternalDecision();
+
+    private final AtomicLong writes = new AtomicLong();
+
+    private final Predicate<CacheKey> fresh = new Predicate<CacheKey>() {
+
+        @Override
+        public boolean apply(CacheKey input) {
+            return ((Number) input.getArguments().get("id")).intValue() >= entries;
+        }
+
+    };
+
+    /**
+     * Creates the chosen cache and fills it with every key.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Setup
+    public void setUp() throws IpcCommandExecutionException {
+        if ("heap".equals(store)) {
+            service = Guice.createInjector(new LocalIpcCacheServiceModule()).getInstance(IpcCacheService.class);
+        } else {
+            service = Guice.createInjector(new OffHeapIpcCacheServiceModule(), new Module() {
+
+                @Override
+                public void configure(Binder binder) {
+                    // room for the churned key range, serialization overhead and size class rounding
+                    binder.bindConstant().annotatedWith(Names.named(StoreConfig.OFF_HEAP_CAPACITY)).to(
+                        6L * entries * valueSize);
+                    binder.bindConstant().annotatedWith(Names.named(StoreConfig.OFF_HEAP_SLAB_SIZE)).to(1 << 26);
+                }
+
+            }).getInstance(IpcCacheService.class);
+        }
+        for (int i = 0; i < entries; i++) {
+            final CacheKey key = new DefaultCacheKey(BenchmarkCommand.class, BenchmarkCalls.arguments(i, 2));
+            keys.add(key);
+            service.computeAndStore(key, decision, computing(i));
+        }
+    }
+
+    private IpcCommandExecution computing(final int id) {
+        return new IpcCommandExecution() {
+
+            @Override
+            public Map<String, Object> call() {
+                final Map<String, Object> value = Maps.newHashMap();
+                value.put("id", id);
+                value.put("payload", new byte[valueSize]);
+                return value;
+            }
+
+        };
+    }
+
+    private CacheKey randomKey() {
+        return keys.get(ThreadLocalRandom.current().nextInt(entries));
+    }
+
+    /**
+     * Benchmarks reading a random cached result.
+     *
+     * @return the result
+     */
+    @Benchmark
+    public Map<String, Object> read() {
+        return service.read(randomKey());
+    }
+
+    /**
+     * Benchmarks writing a fresh result. Writes cycle through a second key range of the same size,
+     * which is invalidated whenever the cycle starts over, so the cache keeps churning
+     * without growing beyond twice the initial size.
+     *
+     * @return the new result
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Map<String, Object> write() throws IpcCommandExecutionException {
+        final int id = (int) (writes.getAndIncrement() % entries);
+        if (id == 0) {
+            service.invalidate(BenchmarkCommand.class, fresh);
+        }
+        final CacheKey key = new DefaultCacheKey(BenchmarkCommand.class, BenchmarkCalls.arguments(entries + id, 2));
+        return service.computeAndStore(key, decision, computing(id));
+    }
+
+    /**
+     * Benchmarks reading while {@link #write()} churns the cache.
+     *
+     * @return the result
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Map<String, Object> readDuringWrites() {
+        return read();
+    }
+
+}
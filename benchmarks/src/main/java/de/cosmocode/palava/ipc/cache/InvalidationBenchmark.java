@@ -0,0 +1,137 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * Measures a predicate scan invalidation of the local cache holding 10M keys with one
+ * to eight scanning threads. Every invocation invalidates a single key, so the scan
+ * dominates, and stores it again to keep the number of keys constant.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx5g"})
+public class InvalidationBenchmark {
+
+    private static final Map<String, Object> RESULT = ImmutableMap.<String, Object>of("id", 1);
+
+    @Param({"10000000"})
+    private int keys;
+
+    @Param({"1", "4", "8"})
+    private int parallelism;
+
+    private final CacheDecision decision = new EternalDecision();
+
+    private final List<CacheKey> all = Lists.newArrayList();
+
+    private LocalIpcCacheService service;
+
+    private ExecutorService executor;
+
+    private int target;
+
+    /**
+     * Creates the cache and fills it with every key.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Setup
+    public void setUp() throws IpcCommandExecutionException {
+        service = new LocalIpcCacheService();
+        executor = CacheExecutors.newExecutor("benchmark", parallelism, false);
+        service.setBatchExecutor(executor);
+        service.setBatchParallelism(parallelism);
+        for (int i = 0; i < keys; i++) {
+            final CacheKey key = new DefaultCacheKey(BenchmarkCommand.class, BenchmarkCalls.arguments(i, 1));
+            all.add(key);
+            service.computeAndStore(key, decision, computing());
+        }
+    }
+
+    private IpcCommandExecution computing() {
+        return new IpcCommandExecution() {
+
+            @Override
+            public Map<String, Object> call() {
+                // scans never read results, sharing one keeps 10M entries at about 3 GB
+                return RESULT;
+            }
+
+        };
+    }
+
+    /**
+     * Invalidates the next key by scanning all keys and stores it again.
+     *
+     * @return the number of invalidated keys
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Benchmark
+    public int invalidate() throws IpcCommandExecutionException {
+        final int id = target;
+        target = (target + 1) % keys;
+        final int invalidated = service.invalidateMatching(BenchmarkCommand.class, new Predicate<CacheKey>() {
+
+            @Override
+            public boolean apply(CacheKey input) {
+                return ((Number) input.getArguments().get("id")).intValue() == id;
+            }
+
+        });
+        service.computeAndStore(all.get(id), decision, computing());
+        return invalidated;
+    }
+
+    /**
+     * Stops the scanning threads.
+     */
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+}
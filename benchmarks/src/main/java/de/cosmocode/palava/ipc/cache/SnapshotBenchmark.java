@@ -0,0 +1,112 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.cache.snapshot.SnapshotFile;
+
+/**
+ * Measures writing and restoring snapshots with millions of entries.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class SnapshotBenchmark {
+
+    @Param({"1000000", "4000000"})
+    private int entries;
+
+    @Param({"1", "4"})
+    private int threads;
+
+    private LocalIpcCacheService source;
+    private File file;
+
+    /**
+     * Fills the source cache and writes the snapshot which is restored by {@link #restore()}.
+     *
+     * @throws IOException should not happen
+     */
+    @Setup
+    public void setUp() throws IOException {
+        source = new LocalIpcCacheService();
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < entries; i++) {
+            final Map<String, Object> value = Maps.newHashMap();
+            value.put("id", i);
+            value.put("name", "entry " + i);
+            source.restore(new DefaultCacheKey(BenchmarkCommand.class, BenchmarkCalls.arguments(i, 2)),
+                new CacheEntry(value, now, now, TimeUnit.DAYS.toMillis(1), 0L));
+        }
+        file = File.createTempFile("snapshot", ".bin");
+        SnapshotFile.write(file, source);
+    }
+
+    /**
+     * Benchmarks writing a snapshot.
+     *
+     * @return the number of written entries
+     * @throws IOException should not happen
+     */
+    @Benchmark
+    public long write() throws IOException {
+        return SnapshotFile.write(file, source);
+    }
+
+    /**
+     * Benchmarks restoring a snapshot into an empty cache.
+     *
+     * @return the number of restored entries
+     * @throws IOException should not happen
+     */
+    @Benchmark
+    public long restore() throws IOException {
+        return SnapshotFile.read(file, new LocalIpcCacheService(), threads);
+    }
+
+    /**
+     * Deletes the snapshot.
+     */
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+}
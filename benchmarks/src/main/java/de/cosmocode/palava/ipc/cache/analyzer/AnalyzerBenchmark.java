@@ -0,0 +1,312 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.analyzer;
+
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.BenchmarkCalls;
+import de.cosmocode.palava.ipc.cache.CacheDecision;
+import de.cosmocode.palava.ipc.cache.CacheKeyFactory;
+import de.cosmocode.palava.ipc.cache.DefaultCacheKeyFactory;
+
+/**
+ * Measures the {@link de.cosmocode.palava.ipc.cache.CacheAnalyzer#analyze(Annotation, IpcCall, IpcCommand)}
+ * implementations of {@link TimeCached}, {@link CaseCached} and {@link RatedCached}. Only the case
+ * benchmark depends on the number of predicates, so it keeps its parameter in {@link CaseState}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AnalyzerBenchmark {
+
+    private static final IpcCommand COMMAND = new IpcCommand() {
+
+        @Override
+        public void execute(IpcCall c, java.util.Map<String, Object> result) throws IpcCommandExecutionException {
+            // never executed
+        }
+
+    };
+
+    private static final IpcCall CALL = BenchmarkCalls.of(BenchmarkCalls.arguments(5, 4));
+
+    private TimeCacheAnalyzer timeAnalyzer;
+    private RatedCacheAnalyzer ratedAnalyzer;
+
+    private TimeCached timeCached;
+    private RatedCached ratedCached;
+
+    /**
+     * Creates analyzers and annotations.
+     */
+    @Setup
+    public void setUp() {
+        final Injector injector = Guice.createInjector();
+        timeAnalyzer = new TimeCacheAnalyzer(injector);
+        ratedAnalyzer = new RatedCacheAnalyzer(injector);
+
+        timeCached = new TimeCached() {
+
+            @Override
+            public long lifeTime() {
+                return 1;
+            }
+
+            @Override
+            public TimeUnit lifeTimeUnit() {
+                return TimeUnit.HOURS;
+            }
+
+            @Override
+            public long idleTime() {
+                return 0;
+            }
+
+            @Override
+            public TimeUnit idleTimeUnit() {
+                return TimeUnit.MINUTES;
+            }
+
+            @Override
+            public Class<? extends CacheKeyFactory> keyFactory() {
+                return DefaultCacheKeyFactory.class;
+            }
+
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return TimeCached.class;
+            }
+
+        };
+
+        ratedCached = new RatedCached() {
+
+            @Override
+            public Class<? extends CacheRatingAnalyzer> analyzer() {
+                return FixedRating.class;
+            }
+
+            @Override
+            public int minTime() {
+                return 1;
+            }
+
+            @Override
+            public TimeUnit minTimeUnit() {
+                return TimeUnit.MINUTES;
+            }
+
+            @Override
+            public long lifeTime() {
+                return 1;
+            }
+
+            @Override
+            public TimeUnit lifeTimeUnit() {
+                return TimeUnit.HOURS;
+            }
+
+            @Override
+            public long idleTime() {
+                return 0;
+            }
+
+            @Override
+            public TimeUnit idleTimeUnit() {
+                return TimeUnit.MINUTES;
+            }
+
+            @Override
+            public RatingTarget target() {
+                return RatingTarget.LIFE_TIME;
+            }
+
+            @Override
+            public Class<? extends CacheKeyFactory> keyFactory() {
+                return DefaultCacheKeyFactory.class;
+            }
+
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return RatedCached.class;
+            }
+
+        };
+    }
+
+    /**
+     * Benchmarks {@link TimeCacheAnalyzer}.
+     *
+     * @return the decision
+     */
+    @Benchmark
+    public CacheDecision timeCached() {
+        return timeAnalyzer.analyze(timeCached, CALL, COMMAND);
+    }
+
+    /**
+     * Benchmarks {@link CaseCacheAnalyzer} with {@link CaseState#predicates} predicates.
+     *
+     * @param state the analyzer and annotation
+     * @return the decision
+     */
+    @Benchmark
+    public CacheDecision caseCached(CaseState state) {
+        return state.analyzer.analyze(state.annotation, CALL, COMMAND);
+    }
+
+    /**
+     * Benchmarks {@link RatedCacheAnalyzer}.
+     *
+     * @return the decision
+     */
+    @Benchmark
+    public CacheDecision ratedCached() {
+        return ratedAnalyzer.analyze(ratedCached, CALL, COMMAND);
+    }
+
+    /**
+     * The case analyzer and its annotation, parameterized by the number of predicates.
+     */
+    @State(Scope.Benchmark)
+    public static class CaseState {
+
+        @Param({"1", "4", "16"})
+        private int predicates;
+
+        private CaseCacheAnalyzer analyzer;
+        private CaseCached annotation;
+
+        /**
+         * Creates the analyzer and an annotation with {@link #predicates} predicates.
+         */
+        @Setup
+        public void setUp() {
+            analyzer = new CaseCacheAnalyzer(Guice.createInjector());
+
+            @SuppressWarnings("unchecked")
+            final Class<? extends CachePredicate>[] filters = new Class[predicates];
+            Arrays.fill(filters, AlwaysTrue.class);
+
+            annotation = new CaseCached() {
+
+                @Override
+                public Class<? extends CachePredicate>[] predicates() {
+                    return filters;
+                }
+
+                @Override
+                public CaseCacheMode mode() {
+                    // ALL evaluates every predicate
+                    return CaseCacheMode.ALL;
+                }
+
+                @Override
+                public long lifeTime() {
+                    return 1;
+                }
+
+                @Override
+                public TimeUnit lifeTimeUnit() {
+                    return TimeUnit.HOURS;
+                }
+
+                @Override
+                public long idleTime() {
+                    return 0;
+                }
+
+                @Override
+                public TimeUnit idleTimeUnit() {
+                    return TimeUnit.MINUTES;
+                }
+
+                @Override
+                public Class<? extends CacheKeyFactory> keyFactory() {
+                    return DefaultCacheKeyFactory.class;
+                }
+
+                @Override
+                public Class<? extends Annotation> annotationType() {
+                    return CaseCached.class;
+                }
+
+            };
+        }
+
+    }
+
+    /**
+     * A predicate which always applies.
+     */
+    static final class AlwaysTrue implements CachePredicate {
+
+        @Override
+        public boolean apply(IpcCall c, IpcCommand cmd) {
+            return true;
+        }
+
+    }
+
+    /**
+     * A rating analyzer which always returns the same rating.
+     */
+    static final class FixedRating implements CacheRatingAnalyzer, Rating {
+
+        @Override
+        public Rating rate(IpcCall c, IpcCommand cmd) {
+            return this;
+        }
+
+        @Override
+        public int value() {
+            return 50;
+        }
+
+        @Override
+        public int min() {
+            return 0;
+        }
+
+        @Override
+        public int max() {
+            return 100;
+        }
+
+    }
+
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.cache.trace.TraceFormat;
+
+/**
+ * A trace directory written by the cache filter's trace recorder.
+ * Files are replayed in name order, which is creation order.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see TraceFormat
+ */
+public final class BinaryTrace implements Iterable<TraceRecord> {
+
+    private final File directory;
+
+    public BinaryTrace(File directory) {
+        this.directory = Preconditions.checkNotNull(directory, "Directory");
+        Preconditions.checkArgument(directory.isDirectory(), "%s is not a directory", directory);
+    }
+
+    private Map<Integer, String> readCommands() throws IOException {
+        final Map<Integer, String> commands = Maps.newHashMap();
+        final File file = new File(directory, TraceFormat.COMMANDS_FILE);
+        if (!file.isFile()) {
+            return commands;
+        }
+        final BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(file), Charsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int comma = line.indexOf(',');
+                if (comma > 0) {
+                    commands.put(Integer.valueOf(line.substring(0, comma)), line.substring(comma + 1));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return commands;
+    }
+
+    @Override
+    public Iterator<TraceRecord> iterator() {
+        final Map<Integer, String> commands;
+        try {
+            commands = readCommands();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        final File[] files = directory.listFiles(new FilenameFilter() {
+
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(TraceFormat.FILE_SUFFIX);
+            }
+
+        });
+        Arrays.sort(files);
+
+        return new AbstractIterator<TraceRecord>() {
+
+            private int next;
+            private ByteBuffer buffer;
+            private long remaining;
+
+            @Override
+            protected TraceRecord computeNext() {
+                while (remaining == 0) {
+                    if (next == files.length) {
+                        return endOfData();
+                    }
+                    open(files[next++]);
+                }
+                remaining--;
+                final long timestamp = buffer.getLong();
+                final int command = buffer.getInt();
+                final long hash = buffer.getLong();
+                buffer.get();
+                final long cost = buffer.getLong();
+                final int size = buffer.getInt();
+                final String name = commands.get(command);
+                return new TraceRecord(timestamp, name == null ? Integer.toString(command) : name, hash, cost, size);
+            }
+
+            private void open(File file) {
+                try {
+                    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+                    try {
+                        buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+                    } finally {
+                        raf.close();
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                Preconditions.checkState(buffer.getInt() == TraceFormat.MAGIC, "%s is no trace file", file);
+                Preconditions.checkState(buffer.getInt() == TraceFormat.VERSION, "Unsupported version in %s", file);
+                remaining = buffer.getLong();
+            }
+
+        };
+    }
+
+}
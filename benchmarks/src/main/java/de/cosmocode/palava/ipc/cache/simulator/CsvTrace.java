@@ -0,0 +1,93 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Iterator;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * A trace stored as comma separated text, one access per line:
+ * <pre>
+ * timestamp(ms),command,keyHash,cost(ns),size(bytes)
+ * </pre>
+ * Empty lines and lines starting with {@code #} are ignored.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class CsvTrace implements Iterable<TraceRecord> {
+
+    private final File file;
+
+    public CsvTrace(File file) {
+        this.file = Preconditions.checkNotNull(file, "File");
+    }
+
+    @Override
+    public Iterator<TraceRecord> iterator() {
+        final BufferedReader reader;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), Charsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return new AbstractIterator<TraceRecord>() {
+
+            @Override
+            protected TraceRecord computeNext() {
+                try {
+                    while (true) {
+                        final String line = reader.readLine();
+                        if (line == null) {
+                            reader.close();
+                            return endOfData();
+                        } else if (line.length() == 0 || line.startsWith("#")) {
+                            continue;
+                        } else {
+                            return parse(line);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+        };
+    }
+
+    private TraceRecord parse(String line) {
+        final String[] columns = line.split(",");
+        Preconditions.checkArgument(columns.length == 5, "Expected 5 columns in %s", line);
+        return new TraceRecord(
+            Long.parseLong(columns[0].trim()),
+            columns[1].trim(),
+            Long.parseLong(columns[2].trim()),
+            Long.parseLong(columns[3].trim()),
+            Integer.parseInt(columns[4].trim())
+        );
+    }
+
+}
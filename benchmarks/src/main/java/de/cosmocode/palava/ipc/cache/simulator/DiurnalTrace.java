@@ -0,0 +1,61 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A zipfian trace whose request rate follows a daily sine wave, peaking at noon.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class DiurnalTrace extends ZipfianTrace {
+
+    private static final double DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final double rate;
+    private final double amplitude;
+
+    /**
+     * Constructor.
+     *
+     * @param requests number of accesses
+     * @param keys number of distinct keys
+     * @param exponent the zipf exponent
+     * @param rate mean requests per second
+     * @param amplitude relative rate swing between 0 (constant) and 1 (idle at midnight)
+     * @param seed random seed
+     */
+    public DiurnalTrace(long requests, int keys, double exponent, double rate, double amplitude, long seed) {
+        super(requests, keys, exponent, rate, seed);
+        Preconditions.checkArgument(amplitude >= 0 && amplitude < 1, "Amplitude must be in [0, 1)");
+        this.rate = rate;
+        this.amplitude = amplitude;
+    }
+
+    @Override
+    protected long nextTimestamp(long previous, Random random) {
+        final double phase = 2 * Math.PI * (previous % DAY) / DAY;
+        final double current = rate * (1 - amplitude * Math.cos(phase));
+        return previous + Math.round(-Math.log(1 - random.nextDouble()) * 1000.0 / current);
+    }
+
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import java.util.concurrent.TimeUnit;
+
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.analyzer.AbstractCacheDecision;
+
+/**
+ * A fixed life time used as expiration for simulated results.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class FixedExpiration extends AbstractCacheDecision {
+
+    private final long lifeTime;
+    private final TimeUnit lifeTimeUnit;
+
+    public FixedExpiration(long lifeTime, TimeUnit lifeTimeUnit) {
+        this.lifeTime = lifeTime;
+        this.lifeTimeUnit = lifeTimeUnit;
+    }
+
+    @Override
+    public boolean shouldCache() {
+        return true;
+    }
+
+    @Override
+    public long getLifeTime() {
+        return lifeTime;
+    }
+
+    @Override
+    public TimeUnit getLifeTimeUnit() {
+        return lifeTimeUnit;
+    }
+
+    @Override
+    public long getIdleTime() {
+        return 0;
+    }
+
+    @Override
+    public TimeUnit getIdleTimeUnit() {
+        return TimeUnit.SECONDS;
+    }
+
+    @Override
+    public CacheKey computeKey(IpcCall call, IpcCommand command) {
+        throw new UnsupportedOperationException();
+    }
+
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+import de.cosmocode.palava.ipc.cache.CacheKey;
+
+/**
+ * A size bounded least recently used policy.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class LruCacheService extends SimulatedCacheService {
+
+    private final Map<CacheKey, Entry> entries = new LinkedHashMap<CacheKey, Entry>(1024, 0.75f, true);
+    private final long capacity;
+
+    /**
+     * Constructor.
+     *
+     * @param clock the clock
+     * @param capacity maximum weight in bytes
+     */
+    public LruCacheService(VirtualClock clock, long capacity) {
+        super(clock);
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive");
+        this.capacity = capacity;
+    }
+
+    @Override
+    protected Map<CacheKey, Entry> entries() {
+        return entries;
+    }
+
+    @Override
+    protected void afterInsert() {
+        while (getWeight() > capacity && evictEldest()) {
+            continue;
+        }
+    }
+
+}
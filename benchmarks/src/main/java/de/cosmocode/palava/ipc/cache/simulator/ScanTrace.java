@@ -0,0 +1,59 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import java.util.Random;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A trace which cycles through all keys in order, the worst case for recency based policies.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class ScanTrace extends SyntheticTrace {
+
+    private final int keys;
+    private final double interval;
+
+    /**
+     * Constructor.
+     *
+     * @param requests number of accesses
+     * @param keys number of distinct keys
+     * @param rate requests per second
+     */
+    public ScanTrace(long requests, int keys, double rate) {
+        super(requests, 1, 0L);
+        Preconditions.checkArgument(keys > 0, "Keys must be positive");
+        Preconditions.checkArgument(rate > 0, "Rate must be positive");
+        this.keys = keys;
+        this.interval = 1000.0 / rate;
+    }
+
+    @Override
+    protected long nextKey(long index, Random random) {
+        return index % keys;
+    }
+
+    @Override
+    protected long nextTimestamp(long previous, Random random) {
+        return previous + Math.round(interval);
+    }
+
+}
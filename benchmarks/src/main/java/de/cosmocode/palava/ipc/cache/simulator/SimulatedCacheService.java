@@ -0,0 +1,163 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+
+import de.cosmocode.palava.cache.CacheExpiration;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.AbstractIpcCacheService;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.IpcCommandExecution;
+
+/**
+ * Base class for single threaded cache policies driven by a {@link VirtualClock}.
+ * Sub classes only decide how entries are kept in their {@link #entries()} map
+ * and what to evict after an insert.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public abstract class SimulatedCacheService extends AbstractIpcCacheService {
+
+    private final VirtualClock clock;
+    private long weight;
+
+    protected SimulatedCacheService(VirtualClock clock) {
+        this.clock = Preconditions.checkNotNull(clock, "Clock");
+    }
+
+    /**
+     * Provides the backing map. Iteration order defines the eviction order of {@link #evictEldest()}.
+     *
+     * @return the entries
+     */
+    protected abstract Map<CacheKey, Entry> entries();
+
+    /**
+     * Called after every insert to evict entries if necessary.
+     */
+    protected abstract void afterInsert();
+
+    /**
+     * The size of all results currently held, including expired ones not yet purged.
+     *
+     * @return the weight in bytes
+     */
+    public final long getWeight() {
+        return weight;
+    }
+
+    protected final VirtualClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Removes the first entry in iteration order.
+     *
+     * @return true if an entry was removed
+     */
+    protected final boolean evictEldest() {
+        final Iterator<Entry> iterator = entries().values().iterator();
+        if (iterator.hasNext()) {
+            weight -= iterator.next().size;
+            iterator.remove();
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public Map<String, Object> read(CacheKey key) {
+        final Entry entry = entries().get(key);
+        if (entry == null) {
+            return null;
+        } else if (entry.isExpired(clock.now())) {
+            weight -= entries().remove(key).size;
+            return null;
+        } else {
+            entry.lastAccess = clock.now();
+            return entry.value;
+        }
+    }
+
+    @Override
+    public Map<String, Object> computeAndStore(CacheKey key, CacheExpiration expiration,
+        IpcCommandExecution computation) throws IpcCommandExecutionException {
+
+        final Map<String, Object> cached = read(key);
+        if (cached != null) {
+            return cached;
+        }
+        final Map<String, Object> value = computation.call();
+        final Entry entry = new Entry(value, Simulator.sizeOf(value), clock.now(), expiration);
+        final Entry previous = entries().put(key, entry);
+        if (previous != null) {
+            weight -= previous.size;
+        }
+        weight += entry.size;
+        afterInsert();
+        return value;
+    }
+
+    @Override
+    public void invalidate(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+        final Iterator<Map.Entry<CacheKey, Entry>> iterator = entries().entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<CacheKey, Entry> next = iterator.next();
+            if (next.getKey().getCommand() == command && predicate.apply(next.getKey())) {
+                weight -= next.getValue().size;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * A cached result with its expiration.
+     */
+    protected static final class Entry {
+
+        private final Map<String, Object> value;
+        private final int size;
+        private final long created;
+        private final long lifeTime;
+        private final long idleTime;
+        private long lastAccess;
+
+        Entry(Map<String, Object> value, int size, long now, CacheExpiration expiration) {
+            this.value = value;
+            this.size = size;
+            this.created = now;
+            this.lastAccess = now;
+            this.lifeTime = expiration.getLifeTimeIn(TimeUnit.MILLISECONDS);
+            this.idleTime = expiration.getIdleTimeIn(TimeUnit.MILLISECONDS);
+        }
+
+        boolean isExpired(long now) {
+            return (lifeTime > 0 && now - created >= lifeTime) || (idleTime > 0 && now - lastAccess >= idleTime);
+        }
+
+    }
+
+}
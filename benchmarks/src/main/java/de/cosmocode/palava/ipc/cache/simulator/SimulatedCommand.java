@@ -0,0 +1,39 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import java.util.Map;
+
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Placeholder command type of all {@link SimulatedKey}s. Recorded command
+ * classes are usually not on the simulator's classpath, so the recorded name
+ * becomes part of the key arguments instead.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class SimulatedCommand implements IpcCommand {
+
+    @Override
+    public void execute(IpcCall call, Map<String, Object> result) {
+        throw new UnsupportedOperationException();
+    }
+
+}
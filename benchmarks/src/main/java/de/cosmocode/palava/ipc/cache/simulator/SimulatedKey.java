@@ -0,0 +1,81 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.MapIpcArguments;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+
+/**
+ * The {@link CacheKey} of a {@link TraceRecord}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class SimulatedKey implements CacheKey {
+
+    private static final long serialVersionUID = 2871635432891227415L;
+
+    private final String command;
+    private final long hash;
+
+    SimulatedKey(TraceRecord record) {
+        this.command = record.getCommand();
+        this.hash = record.getKeyHash();
+    }
+
+    String getCommandName() {
+        return command;
+    }
+
+    @Override
+    public Class<? extends IpcCommand> getCommand() {
+        return SimulatedCommand.class;
+    }
+
+    @Override
+    public IpcArguments getArguments() {
+        final IpcArguments arguments = new MapIpcArguments();
+        arguments.put("command", command);
+        arguments.put("hash", hash);
+        return arguments;
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (this == that) {
+            return true;
+        } else if (that instanceof SimulatedKey) {
+            final SimulatedKey other = SimulatedKey.class.cast(that);
+            return hash == other.hash && command.equals(other.command);
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * command.hashCode() + (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "SimulatedKey[" + command + "#" + hash + "]";
+    }
+
+}
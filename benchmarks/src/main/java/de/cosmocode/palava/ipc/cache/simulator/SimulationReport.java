@@ -0,0 +1,161 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+
+/**
+ * The outcome of a {@link Simulator} run: totals and a time series of samples.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class SimulationReport {
+
+    private final List<Sample> samples = Lists.newArrayList();
+
+    private long requests;
+    private long hits;
+    private long bytes;
+    private long hitBytes;
+    private long savedNanos;
+
+    private long intervalRequests;
+    private long intervalHits;
+    private long intervalBytes;
+    private long intervalHitBytes;
+
+    void record(TraceRecord record, boolean hit) {
+        requests++;
+        intervalRequests++;
+        bytes += record.getSize();
+        intervalBytes += record.getSize();
+        if (hit) {
+            hits++;
+            intervalHits++;
+            hitBytes += record.getSize();
+            intervalHitBytes += record.getSize();
+            savedNanos += record.getCost();
+        }
+    }
+
+    void sample(long timestamp, long weight) {
+        samples.add(new Sample(timestamp, intervalRequests, ratio(intervalHits, intervalRequests),
+            ratio(intervalHitBytes, intervalBytes), weight));
+        intervalRequests = 0;
+        intervalHits = 0;
+        intervalBytes = 0;
+        intervalHitBytes = 0;
+    }
+
+    private static double ratio(long part, long total) {
+        return total == 0 ? 0.0 : (double) part / total;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public double getHitRatio() {
+        return ratio(hits, requests);
+    }
+
+    public double getByteHitRatio() {
+        return ratio(hitBytes, bytes);
+    }
+
+    /**
+     * The sum of the compute costs of all hits.
+     *
+     * @param unit the desired unit
+     * @return the saved compute time
+     */
+    public long getSavedTime(TimeUnit unit) {
+        return unit.convert(savedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public List<Sample> getSamples() {
+        return Collections.unmodifiableList(samples);
+    }
+
+    /**
+     * Prints totals and samples in a human readable table.
+     *
+     * @param out the target stream
+     */
+    public void print(PrintStream out) {
+        out.printf("%14s %10s %8s %8s %14s%n", "time(s)", "requests", "hit", "bytehit", "memory(bytes)");
+        for (Sample sample : samples) {
+            out.printf("%14d %10d %8.4f %8.4f %14d%n", TimeUnit.MILLISECONDS.toSeconds(sample.getTimestamp()),
+                sample.getRequests(), sample.getHitRatio(), sample.getByteHitRatio(), sample.getWeight());
+        }
+        out.printf("requests=%d hitRatio=%.4f byteHitRatio=%.4f savedComputeTime=%ds%n",
+            requests, getHitRatio(), getByteHitRatio(), getSavedTime(TimeUnit.SECONDS));
+    }
+
+    /**
+     * Statistics of one sample interval.
+     */
+    public static final class Sample {
+
+        private final long timestamp;
+        private final long requests;
+        private final double hitRatio;
+        private final double byteHitRatio;
+        private final long weight;
+
+        Sample(long timestamp, long requests, double hitRatio, double byteHitRatio, long weight) {
+            this.timestamp = timestamp;
+            this.requests = requests;
+            this.hitRatio = hitRatio;
+            this.byteHitRatio = byteHitRatio;
+            this.weight = weight;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public double getHitRatio() {
+            return hitRatio;
+        }
+
+        public double getByteHitRatio() {
+            return byteHitRatio;
+        }
+
+        /**
+         * The memory used by the policy at the end of the interval, -1 if unknown.
+         *
+         * @return the weight in bytes
+         */
+        public long getWeight() {
+            return weight;
+        }
+
+    }
+
+}
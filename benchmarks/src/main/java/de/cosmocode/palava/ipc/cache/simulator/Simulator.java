@@ -0,0 +1,188 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.cache.CacheExpiration;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.IpcCacheService;
+import de.cosmocode.palava.ipc.cache.IpcCommandExecution;
+
+/**
+ * Replays a trace of {@link TraceRecord}s against an {@link IpcCacheService} and reports
+ * hit ratio, byte hit ratio, saved compute time and memory usage over time.
+ *
+ * <p>
+ * Policies extending {@link SimulatedCacheService} share the simulator's {@link VirtualClock},
+ * so expiration happens in trace time and memory usage is reported. Any other
+ * {@link IpcCacheService} can be plugged in as well, but expires in wall clock time.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class Simulator {
+
+    private static final String SIZE = "size";
+
+    private final VirtualClock clock;
+    private final IpcCacheService service;
+    private final CacheExpiration expiration;
+    private final Map<String, CacheExpiration> expirations = Maps.newHashMap();
+    private final long interval;
+
+    /**
+     * Constructor.
+     *
+     * @param clock the clock shared with the service
+     * @param service the policy under test
+     * @param expiration the default expiration of all results
+     * @param interval the sample interval in trace time
+     * @param unit the unit of interval
+     */
+    public Simulator(VirtualClock clock, IpcCacheService service, CacheExpiration expiration,
+        long interval, TimeUnit unit) {
+        this.clock = Preconditions.checkNotNull(clock, "Clock");
+        this.service = Preconditions.checkNotNull(service, "Service");
+        this.expiration = Preconditions.checkNotNull(expiration, "Expiration");
+        this.interval = unit.toMillis(interval);
+        Preconditions.checkArgument(this.interval > 0, "Interval must be positive");
+    }
+
+    /**
+     * Overrides the expiration of a single command.
+     *
+     * @param command the recorded command name
+     * @param commandExpiration the expiration
+     */
+    public void setExpiration(String command, CacheExpiration commandExpiration) {
+        expirations.put(command, Preconditions.checkNotNull(commandExpiration, "Expiration"));
+    }
+
+    static int sizeOf(Map<String, Object> result) {
+        final Object size = result.get(SIZE);
+        return size instanceof Integer ? Integer.class.cast(size) : 0;
+    }
+
+    /**
+     * Runs the simulation.
+     *
+     * @param trace the accesses to replay
+     * @return the report
+     */
+    public SimulationReport run(Iterable<TraceRecord> trace) {
+        final SimulationReport report = new SimulationReport();
+        long nextSample = -1;
+
+        for (final TraceRecord record : trace) {
+            if (nextSample < 0) {
+                nextSample = record.getTimestamp() + interval;
+            }
+            while (record.getTimestamp() >= nextSample) {
+                clock.advanceTo(nextSample);
+                report.sample(nextSample, weight());
+                nextSample += interval;
+            }
+            clock.advanceTo(record.getTimestamp());
+
+            final SimulatedKey key = new SimulatedKey(record);
+            final boolean hit = service.read(key) != null;
+            if (!hit) {
+                final CacheExpiration specific = expirations.get(record.getCommand());
+                try {
+                    service.computeAndStore(key, specific == null ? expiration : specific, new IpcCommandExecution() {
+
+                        @Override
+                        public Map<String, Object> call() {
+                            return ImmutableMap.<String, Object>of(SIZE, record.getSize());
+                        }
+
+                    });
+                } catch (IpcCommandExecutionException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            report.record(record, hit);
+        }
+        if (nextSample >= 0) {
+            report.sample(clock.now(), weight());
+        }
+        return report;
+    }
+
+    private long weight() {
+        if (service instanceof SimulatedCacheService) {
+            return SimulatedCacheService.class.cast(service).getWeight();
+        } else {
+            return -1L;
+        }
+    }
+
+    /**
+     * Command line entry point.
+     * <pre>
+     * Simulator &lt;trace.csv|trace directory|zipf|scan|diurnal&gt; &lt;lru|unbounded&gt; [capacity MB] [ttl seconds]
+     * </pre>
+     *
+     * @param args the arguments
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: Simulator <trace.csv|trace directory|zipf|scan|diurnal> <lru|unbounded> " +
+                "[capacity MB, default 64] [ttl seconds, default 300]");
+            System.exit(1);
+        }
+
+        final long capacity = (args.length > 2 ? Long.parseLong(args[2]) : 64L) * 1024 * 1024;
+        final long ttl = args.length > 3 ? Long.parseLong(args[3]) : 300L;
+
+        final Iterable<TraceRecord> trace;
+        if ("zipf".equals(args[0])) {
+            trace = new ZipfianTrace(10000000L, 1000000, 1.0, 1000, 0L);
+        } else if ("scan".equals(args[0])) {
+            trace = new ScanTrace(10000000L, 100000, 1000);
+        } else if ("diurnal".equals(args[0])) {
+            trace = new DiurnalTrace(10000000L, 1000000, 1.0, 100, 0.8, 0L);
+        } else if (new File(args[0]).isDirectory()) {
+            trace = new BinaryTrace(new File(args[0]));
+        } else {
+            trace = new CsvTrace(new File(args[0]));
+        }
+
+        final VirtualClock clock = new VirtualClock();
+        final SimulatedCacheService service;
+        if ("lru".equals(args[1])) {
+            service = new LruCacheService(clock, capacity);
+        } else if ("unbounded".equals(args[1])) {
+            service = new UnboundedCacheService(clock);
+        } else {
+            throw new IllegalArgumentException("Unknown policy " + args[1]);
+        }
+
+        final Simulator simulator = new Simulator(clock, service,
+            new FixedExpiration(ttl, TimeUnit.SECONDS), 1, TimeUnit.HOURS);
+        simulator.run(trace).print(System.out);
+    }
+
+}
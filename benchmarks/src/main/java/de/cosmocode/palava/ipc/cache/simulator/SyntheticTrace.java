@@ -0,0 +1,99 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * Base class for generated traces. Sub classes decide which key is accessed next
+ * and when. Result size and compute cost are derived from the key, so the same
+ * key always has the same size and cost.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public abstract class SyntheticTrace implements Iterable<TraceRecord> {
+
+    private final long requests;
+    private final int commands;
+    private final long seed;
+
+    protected SyntheticTrace(long requests, int commands, long seed) {
+        Preconditions.checkArgument(requests >= 0, "Requests must not be negative");
+        Preconditions.checkArgument(commands > 0, "Commands must be positive");
+        this.requests = requests;
+        this.commands = commands;
+        this.seed = seed;
+    }
+
+    /**
+     * Chooses the key of the next access.
+     *
+     * @param index the index of the access
+     * @param random the random source of this iteration
+     * @return the key number
+     */
+    protected abstract long nextKey(long index, Random random);
+
+    /**
+     * Computes the timestamp of the next access.
+     *
+     * @param previous the timestamp of the previous access
+     * @param random the random source of this iteration
+     * @return the next timestamp in milliseconds
+     */
+    protected abstract long nextTimestamp(long previous, Random random);
+
+    @Override
+    public final Iterator<TraceRecord> iterator() {
+        final Random random = new Random(seed);
+        return new AbstractIterator<TraceRecord>() {
+
+            private long index;
+            private long timestamp;
+
+            @Override
+            protected TraceRecord computeNext() {
+                if (index == requests) {
+                    return endOfData();
+                }
+                final long key = nextKey(index++, random);
+                timestamp = nextTimestamp(timestamp, random);
+                final long hash = mix(key);
+                final String command = "Command" + (int) ((hash >>> 1) % commands);
+                // 100 bytes to ~100 kilobytes, 100 microseconds to ~100 milliseconds, skewed towards small
+                final int size = 100 << (int) ((hash >>> 8) % 11);
+                final long cost = 100000L << (int) ((hash >>> 16) % 11);
+                return new TraceRecord(timestamp, command, hash, cost, size);
+            }
+
+        };
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        h *= 0xC2B2AE3D27D4EB4FL;
+        h ^= h >>> 29;
+        return h & Long.MAX_VALUE;
+    }
+
+}
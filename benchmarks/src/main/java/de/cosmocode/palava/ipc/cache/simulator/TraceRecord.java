@@ -0,0 +1,95 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A single recorded cache access: which command was called with which key at what time,
+ * how long it took to compute and how big the result was.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class TraceRecord {
+
+    private final long timestamp;
+    private final String command;
+    private final long keyHash;
+    private final long cost;
+    private final int size;
+
+    public TraceRecord(long timestamp, String command, long keyHash, long cost, int size) {
+        this.timestamp = timestamp;
+        this.command = Preconditions.checkNotNull(command, "Command");
+        this.keyHash = keyHash;
+        this.cost = cost;
+        this.size = size;
+    }
+
+    /**
+     * The time of the access in milliseconds.
+     *
+     * @return the timestamp
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * The name of the called command.
+     *
+     * @return the command name
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * The hash of the cache key, unique per command.
+     *
+     * @return the key hash
+     */
+    public long getKeyHash() {
+        return keyHash;
+    }
+
+    /**
+     * The time it takes to compute the result in nanoseconds.
+     *
+     * @return the compute cost
+     */
+    public long getCost() {
+        return cost;
+    }
+
+    /**
+     * The size of the result in bytes.
+     *
+     * @return the result size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "TraceRecord [timestamp=" + timestamp + ", command=" + command + ", keyHash=" + keyHash +
+            ", cost=" + cost + ", size=" + size + "]";
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.cache.CacheKey;
+
+/**
+ * A policy which only removes expired entries, the way the concurrent map backend behaves.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class UnboundedCacheService extends SimulatedCacheService {
+
+    private final Map<CacheKey, Entry> entries = Maps.newHashMap();
+
+    public UnboundedCacheService(VirtualClock clock) {
+        super(clock);
+    }
+
+    @Override
+    protected Map<CacheKey, Entry> entries() {
+        return entries;
+    }
+
+    @Override
+    protected void afterInsert() {
+        // unbounded
+    }
+
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.simulator;
+
+/**
+ * A clock which only advances when the {@link Simulator} tells it to.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class VirtualClock {
+
+    private long now;
+
+    /**
+     * The current virtual time.
+     *
+     * @return the current time in milliseconds
+     */
+    public long now() {
+        return now;
+    }
+
+    void advanceTo(long timestamp) {
+        if (timestamp > now) {
+            now = timestamp;
+        }
+    }
+
+}
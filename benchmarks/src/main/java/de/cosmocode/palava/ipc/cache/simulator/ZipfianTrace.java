@@ -0,0 +1,71 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A trace with a constant request rate whose keys follow a Zipf distribution.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public class ZipfianTrace extends SyntheticTrace {
+
+    private final double[] cumulative;
+    private final double interval;
+
+    /**
+     * Constructor.
+     *
+     * @param requests number of accesses
+     * @param keys number of distinct keys
+     * @param exponent the zipf exponent, 1.0 is a typical web workload
+     * @param rate requests per second
+     * @param seed random seed
+     */
+    public ZipfianTrace(long requests, int keys, double exponent, double rate, long seed) {
+        super(requests, 8, seed);
+        Preconditions.checkArgument(keys > 0, "Keys must be positive");
+        Preconditions.checkArgument(rate > 0, "Rate must be positive");
+        this.cumulative = new double[keys];
+        double sum = 0;
+        for (int i = 0; i < keys; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < keys; i++) {
+            cumulative[i] /= sum;
+        }
+        this.interval = 1000.0 / rate;
+    }
+
+    @Override
+    protected long nextKey(long index, Random random) {
+        final int position = Arrays.binarySearch(cumulative, random.nextDouble());
+        return position >= 0 ? position : -position - 1;
+    }
+
+    @Override
+    protected long nextTimestamp(long previous, Random random) {
+        return previous + Math.round(-Math.log(1 - random.nextDouble()) * interval);
+    }
+
+}
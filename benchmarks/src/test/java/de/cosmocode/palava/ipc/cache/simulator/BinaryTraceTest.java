@@ -0,0 +1,128 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import de.cosmocode.palava.ipc.cache.trace.TraceFormat;
+
+/**
+ * Tests {@link BinaryTrace}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class BinaryTraceTest {
+
+    private File directory;
+
+    /**
+     * Creates the trace directory.
+     */
+    @Before
+    public void createDirectory() {
+        directory = Files.createTempDir();
+    }
+
+    private void write(String name, int version, long... hashes) throws IOException {
+        // files are mapped with a fixed size, so the count may be smaller than the space for records
+        final ByteBuffer buffer = ByteBuffer.allocate(
+            TraceFormat.HEADER_SIZE + (hashes.length + 1) * TraceFormat.RECORD_SIZE);
+        buffer.putInt(TraceFormat.MAGIC);
+        buffer.putInt(version);
+        buffer.putLong(hashes.length);
+        for (long hash : hashes) {
+            buffer.putLong(hash * 1000L);
+            buffer.putInt(42);
+            buffer.putLong(hash);
+            buffer.put(TraceFormat.HIT);
+            buffer.putLong(hash * 10L);
+            buffer.putInt((int) hash);
+        }
+        Files.write(buffer.array(), new File(directory, name + TraceFormat.FILE_SUFFIX));
+    }
+
+    /**
+     * Tests that files are replayed in name order and command ids are resolved.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void replay() throws IOException {
+        write("0002", TraceFormat.VERSION, 3L);
+        write("0001", TraceFormat.VERSION, 1L, 2L);
+        Files.write("42,de.cosmocode.Find\n", new File(directory, TraceFormat.COMMANDS_FILE), Charsets.UTF_8);
+
+        final Iterator<TraceRecord> records = new BinaryTrace(directory).iterator();
+        for (long hash = 1L; hash <= 3L; hash++) {
+            final TraceRecord record = records.next();
+            Assert.assertEquals(hash * 1000L, record.getTimestamp());
+            Assert.assertEquals("de.cosmocode.Find", record.getCommand());
+            Assert.assertEquals(hash, record.getKeyHash());
+            Assert.assertEquals(hash * 10L, record.getCost());
+            Assert.assertEquals((int) hash, record.getSize());
+        }
+        Assert.assertFalse(records.hasNext());
+    }
+
+    /**
+     * Tests that unknown command ids are kept as numbers.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void unknownCommand() throws IOException {
+        write("0001", TraceFormat.VERSION, 1L);
+        Assert.assertEquals("42", new BinaryTrace(directory).iterator().next().getCommand());
+    }
+
+    /**
+     * Tests that files of another version are rejected.
+     *
+     * @throws IOException should not happen
+     */
+    @Test(expected = IllegalStateException.class)
+    public void otherVersion() throws IOException {
+        write("0001", TraceFormat.VERSION - 1, 1L);
+        new BinaryTrace(directory).iterator().next();
+    }
+
+    /**
+     * Deletes the trace directory.
+     */
+    @After
+    public void deleteDirectory() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Tests {@link CsvTrace}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class CsvTraceTest {
+
+    private File file;
+
+    /**
+     * Creates the trace file.
+     *
+     * @throws IOException should not happen
+     */
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("trace", ".csv");
+    }
+
+    /**
+     * Tests that records are parsed in order and comments and empty lines are skipped.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void parse() throws IOException {
+        Files.write("# timestamp,command,keyHash,cost,size\n1000,find, -7,250,64\n\n1001, get,3,0 ,8\n",
+            file, Charsets.UTF_8);
+        final Iterator<TraceRecord> records = new CsvTrace(file).iterator();
+
+        final TraceRecord first = records.next();
+        Assert.assertEquals(1000L, first.getTimestamp());
+        Assert.assertEquals("find", first.getCommand());
+        Assert.assertEquals(-7L, first.getKeyHash());
+        Assert.assertEquals(250L, first.getCost());
+        Assert.assertEquals(64, first.getSize());
+
+        final TraceRecord second = records.next();
+        Assert.assertEquals(1001L, second.getTimestamp());
+        Assert.assertEquals("get", second.getCommand());
+        Assert.assertEquals(0L, second.getCost());
+        Assert.assertFalse(records.hasNext());
+    }
+
+    /**
+     * Tests that lines with missing columns are rejected.
+     *
+     * @throws IOException should not happen
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void missingColumn() throws IOException {
+        Files.write("1000,find,7,250\n", file, Charsets.UTF_8);
+        new CsvTrace(file).iterator().next();
+    }
+
+    /**
+     * Tests that a missing file fails on iteration.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void missingFile() {
+        file.delete();
+        new CsvTrace(file).iterator();
+    }
+
+    /**
+     * Deletes the trace file.
+     */
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+}
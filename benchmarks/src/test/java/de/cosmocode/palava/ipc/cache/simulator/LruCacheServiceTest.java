@@ -0,0 +1,105 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Predicates;
+
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * Tests {@link LruCacheService}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class LruCacheServiceTest {
+
+    private final VirtualClock clock = new VirtualClock();
+
+    private final FixedExpiration expiration = new FixedExpiration(10, TimeUnit.SECONDS);
+
+    /**
+     * Tests that the least recently used entries are evicted once the capacity is exceeded.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void evictsLeastRecentlyUsed() throws IpcCommandExecutionException {
+        final LruCacheService unit = new LruCacheService(clock, 300L);
+        unit.computeAndStore(SimulatorFixtures.key(1L), expiration, SimulatorFixtures.sized(100));
+        unit.computeAndStore(SimulatorFixtures.key(2L), expiration, SimulatorFixtures.sized(100));
+        unit.computeAndStore(SimulatorFixtures.key(3L), expiration, SimulatorFixtures.sized(100));
+        Assert.assertNotNull(unit.read(SimulatorFixtures.key(1L)));
+
+        unit.computeAndStore(SimulatorFixtures.key(4L), expiration, SimulatorFixtures.sized(100));
+        Assert.assertEquals(300L, unit.getWeight());
+        Assert.assertNotNull(unit.read(SimulatorFixtures.key(1L)));
+        Assert.assertNull(unit.read(SimulatorFixtures.key(2L)));
+        Assert.assertNotNull(unit.read(SimulatorFixtures.key(3L)));
+        Assert.assertNotNull(unit.read(SimulatorFixtures.key(4L)));
+    }
+
+    /**
+     * Tests that results larger than the capacity are not kept.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void oversized() throws IpcCommandExecutionException {
+        final LruCacheService unit = new LruCacheService(clock, 100L);
+        unit.computeAndStore(SimulatorFixtures.key(1L), expiration, SimulatorFixtures.sized(200));
+        Assert.assertNull(unit.read(SimulatorFixtures.key(1L)));
+        Assert.assertEquals(0L, unit.getWeight());
+    }
+
+    /**
+     * Tests that entries expire in virtual time and release their weight.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void expires() throws IpcCommandExecutionException {
+        final LruCacheService unit = new LruCacheService(clock, 300L);
+        unit.computeAndStore(SimulatorFixtures.key(1L), expiration, SimulatorFixtures.sized(100));
+        clock.advanceTo(9999L);
+        Assert.assertNotNull(unit.read(SimulatorFixtures.key(1L)));
+        clock.advanceTo(10000L);
+        Assert.assertNull(unit.read(SimulatorFixtures.key(1L)));
+        Assert.assertEquals(0L, unit.getWeight());
+    }
+
+    /**
+     * Tests that invalidation removes matching entries and their weight.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void invalidate() throws IpcCommandExecutionException {
+        final LruCacheService unit = new LruCacheService(clock, 300L);
+        unit.computeAndStore(SimulatorFixtures.key(1L), expiration, SimulatorFixtures.sized(100));
+        unit.computeAndStore(SimulatorFixtures.key(2L), expiration, SimulatorFixtures.sized(100));
+        unit.invalidate(SimulatedCommand.class, Predicates.equalTo(SimulatorFixtures.key(1L)));
+        Assert.assertNull(unit.read(SimulatorFixtures.key(1L)));
+        Assert.assertNotNull(unit.read(SimulatorFixtures.key(2L)));
+        Assert.assertEquals(100L, unit.getWeight());
+    }
+
+}
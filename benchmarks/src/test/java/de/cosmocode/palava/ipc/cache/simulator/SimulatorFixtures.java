@@ -0,0 +1,65 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.IpcCommandExecution;
+
+/**
+ * Keys and executions shared by the simulator tests.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class SimulatorFixtures {
+
+    private SimulatorFixtures() {
+
+    }
+
+    /**
+     * Creates the key of a recorded access with the given hash.
+     *
+     * @param hash the key hash
+     * @return a new key, equal to all keys created using the same hash
+     */
+    static CacheKey key(long hash) {
+        return new SimulatedKey(new TraceRecord(0L, "find", hash, 0L, 0));
+    }
+
+    /**
+     * Creates an execution which returns a result of the given simulated size.
+     *
+     * @param size the size in bytes
+     * @return a new execution
+     */
+    static IpcCommandExecution sized(int size) {
+        final Map<String, Object> result = ImmutableMap.<String, Object>of("size", size);
+        return new IpcCommandExecution() {
+
+            @Override
+            public Map<String, Object> call() {
+                return result;
+            }
+
+        };
+    }
+
+}
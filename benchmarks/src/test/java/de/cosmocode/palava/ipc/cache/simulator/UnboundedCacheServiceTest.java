@@ -0,0 +1,55 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.palava.ipc.cache.simulator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * Tests {@link UnboundedCacheService}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class UnboundedCacheServiceTest {
+
+    private final VirtualClock clock = new VirtualClock();
+
+    /**
+     * Tests that entries are kept regardless of their weight until they expire.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void keepsUntilExpired() throws IpcCommandExecutionException {
+        final UnboundedCacheService unit = new UnboundedCacheService(clock);
+        final FixedExpiration expiration = new FixedExpiration(1, TimeUnit.SECONDS);
+        for (long hash = 0L; hash < 1000L; hash++) {
+            unit.computeAndStore(SimulatorFixtures.key(hash), expiration, SimulatorFixtures.sized(1000));
+        }
+        Assert.assertEquals(1000L * 1000L, unit.getWeight());
+        Assert.assertNotNull(unit.read(SimulatorFixtures.key(0L)));
+
+        clock.advanceTo(1000L);
+        Assert.assertNull(unit.read(SimulatorFixtures.key(0L)));
+        Assert.assertEquals(999L * 1000L, unit.getWeight());
+    }
+
+}
@@ -17,14 +17,21 @@
 package de.cosmocode.palava.ipc.cache;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 import de.cosmocode.palava.cache.CacheExpiration;
 import de.cosmocode.palava.ipc.IpcCall;
 import de.cosmocode.palava.ipc.IpcCommand;
 import de.cosmocode.palava.ipc.IpcCommandExecutionException;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * Utility class to perform some basic and trivial tasks. Implementations have to use
@@ -38,6 +45,10 @@ public abstract class AbstractIpcCacheService implements IpcCacheService, CacheK
 
     private CacheKeyFactory cacheKeyFactory = DefaultCacheKeyFactory.INSTANCE;
 
+    private Executor batchExecutor;
+
+    private int batchParallelism = 8;
+
     /**
      * Optional possibility to change the default {@link CacheKeyFactory} with another implementation.
      *
@@ -48,6 +59,31 @@ public abstract class AbstractIpcCacheService implements IpcCacheService, CacheK
         this.cacheKeyFactory = Preconditions.checkNotNull(cacheKeyFactory, "CacheKeyFactory");
     }
 
+    /**
+     * Optional executor which computes misses of {@link #getOrComputeAll(Map, CacheExpiration)}
+     * and scans segments of invalidations in parallel. Without one, both run on the calling thread.
+     *
+     * @since 3.1
+     * @param batchExecutor the executor to use
+     */
+    @Inject(optional = true)
+    public void setBatchExecutor(@Batch Executor batchExecutor) {
+        this.batchExecutor = Preconditions.checkNotNull(batchExecutor, "Executor");
+    }
+
+    /**
+     * Optional possibility to change the maximum number of misses of one batch computed
+     * and segments of one invalidation scanned concurrently.
+     *
+     * @since 3.1
+     * @param batchParallelism the maximum parallelism, including the calling thread
+     */
+    @Inject(optional = true)
+    public void setBatchParallelism(@Named(BatchConfig.PARALLELISM) int batchParallelism) {
+        Preconditions.checkArgument(batchParallelism > 0, "Parallelism must be positive");
+        this.batchParallelism = batchParallelism;
+    }
+
     @Override
     public CacheKey create(IpcCall call, IpcCommand command) {
         Preconditions.checkNotNull(command, "Command");
@@ -67,10 +103,72 @@ public abstract class AbstractIpcCacheService implements IpcCacheService, CacheK
         return computeAndStore(cacheKeyFactory.create(call, command), expiration, computation);
     }
 
+    @Override
+    public Map<CacheKey, Map<String, Object>> readAll(Collection<? extends CacheKey> keys) {
+        Preconditions.checkNotNull(keys, "Keys");
+        final Map<CacheKey, Map<String, Object>> results = Maps.newLinkedHashMap();
+        for (CacheKey key : keys) {
+            final Map<String, Object> result = read(key);
+            if (result != null) {
+                results.put(key, result);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public Map<CacheKey, Map<String, Object>> getOrComputeAll(
+        Map<? extends CacheKey, ? extends IpcCommandExecution> computations, CacheExpiration expiration)
+        throws IpcCommandExecutionException {
+
+        Preconditions.checkNotNull(computations, "Computations");
+        Preconditions.checkNotNull(expiration, "Expiration");
+
+        final Map<CacheKey, Map<String, Object>> hits = readAll(computations.keySet());
+        final List<CacheKey> misses = Lists.newArrayList();
+        for (CacheKey key : computations.keySet()) {
+            if (!hits.containsKey(key)) {
+                misses.add(key);
+            }
+        }
+        if (misses.isEmpty()) {
+            return hits;
+        }
+
+        final Map<CacheKey, Map<String, Object>> computed = new BatchComputation(
+            this, misses, computations, expiration).compute(batchExecutor, batchParallelism);
+        final Map<CacheKey, Map<String, Object>> results = Maps.newLinkedHashMap();
+        for (CacheKey key : computations.keySet()) {
+            final Map<String, Object> result = hits.containsKey(key) ? hits.get(key) : computed.get(key);
+            if (result != null) {
+                results.put(key, result);
+            }
+        }
+        return results;
+    }
+
     @Override
     public void invalidate(Class<? extends IpcCommand> command) {
         Preconditions.checkNotNull(command, "Command");
         invalidate(command, Predicates.alwaysTrue());
     }
 
+    /**
+     * Scans the given segments of a key index in parallel and removes all keys of the given command
+     * matching the given predicate, using the batch executor and parallelism.
+     *
+     * @since 3.1
+     * @param segments the segments of the key index
+     * @param command the command whose keys should be removed
+     * @param predicate the predicate keys have to match
+     * @param removal removes matching keys
+     * @return the number of removed entries
+     * @see ParallelInvalidation
+     */
+    protected final int invalidate(List<? extends Iterable<? extends CacheKey>> segments,
+        Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate,
+        ParallelInvalidation.Removal removal) {
+        return ParallelInvalidation.invalidate(batchExecutor, batchParallelism, segments, command, predicate, removal);
+    }
+
 }
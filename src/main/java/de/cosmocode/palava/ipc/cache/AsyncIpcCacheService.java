@@ -0,0 +1,72 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.Map;
+
+import com.google.common.base.Predicate;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import de.cosmocode.palava.cache.CacheExpiration;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * Non-blocking counterpart of the {@link IpcCacheService}. Every method returns immediately,
+ * the returned future completes once the underlying operation has finished. Failed computations
+ * complete the future with an {@link IpcCommandExecutionException}.
+ *
+ * @see AsyncIpcCacheServices
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public interface AsyncIpcCacheService {
+
+    /**
+     * Asynchronously reads the cached value for the given key.
+     *
+     * @param key the cache key
+     * @return a future of the cached result, completing with null if no value exists
+     * @throws NullPointerException if key is null
+     */
+    ListenableFuture<Map<String, Object>> readAsync(CacheKey key);
+
+    /**
+     * Asynchronously returns the cached value for the given key, computing and storing it
+     * if no value exists, as {@link IpcCacheService#computeAndStore(CacheKey, CacheExpiration,
+     * IpcCommandExecution)} does.
+     *
+     * @param key the cache key
+     * @param expiration the cache expiration
+     * @param computation the pending command execution
+     * @return a future of either a previously computed result or the result of the given computation
+     * @throws NullPointerException if key, expiration or computation is null
+     */
+    ListenableFuture<Map<String, Object>> getOrComputeAsync(CacheKey key, CacheExpiration expiration,
+        IpcCommandExecution computation);
+
+    /**
+     * Asynchronously invalidates cached versions of an {@link IpcCommand} matching a predicate.
+     *
+     * @param command the IpcCommand definition to invalidate
+     * @param predicate a predicate to only invalidate self-filtered entries
+     * @return a future which completes once the invalidation is done
+     * @throws NullPointerException if command or predicate is null
+     */
+    ListenableFuture<Void> invalidateAsync(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate);
+
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.concurrent.ExecutorService;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Static utility methods for {@link AsyncIpcCacheService}s.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class AsyncIpcCacheServices {
+
+    private AsyncIpcCacheServices() {
+
+    }
+
+    /**
+     * Provides an asynchronous view of the given service. Services which implement
+     * {@link AsyncIpcCacheService} themselves are returned as they are, all others
+     * run their blocking operations on the given executor.
+     *
+     * @param service the backing service
+     * @param executor the executor used for blocking operations
+     * @return an asynchronous service backed by the given one
+     * @throws NullPointerException if service or executor is null
+     */
+    public static AsyncIpcCacheService adapt(IpcCacheService service, ExecutorService executor) {
+        Preconditions.checkNotNull(service, "Service");
+        Preconditions.checkNotNull(executor, "Executor");
+        if (service instanceof AsyncIpcCacheService) {
+            return AsyncIpcCacheService.class.cast(service);
+        } else {
+            return new ExecutingAsyncIpcCacheService(service, MoreExecutors.listeningDecorator(executor));
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.cache.CacheExpiration;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * Computes and stores a list of misses on the calling thread and up to parallelism - 1 helpers.
+ * Helpers claim the next pending key until none is left, so helpers which start late or are
+ * rejected by the executor never delay the batch. Once a computation failed, the remaining
+ * keys are skipped.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class BatchComputation implements Runnable {
+
+    private final IpcCacheService service;
+    private final List<CacheKey> keys;
+    private final Map<? extends CacheKey, ? extends IpcCommandExecution> computations;
+    private final CacheExpiration expiration;
+
+    private final AtomicInteger next = new AtomicInteger();
+    private final CountDownLatch done;
+    private final ConcurrentMap<CacheKey, Map<String, Object>> results = Maps.newConcurrentMap();
+    private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+    BatchComputation(IpcCacheService service, List<CacheKey> keys,
+        Map<? extends CacheKey, ? extends IpcCommandExecution> computations, CacheExpiration expiration) {
+        this.service = service;
+        this.keys = keys;
+        this.computations = computations;
+        this.expiration = expiration;
+        this.done = new CountDownLatch(keys.size());
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            final int index = next.getAndIncrement();
+            if (index >= keys.size()) {
+                return;
+            }
+            final CacheKey key = keys.get(index);
+            try {
+                if (failure.get() == null) {
+                    final Map<String, Object> result = service.computeAndStore(key, expiration,
+                        computations.get(key));
+                    if (result != null) {
+                        results.put(key, result);
+                    }
+                }
+            } catch (IpcCommandExecutionException e) {
+                failure.compareAndSet(null, e);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+
+    /**
+     * Computes all keys and waits for them.
+     *
+     * @param executor the executor for helpers, null to compute on the calling thread only
+     * @param parallelism the maximum number of concurrent computations
+     * @return the computed results by key
+     * @throws IpcCommandExecutionException if any computation failed or the calling thread was interrupted
+     */
+    Map<CacheKey, Map<String, Object>> compute(@Nullable Executor executor, int parallelism)
+        throws IpcCommandExecutionException {
+
+        if (executor != null) {
+            final int helpers = Math.min(parallelism, keys.size()) - 1;
+            for (int i = 0; i < helpers; i++) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    break;
+                }
+            }
+        }
+        run();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IpcCommandExecutionException(e);
+        }
+        final Exception e = failure.get();
+        if (e instanceof IpcCommandExecutionException) {
+            throw IpcCommandExecutionException.class.cast(e);
+        } else if (e != null) {
+            throw RuntimeException.class.cast(e);
+        }
+        return results;
+    }
+
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+
+/**
+ * The {@link Batch} executor bound by the {@link BatchModule}, sized by {@link BatchConfig#THREADS}.
+ * Tasks submitted before it is initialized or after it is disposed are rejected, callers
+ * then do the work on their own thread.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class BatchExecutor implements Executor, Initializable, Disposable {
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private boolean virtualThreads;
+
+    private volatile ExecutorService executor;
+
+    @Inject
+    BatchExecutor() {
+
+    }
+
+    @Inject(optional = true)
+    void setThreads(@Named(BatchConfig.THREADS) int threads) {
+        Preconditions.checkArgument(threads > 0, "Threads must be positive");
+        this.threads = threads;
+    }
+
+    @Inject(optional = true)
+    void setVirtualThreads(@Named(BatchConfig.VIRTUAL_THREADS) boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        executor = CacheExecutors.newExecutor("ipc-cache-batch", threads, virtualThreads);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        final ExecutorService current = executor;
+        if (current == null) {
+            throw new RejectedExecutionException("Batch executor is not running");
+        }
+        current.execute(command);
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        final ExecutorService current = executor;
+        executor = null;
+        if (current != null) {
+            // queued helpers are dropped, their callers finish the work themselves
+            current.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+import de.cosmocode.palava.cache.CacheExpiration;
+
+/**
+ * A cached result together with the information required to expire it.
+ * All times are wall clock milliseconds, so entries survive restarts
+ * and can be moved between stores.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class CacheEntry {
+
+    private final Map<String, Object> value;
+    private final long created;
+    private final long lifeTime;
+    private final long idleTime;
+    private volatile long lastAccess;
+
+    /**
+     * Creates a new entry which has been created and accessed just now.
+     *
+     * @param value the cached result
+     * @param expiration the expiration of the result
+     * @param now the current time in milliseconds
+     */
+    public CacheEntry(Map<String, Object> value, CacheExpiration expiration, long now) {
+        this.value = Preconditions.checkNotNull(value, "Value");
+        Preconditions.checkNotNull(expiration, "Expiration");
+        this.created = now;
+        this.lastAccess = now;
+        if (expiration.isEternal()) {
+            this.lifeTime = 0L;
+            this.idleTime = 0L;
+        } else {
+            this.lifeTime = expiration.getLifeTimeIn(TimeUnit.MILLISECONDS);
+            this.idleTime = expiration.getIdleTimeIn(TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Recreates an entry, e.g. after reading it from a serialized form.
+     *
+     * @param value the cached result
+     * @param created the creation time in milliseconds
+     * @param lastAccess the last access time in milliseconds
+     * @param lifeTime the maximum life time in milliseconds, 0 for unlimited
+     * @param idleTime the maximum idle time in milliseconds, 0 for unlimited
+     */
+    public CacheEntry(Map<String, Object> value, long created, long lastAccess, long lifeTime, long idleTime) {
+        this.value = Preconditions.checkNotNull(value, "Value");
+        this.created = created;
+        this.lastAccess = lastAccess;
+        this.lifeTime = lifeTime;
+        this.idleTime = idleTime;
+    }
+
+    public Map<String, Object> getValue() {
+        return value;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    public long getLifeTime() {
+        return lifeTime;
+    }
+
+    public long getIdleTime() {
+        return idleTime;
+    }
+
+    /**
+     * Marks this entry as accessed.
+     *
+     * @param now the current time in milliseconds
+     */
+    public void touch(long now) {
+        lastAccess = now;
+    }
+
+    /**
+     * Checks whether this entry has expired.
+     *
+     * @param now the current time in milliseconds
+     * @return true if either life time or idle time are exceeded
+     */
+    public boolean isExpired(long now) {
+        return isExpired(now, created, lastAccess, lifeTime, idleTime);
+    }
+
+    /**
+     * Checks whether an entry with the given times has expired, without creating it.
+     *
+     * @param now the current time in milliseconds
+     * @param created the creation time
+     * @param lastAccess the last access time
+     * @param lifeTime the life time, 0 for unlimited
+     * @param idleTime the idle time, 0 for unlimited
+     * @return true if either life time or idle time are exceeded
+     */
+    public static boolean isExpired(long now, long created, long lastAccess, long lifeTime, long idleTime) {
+        return (lifeTime > 0L && now - created >= lifeTime) || (idleTime > 0L && now - lastAccess >= idleTime);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheEntry [created=" + created + ", lastAccess=" + lastAccess +
+            ", lifeTime=" + lifeTime + ", idleTime=" + idleTime + "]";
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Creates the executors used for background work of the cache, either as a bounded pool
+ * of platform threads or, on JDK 21 and later, with one virtual thread per task.
+ *
+ * <p>
+ * Virtual threads are unbounded, so callers which enable them should bound concurrency
+ * with {@link CommandPermits} instead of the pool size. The store path uses explicit locks
+ * instead of monitors, so blocked virtual threads don't pin their carriers. Run with
+ * {@code -Djdk.tracePinnedThreads=short} to report any remaining pinned sections.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class CacheExecutors {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CacheExecutors.class);
+
+    private CacheExecutors() {
+
+    }
+
+    /**
+     * Creates a new executor. Threads are daemons named after the given name.
+     *
+     * @param name the thread name prefix
+     * @param threads the number of platform threads
+     * @param virtual whether virtual threads should be used if supported by the running JVM
+     * @return a new executor
+     * @throws NullPointerException if name is null
+     * @throws IllegalArgumentException if threads is not positive
+     */
+    public static ExecutorService newExecutor(String name, int threads, boolean virtual) {
+        Preconditions.checkNotNull(name, "Name");
+        Preconditions.checkArgument(threads > 0, "Threads must be positive");
+        if (virtual) {
+            final ExecutorService executor = newVirtualThreadExecutor(name);
+            if (executor != null) {
+                return executor;
+            }
+            LOG.warn("Virtual threads are not supported, using {} platform threads for {}", threads, name);
+        }
+        return Executors.newFixedThreadPool(threads,
+            new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Checks whether the running JVM supports virtual threads.
+     *
+     * @return true if virtual threads are supported
+     */
+    public static boolean isVirtualThreadsSupported() {
+        final ExecutorService executor = newVirtualThreadExecutor("ipc-cache-probe");
+        if (executor == null) {
+            return false;
+        } else {
+            executor.shutdown();
+            return true;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor(String name) {
+        // reflective, because the code base has to compile and run on older JDKs
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Class<?> type = Class.forName("java.lang.Thread$Builder");
+            final Object named = type.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+            final ThreadFactory factory = ThreadFactory.class.cast(type.getMethod("factory").invoke(named));
+            return ExecutorService.class.cast(Executors.class.getMethod("newThreadPerTaskExecutor",
+                ThreadFactory.class).invoke(null, factory));
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            // preview releases without --enable-preview
+            LOG.debug("Unable to create virtual threads: {}", e.getCause().toString());
+            return null;
+        }
+    }
+
+}
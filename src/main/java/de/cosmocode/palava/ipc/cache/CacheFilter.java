@@ -16,7 +16,9 @@
 
 package de.cosmocode.palava.ipc.cache;
 
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Predicates;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
@@ -26,6 +28,19 @@ import de.cosmocode.palava.ipc.IpcCallFilter;
 import de.cosmocode.palava.ipc.IpcCallFilterChain;
 import de.cosmocode.palava.ipc.IpcCommand;
 import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.compact.CompactResults;
+import de.cosmocode.palava.ipc.cache.compact.ResultCompactor;
+import de.cosmocode.palava.ipc.cache.compression.CompressedResults;
+import de.cosmocode.palava.ipc.cache.compression.ResultCompressor;
+import de.cosmocode.palava.ipc.cache.dedup.DeduplicatedResults;
+import de.cosmocode.palava.ipc.cache.dedup.ResultDeduplicator;
+import de.cosmocode.palava.ipc.cache.dependency.Dependencies;
+import de.cosmocode.palava.ipc.cache.dependency.DependencyIndex;
+import de.cosmocode.palava.ipc.cache.encoding.EncodedResults;
+import de.cosmocode.palava.ipc.cache.encoding.ResultEncoder;
+import de.cosmocode.palava.ipc.cache.invalidation.InvalidationGenerations;
+import de.cosmocode.palava.ipc.cache.trace.NoTraceRecorder;
+import de.cosmocode.palava.ipc.cache.trace.TraceRecorder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,19 +62,141 @@ import java.util.concurrent.ConcurrentMap;
  * @since 1.0
  */
 @Singleton
-final class CacheFilter implements IpcCallFilter {
+public final class CacheFilter implements IpcCallFilter {
 
     private static final Logger LOG = LoggerFactory.getLogger(CacheFilter.class);
     
     private final IpcCacheService service;
     private final Injector injector;
+    private final boolean serializing;
+    private final boolean preparing;
 
     private final ConcurrentMap<Class<? extends IpcCommand>, Annotation> cache = Maps.newConcurrentMap();
+
+    private TraceRecorder recorder = NoTraceRecorder.INSTANCE;
+
+    private ResultCompactor compactor;
+
+    private ResultDeduplicator deduplicator;
+
+    private ResultCompressor compressor;
+
+    private ResultEncoder encoder;
+
+    private DependencyIndex dependencyIndex;
+
+    private InvalidationGenerations generations;
     
     @Inject
     public CacheFilter(IpcCacheService service, Injector injector) {
         this.service = Preconditions.checkNotNull(service, "Service");
         this.injector = Preconditions.checkNotNull(injector, "Injector");
+        this.serializing = isSerializing(service);
+        this.preparing = isPreparing(service);
+    }
+
+    private static boolean isPreparing(IpcCacheService service) {
+        if (service instanceof PreparingCache) {
+            return true;
+        }
+        IpcCacheService backing = service;
+        while (backing instanceof DecoratingCache) {
+            backing = DecoratingCache.class.cast(backing).getBacking();
+            if (backing instanceof PreparingCache) {
+                LOG.warn("{} is decorated by {}, preparing results before storing them", backing, service);
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSerializing(IpcCacheService service) {
+        IpcCacheService backing = service;
+        while (backing instanceof DecoratingCache) {
+            backing = DecoratingCache.class.cast(backing).getBacking();
+        }
+        return backing instanceof SerializingCache;
+    }
+
+    /**
+     * Optional possibility to record cache accesses.
+     *
+     * @since 3.1
+     * @param recorder the recorder to use
+     */
+    @Inject(optional = true)
+    void setTraceRecorder(TraceRecorder recorder) {
+        this.recorder = Preconditions.checkNotNull(recorder, "Recorder");
+    }
+
+    /**
+     * Optional possibility to cache results in a compact immutable form.
+     *
+     * @since 3.1
+     * @param compactor the compactor to use
+     */
+    @Inject(optional = true)
+    void setResultCompactor(ResultCompactor compactor) {
+        this.compactor = Preconditions.checkNotNull(compactor, "Compactor");
+    }
+
+    /**
+     * Optional possibility to share one copy of equal results. Ignored if the service
+     * is a {@link SerializingCache}.
+     *
+     * @since 3.1
+     * @param deduplicator the deduplicator to use
+     */
+    @Inject(optional = true)
+    void setResultDeduplicator(ResultDeduplicator deduplicator) {
+        this.deduplicator = Preconditions.checkNotNull(deduplicator, "Deduplicator");
+    }
+
+    /**
+     * Optional possibility to cache large results in compressed form.
+     *
+     * @since 3.1
+     * @param compressor the compressor to use
+     */
+    @Inject(optional = true)
+    void setResultCompressor(ResultCompressor compressor) {
+        this.compressor = Preconditions.checkNotNull(compressor, "Compressor");
+    }
+
+    /**
+     * Optional possibility to cache results in encoded form.
+     *
+     * @since 3.1
+     * @param encoder the encoder to use
+     */
+    @Inject(optional = true)
+    void setResultEncoder(ResultEncoder encoder) {
+        this.encoder = Preconditions.checkNotNull(encoder, "Encoder");
+    }
+
+    /**
+     * Optional possibility to index results by the entities they depend on, bound by the
+     * {@link de.cosmocode.palava.ipc.cache.dependency.DependencyModule}.
+     *
+     * @since 3.1
+     * @param dependencyIndex the index to use
+     */
+    @Inject(optional = true)
+    void setDependencyIndex(DependencyIndex dependencyIndex) {
+        this.dependencyIndex = Preconditions.checkNotNull(dependencyIndex, "DependencyIndex");
+    }
+
+    /**
+     * Optional possibility to detect invalidations by
+     * {@link de.cosmocode.palava.ipc.cache.invalidation.Invalidates} which happen while a result is computed,
+     * bound by the {@link de.cosmocode.palava.ipc.cache.invalidation.InvalidatesModule}.
+     *
+     * @since 3.1
+     * @param generations the generations to use
+     */
+    @Inject(optional = true)
+    void setInvalidationGenerations(InvalidationGenerations generations) {
+        this.generations = Preconditions.checkNotNull(generations, "Generations");
     }
 
     @Override
@@ -75,17 +212,101 @@ final class CacheFilter implements IpcCallFilter {
         final CacheKey cacheKey = decision.computeKey(call, command);
 
         final Map<String, Object> cached = service.read(cacheKey);
+        final boolean sampled = recorder.isSampled(cacheKey);
 
         if (cached == null) {
+            final long start = sampled ? System.nanoTime() : 0L;
+            final Map<String, Object> result;
             if (decision.shouldCache()) {
-                return service.computeAndStore(cacheKey, decision, new IpcFilterChainExecution(call, command, chain));
+                final long generation = generations == null ? 0L : generations.get(command.getClass());
+                final IpcFilterChainExecution execution = new IpcFilterChainExecution(call, command, chain);
+                if (dependencyIndex != null) {
+                    execution.registerIn(dependencyIndex, cacheKey);
+                }
+                if (preparing) {
+                    // the service prepares the result for caching itself, e.g. in the background
+                    result = decompress(PreparingCache.class.cast(service).computeAndStore(
+                        cacheKey, decision, execution, preparation(command.getClass())));
+                } else {
+                    result = decompress(service.computeAndStore(cacheKey, decision,
+                        preparing(execution, command.getClass())));
+                }
+                if (execution.isInvalidated()) {
+                    // an entity the result read was invalidated while computing or storing it
+                    invalidate(cacheKey);
+                } else if (generations != null && generations.isInvalidatedSince(cacheKey, generation)) {
+                    // a write invalidated the key while computing, the stored result may predate it
+                    invalidate(cacheKey);
+                }
             } else {
-                return chain.filter(call, command);
+                result = chain.filter(call, command);
             }
+            if (sampled) {
+                recorder.record(cacheKey, false, System.nanoTime() - start, result);
+            }
+            return result;
         } else {
-            return cached;
+            if (dependencyIndex != null && Dependencies.isRecording()) {
+                // a nested hit adds the entities of its result to the computation it is part of
+                Dependencies.registerAll(dependencyIndex.getDependencies(cacheKey));
+            }
+            final Map<String, Object> result = decompress(cached);
+            if (sampled) {
+                recorder.record(cacheKey, true, 0L, result);
+            }
+            return result;
         }
     }
+
+    private void invalidate(CacheKey cacheKey) {
+        if (service instanceof InvalidatingCache) {
+            InvalidatingCache.class.cast(service).invalidateKey(cacheKey);
+        } else {
+            service.invalidate(cacheKey.getCommand(), Predicates.equalTo(cacheKey));
+        }
+    }
+
+    private IpcCommandExecution preparing(IpcCommandExecution execution, Class<? extends IpcCommand> command) {
+        IpcCommandExecution prepared = execution;
+        if (compactor != null) {
+            prepared = CompactResults.compacting(prepared, command, compactor);
+        }
+        // sharing instances saves nothing if the service serializes them anyway
+        if (deduplicator != null && !serializing) {
+            prepared = DeduplicatedResults.deduplicating(prepared, command, deduplicator);
+        }
+        // encoded results are never compressed, decompress only unwraps plain compressed results
+        if (encoder != null) {
+            prepared = EncodedResults.encoding(prepared, encoder);
+        }
+        if (compressor != null) {
+            prepared = CompressedResults.compressing(prepared, command, compressor);
+        }
+        return prepared;
+    }
+
+    private Function<Map<String, Object>, IpcCommandExecution> preparation(
+        final Class<? extends IpcCommand> command) {
+        return new Function<Map<String, Object>, IpcCommandExecution>() {
+
+            @Override
+            public IpcCommandExecution apply(final Map<String, Object> result) {
+                return preparing(new IpcCommandExecution() {
+
+                    @Override
+                    public Map<String, Object> call() {
+                        return result;
+                    }
+
+                }, command);
+            }
+
+        };
+    }
+
+    private Map<String, Object> decompress(Map<String, Object> result) {
+        return compressor == null ? result : compressor.decompress(result);
+    }
     
     private Annotation checkAndGetAnnotation(IpcCommand command) {
         final Class<? extends IpcCommand> type = command.getClass();
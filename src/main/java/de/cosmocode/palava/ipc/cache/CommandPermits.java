@@ -0,0 +1,245 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.SettableFuture;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * Bounds the number of concurrent background computations per command type,
+ * which keeps a single slow command from taking over an unbounded executor.
+ * {@link #execute(Class, Executor, Runnable)} queues tasks until a permit is free instead of
+ * blocking a thread of the executor. Tasks queued with
+ * {@link #execute(Class, Executor, IpcCommandExecution, SettableFuture)} complete their future in any case,
+ * even if the executor rejects them while another caller dispatches them.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class CommandPermits {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CommandPermits.class);
+
+    private final int permits;
+
+    private final ConcurrentMap<Class<? extends IpcCommand>, Semaphore> semaphores = Maps.newConcurrentMap();
+
+    private final ConcurrentMap<Class<? extends IpcCommand>, Queue<Runnable>> waiting = Maps.newConcurrentMap();
+
+    /**
+     * Creates permits allowing the given number of concurrent computations per command.
+     *
+     * @param permits the number of permits per command
+     * @throws IllegalArgumentException if permits is not positive
+     */
+    public CommandPermits(int permits) {
+        Preconditions.checkArgument(permits > 0, "Permits must be positive");
+        this.permits = permits;
+    }
+
+    private Semaphore semaphore(Class<? extends IpcCommand> command) {
+        final Semaphore semaphore = semaphores.get(command);
+        if (semaphore == null) {
+            final Semaphore created = new Semaphore(permits);
+            final Semaphore previous = semaphores.putIfAbsent(command, created);
+            return previous == null ? created : previous;
+        } else {
+            return semaphore;
+        }
+    }
+
+    private Queue<Runnable> waiting(Class<? extends IpcCommand> command) {
+        final Queue<Runnable> queue = waiting.get(command);
+        if (queue == null) {
+            final Queue<Runnable> created = Queues.newConcurrentLinkedQueue();
+            final Queue<Runnable> previous = waiting.putIfAbsent(command, created);
+            return previous == null ? created : previous;
+        } else {
+            return queue;
+        }
+    }
+
+    /**
+     * Runs the given task on the given executor as soon as a permit of the given command is free
+     * and releases the permit afterwards. Tasks waiting for a permit are queued and don't occupy
+     * a thread of the executor.
+     *
+     * @param command the command type
+     * @param executor the executor to run the task on
+     * @param task the task
+     * @throws NullPointerException if command, executor or task is null
+     * @throws RejectedExecutionException if the executor rejected the task
+     */
+    public void execute(Class<? extends IpcCommand> command, Executor executor, Runnable task) {
+        Preconditions.checkNotNull(command, "Command");
+        Preconditions.checkNotNull(executor, "Executor");
+        Preconditions.checkNotNull(task, "Task");
+        waiting(command).add(task);
+        drain(command, executor, task);
+    }
+
+    /**
+     * Computes the given execution on the given executor as soon as a permit of the given command is free,
+     * releases the permit afterwards and completes the given future with the result or the failure
+     * of the execution. If the executor rejects the execution the future fails with the
+     * {@link RejectedExecutionException}. Cancelling the future before the execution started skips it.
+     *
+     * @param command the command type
+     * @param executor the executor to run the task on
+     * @param execution the execution
+     * @param future the future to complete
+     * @throws NullPointerException if command, executor, execution or future is null
+     */
+    public void execute(Class<? extends IpcCommand> command, Executor executor, IpcCommandExecution execution,
+        SettableFuture<Map<String, Object>> future) {
+        Preconditions.checkNotNull(command, "Command");
+        Preconditions.checkNotNull(executor, "Executor");
+        Preconditions.checkNotNull(execution, "Execution");
+        Preconditions.checkNotNull(future, "Future");
+        waiting(command).add(new Completing(execution, future));
+        drain(command, executor, null);
+    }
+
+    /**
+     * Dispatches waiting tasks as long as permits are free.
+     */
+    private void drain(Class<? extends IpcCommand> command, Executor executor, Runnable own) {
+        final Queue<Runnable> queue = waiting(command);
+        final Semaphore semaphore = semaphore(command);
+        // re-checks after every release, a task queued meanwhile may have missed the permit
+        while (!queue.isEmpty() && semaphore.tryAcquire()) {
+            final Runnable next = queue.poll();
+            if (next == null) {
+                semaphore.release();
+                continue;
+            }
+            try {
+                executor.execute(releasing(command, executor, next));
+            } catch (RejectedExecutionException e) {
+                semaphore.release();
+                if (next instanceof Completing) {
+                    Completing.class.cast(next).reject(e);
+                } else if (next == own) {
+                    throw e;
+                } else {
+                    LOG.warn("Dropped task of {} rejected by {}", command, executor);
+                }
+            }
+        }
+    }
+
+    private Runnable releasing(final Class<? extends IpcCommand> command, final Executor executor,
+        final Runnable task) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    semaphore(command).release();
+                    drain(command, executor, null);
+                }
+            }
+
+        };
+    }
+
+    /**
+     * A queued execution which completes a future.
+     */
+    private static final class Completing implements Runnable {
+
+        private final IpcCommandExecution execution;
+
+        private final SettableFuture<Map<String, Object>> future;
+
+        Completing(IpcCommandExecution execution, SettableFuture<Map<String, Object>> future) {
+            this.execution = execution;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.set(execution.call());
+            } catch (IpcCommandExecutionException e) {
+                future.setException(e);
+            } catch (RuntimeException e) {
+                future.setException(e);
+            }
+        }
+
+        void reject(RejectedExecutionException e) {
+            future.setException(e);
+        }
+
+    }
+
+    /**
+     * Waits for a permit of the given command.
+     *
+     * @param command the command type
+     * @throws InterruptedException if the current thread has been interrupted
+     * @throws NullPointerException if command is null
+     */
+    public void acquire(Class<? extends IpcCommand> command) throws InterruptedException {
+        Preconditions.checkNotNull(command, "Command");
+        semaphore(command).acquire();
+    }
+
+    /**
+     * Returns a permit previously acquired using {@link #acquire(Class)}.
+     *
+     * @param command the command type
+     * @throws NullPointerException if command is null
+     */
+    public void release(Class<? extends IpcCommand> command) {
+        Preconditions.checkNotNull(command, "Command");
+        semaphore(command).release();
+    }
+
+    /**
+     * Provides the number of currently available permits of the given command.
+     *
+     * @param command the command type
+     * @return the available permits
+     */
+    public int getAvailable(Class<? extends IpcCommand> command) {
+        final Semaphore semaphore = semaphores.get(command);
+        return semaphore == null ? permits : semaphore.availablePermits();
+    }
+
+}
@@ -16,6 +16,7 @@
 
 package de.cosmocode.palava.ipc.cache;
 
+import de.cosmocode.palava.ipc.IpcArguments;
 import de.cosmocode.palava.ipc.IpcCall;
 import de.cosmocode.palava.ipc.IpcCommand;
 
@@ -34,6 +35,30 @@ public enum DefaultCacheKeyFactory implements CacheKeyFactory {
     public CacheKey create(IpcCall call, IpcCommand command) {
         return new DefaultCacheKey(command.getClass(), call.getArguments());
     }
+
+    /**
+     * Creates a key equal to the one {@link #create(IpcCall, IpcCommand)} creates for the
+     * given command type and arguments, e.g. to restore keys from their binary form.
+     *
+     * @since 3.1
+     * @param command the command type
+     * @param arguments the arguments
+     * @return a new cache key
+     */
+    public CacheKey create(Class<? extends IpcCommand> command, IpcArguments arguments) {
+        return new DefaultCacheKey(command, arguments);
+    }
+
+    /**
+     * Checks whether the given key was created by this factory.
+     *
+     * @since 3.1
+     * @param key the key
+     * @return true if the key was created by this factory
+     */
+    public boolean isCreatedBy(CacheKey key) {
+        return key instanceof DefaultCacheKey;
+    }
     
     @Override
     public String toString() {
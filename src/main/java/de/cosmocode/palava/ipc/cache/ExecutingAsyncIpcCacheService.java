@@ -0,0 +1,99 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import de.cosmocode.palava.cache.CacheExpiration;
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Adapts a synchronous {@link IpcCacheService} by running every operation on an executor.
+ *
+ * @see AsyncIpcCacheServices#adapt(IpcCacheService, java.util.concurrent.ExecutorService)
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class ExecutingAsyncIpcCacheService implements AsyncIpcCacheService {
+
+    private final IpcCacheService service;
+    private final ListeningExecutorService executor;
+
+    ExecutingAsyncIpcCacheService(IpcCacheService service, ListeningExecutorService executor) {
+        this.service = Preconditions.checkNotNull(service, "Service");
+        this.executor = Preconditions.checkNotNull(executor, "Executor");
+    }
+
+    @Override
+    public ListenableFuture<Map<String, Object>> readAsync(final CacheKey key) {
+        Preconditions.checkNotNull(key, "CacheKey");
+        return executor.submit(new Callable<Map<String, Object>>() {
+
+            @Override
+            public Map<String, Object> call() {
+                return service.read(key);
+            }
+
+        });
+    }
+
+    @Override
+    public ListenableFuture<Map<String, Object>> getOrComputeAsync(final CacheKey key,
+        final CacheExpiration expiration, final IpcCommandExecution computation) {
+
+        Preconditions.checkNotNull(key, "CacheKey");
+        Preconditions.checkNotNull(expiration, "Expiration");
+        Preconditions.checkNotNull(computation, "Computation");
+        return executor.submit(new Callable<Map<String, Object>>() {
+
+            @Override
+            public Map<String, Object> call() throws Exception {
+                return service.computeAndStore(key, expiration, computation);
+            }
+
+        });
+    }
+
+    @Override
+    public ListenableFuture<Void> invalidateAsync(final Class<? extends IpcCommand> command,
+        final Predicate<? super CacheKey> predicate) {
+
+        Preconditions.checkNotNull(command, "Command");
+        Preconditions.checkNotNull(predicate, "Predicate");
+        return executor.submit(new Callable<Void>() {
+
+            @Override
+            public Void call() {
+                service.invalidate(command, predicate);
+                return null;
+            }
+
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutingAsyncIpcCacheService [service=" + service + "]";
+    }
+
+}
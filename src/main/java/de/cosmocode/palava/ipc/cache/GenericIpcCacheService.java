@@ -18,35 +18,95 @@ package de.cosmocode.palava.ipc.cache;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 import de.cosmocode.palava.cache.CacheExpiration;
 import de.cosmocode.palava.cache.CacheService;
 import de.cosmocode.palava.cache.ComputingCacheService;
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
 import de.cosmocode.palava.ipc.Ipc;
 import de.cosmocode.palava.ipc.IpcCommand;
 import de.cosmocode.palava.ipc.IpcCommandExecutionException;
 
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Binds an {@link IpcCacheService} to an implementation which uses a {@link CacheService}
  * and requires the {@link CacheService} to be bound annotated with {@link Ipc}.
  *
+ * <p>
+ * The asynchronous methods run on an own thread pool, sized by {@link AsyncConfig#THREADS},
+ * or on virtual threads if {@link AsyncConfig#VIRTUAL_THREADS} is enabled. Computations
+ * per command are bounded by {@link AsyncConfig#COMMAND_PERMITS}, computations waiting
+ * for a permit are queued without occupying a pool thread.
+ * Concurrent {@link #getOrComputeAsync(CacheKey, CacheExpiration, IpcCommandExecution)} calls
+ * for the same key share one pending future, so waiting callers don't occupy pool threads.
+ * Disposing the service cancels all futures which are still pending.
+ * </p>
+ *
  * @see GenericIpcCacheServiceModule
  * @author Tobias Sarnowski
  * @author Oliver Lorenz
  * @since 3.0
  */
-final class GenericIpcCacheService extends AbstractIpcCacheService {
+final class GenericIpcCacheService extends AbstractIpcCacheService
+    implements AsyncIpcCacheService, Initializable, Disposable {
     
     private final ComputingCacheService service;
 
+    private final ConcurrentMap<CacheKey, SettableFuture<Map<String, Object>>> pending = Maps.newConcurrentMap();
+
+    private int threads = 16;
+
+    private boolean virtualThreads;
+
+    private int commandPermits = Integer.MAX_VALUE;
+
+    private ListeningExecutorService executor;
+
+    private CommandPermits permits;
+
     @Inject
     GenericIpcCacheService(@Ipc ComputingCacheService cacheService) {
         this.service = Preconditions.checkNotNull(cacheService, "ComputingCacheService");
     }
 
+    @Inject(optional = true)
+    void setThreads(@Named(AsyncConfig.THREADS) int threads) {
+        Preconditions.checkArgument(threads > 0, "Threads must be positive");
+        this.threads = threads;
+    }
+
+    @Inject(optional = true)
+    void setVirtualThreads(@Named(AsyncConfig.VIRTUAL_THREADS) boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    @Inject(optional = true)
+    void setCommandPermits(@Named(AsyncConfig.COMMAND_PERMITS) int commandPermits) {
+        Preconditions.checkArgument(commandPermits > 0, "Command permits must be positive");
+        this.commandPermits = commandPermits;
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        executor = MoreExecutors.listeningDecorator(CacheExecutors.newExecutor("ipc-cache-async",
+            threads, virtualThreads));
+        permits = new CommandPermits(commandPermits);
+    }
+
     @Override
     public Map<String, Object> read(CacheKey key) {
         Preconditions.checkNotNull(key, "CacheKey");
@@ -72,5 +132,79 @@ final class GenericIpcCacheService extends AbstractIpcCacheService {
     public void invalidate(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
         throw new UnsupportedOperationException();
     }
+
+    @Override
+    public ListenableFuture<Map<String, Object>> readAsync(final CacheKey key) {
+        Preconditions.checkNotNull(key, "CacheKey");
+        return executor.submit(new Callable<Map<String, Object>>() {
+
+            @Override
+            public Map<String, Object> call() {
+                return read(key);
+            }
+
+        });
+    }
+
+    @Override
+    public ListenableFuture<Map<String, Object>> getOrComputeAsync(final CacheKey key,
+        final CacheExpiration expiration, final IpcCommandExecution computation) {
+
+        Preconditions.checkNotNull(key, "CacheKey");
+        Preconditions.checkNotNull(expiration, "Expiration");
+        Preconditions.checkNotNull(computation, "Computation");
+
+        final SettableFuture<Map<String, Object>> existing = pending.get(key);
+        if (existing != null) {
+            if (!existing.isDone()) {
+                return existing;
+            }
+            // rejected before it ran, computations remove their futures themselves
+            pending.remove(key, existing);
+        }
+        final SettableFuture<Map<String, Object>> future = SettableFuture.create();
+        final SettableFuture<Map<String, Object>> previous = pending.putIfAbsent(key, future);
+        if (previous != null) {
+            return previous;
+        }
+
+        // waits for a permit in a queue, never on a pool thread, and fails the future if rejected
+        permits.execute(key.getCommand(), executor, new IpcCommandExecution() {
+
+            @Override
+            public Map<String, Object> call() throws IpcCommandExecutionException {
+                try {
+                    return computeAndStore(key, expiration, computation);
+                } finally {
+                    pending.remove(key, future);
+                }
+            }
+
+        }, future);
+        return future;
+    }
+
+    @Override
+    public ListenableFuture<Void> invalidateAsync(Class<? extends IpcCommand> command,
+        Predicate<? super CacheKey> predicate) {
+        return Futures.immediateFailedFuture(new UnsupportedOperationException());
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        if (executor != null) {
+            // lookups which never started would leave their callers waiting forever
+            for (Runnable task : executor.shutdownNow()) {
+                if (task instanceof Future<?>) {
+                    Future.class.cast(task).cancel(false);
+                }
+            }
+        }
+        // computations still queued for a permit or interrupted by the shutdown never complete
+        for (SettableFuture<Map<String, Object>> future : pending.values()) {
+            future.cancel(false);
+        }
+        pending.clear();
+    }
     
 }
@@ -31,6 +31,10 @@ import com.google.inject.Singleton;
  * and {@link IpcCacheService#invalidate(Class, com.google.common.base.Predicate)}.
  * </p>
  *
+ * <p>
+ * Since 3.1 the same instance is bound to {@link AsyncIpcCacheService} as well.
+ * </p>
+ *
  * @author Tobias Sarnowski
  * @author Oliver Lorenz
  * @since 3.0
@@ -39,7 +43,9 @@ public final class GenericIpcCacheServiceModule implements Module {
     
     @Override
     public void configure(Binder binder) {
-        binder.bind(IpcCacheService.class).to(GenericIpcCacheService.class).in(Singleton.class);
+        binder.bind(GenericIpcCacheService.class).in(Singleton.class);
+        binder.bind(IpcCacheService.class).to(GenericIpcCacheService.class);
+        binder.bind(AsyncIpcCacheService.class).to(GenericIpcCacheService.class);
     }
     
 }
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import com.google.common.base.Predicate;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * An {@link IpcCacheService} which supports {@link IpcCacheService#invalidate(Class, Predicate)},
+ * reports how many entries an invalidation removed and removes single entries without a scan.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public interface InvalidatingCache {
+
+    /**
+     * Invalidates cached versions of an {@link IpcCommand} matching a predicate,
+     * like {@link IpcCacheService#invalidate(Class, Predicate)}. Passing {@code IpcCommand.class}
+     * invalidates the matching versions of all commands, the same applies to
+     * {@link IpcCacheService#invalidate(Class, Predicate)} of an invalidating cache.
+     *
+     * @param command the IpcCommand definition to invalidate
+     * @param predicate a predicate to only invalidate self-filtered entries
+     * @return the number of invalidated entries
+     * @throws NullPointerException if command is null or predicate is null
+     */
+    int invalidateMatching(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate);
+
+    /**
+     * Invalidates the cached version stored under the given key, looking up only that key.
+     *
+     * @param key the cache key
+     * @return true if an entry was removed, false if there was none
+     * @throws NullPointerException if key is null
+     */
+    boolean invalidateKey(CacheKey key);
+
+}
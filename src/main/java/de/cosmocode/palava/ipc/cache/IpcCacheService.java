@@ -16,6 +16,7 @@
 
 package de.cosmocode.palava.ipc.cache;
 
+import java.util.Collection;
 import java.util.Map;
 
 import com.google.common.base.Predicate;
@@ -81,6 +82,31 @@ public interface IpcCacheService {
     Map<String, Object> computeAndStore(CacheKey key, CacheExpiration expiration,
         IpcCommandExecution computation) throws IpcCommandExecutionException;
     
+    /**
+     * Reads the cached values of all given keys in one pass.
+     *
+     * @since 3.1
+     * @param keys the cache keys
+     * @return the cached results by key, keys without a cached result are absent
+     * @throws NullPointerException if keys is null
+     */
+    Map<CacheKey, Map<String, Object>> readAll(Collection<? extends CacheKey> keys);
+
+    /**
+     * Returns the cached values of all given keys and computes and stores the missing ones
+     * as {@link #computeAndStore(CacheKey, CacheExpiration, IpcCommandExecution)} does.
+     * Misses are computed in parallel, bounded by the configured parallelism.
+     *
+     * @since 3.1
+     * @param computations the pending command executions by key
+     * @param expiration the cache expiration
+     * @return the results by key, in the iteration order of the given computations
+     * @throws IpcCommandExecutionException if any computation failed
+     * @throws NullPointerException if computations or expiration is null
+     */
+    Map<CacheKey, Map<String, Object>> getOrComputeAll(Map<? extends CacheKey, ? extends IpcCommandExecution>
+        computations, CacheExpiration expiration) throws IpcCommandExecutionException;
+
     /**
      * Invalidates all cached versions of an {@link IpcCommand}.
      *
@@ -17,15 +17,23 @@
 package de.cosmocode.palava.ipc.cache;
 
 import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
 
 import de.cosmocode.palava.ipc.IpcCall;
 import de.cosmocode.palava.ipc.IpcCallFilterChain;
 import de.cosmocode.palava.ipc.IpcCommand;
 import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.dependency.Dependencies;
+import de.cosmocode.palava.ipc.cache.dependency.DependencyIndex;
+import de.cosmocode.palava.ipc.cache.dependency.DependencyIndex.Registration;
+import de.cosmocode.palava.ipc.cache.dependency.Entity;
 
 /**
  * A simple {@link IpcCommandExecution} which delegates to
- * {@link IpcCallFilterChain#filter(IpcCall, IpcCommand)} of the given chain.
+ * {@link IpcCallFilterChain#filter(IpcCall, IpcCommand)} of the given chain
+ * and records the entities registered using {@link Dependencies} meanwhile.
  *
  * @since 3.0
  * @author Willi Schoenborn
@@ -36,15 +44,67 @@ final class IpcFilterChainExecution implements IpcCommandExecution {
     private final IpcCallFilterChain chain;
     private final IpcCall call;
 
+    private DependencyIndex index;
+    private CacheKey key;
+    private long since;
+
+    private Set<Entity> dependencies = ImmutableSet.of();
+
+    private Registration registration;
+
     IpcFilterChainExecution(IpcCall call, IpcCommand command, IpcCallFilterChain chain) {
         this.command = command;
         this.chain = chain;
         this.call = call;
     }
 
+    /**
+     * Registers the recorded entities in the given index as soon as the result is computed,
+     * i.e. before it is stored.
+     *
+     * @since 3.1
+     * @param dependencyIndex the index
+     * @param cacheKey the key the result is stored under
+     */
+    void registerIn(DependencyIndex dependencyIndex, CacheKey cacheKey) {
+        this.index = dependencyIndex;
+        this.key = cacheKey;
+        this.since = dependencyIndex.getSequence();
+    }
+
     @Override
     public Map<String, Object> call() throws IpcCommandExecutionException {
-        return chain.filter(call, command);
+        final Map<String, Object> result;
+        Dependencies.begin();
+        try {
+            result = chain.filter(call, command);
+        } finally {
+            dependencies = Dependencies.end();
+        }
+        if (index != null && !dependencies.isEmpty()) {
+            registration = index.register(key, dependencies, since);
+        }
+        return result;
+    }
+
+    /**
+     * Provides the entities registered during the last {@link #call()}.
+     *
+     * @since 3.1
+     * @return the recorded entities
+     */
+    Set<Entity> getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * Checks whether one of the recorded entities was invalidated since the computation started.
+     *
+     * @since 3.1
+     * @return true if the computed result is outdated, false otherwise
+     */
+    boolean isInvalidated() {
+        return registration != null && registration.isInvalidated();
     }
     
 }
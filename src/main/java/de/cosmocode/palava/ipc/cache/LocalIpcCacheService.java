@@ -0,0 +1,201 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.cache.CacheExpiration;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * An {@link IpcCacheService} which keeps all results in a local {@link ConcurrentMap}.
+ * Expired entries are removed when they are read or scanned.
+ *
+ * <p>
+ * In contrast to the {@link GenericIpcCacheService} this implementation
+ * supports {@link #invalidate(Class, Predicate)} and {@link Snapshottable}.
+ * </p>
+ *
+ * <p>
+ * Entries are spread over a fixed number of segments by key hash, so invalidations
+ * scan the segments in parallel using {@link ParallelInvalidation}.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see LocalIpcCacheServiceModule
+ */
+final class LocalIpcCacheService extends AbstractIpcCacheService
+    implements InvalidatingCache, Snapshottable {
+
+    // several segments per scanning thread, so uneven segments balance out
+    private static final int SEGMENTS = 64;
+
+    private final List<ConcurrentMap<CacheKey, CacheEntry>> segments;
+
+    private final List<Iterable<CacheKey>> keys;
+
+    LocalIpcCacheService() {
+        final List<ConcurrentMap<CacheKey, CacheEntry>> maps = Lists.newArrayListWithCapacity(SEGMENTS);
+        final List<Iterable<CacheKey>> keySets = Lists.newArrayListWithCapacity(SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            final ConcurrentMap<CacheKey, CacheEntry> segment = Maps.newConcurrentMap();
+            maps.add(segment);
+            keySets.add(segment.keySet());
+        }
+        this.segments = ImmutableList.copyOf(maps);
+        this.keys = ImmutableList.copyOf(keySets);
+    }
+
+    private ConcurrentMap<CacheKey, CacheEntry> segment(CacheKey key) {
+        final int hash = key.hashCode();
+        return segments.get(((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % SEGMENTS);
+    }
+
+    @Override
+    public Map<String, Object> read(CacheKey key) {
+        Preconditions.checkNotNull(key, "CacheKey");
+        final ConcurrentMap<CacheKey, CacheEntry> entries = segment(key);
+        final CacheEntry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        if (entry.isExpired(now)) {
+            entries.remove(key, entry);
+            return null;
+        } else {
+            entry.touch(now);
+            return entry.getValue();
+        }
+    }
+
+    @Override
+    public Map<String, Object> computeAndStore(CacheKey key, CacheExpiration expiration,
+        IpcCommandExecution computation) throws IpcCommandExecutionException {
+
+        Preconditions.checkNotNull(key, "CacheKey");
+        Preconditions.checkNotNull(expiration, "Expiration");
+        Preconditions.checkNotNull(computation, "Computation");
+
+        final Map<String, Object> cached = read(key);
+        if (cached == null) {
+            final Map<String, Object> value = computation.call();
+            segment(key).put(key, new CacheEntry(value, expiration, System.currentTimeMillis()));
+            return value;
+        } else {
+            return cached;
+        }
+    }
+
+    @Override
+    public void invalidate(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+        invalidateMatching(command, predicate);
+    }
+
+    @Override
+    public int invalidateMatching(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+        Preconditions.checkNotNull(command, "Command");
+        Preconditions.checkNotNull(predicate, "Predicate");
+        return invalidate(keys, command, predicate, new ParallelInvalidation.Removal() {
+
+            @Override
+            public boolean remove(CacheKey key) {
+                return segment(key).remove(key) != null;
+            }
+
+        });
+    }
+
+    @Override
+    public boolean invalidateKey(CacheKey key) {
+        Preconditions.checkNotNull(key, "CacheKey");
+        return segment(key).remove(key) != null;
+    }
+
+    @Override
+    public Iterator<Map.Entry<CacheKey, CacheEntry>> liveEntries() {
+        final long now = System.currentTimeMillis();
+        final Iterator<Map.Entry<CacheKey, CacheEntry>> iterator = Iterators.concat(
+            Iterators.transform(segments.iterator(), EntriesIterator.INSTANCE));
+        return new AbstractIterator<Map.Entry<CacheKey, CacheEntry>>() {
+
+            @Override
+            protected Map.Entry<CacheKey, CacheEntry> computeNext() {
+                while (iterator.hasNext()) {
+                    final Map.Entry<CacheKey, CacheEntry> next = iterator.next();
+                    if (next.getValue().isExpired(now)) {
+                        iterator.remove();
+                    } else {
+                        return next;
+                    }
+                }
+                return endOfData();
+            }
+
+        };
+    }
+
+    @Override
+    public void restore(CacheKey key, CacheEntry entry) {
+        Preconditions.checkNotNull(key, "CacheKey");
+        Preconditions.checkNotNull(entry, "Entry");
+        segment(key).putIfAbsent(key, entry);
+    }
+
+    /**
+     * Provides the number of entries, including expired ones which were not yet removed.
+     *
+     * @return the number of entries
+     */
+    int size() {
+        int size = 0;
+        for (ConcurrentMap<CacheKey, CacheEntry> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Provides the entry iterator of a segment.
+     */
+    private enum EntriesIterator
+        implements Function<ConcurrentMap<CacheKey, CacheEntry>, Iterator<Map.Entry<CacheKey, CacheEntry>>> {
+
+        INSTANCE;
+
+        @Override
+        public Iterator<Map.Entry<CacheKey, CacheEntry>> apply(ConcurrentMap<CacheKey, CacheEntry> segment) {
+            return segment.entrySet().iterator();
+        }
+
+    }
+
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import com.google.inject.Binder;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+
+/**
+ * Binds an {@link IpcCacheService} to an implementation which keeps all results
+ * in a local concurrent map. The resulting service supports invalidation
+ * and snapshots, but never evicts live entries.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class LocalIpcCacheServiceModule implements Module {
+
+    @Override
+    public void configure(Binder binder) {
+        binder.bind(IpcCacheService.class).to(LocalIpcCacheService.class).in(Singleton.class);
+    }
+
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Scans segments of a key index for invalidation in parallel.
+ *
+ * <p>
+ * The calling thread and up to parallelism - 1 helpers claim one segment after another
+ * until all segments are scanned, so segments of uneven size balance out like the tasks
+ * of a work stealing pool. Matching keys are removed one by one, readers are never blocked
+ * for the duration of the scan. Without an executor, or if it rejects the helpers,
+ * the calling thread scans all segments itself.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class ParallelInvalidation {
+
+    private ParallelInvalidation() {
+
+    }
+
+    /**
+     * Removes a single key from the scanned index.
+     */
+    public interface Removal {
+
+        /**
+         * Removes the given key.
+         *
+         * @param key the matching key
+         * @return true if an entry was removed, false if it was gone already
+         */
+        boolean remove(CacheKey key);
+
+    }
+
+    /**
+     * Checks whether the given key belongs to the given command and matches the given predicate.
+     * {@code IpcCommand.class} stands for all commands, see
+     * {@link InvalidatingCache#invalidateMatching(Class, Predicate)}.
+     *
+     * @param key the key
+     * @param command the invalidated command
+     * @param predicate the predicate keys have to match
+     * @return true if the key has to be removed, false otherwise
+     */
+    public static boolean matches(CacheKey key, Class<? extends IpcCommand> command,
+        Predicate<? super CacheKey> predicate) {
+        return (command == IpcCommand.class || key.getCommand() == command) && predicate.apply(key);
+    }
+
+    /**
+     * Removes all keys of the given command which match the given predicate.
+     *
+     * @param executor the executor for helpers, null to scan on the calling thread only
+     * @param parallelism the maximum number of segments scanned at a time, including the calling thread
+     * @param segments the segments of the key index
+     * @param command the command whose keys should be removed
+     * @param predicate the predicate keys have to match
+     * @param removal removes matching keys
+     * @return the number of removed entries
+     * @throws NullPointerException if segments, command, predicate or removal is null
+     * @throws IllegalArgumentException if parallelism is not positive
+     */
+    public static int invalidate(@Nullable Executor executor, int parallelism,
+        List<? extends Iterable<? extends CacheKey>> segments, Class<? extends IpcCommand> command,
+        Predicate<? super CacheKey> predicate, Removal removal) {
+
+        Preconditions.checkArgument(parallelism > 0, "Parallelism must be positive");
+        Preconditions.checkNotNull(segments, "Segments");
+        Preconditions.checkNotNull(command, "Command");
+        Preconditions.checkNotNull(predicate, "Predicate");
+        Preconditions.checkNotNull(removal, "Removal");
+
+        final Scan scan = new Scan(segments, command, predicate, removal);
+        final int helpers = Math.min(parallelism, segments.size()) - 1;
+        if (executor != null && helpers > 0) {
+            for (int i = 0; i < helpers; i++) {
+                try {
+                    executor.execute(scan);
+                } catch (RejectedExecutionException e) {
+                    break;
+                }
+            }
+        }
+        scan.run();
+        return scan.await();
+    }
+
+    /**
+     * A single scan shared by the calling thread and its helpers.
+     */
+    private static final class Scan implements Runnable {
+
+        private final List<? extends Iterable<? extends CacheKey>> segments;
+        private final Class<? extends IpcCommand> command;
+        private final Predicate<? super CacheKey> predicate;
+        private final Removal removal;
+
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger removed = new AtomicInteger();
+        private final CountDownLatch done;
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+
+        Scan(List<? extends Iterable<? extends CacheKey>> segments, Class<? extends IpcCommand> command,
+            Predicate<? super CacheKey> predicate, Removal removal) {
+            this.segments = segments;
+            this.command = command;
+            this.predicate = predicate;
+            this.removal = removal;
+            this.done = new CountDownLatch(segments.size());
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final int index = next.getAndIncrement();
+                if (index >= segments.size()) {
+                    return;
+                }
+                try {
+                    if (failure.get() == null) {
+                        scan(segments.get(index));
+                    }
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        }
+
+        private void scan(Iterable<? extends CacheKey> segment) {
+            int count = 0;
+            for (CacheKey key : segment) {
+                if (matches(key, command, predicate) && removal.remove(key)) {
+                    count++;
+                }
+            }
+            removed.addAndGet(count);
+        }
+
+        int await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    // invalidation has to complete, the interrupt is restored afterwards
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            final RuntimeException e = failure.get();
+            if (e == null) {
+                return removed.get();
+            } else {
+                throw e;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.Map;
+
+import com.google.common.base.Function;
+
+import de.cosmocode.palava.cache.CacheExpiration;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * An {@link IpcCacheService} which prepares computed results for caching itself, e.g. in the
+ * background. The {@link CacheFilter} hands it the preparation (compaction, deduplication,
+ * compression and encoding) instead of preparing results before they are stored.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public interface PreparingCache {
+
+    /**
+     * Computes the result of the given computation unless a result is cached already and
+     * stores the result of the execution the preparation creates for it. The result is
+     * returned as computed.
+     *
+     * @param key the cache key
+     * @param expiration the cache expiration
+     * @param computation the pending command execution
+     * @param preparation creates the execution which prepares a computed result for caching
+     * @return either a previously cached result or the result of the given computation
+     * @throws IpcCommandExecutionException if command execution failed
+     * @throws NullPointerException if key, expiration, computation or preparation is null
+     */
+    Map<String, Object> computeAndStore(CacheKey key, CacheExpiration expiration, IpcCommandExecution computation,
+        Function<Map<String, Object>, IpcCommandExecution> preparation) throws IpcCommandExecutionException;
+
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.Collection;
+import java.util.Map;
+
+import de.cosmocode.palava.ipc.cache.encoding.EncodedResult;
+import de.cosmocode.palava.ipc.cache.format.IndexedResult;
+
+/**
+ * Rough estimation of the heap size of command results.
+ * The numbers assume a 64 bit VM with compressed oops and are meant for
+ * statistics, not for exact accounting.
+ *
+ * <p>
+ * Estimating walks the whole result graph and allocates an iterator per map and collection,
+ * so it should stay off latency critical paths, where {@link #shallow(Object)} can be used instead.
+ * Indexed and encoded results are estimated by their binary length and never decoded.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class ResultSizes {
+
+    private static final int OBJECT = 16;
+    private static final int REFERENCE = 4;
+    private static final int STRING = 40;
+    private static final int MAP = 48;
+    private static final int MAP_ENTRY = 32;
+    private static final int COLLECTION = 40;
+
+    private ResultSizes() {
+
+    }
+
+    /**
+     * Estimates the size of the given value in constant time, without following maps, collections
+     * and arrays. Entries and elements are counted, but not their contents, which makes this cheap
+     * enough for request threads.
+     *
+     * @param value the value, may be null
+     * @return the estimated shallow size in bytes
+     */
+    public static long shallow(Object value) {
+        if (value instanceof IndexedResult || value instanceof EncodedResult) {
+            return estimate(value);
+        } else if (value instanceof Map<?, ?>) {
+            return MAP + (long) MAP_ENTRY * ((Map<?, ?>) value).size();
+        } else if (value instanceof Collection<?>) {
+            return COLLECTION + (long) REFERENCE * ((Collection<?>) value).size();
+        } else if (value instanceof Object[]) {
+            return OBJECT + (long) REFERENCE * Object[].class.cast(value).length;
+        } else {
+            return estimate(value);
+        }
+    }
+
+    /**
+     * Estimates the retained size of the given value, following maps, collections and arrays.
+     *
+     * @param value the value, may be null
+     * @return the estimated size in bytes
+     */
+    public static long estimate(Object value) {
+        if (value == null) {
+            return 0L;
+        } else if (value instanceof IndexedResult) {
+            return OBJECT + IndexedResult.class.cast(value).getLength();
+        } else if (value instanceof EncodedResult) {
+            return OBJECT + EncodedResult.class.cast(value).getEncodedLength();
+        } else if (value instanceof String) {
+            return STRING + 2L * String.class.cast(value).length();
+        } else if (value instanceof Map<?, ?>) {
+            long size = MAP;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += MAP_ENTRY + estimate(entry.getKey()) + estimate(entry.getValue());
+            }
+            return size;
+        } else if (value instanceof Collection<?>) {
+            long size = COLLECTION;
+            for (Object element : (Collection<?>) value) {
+                size += REFERENCE + estimate(element);
+            }
+            return size;
+        } else if (value instanceof Object[]) {
+            long size = OBJECT;
+            for (Object element : Object[].class.cast(value)) {
+                size += REFERENCE + estimate(element);
+            }
+            return size;
+        } else if (value instanceof byte[]) {
+            return OBJECT + byte[].class.cast(value).length;
+        } else {
+            return OBJECT;
+        }
+    }
+
+}
@@ -0,0 +1,29 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+/**
+ * An {@link IpcCacheService} which stores serialized copies of results instead of the
+ * result instances. Sharing instances between entries, like {@link de.cosmocode.palava.ipc.cache.dedup}
+ * does, saves no memory in such services.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public interface SerializingCache {
+
+}
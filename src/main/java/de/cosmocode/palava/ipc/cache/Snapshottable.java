@@ -0,0 +1,48 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * An {@link IpcCacheService} which is able to expose and restore its entries,
+ * which allows to persist them across restarts.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see de.cosmocode.palava.ipc.cache.snapshot.SnapshotModule
+ */
+public interface Snapshottable {
+
+    /**
+     * Provides a weakly consistent view of all entries which are not yet expired.
+     *
+     * @return an iterator over all live entries
+     */
+    Iterator<Map.Entry<CacheKey, CacheEntry>> liveEntries();
+
+    /**
+     * Restores a previously exposed entry, unless the key is already present.
+     * Must be safe to be called concurrently.
+     *
+     * @param key the cache key
+     * @param entry the entry
+     */
+    void restore(CacheKey key, CacheEntry entry);
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.bus;
+
+/**
+ * Static constant holder class for invalidation bus config key names.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class BusConfig {
+
+    public static final String PREFIX = "ipc.cache.bus.";
+
+    public static final String NODE = PREFIX + "node";
+
+    public static final String INTERVAL = PREFIX + "interval";
+
+    public static final String INTERVAL_UNIT = PREFIX + "intervalUnit";
+
+    public static final String BATCH_SIZE = PREFIX + "batchSize";
+
+    public static final String EAGER = PREFIX + "eager";
+
+    public static final String JOURNAL_FILE = PREFIX + "journalFile";
+
+    public static final String JOURNAL_SIZE = PREFIX + "journalSize";
+
+    public static final String JOURNAL_RETENTION = PREFIX + "journalRetention";
+
+    private BusConfig() {
+
+    }
+
+}
@@ -0,0 +1,332 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.bus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/**
+ * An {@link InvalidationTransport} which appends events to a journal file shared by all
+ * processes on one machine and reads the events appended by others from its last offset.
+ * Every event is stored as a marker, its length and checksum followed by its
+ * {@link InvalidationEvent#writeTo(java.io.DataOutput) serialized form}. Appends hold an exclusive
+ * file lock, so batches of different processes don't interleave.
+ *
+ * <p>
+ * Once the records exceed {@link BusConfig#JOURNAL_RETENTION} bytes, the appending process moves the
+ * newest half of them to the front of the file and truncates it. The header counts these moves, so
+ * readers retry a read which overlapped one. Readers which fell behind the retained records, and
+ * readers which had to skip corrupt bytes, deliver {@link InvalidationEvent#all(String, long)} in
+ * place of the events they lost. Every poll reads at most {@value #MAX_READ} bytes.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class FileJournalTransport implements InvalidationTransport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileJournalTransport.class);
+
+    // "ICJ3"
+    private static final int MAGIC = 0x49434A33;
+
+    // "ICJR", starts every record so readers can resync past corrupt bytes
+    private static final int MARKER = 0x49434A52;
+
+    // magic, unused, version, base
+    private static final int HEADER = 24;
+
+    private static final int VERSION = 8;
+
+    private static final int BASE = 16;
+
+    // marker, length, checksum
+    private static final int RECORD_HEADER = 12;
+
+    static final int MAX_READ = 1 << 20;
+
+    // file locks are held per process, so appends within one process have to be serialized separately
+    private static final ReentrantLock APPENDS = new ReentrantLock();
+
+    private final File file;
+
+    private final RandomAccessFile journal;
+
+    private final FileChannel channel;
+
+    private final String origin = UUID.randomUUID().toString();
+
+    private long retention = 16 << 20;
+
+    // logical offset, i.e. relative to the first record ever appended
+    private long offset;
+
+    private long losses;
+
+    @Inject
+    public FileJournalTransport(@Named(BusConfig.JOURNAL_FILE) File file) throws IOException {
+        this.file = Preconditions.checkNotNull(file, "File");
+        this.journal = new RandomAccessFile(file, "rw");
+        this.channel = journal.getChannel();
+        APPENDS.lock();
+        try {
+            final FileLock lock = channel.lock();
+            try {
+                if (channel.size() < HEADER || header().getInt(0) != MAGIC) {
+                    final ByteBuffer header = ByteBuffer.allocate(HEADER);
+                    header.putInt(0, MAGIC);
+                    channel.truncate(0);
+                    write(header, 0);
+                }
+                offset = header().getLong(BASE) + channel.size() - HEADER;
+            } finally {
+                lock.release();
+            }
+        } finally {
+            APPENDS.unlock();
+        }
+    }
+
+    @Inject(optional = true)
+    void setRetention(@Named(BusConfig.JOURNAL_RETENTION) long retention) {
+        Preconditions.checkArgument(retention >= 2 * MAX_READ, "Retention must be at least %s bytes", 2 * MAX_READ);
+        this.retention = retention;
+    }
+
+    private ByteBuffer header() throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER);
+        read(header, 0);
+        header.flip();
+        return header;
+    }
+
+    private void read(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    @Override
+    public void publish(List<InvalidationEvent> events) throws IOException {
+        Preconditions.checkNotNull(events, "Events");
+        if (events.isEmpty()) {
+            return;
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        final CRC32 checksum = new CRC32();
+        for (InvalidationEvent event : events) {
+            record.reset();
+            event.writeTo(new DataOutputStream(record));
+            if (RECORD_HEADER + record.size() > MAX_READ) {
+                throw new IOException(event + " exceeds " + MAX_READ + " bytes");
+            }
+            checksum.reset();
+            checksum.update(record.toByteArray());
+            output.writeInt(MARKER);
+            output.writeInt(record.size());
+            output.writeInt((int) checksum.getValue());
+            record.writeTo(output);
+        }
+        output.flush();
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+
+        APPENDS.lock();
+        try {
+            final FileLock lock = channel.lock();
+            try {
+                write(buffer, channel.size());
+                if (channel.size() - HEADER > retention) {
+                    truncate();
+                }
+            } finally {
+                lock.release();
+            }
+        } finally {
+            APPENDS.unlock();
+        }
+    }
+
+    /**
+     * Moves the newest half of the retained records to the front. Requires the file lock.
+     */
+    private void truncate() throws IOException {
+        final long size = channel.size();
+        // the first record boundary which keeps at most half of the retention
+        long start = HEADER;
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER);
+        while (size - start > retention / 2) {
+            record.clear();
+            read(record, start);
+            if (record.position() < RECORD_HEADER || record.getInt(0) != MARKER) {
+                // corrupt bytes, readers resync behind them
+                start++;
+            } else {
+                start += RECORD_HEADER + Math.max(0, record.getInt(4));
+            }
+        }
+        start = Math.min(start, size);
+        final ByteBuffer header = header();
+        final long version = header.getLong(VERSION);
+        final long base = header.getLong(BASE);
+
+        // an odd version tells readers the records are being moved
+        putLong(VERSION, version + 1);
+        final ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+        long from = start;
+        long to = HEADER;
+        while (from < size) {
+            chunk.clear();
+            chunk.limit((int) Math.min(chunk.capacity(), size - from));
+            read(chunk, from);
+            chunk.flip();
+            write(chunk, to);
+            from += chunk.limit();
+            to += chunk.limit();
+        }
+        channel.truncate(to);
+        putLong(BASE, base + start - HEADER);
+        putLong(VERSION, version + 2);
+        LOG.debug("Truncated {} bytes of {}", start - HEADER, file);
+    }
+
+    private void putLong(int position, long value) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.putLong(0, value);
+        write(buffer, position);
+    }
+
+    @Override
+    public List<InvalidationEvent> poll() throws IOException {
+        final ByteBuffer header = header();
+        final long version = header.getLong(VERSION);
+        if (header.getInt(0) != MAGIC || (version & 1) != 0) {
+            // being truncated, retried on the next poll
+            return ImmutableList.of();
+        }
+        final long base = header.getLong(BASE);
+        final long end = base + channel.size() - HEADER;
+        final ImmutableList.Builder<InvalidationEvent> events = ImmutableList.builder();
+        if (offset < base || offset > end) {
+            LOG.warn("Lost invalidations of {}, resuming at the oldest retained one", file);
+            offset = base;
+            events.add(InvalidationEvent.all(origin, ++losses));
+        }
+        if (offset == end) {
+            return events.build();
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(MAX_READ, end - offset));
+        read(buffer, HEADER + offset - base);
+        buffer.flip();
+        if (header().getLong(VERSION) != version) {
+            // the records moved while being read
+            return events.build();
+        }
+
+        final CRC32 checksum = new CRC32();
+        int skipped = 0;
+        while (buffer.remaining() >= RECORD_HEADER) {
+            final int position = buffer.position();
+            final int length = buffer.getInt(position + 4);
+            if (buffer.getInt(position) != MARKER || length < 0 || RECORD_HEADER + length > MAX_READ) {
+                buffer.position(position + 1);
+                skipped++;
+                continue;
+            }
+            if (buffer.remaining() < RECORD_HEADER + length) {
+                // the rest of this record is still being appended or beyond this read
+                break;
+            }
+            final byte[] record = new byte[length];
+            buffer.position(position + RECORD_HEADER);
+            buffer.get(record);
+            checksum.reset();
+            checksum.update(record);
+            final InvalidationEvent event = (int) checksum.getValue() == buffer.getInt(position + 8)
+                ? decode(record) : null;
+            if (event == null) {
+                buffer.position(position + 1);
+                skipped++;
+                continue;
+            }
+            if (skipped > 0) {
+                lost(events, skipped);
+                skipped = 0;
+            }
+            events.add(event);
+            offset += RECORD_HEADER + length;
+        }
+        if (skipped > 0) {
+            lost(events, skipped);
+        }
+        return events.build();
+    }
+
+    private InvalidationEvent decode(byte[] record) {
+        try {
+            return InvalidationEvent.readFrom(new DataInputStream(new ByteArrayInputStream(record)));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void lost(ImmutableList.Builder<InvalidationEvent> events, int skipped) {
+        LOG.warn("Skipped {} corrupt bytes of {}", skipped, file);
+        offset += skipped;
+        events.add(InvalidationEvent.all(origin, ++losses));
+    }
+
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    @Override
+    public String toString() {
+        return "FileJournalTransport [file=" + file + "]";
+    }
+
+}
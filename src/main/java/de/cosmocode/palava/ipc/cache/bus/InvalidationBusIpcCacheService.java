@@ -0,0 +1,585 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.bus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.cache.CacheExpiration;
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.AbstractIpcCacheService;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.DecoratingCache;
+import de.cosmocode.palava.ipc.cache.InvalidatingCache;
+import de.cosmocode.palava.ipc.cache.IpcCacheService;
+import de.cosmocode.palava.ipc.cache.IpcCommandExecution;
+import de.cosmocode.palava.ipc.cache.PreparingCache;
+import de.cosmocode.palava.ipc.cache.codec.BinaryKeyCodec;
+import de.cosmocode.palava.ipc.cache.codec.KeyCodec;
+import de.cosmocode.palava.ipc.cache.invalidation.ArgumentsPredicate;
+import de.cosmocode.palava.ipc.cache.invalidation.InvalidationGenerations;
+
+/**
+ * An {@link IpcCacheService} which publishes every invalidation of its local service on an
+ * {@link InvalidationTransport} and applies the invalidations published by other nodes.
+ *
+ * <p>
+ * Single keys removed by {@link #invalidateKey(CacheKey)} are published encoded by the {@link KeyCodec}.
+ * Invalidations using an {@link ArgumentsPredicate} are published with their argument values.
+ * Any other predicate can't be shipped, so other nodes drop all results of the command instead.
+ * Received invalidations start a new generation in the {@link InvalidationGenerations}, if bound,
+ * so results computed while they arrive are not cached on this node either.
+ * Invalidations are collected and published in batches every {@link BusConfig#INTERVAL}
+ * or once {@link BusConfig#BATCH_SIZE} are pending. With {@link BusConfig#EAGER} the first
+ * invalidation after a sync starts the next one right away and everything arriving in the meantime
+ * joins the following batch, so publishing doesn't wait for the interval. Equal invalidations of one batch are
+ * published once, argument invalidations of a command which is invalidated completely
+ * are dropped. A single thread publishes and polls, so every node sees the invalidations
+ * of another node in order.
+ * </p>
+ *
+ * <p>
+ * Results are prepared for caching by the local service if it is a {@link PreparingCache}
+ * and right after computing them otherwise.
+ * </p>
+ *
+ * <p>
+ * Transports which lost events deliver {@link InvalidationEvent#all(String, long)}, which drops
+ * the results of all commands of the local service.
+ * </p>
+ *
+ * <p>
+ * Failures never stop the bus. Batches which could not be published are requeued in front of
+ * newer invalidations. Received invalidations which could not be applied are retried, together
+ * with all invalidations received after them, before anything new is polled.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class InvalidationBusIpcCacheService extends AbstractIpcCacheService
+    implements DecoratingCache, InvalidatingCache, PreparingCache, Initializable, Disposable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InvalidationBusIpcCacheService.class);
+
+    private static final Pending ALL = new Pending(ImmutableMap.<String, String>of(), null);
+
+    private final IpcCacheService service;
+
+    private final InvalidationTransport transport;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // pending invalidations by command, in order of first invalidation
+    private final Map<Class<? extends IpcCommand>, Set<Pending>> pending = Maps.newLinkedHashMap();
+
+    private int pendingSize;
+
+    private long sequence;
+
+    private final Map<String, Long> applied = Maps.newHashMap();
+
+    // received but not yet applied, in order, only accessed by the sync thread
+    private final List<InvalidationEvent> unapplied = Lists.newArrayList();
+
+    private final ConcurrentMap<String, Class<? extends IpcCommand>> commands = Maps.newConcurrentMap();
+
+    private String node = UUID.randomUUID().toString();
+    private long interval = 100;
+    private TimeUnit intervalUnit = TimeUnit.MILLISECONDS;
+    private int batchSize = 256;
+
+    private boolean eager;
+
+    // whether an eager sync is pending
+    private final AtomicBoolean kicked = new AtomicBoolean();
+
+    private KeyCodec keyCodec = BinaryKeyCodec.INSTANCE;
+
+    private InvalidationGenerations generations;
+
+    private ScheduledExecutorService scheduler;
+
+    private final Runnable sync = new Runnable() {
+
+        @Override
+        public void run() {
+            sync();
+        }
+
+    };
+
+    @Inject
+    InvalidationBusIpcCacheService(@Backing IpcCacheService service, InvalidationTransport transport) {
+        this.service = Preconditions.checkNotNull(service, "Service");
+        this.transport = Preconditions.checkNotNull(transport, "Transport");
+    }
+
+    @Inject(optional = true)
+    void setNode(@Named(BusConfig.NODE) String node) {
+        this.node = Preconditions.checkNotNull(node, "Node");
+    }
+
+    @Inject(optional = true)
+    void setInterval(@Named(BusConfig.INTERVAL) long interval) {
+        Preconditions.checkArgument(interval > 0, "Interval must be positive");
+        this.interval = interval;
+    }
+
+    @Inject(optional = true)
+    void setIntervalUnit(@Named(BusConfig.INTERVAL_UNIT) TimeUnit intervalUnit) {
+        this.intervalUnit = Preconditions.checkNotNull(intervalUnit, "Unit");
+    }
+
+    @Inject(optional = true)
+    void setBatchSize(@Named(BusConfig.BATCH_SIZE) int batchSize) {
+        Preconditions.checkArgument(batchSize > 0, "Batch size must be positive");
+        this.batchSize = batchSize;
+    }
+
+    @Inject(optional = true)
+    void setEager(@Named(BusConfig.EAGER) boolean eager) {
+        this.eager = eager;
+    }
+
+    @Inject(optional = true)
+    void setKeyCodec(KeyCodec keyCodec) {
+        this.keyCodec = Preconditions.checkNotNull(keyCodec, "KeyCodec");
+    }
+
+    @Inject(optional = true)
+    void setInvalidationGenerations(InvalidationGenerations generations) {
+        this.generations = Preconditions.checkNotNull(generations, "Generations");
+    }
+
+    @Override
+    public IpcCacheService getBacking() {
+        return service;
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("ipc-cache-bus-%d").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(sync, interval, interval, intervalUnit);
+    }
+
+    @Override
+    public Map<String, Object> read(CacheKey key) {
+        return service.read(key);
+    }
+
+    @Override
+    public Map<CacheKey, Map<String, Object>> readAll(Collection<? extends CacheKey> keys) {
+        return service.readAll(keys);
+    }
+
+    @Override
+    public Map<String, Object> computeAndStore(CacheKey key, CacheExpiration expiration,
+        IpcCommandExecution computation) throws IpcCommandExecutionException {
+        return service.computeAndStore(key, expiration, computation);
+    }
+
+    @Override
+    public Map<String, Object> computeAndStore(CacheKey key, CacheExpiration expiration,
+        final IpcCommandExecution computation, final Function<Map<String, Object>, IpcCommandExecution> preparation)
+        throws IpcCommandExecutionException {
+        Preconditions.checkNotNull(computation, "Computation");
+        Preconditions.checkNotNull(preparation, "Preparation");
+        if (service instanceof PreparingCache) {
+            return PreparingCache.class.cast(service).computeAndStore(key, expiration, computation, preparation);
+        }
+        final AtomicReference<Map<String, Object>> computed = new AtomicReference<Map<String, Object>>();
+        final Map<String, Object> stored = service.computeAndStore(key, expiration, new IpcCommandExecution() {
+
+            @Override
+            public Map<String, Object> call() throws IpcCommandExecutionException {
+                final Map<String, Object> result = computation.call();
+                computed.set(result);
+                return result == null ? null : preparation.apply(result).call();
+            }
+
+        });
+        return computed.get() == null ? stored : computed.get();
+    }
+
+    @Override
+    public Map<CacheKey, Map<String, Object>> getOrComputeAll(
+        Map<? extends CacheKey, ? extends IpcCommandExecution> computations, CacheExpiration expiration)
+        throws IpcCommandExecutionException {
+        return service.getOrComputeAll(computations, expiration);
+    }
+
+    @Override
+    public void invalidate(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+        Preconditions.checkNotNull(command, "Command");
+        Preconditions.checkNotNull(predicate, "Predicate");
+        service.invalidate(command, predicate);
+        schedule(command, predicate);
+    }
+
+    @Override
+    public int invalidateMatching(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+        Preconditions.checkNotNull(command, "Command");
+        Preconditions.checkNotNull(predicate, "Predicate");
+        if (service instanceof InvalidatingCache) {
+            final int invalidated = InvalidatingCache.class.cast(service).invalidateMatching(command, predicate);
+            schedule(command, predicate);
+            return invalidated;
+        } else {
+            throw new UnsupportedOperationException(service + " does not count invalidated entries");
+        }
+    }
+
+    @Override
+    public boolean invalidateKey(CacheKey key) {
+        Preconditions.checkNotNull(key, "CacheKey");
+        final boolean removed;
+        if (service instanceof InvalidatingCache) {
+            removed = InvalidatingCache.class.cast(service).invalidateKey(key);
+        } else {
+            service.invalidate(key.getCommand(), Predicates.equalTo(key));
+            removed = false;
+        }
+        schedule(key.getCommand(), describe(key));
+        return removed;
+    }
+
+    private void schedule(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+        schedule(command, describe(predicate));
+    }
+
+    private void schedule(Class<? extends IpcCommand> command, Pending invalidation) {
+        final boolean full = enqueue(command, invalidation);
+        if (scheduler != null && (full || eager && kicked.compareAndSet(false, true))) {
+            try {
+                scheduler.execute(sync);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Bus is shutting down, batch will be published on dispose");
+            }
+        }
+    }
+
+    private Pending describe(CacheKey key) {
+        try {
+            return new Pending(ImmutableMap.<String, String>of(), keyCodec.encodeKey(key));
+        } catch (IOException e) {
+            LOG.debug("Unable to encode {}, publishing an invalidation of its command", key);
+            return ALL;
+        }
+    }
+
+    private Pending describe(Predicate<? super CacheKey> predicate) {
+        if (predicate instanceof ArgumentsPredicate) {
+            final Map<String, Object> arguments = ArgumentsPredicate.class.cast(predicate).getArguments();
+            if (arguments.isEmpty()) {
+                return ALL;
+            }
+            final ImmutableMap.Builder<String, String> values = ImmutableMap.builder();
+            for (Map.Entry<String, Object> entry : arguments.entrySet()) {
+                values.put(entry.getKey(), entry.getValue().toString());
+            }
+            return new Pending(values.build(), null);
+        } else {
+            return ALL;
+        }
+    }
+
+    /**
+     * Adds an invalidation to the pending batch.
+     *
+     * @return true if the batch is full
+     */
+    private boolean enqueue(Class<? extends IpcCommand> command, Pending invalidation) {
+        lock.lock();
+        try {
+            Set<Pending> values = pending.get(command);
+            if (values == null) {
+                values = Sets.newLinkedHashSet();
+                pending.put(command, values);
+            } else if (values.contains(ALL)) {
+                // already invalidated completely
+                return false;
+            }
+            if (invalidation.equals(ALL)) {
+                pendingSize -= values.size();
+                values.clear();
+            }
+            if (values.add(invalidation)) {
+                pendingSize++;
+            }
+            return pendingSize >= batchSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Publishes all pending invalidations and applies those published by other nodes.
+     */
+    void sync() {
+        kicked.set(false);
+        try {
+            publish();
+            receive();
+        } catch (RuntimeException e) {
+            // an escaping exception would cancel the schedule and stop the bus for good
+            LOG.warn("Unable to sync invalidations, retrying", e);
+        }
+    }
+
+    private void publish() {
+        final List<InvalidationEvent> events = Lists.newArrayList();
+        lock.lock();
+        try {
+            for (Map.Entry<Class<? extends IpcCommand>, Set<Pending>> entry : pending.entrySet()) {
+                for (Pending invalidation : entry.getValue()) {
+                    events.add(invalidation.toEvent(node, ++sequence, entry.getKey().getName()));
+                }
+            }
+            pending.clear();
+            pendingSize = 0;
+        } finally {
+            lock.unlock();
+        }
+        if (events.isEmpty()) {
+            return;
+        }
+        try {
+            transport.publish(events);
+        } catch (IOException e) {
+            LOG.warn("Unable to publish " + events.size() + " invalidations, retrying", e);
+            requeue(events);
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to publish " + events.size() + " invalidations, retrying", e);
+            requeue(events);
+        }
+    }
+
+    private void requeue(List<InvalidationEvent> events) {
+        lock.lock();
+        try {
+            final Map<Class<? extends IpcCommand>, Set<Pending>> newer = Maps.newLinkedHashMap(pending);
+            pending.clear();
+            pendingSize = 0;
+            // keep the failed events in front of newer ones
+            for (InvalidationEvent event : events) {
+                final Class<? extends IpcCommand> command = resolve(event.getCommand());
+                if (command != null) {
+                    enqueue(command, new Pending(event.getArguments(), event.getKey()));
+                }
+            }
+            for (Map.Entry<Class<? extends IpcCommand>, Set<Pending>> entry : newer.entrySet()) {
+                for (Pending invalidation : entry.getValue()) {
+                    enqueue(entry.getKey(), invalidation);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void receive() {
+        if (unapplied.isEmpty()) {
+            try {
+                unapplied.addAll(transport.poll());
+            } catch (IOException e) {
+                LOG.warn("Unable to receive invalidations", e);
+                return;
+            }
+        }
+        final Iterator<InvalidationEvent> iterator = unapplied.iterator();
+        while (iterator.hasNext()) {
+            final InvalidationEvent event = iterator.next();
+            try {
+                apply(event);
+            } catch (RuntimeException e) {
+                LOG.warn("Unable to apply " + event + ", retrying with " + unapplied.size() + " pending", e);
+                return;
+            }
+            iterator.remove();
+        }
+    }
+
+    private void apply(InvalidationEvent event) {
+        if (node.equals(event.getOrigin())) {
+            return;
+        }
+        final Long last = applied.get(event.getOrigin());
+        if (last != null && event.getSequence() <= last.longValue()) {
+            return;
+        }
+        final Class<? extends IpcCommand> command = resolve(event.getCommand());
+        if (command != null) {
+            final CacheKey key = decode(event);
+            if (key != null) {
+                if (generations != null) {
+                    generations.increment(command, Predicates.equalTo(key));
+                }
+                // applied to the local service only, so remote invalidations are not published again
+                if (service instanceof InvalidatingCache) {
+                    InvalidatingCache.class.cast(service).invalidateKey(key);
+                } else {
+                    service.invalidate(command, Predicates.equalTo(key));
+                }
+            } else {
+                final Predicate<? super CacheKey> predicate = event.getArguments().isEmpty()
+                    ? Predicates.alwaysTrue() : new ArgumentsPredicate(event.getArguments());
+                if (generations != null) {
+                    generations.increment(command, predicate);
+                }
+                service.invalidate(command, predicate);
+            }
+        }
+        applied.put(event.getOrigin(), event.getSequence());
+    }
+
+    /**
+     * Decodes the key of the given event.
+     *
+     * @return the key, null if the event invalidates more than a single key or the key can't be decoded
+     */
+    private CacheKey decode(InvalidationEvent event) {
+        final byte[] key = event.getKey();
+        if (key == null) {
+            return null;
+        }
+        try {
+            return keyCodec.decodeKey(ByteBuffer.wrap(key));
+        } catch (IOException e) {
+            LOG.warn("Unable to decode key of {}, invalidating all results of its command", event);
+            return null;
+        }
+    }
+
+    private Class<? extends IpcCommand> resolve(String name) {
+        final Class<? extends IpcCommand> cached = commands.get(name);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            final Class<? extends IpcCommand> command = Class.forName(name, false,
+                getClass().getClassLoader()).asSubclass(IpcCommand.class);
+            commands.putIfAbsent(name, command);
+            return command;
+        } catch (ClassNotFoundException e) {
+            LOG.debug("Ignoring invalidation of unknown command {}", name);
+            return null;
+        } catch (ClassCastException e) {
+            LOG.debug("Ignoring invalidation of {}, which is no command", name);
+            return null;
+        }
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(interval, intervalUnit);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        publish();
+        try {
+            transport.close();
+        } catch (IOException e) {
+            throw new LifecycleException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "InvalidationBusIpcCacheService [node=" + node + ", service=" + service + ", transport="
+            + transport + "]";
+    }
+
+    /**
+     * An invalidation which is not yet published.
+     */
+    private static final class Pending {
+
+        private final Map<String, String> arguments;
+
+        private final byte[] key;
+
+        Pending(Map<String, String> arguments, byte[] key) {
+            this.arguments = arguments;
+            this.key = key;
+        }
+
+        InvalidationEvent toEvent(String origin, long sequence, String command) {
+            return key == null
+                ? new InvalidationEvent(origin, sequence, command, arguments)
+                : new InvalidationEvent(origin, sequence, command, key);
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if (this == that) {
+                return true;
+            } else if (that instanceof Pending) {
+                final Pending other = Pending.class.cast(that);
+                return arguments.equals(other.arguments) && Arrays.equals(key, other.key);
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * arguments.hashCode() + Arrays.hashCode(key);
+        }
+
+    }
+
+}
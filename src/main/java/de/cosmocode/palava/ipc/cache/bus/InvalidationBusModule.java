@@ -0,0 +1,72 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.bus;
+
+import java.lang.annotation.Annotation;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Binder;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.ipc.cache.IpcCacheService;
+
+/**
+ * Binds the {@link IpcCacheService} to an {@link InvalidationBusIpcCacheService} which
+ * decorates the service bound with the given annotation and uses the given transport.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class InvalidationBusModule implements Module {
+
+    private final Key<IpcCacheService> backing;
+
+    private final Class<? extends InvalidationTransport> transport;
+
+    private InvalidationBusModule(Key<IpcCacheService> backing, Class<? extends InvalidationTransport> transport) {
+        this.backing = backing;
+        this.transport = transport;
+    }
+
+    /**
+     * Creates a module which publishes the invalidations of the {@link IpcCacheService}
+     * bound with the given annotation using the given transport, e.g.
+     * {@link LoopbackTransport}, {@link FileJournalTransport} or {@link MappedJournalTransport}.
+     *
+     * @param annotation the binding annotation of the local service
+     * @param transport the transport implementation
+     * @return a new module
+     * @throws NullPointerException if annotation or transport is null
+     */
+    public static Module backedBy(Class<? extends Annotation> annotation,
+        Class<? extends InvalidationTransport> transport) {
+        Preconditions.checkNotNull(annotation, "Annotation");
+        Preconditions.checkNotNull(transport, "Transport");
+        return new InvalidationBusModule(Key.get(IpcCacheService.class, annotation), transport);
+    }
+
+    @Override
+    public void configure(Binder binder) {
+        binder.bind(IpcCacheService.class).annotatedWith(Backing.class).to(backing);
+        binder.bind(InvalidationTransport.class).to(transport).in(Singleton.class);
+        binder.bind(InvalidationBusIpcCacheService.class).in(Singleton.class);
+        binder.bind(IpcCacheService.class).to(InvalidationBusIpcCacheService.class);
+    }
+
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.bus;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * An invalidation published on the bus. Events either carry a single cache key encoded by a
+ * {@link de.cosmocode.palava.ipc.cache.codec.KeyCodec}, the argument values cached results have
+ * to match or neither, which drops every result of the command, like bumping its generation.
+ * Every node numbers its events, so receivers apply them in order and skip redelivered ones.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class InvalidationEvent {
+
+    private final String origin;
+
+    private final long sequence;
+
+    private final String command;
+
+    private final Map<String, String> arguments;
+
+    private final byte[] key;
+
+    /**
+     * Creates an event.
+     *
+     * @param origin the publishing node
+     * @param sequence the number of the event on the publishing node
+     * @param command the class name of the invalidated command
+     * @param arguments the argument values results have to match, empty to match all results
+     * @throws NullPointerException if origin, command or arguments is null
+     */
+    public InvalidationEvent(String origin, long sequence, String command, Map<String, String> arguments) {
+        this(origin, sequence, command, arguments, null);
+    }
+
+    /**
+     * Creates an event which invalidates a single key.
+     *
+     * @param origin the publishing node
+     * @param sequence the number of the event on the publishing node
+     * @param command the class name of the invalidated command
+     * @param key the encoded key
+     * @throws NullPointerException if origin, command or key is null
+     */
+    public InvalidationEvent(String origin, long sequence, String command, byte[] key) {
+        this(origin, sequence, command, ImmutableMap.<String, String>of(), Preconditions.checkNotNull(key, "Key"));
+    }
+
+    /**
+     * Creates an event which invalidates all results of all commands. Transports deliver it
+     * in place of events they lost.
+     *
+     * @param origin the node or transport which lost events
+     * @param sequence the number of the loss
+     * @return a new event
+     * @throws NullPointerException if origin is null
+     */
+    public static InvalidationEvent all(String origin, long sequence) {
+        return new InvalidationEvent(origin, sequence, IpcCommand.class.getName(), ImmutableMap.<String, String>of());
+    }
+
+    private InvalidationEvent(String origin, long sequence, String command, Map<String, String> arguments,
+        byte[] key) {
+        this.origin = Preconditions.checkNotNull(origin, "Origin");
+        this.sequence = sequence;
+        this.command = Preconditions.checkNotNull(command, "Command");
+        this.arguments = ImmutableMap.copyOf(Preconditions.checkNotNull(arguments, "Arguments"));
+        this.key = key == null ? null : key.clone();
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public Map<String, String> getArguments() {
+        return arguments;
+    }
+
+    /**
+     * Provides the encoded key this event invalidates.
+     *
+     * @return a copy of the encoded key, null if this event does not invalidate a single key
+     */
+    public byte[] getKey() {
+        return key == null ? null : key.clone();
+    }
+
+    /**
+     * Writes this event to the given output.
+     *
+     * @param output the output
+     * @throws IOException if writing failed
+     */
+    public void writeTo(DataOutput output) throws IOException {
+        output.writeUTF(origin);
+        output.writeLong(sequence);
+        output.writeUTF(command);
+        output.writeInt(arguments.size());
+        for (Map.Entry<String, String> entry : arguments.entrySet()) {
+            output.writeUTF(entry.getKey());
+            output.writeUTF(entry.getValue());
+        }
+        if (key == null) {
+            output.writeInt(-1);
+        } else {
+            output.writeInt(key.length);
+            output.write(key);
+        }
+    }
+
+    /**
+     * Reads an event written by {@link #writeTo(DataOutput)}.
+     *
+     * @param input the input
+     * @return the event
+     * @throws IOException if reading failed
+     */
+    public static InvalidationEvent readFrom(DataInput input) throws IOException {
+        final String origin = input.readUTF();
+        final long sequence = input.readLong();
+        final String command = input.readUTF();
+        final int size = input.readInt();
+        final ImmutableMap.Builder<String, String> arguments = ImmutableMap.builder();
+        for (int i = 0; i < size; i++) {
+            arguments.put(input.readUTF(), input.readUTF());
+        }
+        final int length = input.readInt();
+        if (length < -1) {
+            throw new IOException("Invalid key length " + length);
+        }
+        final byte[] key;
+        if (length == -1) {
+            key = null;
+        } else {
+            key = new byte[length];
+            input.readFully(key);
+        }
+        return new InvalidationEvent(origin, sequence, command, arguments.build(), key);
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (this == that) {
+            return true;
+        } else if (that instanceof InvalidationEvent) {
+            final InvalidationEvent other = InvalidationEvent.class.cast(that);
+            return origin.equals(other.origin) && sequence == other.sequence
+                && command.equals(other.command) && arguments.equals(other.arguments)
+                && Arrays.equals(key, other.key);
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * origin.hashCode() + (int) (sequence ^ (sequence >>> 32))) + command.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "InvalidationEvent [origin=" + origin + ", sequence=" + sequence + ", command=" + command
+            + ", arguments=" + arguments + (key == null ? "" : ", key=" + key.length + " bytes") + "]";
+    }
+
+}
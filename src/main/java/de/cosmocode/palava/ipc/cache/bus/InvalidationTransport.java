@@ -0,0 +1,50 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.bus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Carries {@link InvalidationEvent}s between the nodes of a cluster. Transports deliver
+ * the events of one node in the order they were published. Polling returns events of all
+ * nodes, including the polling one, published since the last poll. Each transport
+ * is polled by a single thread.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public interface InvalidationTransport extends Closeable {
+
+    /**
+     * Publishes a batch of events.
+     *
+     * @param events the events in publishing order
+     * @throws IOException if publishing failed
+     */
+    void publish(List<InvalidationEvent> events) throws IOException;
+
+    /**
+     * Receives all events published since the last poll.
+     *
+     * @return the events in publishing order, may be empty
+     * @throws IOException if receiving failed
+     */
+    List<InvalidationEvent> poll() throws IOException;
+
+}
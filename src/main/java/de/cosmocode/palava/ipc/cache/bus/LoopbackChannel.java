@@ -0,0 +1,66 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.bus;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.inject.Singleton;
+
+/**
+ * The in-memory log shared by all {@link LoopbackTransport}s connected to it.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+@Singleton
+public final class LoopbackChannel {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final List<InvalidationEvent> events = Lists.newArrayList();
+
+    void append(List<InvalidationEvent> published) {
+        lock.lock();
+        try {
+            events.addAll(published);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    List<InvalidationEvent> read(int offset) {
+        lock.lock();
+        try {
+            return ImmutableList.copyOf(events.subList(offset, events.size()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return events.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.bus;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+
+/**
+ * An in-process {@link InvalidationTransport} which stands in for a real one in tests
+ * and single machine setups. All transports connected to the same {@link LoopbackChannel}
+ * see each other's events.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class LoopbackTransport implements InvalidationTransport {
+
+    private final LoopbackChannel channel;
+
+    private int offset;
+
+    @Inject
+    public LoopbackTransport(LoopbackChannel channel) {
+        this.channel = Preconditions.checkNotNull(channel, "Channel");
+        this.offset = channel.size();
+    }
+
+    @Override
+    public void publish(List<InvalidationEvent> events) {
+        Preconditions.checkNotNull(events, "Events");
+        channel.append(events);
+    }
+
+    @Override
+    public List<InvalidationEvent> poll() {
+        final List<InvalidationEvent> events = channel.read(offset);
+        offset += events.size();
+        return events;
+    }
+
+    @Override
+    public void close() {
+
+    }
+
+}
@@ -0,0 +1,281 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.bus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.cache.store.SharedMemory;
+
+/**
+ * An {@link InvalidationTransport} for processes on one machine which share an append-only
+ * journal in a memory-mapped ring buffer of {@link BusConfig#JOURNAL_SIZE} bytes.
+ *
+ * <p>
+ * The journal header holds the logical position of the end of the journal. Publishers
+ * append length-prefixed records under a file lock and advance the end after every record,
+ * readers keep their own offset and compare it with the end, so polling an idle journal
+ * reads a single long. The end is published and read through {@link SharedMemory}, so
+ * readers never see it ahead of the records it covers. Combined with an eager bus and a bus interval
+ * in the sub-millisecond range, e.g. {@code ipc.cache.bus.eager = true},
+ * {@code ipc.cache.bus.interval = 200} and {@code ipc.cache.bus.intervalUnit = MICROSECONDS},
+ * invalidations reach other processes within about one interval, provided publisher and readers
+ * don't compete for the same core.
+ * </p>
+ *
+ * <p>
+ * Retention is bounded to half of the journal: readers which fall further behind can't
+ * tell intact records from overwritten ones, so they skip to the end, log a warning and deliver
+ * {@link InvalidationEvent#all(String, long)} in place of the events they lost.
+ * Records are limited to a quarter of the journal.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class MappedJournalTransport implements InvalidationTransport, Initializable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedJournalTransport.class);
+
+    // the end and record lengths are stored in native byte order since version 2
+    private static final int MAGIC = 0x49434A32;
+
+    private static final int CAPACITY = 4;
+
+    private static final int END = 8;
+
+    private static final int HEADER = 64;
+
+    // marks the unused rest of the ring if the next record doesn't fit
+    private static final int PADDING = -1;
+
+    // file locks are held per process, so appends within one process have to be serialized separately
+    private static final ReentrantLock APPENDS = new ReentrantLock();
+
+    private final File file;
+
+    private int size = 1 << 20;
+
+    private RandomAccessFile journal;
+
+    private FileChannel channel;
+
+    private SharedMemory memory;
+
+    private int capacity;
+
+    private long offset;
+
+    private final String origin = UUID.randomUUID().toString();
+
+    private long losses;
+
+    @Inject
+    public MappedJournalTransport(@Named(BusConfig.JOURNAL_FILE) File file) {
+        this.file = Preconditions.checkNotNull(file, "File");
+    }
+
+    @Inject(optional = true)
+    void setSize(@Named(BusConfig.JOURNAL_SIZE) int size) {
+        Preconditions.checkArgument(size >= 4096, "Size must be at least 4096 bytes");
+        this.size = size;
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        APPENDS.lock();
+        try {
+            journal = new RandomAccessFile(file, "rw");
+            channel = journal.getChannel();
+            final FileLock lock = channel.lock();
+            try {
+                if (channel.size() >= HEADER && header().getInt(0) == MAGIC) {
+                    // joining an existing journal, its size wins
+                    capacity = header().getInt(CAPACITY);
+                    memory = new SharedMemory(channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + capacity));
+                } else {
+                    capacity = size - HEADER;
+                    journal.setLength(size);
+                    final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                    buffer.putInt(CAPACITY, capacity);
+                    buffer.putInt(0, MAGIC);
+                    memory = new SharedMemory(buffer);
+                    memory.putLongVolatile(END, 0L);
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new LifecycleException(e);
+        } finally {
+            APPENDS.unlock();
+        }
+        offset = memory.getLongVolatile(END);
+    }
+
+    private ByteBuffer header() throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER);
+        channel.read(header, 0);
+        return header;
+    }
+
+    @Override
+    public void publish(List<InvalidationEvent> events) throws IOException {
+        Preconditions.checkNotNull(events, "Events");
+        Preconditions.checkState(memory != null, "%s is not initialized", this);
+        if (events.isEmpty()) {
+            return;
+        }
+        final List<byte[]> records = encode(events);
+
+        APPENDS.lock();
+        try {
+            final FileLock lock = channel.lock(0, HEADER, false);
+            try {
+                long end = memory.getLongVolatile(END);
+                for (byte[] record : records) {
+                    int position = (int) (end % capacity);
+                    if (position + 4 + record.length > capacity) {
+                        if (capacity - position >= 4) {
+                            memory.putInt(HEADER + position, PADDING);
+                        }
+                        end += capacity - position;
+                        position = 0;
+                    }
+                    memory.putInt(HEADER + position, record.length);
+                    final ByteBuffer target = memory.getBuffer().duplicate();
+                    target.position(HEADER + position + 4);
+                    target.put(record);
+                    end += 4 + record.length;
+                    // the ordered store publishes the record before the end moves past it
+                    memory.putLongOrdered(END, end);
+                }
+            } finally {
+                lock.release();
+            }
+        } finally {
+            APPENDS.unlock();
+        }
+    }
+
+    private List<byte[]> encode(List<InvalidationEvent> events) throws IOException {
+        final ImmutableList.Builder<byte[]> records = ImmutableList.builder();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (InvalidationEvent event : events) {
+            bytes.reset();
+            final DataOutputStream output = new DataOutputStream(bytes);
+            event.writeTo(output);
+            output.flush();
+            if (4 + bytes.size() > capacity / 4) {
+                throw new IOException(event + " exceeds a quarter of the journal " + file);
+            }
+            records.add(bytes.toByteArray());
+        }
+        return records.build();
+    }
+
+    @Override
+    public List<InvalidationEvent> poll() throws IOException {
+        Preconditions.checkState(memory != null, "%s is not initialized", this);
+        final long end = memory.getLongVolatile(END);
+        if (end == offset) {
+            return ImmutableList.of();
+        }
+        final ImmutableList.Builder<InvalidationEvent> events = ImmutableList.builder();
+        while (offset < end) {
+            if (isOverwritten(offset)) {
+                skip(events);
+                break;
+            }
+            final int position = (int) (offset % capacity);
+            final int length = capacity - position < 4 ? PADDING : memory.getInt(HEADER + position);
+            if (length == PADDING) {
+                offset += capacity - position;
+                continue;
+            }
+            final InvalidationEvent event;
+            try {
+                final byte[] record = new byte[length];
+                final ByteBuffer source = memory.getBuffer().duplicate();
+                source.position(HEADER + position + 4);
+                source.get(record);
+                event = InvalidationEvent.readFrom(new DataInputStream(new ByteArrayInputStream(record)));
+            } catch (IOException e) {
+                skip(events);
+                break;
+            } catch (RuntimeException e) {
+                skip(events);
+                break;
+            }
+            if (isOverwritten(offset)) {
+                // overwritten while being read
+                skip(events);
+                break;
+            }
+            events.add(event);
+            offset += 4 + length;
+        }
+        return events.build();
+    }
+
+    private boolean isOverwritten(long position) {
+        // publishers write at most a quarter of the journal ahead of the end, twice with padding
+        return memory.getLongVolatile(END) - position >= capacity / 2;
+    }
+
+    private void skip(ImmutableList.Builder<InvalidationEvent> events) {
+        final long end = memory.getLongVolatile(END);
+        LOG.warn("Lost invalidations of {}, skipping {} bytes", file, end - offset);
+        offset = end;
+        events.add(InvalidationEvent.all(origin, ++losses));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MappedJournalTransport [file=" + file + "]";
+    }
+
+}
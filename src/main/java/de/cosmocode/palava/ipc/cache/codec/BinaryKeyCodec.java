@@ -0,0 +1,131 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.codec;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.MapIpcArguments;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.DefaultCacheKeyFactory;
+import de.cosmocode.palava.ipc.cache.format.IndexedResults;
+
+/**
+ * Key codec for keys of the {@link DefaultCacheKeyFactory}, which writes the command name
+ * and the arguments in {@link IndexedResults indexed} binary form:
+ *
+ * <pre>
+ * key := MAGIC nameLength name arguments
+ * </pre>
+ *
+ * Other keys, and keys of commands which can't be loaded by name (proxies, anonymous
+ * and local classes), are written using java serialization, which this codec reads as well.
+ * Decoded arguments are plain copies, because keys are hashed and compared often.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public enum BinaryKeyCodec implements KeyCodec {
+
+    INSTANCE;
+
+    /**
+     * "PIKY", can't be confused with the 0xACED header of java serialization.
+     */
+    private static final int MAGIC = 0x50494B59;
+
+    private final ConcurrentMap<String, Class<? extends IpcCommand>> commands = Maps.newConcurrentMap();
+
+    @Override
+    public byte[] encodeKey(CacheKey key) throws IOException {
+        if (!DefaultCacheKeyFactory.INSTANCE.isCreatedBy(key) || !isNamed(key.getCommand())) {
+            return JavaSerializationCodec.serialize(key);
+        }
+        final byte[] name = key.getCommand().getName().getBytes(Charsets.UTF_8);
+        final byte[] arguments = IndexedResults.write(key.getArguments());
+        final ByteBuffer buffer = ByteBuffer.allocate(8 + name.length + arguments.length);
+        buffer.putInt(MAGIC).putInt(name.length).put(name).put(arguments);
+        return buffer.array();
+    }
+
+    @Override
+    public CacheKey decodeKey(ByteBuffer buffer) throws IOException {
+        final int start = buffer.position();
+        if (buffer.remaining() < 8 || buffer.getInt(start) != MAGIC) {
+            return CacheKey.class.cast(JavaSerializationCodec.deserialize(buffer));
+        }
+        final ByteBuffer view = buffer.duplicate();
+        final int length = view.getInt(start + 4);
+        final byte[] name = new byte[length];
+        view.position(start + 8);
+        view.get(name);
+        final Class<? extends IpcCommand> command = command(new String(name, Charsets.UTF_8));
+        @SuppressWarnings("unchecked")
+        final Map<String, Object> arguments = (Map<String, Object>) copy(IndexedResults.view(view));
+        return DefaultCacheKeyFactory.INSTANCE.create(command, new MapIpcArguments(arguments));
+    }
+
+    private boolean isNamed(Class<?> type) {
+        return !Proxy.isProxyClass(type) && !type.isAnonymousClass() && !type.isLocalClass();
+    }
+
+    private Class<? extends IpcCommand> command(String name) throws IOException {
+        final Class<? extends IpcCommand> cached = commands.get(name);
+        if (cached == null) {
+            final ClassLoader context = Thread.currentThread().getContextClassLoader();
+            final Class<?> type;
+            try {
+                type = Class.forName(name, false, context == null ? BinaryKeyCodec.class.getClassLoader() : context);
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unknown command " + name, e);
+            }
+            final Class<? extends IpcCommand> command = type.asSubclass(IpcCommand.class);
+            commands.putIfAbsent(name, command);
+            return command;
+        } else {
+            return cached;
+        }
+    }
+
+    private Object copy(Object value) {
+        if (value instanceof Map<?, ?>) {
+            final Map<Object, Object> copy = Maps.newHashMap();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return copy;
+        } else if (value instanceof List<?>) {
+            final List<Object> copy = Lists.newArrayList();
+            for (Object element : (List<?>) value) {
+                copy.add(copy(element));
+            }
+            return copy;
+        } else {
+            return value;
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Map;
+
+import de.cosmocode.palava.ipc.cache.compression.CompressedResults;
+import de.cosmocode.palava.ipc.cache.encoding.EncodedResult;
+import de.cosmocode.palava.ipc.cache.format.IndexedResult;
+import de.cosmocode.palava.ipc.cache.format.IndexedResults;
+
+/**
+ * Result codec using the {@link IndexedResults indexed} binary form, whose decoded results
+ * are lazy views. Encoded and compressed results, which carry their own form, and results with
+ * keys the indexed form can't represent, e.g. null, are written using java serialization,
+ * which this codec reads as well.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public enum BinaryResultCodec implements ResultCodec {
+
+    INSTANCE;
+
+    @Override
+    public byte[] encodeResult(Map<String, Object> result) throws IOException {
+        if (result instanceof IndexedResult) {
+            final IndexedResult indexed = IndexedResult.class.cast(result);
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(indexed.getLength());
+            indexed.writeTo(Channels.newChannel(bytes));
+            return bytes.toByteArray();
+        } else if (result instanceof EncodedResult || CompressedResults.isCompressed(result)
+            || !IndexedResults.isWritable(result)) {
+            return JavaSerializationCodec.serialize(result);
+        } else {
+            return IndexedResults.write(result);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> decodeResult(ByteBuffer buffer) throws IOException {
+        if (IndexedResults.isIndexed(buffer)) {
+            return IndexedResults.view(buffer);
+        } else {
+            return (Map<String, Object>) JavaSerializationCodec.deserialize(buffer);
+        }
+    }
+
+}
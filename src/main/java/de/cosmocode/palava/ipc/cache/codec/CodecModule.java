@@ -0,0 +1,56 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.codec;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Binder;
+import com.google.inject.Module;
+
+/**
+ * Binds the {@link KeyCodec} and {@link ResultCodec} used by all serializing stores and snapshots.
+ * Without this module they use the {@link BinaryKeyCodec} and {@link BinaryResultCodec}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class CodecModule implements Module {
+
+    private final KeyCodec keyCodec;
+
+    private final ResultCodec resultCodec;
+
+    public CodecModule(KeyCodec keyCodec, ResultCodec resultCodec) {
+        this.keyCodec = Preconditions.checkNotNull(keyCodec, "KeyCodec");
+        this.resultCodec = Preconditions.checkNotNull(resultCodec, "ResultCodec");
+    }
+
+    /**
+     * Creates a module which binds the {@link JavaSerializationCodec} for keys and results.
+     *
+     * @return a new module
+     */
+    public static CodecModule javaSerialization() {
+        return new CodecModule(JavaSerializationCodec.INSTANCE, JavaSerializationCodec.INSTANCE);
+    }
+
+    @Override
+    public void configure(Binder binder) {
+        binder.bind(KeyCodec.class).toInstance(keyCodec);
+        binder.bind(ResultCodec.class).toInstance(resultCodec);
+    }
+
+}
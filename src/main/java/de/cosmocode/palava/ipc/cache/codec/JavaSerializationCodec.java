@@ -0,0 +1,88 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import de.cosmocode.palava.ipc.cache.CacheKey;
+
+/**
+ * Key and result codec using java serialization, which supports every serializable
+ * key and result at the cost of speed and size.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public enum JavaSerializationCodec implements KeyCodec, ResultCodec {
+
+    INSTANCE;
+
+    @Override
+    public byte[] encodeKey(CacheKey key) throws IOException {
+        return serialize(key);
+    }
+
+    @Override
+    public CacheKey decodeKey(ByteBuffer buffer) throws IOException {
+        return CacheKey.class.cast(deserialize(buffer));
+    }
+
+    @Override
+    public byte[] encodeResult(Map<String, Object> result) throws IOException {
+        return serialize(result);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> decodeResult(ByteBuffer buffer) throws IOException {
+        return (Map<String, Object>) deserialize(buffer);
+    }
+
+    static byte[] serialize(Object value) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        final ObjectOutputStream stream = new ObjectOutputStream(bytes);
+        stream.writeObject(value);
+        stream.close();
+        return bytes.toByteArray();
+    }
+
+    static Object deserialize(ByteBuffer buffer) throws IOException {
+        final InputStream input;
+        if (buffer.hasArray()) {
+            input = new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                buffer.remaining());
+        } else {
+            input = new ByteBufferInputStream(buffer.duplicate());
+        }
+        final ObjectInputStream stream = new ObjectInputStream(input);
+        try {
+            return stream.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown class in serialized value", e);
+        } finally {
+            stream.close();
+        }
+    }
+
+}
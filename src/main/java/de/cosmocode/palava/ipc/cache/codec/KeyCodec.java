@@ -0,0 +1,51 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import de.cosmocode.palava.ipc.cache.CacheKey;
+
+/**
+ * Converts {@link CacheKey}s to bytes and back for serializing stores and snapshots.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see CodecModule
+ */
+public interface KeyCodec {
+
+    /**
+     * Encodes the given key.
+     *
+     * @param key the key
+     * @return the encoded key
+     * @throws IOException if the key can't be encoded
+     */
+    byte[] encodeKey(CacheKey key) throws IOException;
+
+    /**
+     * Decodes the key in the remaining bytes of the given buffer.
+     *
+     * @param buffer the buffer
+     * @return the decoded key
+     * @throws IOException if the bytes can't be decoded
+     */
+    CacheKey decodeKey(ByteBuffer buffer) throws IOException;
+
+}
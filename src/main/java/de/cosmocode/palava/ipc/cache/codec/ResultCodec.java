@@ -0,0 +1,51 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Converts cached results to bytes and back for serializing stores and snapshots.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see CodecModule
+ */
+public interface ResultCodec {
+
+    /**
+     * Encodes the given result.
+     *
+     * @param result the result
+     * @return the encoded result
+     * @throws IOException if the result can't be encoded
+     */
+    byte[] encodeResult(Map<String, Object> result) throws IOException;
+
+    /**
+     * Decodes the result in the remaining bytes of the given buffer. The returned
+     * result may be a view over the buffer, which then must not be modified anymore.
+     *
+     * @param buffer the buffer
+     * @return the decoded result
+     * @throws IOException if the bytes can't be decoded
+     */
+    Map<String, Object> decodeResult(ByteBuffer buffer) throws IOException;
+
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.compact;
+
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.IpcCommandExecution;
+
+/**
+ * Static utility methods for compact results.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class CompactResults {
+
+    private CompactResults() {
+
+    }
+
+    /**
+     * Checks whether the given value is a map or list produced by a {@link ResultCompactor}'s default
+     * implementation, which is immutable including all nested values.
+     *
+     * @param value the value
+     * @return true if value is compact, false otherwise
+     */
+    public static boolean isCompact(Object value) {
+        return value instanceof CompactMap || value instanceof CompactList;
+    }
+
+    /**
+     * Decorates the given execution so its result is compacted before it gets cached.
+     *
+     * @param execution the execution
+     * @param command the type of the executed command
+     * @param compactor the compactor
+     * @return a compacting execution
+     */
+    public static IpcCommandExecution compacting(final IpcCommandExecution execution,
+        final Class<? extends IpcCommand> command, final ResultCompactor compactor) {
+        Preconditions.checkNotNull(execution, "Execution");
+        Preconditions.checkNotNull(command, "Command");
+        Preconditions.checkNotNull(compactor, "Compactor");
+        return new IpcCommandExecution() {
+
+            @Override
+            public Map<String, Object> call() throws IpcCommandExecutionException {
+                return compactor.compact(command, execution.call());
+            }
+
+        };
+    }
+
+}
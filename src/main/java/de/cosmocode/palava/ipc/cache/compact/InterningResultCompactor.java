@@ -0,0 +1,152 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.compact;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Default {@link ResultCompactor} which converts maps with string keys into {@link CompactMap}s,
+ * lists and other collections into {@link CompactList}s and sets into unmodifiable sets, recursively.
+ * Key arrays are interned per command, so all results of a command with the same shape share one array.
+ * Maps with other keys are copied into unmodifiable maps.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+@Singleton
+final class InterningResultCompactor implements ResultCompactor {
+
+    private final ConcurrentMap<Class<? extends IpcCommand>, ConcurrentMap<List<String>, String[]>> shapes =
+        Maps.newConcurrentMap();
+
+    private int maxShapes = 256;
+
+    @Inject(optional = true)
+    void setMaxShapes(@Named(CompactConfig.MAX_SHAPES) int maxShapes) {
+        Preconditions.checkArgument(maxShapes >= 0, "Max shapes must not be negative");
+        this.maxShapes = maxShapes;
+    }
+
+    @Override
+    public Map<String, Object> compact(Class<? extends IpcCommand> command, Map<String, Object> result) {
+        Preconditions.checkNotNull(command, "Command");
+        if (result == null || result instanceof CompactMap) {
+            return result;
+        }
+        final ConcurrentMap<List<String>, String[]> interned = shapesOf(command);
+        @SuppressWarnings("unchecked")
+        final Map<String, Object> compacted = (Map<String, Object>) convert(result, interned);
+        return compacted;
+    }
+
+    private ConcurrentMap<List<String>, String[]> shapesOf(Class<? extends IpcCommand> command) {
+        final ConcurrentMap<List<String>, String[]> existing = shapes.get(command);
+        if (existing == null) {
+            final ConcurrentMap<List<String>, String[]> created = Maps.newConcurrentMap();
+            final ConcurrentMap<List<String>, String[]> raced = shapes.putIfAbsent(command, created);
+            return raced == null ? created : raced;
+        } else {
+            return existing;
+        }
+    }
+
+    private Object convert(Object value, ConcurrentMap<List<String>, String[]> interned) {
+        if (value instanceof CompactMap || value instanceof CompactList) {
+            return value;
+        } else if (value instanceof Map<?, ?>) {
+            return convertMap((Map<?, ?>) value, interned);
+        } else if (value instanceof Set<?>) {
+            final Set<Object> set = Sets.newLinkedHashSet();
+            for (Object element : (Set<?>) value) {
+                set.add(convert(element, interned));
+            }
+            return Collections.unmodifiableSet(set);
+        } else if (value instanceof Collection<?>) {
+            final Object[] elements = ((Collection<?>) value).toArray();
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = convert(elements[i], interned);
+            }
+            return new CompactList(elements);
+        } else {
+            return value;
+        }
+    }
+
+    private Object convertMap(Map<?, ?> map, ConcurrentMap<List<String>, String[]> interned) {
+        final String[] keys = new String[map.size()];
+        int index = 0;
+        for (Object key : map.keySet()) {
+            if (!(key instanceof String)) {
+                final Map<Object, Object> copy = Maps.newLinkedHashMap();
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    copy.put(entry.getKey(), convert(entry.getValue(), interned));
+                }
+                return Collections.unmodifiableMap(copy);
+            }
+            keys[index++] = (String) key;
+        }
+        Arrays.sort(keys);
+        final Object[] values = new Object[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = convert(map.get(keys[i]), interned);
+        }
+        return new CompactMap(intern(keys, interned), values);
+    }
+
+    private String[] intern(String[] keys, ConcurrentMap<List<String>, String[]> interned) {
+        final List<String> shape = Arrays.asList(keys);
+        final String[] existing = interned.get(shape);
+        if (existing != null) {
+            return existing;
+        } else if (interned.size() >= maxShapes) {
+            // results with dynamic keys would otherwise grow the table without bounds
+            return keys;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = keys[i].intern();
+        }
+        final String[] raced = interned.putIfAbsent(shape, keys);
+        return raced == null ? keys : raced;
+    }
+
+    /**
+     * Provides the number of distinct shapes interned for the given command.
+     *
+     * @param command the command
+     * @return the number of shapes
+     */
+    int getShapes(Class<? extends IpcCommand> command) {
+        final ConcurrentMap<List<String>, String[]> interned = shapes.get(command);
+        return interned == null ? 0 : interned.size();
+    }
+
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.compact;
+
+import java.util.Map;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Converts results into a compact immutable representation before they get cached.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see CompactResultModule
+ */
+public interface ResultCompactor {
+
+    /**
+     * Converts the given result of the given command.
+     *
+     * @param command the command which produced the result
+     * @param result the result
+     * @return an immutable, equal result
+     */
+    Map<String, Object> compact(Class<? extends IpcCommand> command, Map<String, Object> result);
+
+}
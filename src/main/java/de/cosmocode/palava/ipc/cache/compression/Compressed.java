@@ -0,0 +1,61 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.compression;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Overrides the configured compression threshold and codec for the annotated command.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see CompressionModule
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Compressed {
+
+    /**
+     * The estimated size in bytes a result needs to reach to get compressed.
+     * A negative value uses the configured threshold.
+     *
+     * @return the threshold in bytes
+     * @see CompressionConfig#THRESHOLD
+     * @see de.cosmocode.palava.ipc.cache.ResultSizes
+     */
+    long threshold() default -1L;
+
+    /**
+     * The codec to compress results with. At most one codec may be given,
+     * none uses the configured codec.
+     *
+     * @return the codec or an empty array
+     * @see CompressionConfig#CODEC
+     */
+    CompressionCodec[] codec() default { };
+
+    /**
+     * Whether results of the annotated command should be compressed at all.
+     *
+     * @return false to never compress results
+     */
+    boolean enabled() default true;
+
+}
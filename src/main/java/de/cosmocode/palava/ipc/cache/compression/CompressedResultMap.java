@@ -0,0 +1,101 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.lang.ref.SoftReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.zip.InflaterInputStream;
+
+import com.google.common.collect.ForwardingMap;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * A cached result which holds the deflated serialized form of the original result.
+ * The {@link de.cosmocode.palava.ipc.cache.CacheFilter} decompresses it once per read
+ * using {@link ResultCompressor#decompress(Map)}. All other accesses share one unmodifiable
+ * inflated copy, which is softly referenced so it doesn't undo the savings under memory pressure.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class CompressedResultMap extends ForwardingMap<String, Object> implements Serializable {
+
+    private static final long serialVersionUID = -2786351283749237425L;
+
+    private final Class<? extends IpcCommand> command;
+
+    private final byte[] compressed;
+
+    private transient volatile SoftReference<Map<String, Object>> inflated;
+
+    CompressedResultMap(Class<? extends IpcCommand> command, byte[] compressed) {
+        this.command = command;
+        this.compressed = compressed;
+    }
+
+    Class<? extends IpcCommand> getCommand() {
+        return command;
+    }
+
+    int getCompressedLength() {
+        return compressed.length;
+    }
+
+    /**
+     * Inflates a fresh copy of the original result.
+     *
+     * @return the original result
+     */
+    Map<String, Object> inflate() {
+        try {
+            final ObjectInputStream input = new ObjectInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(compressed)));
+            try {
+                @SuppressWarnings("unchecked")
+                final Map<String, Object> result = (Map<String, Object>) input.readObject();
+                return result;
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to decompress result of " + command, e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Unable to decompress result of " + command, e);
+        }
+    }
+
+    @Override
+    protected Map<String, Object> delegate() {
+        final SoftReference<Map<String, Object>> reference = inflated;
+        final Map<String, Object> cached = reference == null ? null : reference.get();
+        if (cached == null) {
+            // racing threads inflate equal copies, any of them may be kept
+            final Map<String, Object> created = Collections.unmodifiableMap(inflate());
+            inflated = new SoftReference<Map<String, Object>>(created);
+            return created;
+        } else {
+            return cached;
+        }
+    }
+
+}
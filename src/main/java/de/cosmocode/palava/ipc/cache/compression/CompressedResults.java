@@ -0,0 +1,72 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.compression;
+
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.IpcCommandExecution;
+
+/**
+ * Static utility methods for compressed results.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class CompressedResults {
+
+    private CompressedResults() {
+
+    }
+
+    /**
+     * Checks whether the given cached result is compressed.
+     *
+     * @param result the cached result
+     * @return true if the result is compressed
+     */
+    public static boolean isCompressed(Map<String, Object> result) {
+        return result instanceof CompressedResultMap;
+    }
+
+    /**
+     * Decorates the given execution so its result is compressed before it gets cached.
+     *
+     * @param execution the execution
+     * @param command the type of the executed command
+     * @param compressor the compressor
+     * @return a compressing execution
+     */
+    public static IpcCommandExecution compressing(final IpcCommandExecution execution,
+        final Class<? extends IpcCommand> command, final ResultCompressor compressor) {
+        Preconditions.checkNotNull(execution, "Execution");
+        Preconditions.checkNotNull(command, "Command");
+        Preconditions.checkNotNull(compressor, "Compressor");
+        return new IpcCommandExecution() {
+
+            @Override
+            public Map<String, Object> call() throws IpcCommandExecutionException {
+                return compressor.compress(command, execution.call());
+            }
+
+        };
+    }
+
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.compression;
+
+import java.util.zip.Deflater;
+
+/**
+ * The codecs results can be compressed with.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public enum CompressionCodec {
+
+    /**
+     * Deflate at its fastest level, which already gets most of the ratio on typical results.
+     */
+    DEFLATE_FAST(Deflater.BEST_SPEED),
+
+    /**
+     * Deflate at its default level.
+     */
+    DEFLATE(Deflater.DEFAULT_COMPRESSION),
+
+    /**
+     * Deflate at its best level, for results which are read rarely.
+     */
+    DEFLATE_BEST(Deflater.BEST_COMPRESSION);
+
+    private final int level;
+
+    private CompressionCodec(int level) {
+        this.level = level;
+    }
+
+    Deflater newDeflater() {
+        return new Deflater(level);
+    }
+
+}
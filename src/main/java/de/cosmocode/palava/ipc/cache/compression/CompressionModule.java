@@ -0,0 +1,40 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.compression;
+
+import com.google.inject.Binder;
+import com.google.inject.Module;
+
+/**
+ * Enables result compression by binding the default {@link ResultCompressor}.
+ * The {@link de.cosmocode.palava.ipc.cache.CacheFilter} then caches large results
+ * in deflated form and decompresses them when they are read. Commands can override
+ * the configured threshold and codec using {@link Compressed}. If an
+ * {@link de.cosmocode.palava.ipc.cache.encoding.ResultEncoder} is bound as well,
+ * only results it declines to encode are compressed.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class CompressionModule implements Module {
+
+    @Override
+    public void configure(Binder binder) {
+        binder.bind(ResultCompressor.class).to(DefaultResultCompressor.class);
+    }
+
+}
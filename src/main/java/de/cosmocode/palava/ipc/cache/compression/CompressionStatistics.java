@@ -0,0 +1,125 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.compression;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Compression counters of a single command.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class CompressionStatistics {
+
+    private final Class<? extends IpcCommand> command;
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    private final AtomicLong compressed = new AtomicLong();
+
+    private final AtomicLong serializedBytes = new AtomicLong();
+
+    private final AtomicLong compressedBytes = new AtomicLong();
+
+    private final AtomicLong decompressions = new AtomicLong();
+
+    private final AtomicLong decompressionNanos = new AtomicLong();
+
+    CompressionStatistics(Class<? extends IpcCommand> command) {
+        this.command = command;
+    }
+
+    void skipped() {
+        skipped.incrementAndGet();
+    }
+
+    void compressed(long serialized, long size) {
+        compressed.incrementAndGet();
+        serializedBytes.addAndGet(serialized);
+        compressedBytes.addAndGet(size);
+    }
+
+    void decompressed(long nanos) {
+        decompressions.incrementAndGet();
+        decompressionNanos.addAndGet(nanos);
+    }
+
+    public Class<? extends IpcCommand> getCommand() {
+        return command;
+    }
+
+    /**
+     * The number of results which were stored uncompressed, because they were too small
+     * or didn't compress.
+     *
+     * @return the number of skipped results
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * The number of results which were stored compressed.
+     *
+     * @return the number of compressed results
+     */
+    public long getCompressed() {
+        return compressed.get();
+    }
+
+    /**
+     * The ratio of serialized to compressed bytes of all compressed results.
+     *
+     * @return the compression ratio, 0 if nothing was compressed
+     */
+    public double getRatio() {
+        final long size = compressedBytes.get();
+        return size == 0 ? 0d : (double) serializedBytes.get() / size;
+    }
+
+    /**
+     * The number of compressed results which were read.
+     *
+     * @return the number of decompressions
+     */
+    public long getDecompressions() {
+        return decompressions.get();
+    }
+
+    /**
+     * The average time a decompression took.
+     *
+     * @param unit the desired unit
+     * @return the average decompression time, 0 if nothing was decompressed
+     */
+    public double getAverageDecompressionTime(TimeUnit unit) {
+        final long count = decompressions.get();
+        return count == 0 ? 0d : (double) decompressionNanos.get() / count / unit.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d compressed, %d skipped, ratio %.1f, %d decompressions at %.1fus",
+            command.getName(), getCompressed(), getSkipped(), getRatio(), getDecompressions(),
+            getAverageDecompressionTime(TimeUnit.MICROSECONDS));
+    }
+
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.cache.ResultSizes;
+import de.cosmocode.palava.ipc.cache.encoding.EncodedResult;
+
+/**
+ * Default {@link ResultCompressor} which serializes results whose estimated size reaches
+ * the threshold and deflates them. The threshold is checked against the cheap
+ * {@link ResultSizes#estimate(Object) estimate}, so small results are never serialized.
+ * Results which don't get smaller and {@link EncodedResult}s, which have to keep their
+ * encoded bytes readable, are stored unchanged.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+@Singleton
+final class DefaultResultCompressor implements ResultCompressor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultResultCompressor.class);
+
+    private final ConcurrentMap<Class<? extends IpcCommand>, CompressionStatistics> statistics =
+        Maps.newConcurrentMap();
+
+    private final ConcurrentMap<Class<? extends IpcCommand>, Settings> settings = Maps.newConcurrentMap();
+
+    private long threshold = 64L * 1024;
+
+    private CompressionCodec codec = CompressionCodec.DEFLATE_FAST;
+
+    @Inject(optional = true)
+    void setThreshold(@Named(CompressionConfig.THRESHOLD) long threshold) {
+        Preconditions.checkArgument(threshold >= 0, "Threshold must not be negative");
+        this.threshold = threshold;
+    }
+
+    @Inject(optional = true)
+    void setCodec(@Named(CompressionConfig.CODEC) CompressionCodec codec) {
+        this.codec = Preconditions.checkNotNull(codec, "Codec");
+    }
+
+    @Override
+    public Map<String, Object> compress(Class<? extends IpcCommand> command, Map<String, Object> result) {
+        Preconditions.checkNotNull(command, "Command");
+        if (result == null || result instanceof CompressedResultMap || result instanceof EncodedResult) {
+            return result;
+        }
+        final Settings selected = settingsOf(command);
+        if (!selected.enabled) {
+            return result;
+        }
+        final CompressionStatistics counters = statisticsOf(command);
+        final long limit = selected.threshold < 0 ? threshold : selected.threshold;
+        if (ResultSizes.estimate(result) < limit) {
+            counters.skipped();
+            return result;
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final Deflater deflater = (selected.codec == null ? codec : selected.codec).newDeflater();
+        final long serialized;
+        try {
+            final ObjectOutputStream output = new ObjectOutputStream(new DeflaterOutputStream(bytes, deflater));
+            output.writeObject(result);
+            output.close();
+            serialized = deflater.getBytesRead();
+        } catch (IOException e) {
+            LOG.warn("Unable to compress result of " + command + ", caching it uncompressed", e);
+            counters.skipped();
+            return result;
+        } finally {
+            deflater.end();
+        }
+        if (bytes.size() >= serialized) {
+            counters.skipped();
+            return result;
+        }
+        counters.compressed(serialized, bytes.size());
+        return new CompressedResultMap(command, bytes.toByteArray());
+    }
+
+    /**
+     * Reads and validates the {@link Compressed} annotation of the given command once.
+     *
+     * @throws IllegalArgumentException if the annotation names more than one codec
+     */
+    private Settings settingsOf(Class<? extends IpcCommand> command) {
+        final Settings existing = settings.get(command);
+        if (existing == null) {
+            final Settings created = new Settings(command.getAnnotation(Compressed.class));
+            final Settings raced = settings.putIfAbsent(command, created);
+            return raced == null ? created : raced;
+        } else {
+            return existing;
+        }
+    }
+
+    @Override
+    public Map<String, Object> decompress(Map<String, Object> result) {
+        if (result instanceof CompressedResultMap) {
+            final CompressedResultMap compressed = CompressedResultMap.class.cast(result);
+            final long start = System.nanoTime();
+            final Map<String, Object> inflated = compressed.inflate();
+            statisticsOf(compressed.getCommand()).decompressed(System.nanoTime() - start);
+            return inflated;
+        } else {
+            return result;
+        }
+    }
+
+    private CompressionStatistics statisticsOf(Class<? extends IpcCommand> command) {
+        final CompressionStatistics existing = statistics.get(command);
+        if (existing == null) {
+            final CompressionStatistics created = new CompressionStatistics(command);
+            final CompressionStatistics raced = statistics.putIfAbsent(command, created);
+            return raced == null ? created : raced;
+        } else {
+            return existing;
+        }
+    }
+
+    @Override
+    public Map<Class<? extends IpcCommand>, CompressionStatistics> getStatistics() {
+        return ImmutableMap.copyOf(statistics);
+    }
+
+    /**
+     * The validated {@link Compressed} annotation of one command.
+     */
+    private static final class Settings {
+
+        private final boolean enabled;
+
+        // negative uses the configured threshold
+        private final long threshold;
+
+        // null uses the configured codec
+        private final CompressionCodec codec;
+
+        Settings(Compressed annotation) {
+            if (annotation == null) {
+                this.enabled = true;
+                this.threshold = -1L;
+                this.codec = null;
+            } else {
+                Preconditions.checkArgument(annotation.codec().length <= 1,
+                    "At most one codec allowed in %s", annotation);
+                this.enabled = annotation.enabled();
+                this.threshold = annotation.threshold();
+                this.codec = annotation.codec().length == 0 ? null : annotation.codec()[0];
+            }
+        }
+
+    }
+
+}
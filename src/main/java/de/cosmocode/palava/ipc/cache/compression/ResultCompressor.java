@@ -0,0 +1,56 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.compression;
+
+import java.util.Map;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Compresses large results before they get cached and decompresses them when they are read.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see CompressionModule
+ */
+public interface ResultCompressor {
+
+    /**
+     * Compresses the given result if it is large enough.
+     *
+     * @param command the command which produced the result
+     * @param result the result
+     * @return a compressed result or the given result
+     */
+    Map<String, Object> compress(Class<? extends IpcCommand> command, Map<String, Object> result);
+
+    /**
+     * Decompresses the given cached result. Results which are not compressed are returned unchanged.
+     *
+     * @param result the cached result
+     * @return the decompressed result
+     */
+    Map<String, Object> decompress(Map<String, Object> result);
+
+    /**
+     * Provides the ratio and decompression cost of all commands which produced results so far.
+     *
+     * @return the statistics per command
+     */
+    Map<Class<? extends IpcCommand>, CompressionStatistics> getStatistics();
+
+}
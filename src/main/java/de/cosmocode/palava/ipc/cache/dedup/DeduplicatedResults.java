@@ -0,0 +1,62 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.dedup;
+
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.IpcCommandExecution;
+
+/**
+ * Static utility methods for deduplicated results.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class DeduplicatedResults {
+
+    private DeduplicatedResults() {
+
+    }
+
+    /**
+     * Decorates the given execution so its result is replaced by a shared copy before it gets cached.
+     *
+     * @param execution the execution
+     * @param command the type of the executed command
+     * @param deduplicator the deduplicator
+     * @return a deduplicating execution
+     */
+    public static IpcCommandExecution deduplicating(final IpcCommandExecution execution,
+        final Class<? extends IpcCommand> command, final ResultDeduplicator deduplicator) {
+        Preconditions.checkNotNull(execution, "Execution");
+        Preconditions.checkNotNull(command, "Command");
+        Preconditions.checkNotNull(deduplicator, "Deduplicator");
+        return new IpcCommandExecution() {
+
+            @Override
+            public Map<String, Object> call() throws IpcCommandExecutionException {
+                return deduplicator.deduplicate(command, execution.call());
+            }
+
+        };
+    }
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.dedup;
+
+import com.google.inject.Binder;
+import com.google.inject.Module;
+
+/**
+ * Enables result deduplication by binding the default {@link ResultDeduplicator}.
+ * The {@link de.cosmocode.palava.ipc.cache.CacheFilter} then caches one shared copy
+ * of equal results. Shared results are unmodifiable; combined with the
+ * {@link de.cosmocode.palava.ipc.cache.compact.CompactResultModule} they need not be copied to make them so.
+ * Services storing serialized copies, see {@link de.cosmocode.palava.ipc.cache.SerializingCache},
+ * are not deduplicated.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class DeduplicationModule implements Module {
+
+    @Override
+    public void configure(Binder binder) {
+        binder.bind(ResultDeduplicator.class).to(WeakResultDeduplicator.class);
+    }
+
+}
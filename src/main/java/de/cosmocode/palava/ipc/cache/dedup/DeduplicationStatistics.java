@@ -0,0 +1,110 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.dedup;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Deduplication counters of a single command.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class DeduplicationStatistics {
+
+    private final Class<? extends IpcCommand> command;
+
+    private final AtomicLong stores = new AtomicLong();
+
+    private final AtomicLong duplicates = new AtomicLong();
+
+    private final AtomicLong distinct = new AtomicLong();
+
+    private final AtomicLong savedBytes = new AtomicLong();
+
+    DeduplicationStatistics(Class<? extends IpcCommand> command) {
+        this.command = command;
+    }
+
+    void unique() {
+        stores.incrementAndGet();
+        distinct.incrementAndGet();
+    }
+
+    void duplicate(long size) {
+        stores.incrementAndGet();
+        duplicates.incrementAndGet();
+        savedBytes.addAndGet(size);
+    }
+
+    void released(int references, long size) {
+        distinct.decrementAndGet();
+        savedBytes.addAndGet(-(references - 1) * size);
+    }
+
+    public Class<? extends IpcCommand> getCommand() {
+        return command;
+    }
+
+    /**
+     * The number of results which were stored.
+     *
+     * @return the number of stores
+     */
+    public long getStores() {
+        return stores.get();
+    }
+
+    /**
+     * The number of stored results which were replaced by a shared copy.
+     *
+     * @return the number of duplicates
+     */
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    /**
+     * The number of distinct results which are currently shared.
+     *
+     * @return the number of distinct results
+     */
+    public long getDistinct() {
+        return distinct.get();
+    }
+
+    /**
+     * The estimated number of bytes the currently shared copies save. Copies are released
+     * once the garbage collector discovers that no cache entry refers to them anymore,
+     * so this is an upper bound.
+     *
+     * @return the saved bytes
+     * @see de.cosmocode.palava.ipc.cache.ResultSizes
+     */
+    public long getSavedBytes() {
+        return savedBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d/%d duplicates, %d distinct, %d bytes saved",
+            command.getName(), getDuplicates(), getStores(), getDistinct(), getSavedBytes());
+    }
+
+}
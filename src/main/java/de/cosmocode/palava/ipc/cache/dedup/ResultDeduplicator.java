@@ -0,0 +1,50 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.dedup;
+
+import java.util.Map;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Replaces results by an equal, already cached copy before they get cached,
+ * so identical results of different cache keys share one instance.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see DeduplicationModule
+ */
+public interface ResultDeduplicator {
+
+    /**
+     * Provides the shared copy of the given result, which is the given result itself
+     * if no equal result is currently cached.
+     *
+     * @param command the command which produced the result
+     * @param result the result
+     * @return an equal result
+     */
+    Map<String, Object> deduplicate(Class<? extends IpcCommand> command, Map<String, Object> result);
+
+    /**
+     * Provides the savings of all commands which produced results so far.
+     *
+     * @return the statistics per command
+     */
+    Map<Class<? extends IpcCommand>, DeduplicationStatistics> getStatistics();
+
+}
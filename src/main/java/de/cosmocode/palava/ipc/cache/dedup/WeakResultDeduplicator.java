@@ -0,0 +1,249 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.dedup;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.cache.ResultSizes;
+import de.cosmocode.palava.ipc.cache.compact.CompactResults;
+
+/**
+ * Default {@link ResultDeduplicator} which fingerprints results by their {@link Map#hashCode()}
+ * and compares candidates with {@link Map#equals(Object)}.
+ *
+ * <p>
+ * Shared copies are unmodifiable, so neither a holder of one can change the results of other keys
+ * nor can their hash codes change while they are looked up. Results which are not compacted already
+ * are copied into unmodifiable collections, recursively, once per distinct result.
+ * </p>
+ *
+ * <p>
+ * The shared copies are counted per store and only weakly referenced, because the cache services
+ * don't report evictions and expirations. A copy is released once the garbage collector discovers
+ * that no cache entry refers to it anymore.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+@Singleton
+final class WeakResultDeduplicator implements ResultDeduplicator {
+
+    private final ConcurrentMap<Object, Shared> shared = Maps.newConcurrentMap();
+
+    private final ReferenceQueue<Map<String, Object>> queue = new ReferenceQueue<Map<String, Object>>();
+
+    private final ConcurrentMap<Class<? extends IpcCommand>, DeduplicationStatistics> statistics =
+        Maps.newConcurrentMap();
+
+    @Override
+    public Map<String, Object> deduplicate(Class<? extends IpcCommand> command, Map<String, Object> result) {
+        Preconditions.checkNotNull(command, "Command");
+        if (result == null) {
+            return null;
+        }
+        expunge();
+        final DeduplicationStatistics counters = statisticsOf(command);
+        final int hash = result.hashCode();
+        while (true) {
+            final Shared existing = shared.get(new Probe(result, hash));
+            if (existing == null) {
+                @SuppressWarnings("unchecked")
+                final Map<String, Object> copy = (Map<String, Object>) unmodifiable(result);
+                final Shared created = new Shared(copy, hash, counters, queue);
+                if (shared.putIfAbsent(created, created) == null) {
+                    counters.unique();
+                    return copy;
+                }
+            } else {
+                final Map<String, Object> copy = existing.get();
+                if (copy != null) {
+                    existing.references.incrementAndGet();
+                    counters.duplicate(existing.getSize());
+                    return copy;
+                }
+                // cleared in the meantime, will be expunged
+                shared.remove(existing, existing);
+            }
+        }
+    }
+
+    private static Object unmodifiable(Object value) {
+        if (CompactResults.isCompact(value)) {
+            return value;
+        } else if (value instanceof Map<?, ?>) {
+            final Map<Object, Object> copy = Maps.newLinkedHashMap();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), unmodifiable(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(copy);
+        } else if (value instanceof Set<?>) {
+            final Set<Object> copy = Sets.newLinkedHashSet();
+            for (Object element : (Set<?>) value) {
+                copy.add(unmodifiable(element));
+            }
+            return Collections.unmodifiableSet(copy);
+        } else if (value instanceof Collection<?>) {
+            final List<Object> copy = Lists.newArrayListWithCapacity(((Collection<?>) value).size());
+            for (Object element : (Collection<?>) value) {
+                copy.add(unmodifiable(element));
+            }
+            return Collections.unmodifiableList(copy);
+        } else {
+            return value;
+        }
+    }
+
+    private DeduplicationStatistics statisticsOf(Class<? extends IpcCommand> command) {
+        final DeduplicationStatistics existing = statistics.get(command);
+        if (existing == null) {
+            final DeduplicationStatistics created = new DeduplicationStatistics(command);
+            final DeduplicationStatistics raced = statistics.putIfAbsent(command, created);
+            return raced == null ? created : raced;
+        } else {
+            return existing;
+        }
+    }
+
+    private void expunge() {
+        Reference<? extends Map<String, Object>> reference;
+        while ((reference = queue.poll()) != null) {
+            final Shared released = Shared.class.cast(reference);
+            if (shared.remove(released, released)) {
+                released.statistics.released(released.references.get(), released.getSize());
+            }
+        }
+    }
+
+    @Override
+    public Map<Class<? extends IpcCommand>, DeduplicationStatistics> getStatistics() {
+        expunge();
+        return ImmutableMap.copyOf(statistics);
+    }
+
+    /**
+     * Provides the number of shared copies, including released ones which were not yet expunged.
+     *
+     * @return the number of shared copies
+     */
+    int size() {
+        return shared.size();
+    }
+
+    /**
+     * Common base of lookup and stored keys. Two keys are equal if their results are equal.
+     */
+    private abstract static class Content extends WeakReference<Map<String, Object>> {
+
+        private final int hash;
+
+        Content(Map<String, Object> result, int hash, ReferenceQueue<Map<String, Object>> queue) {
+            super(result, queue);
+            this.hash = hash;
+        }
+
+        abstract Map<String, Object> content();
+
+        @Override
+        public final boolean equals(Object that) {
+            if (this == that) {
+                return true;
+            } else if (that instanceof Content) {
+                final Content other = Content.class.cast(that);
+                if (hash != other.hash) {
+                    return false;
+                }
+                final Map<String, Object> content = content();
+                return content != null && content.equals(other.content());
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public final int hashCode() {
+            return hash;
+        }
+
+    }
+
+    /**
+     * A strongly referenced result used to look up shared copies.
+     */
+    private static final class Probe extends Content {
+
+        private final Map<String, Object> result;
+
+        Probe(Map<String, Object> result, int hash) {
+            super(null, hash, null);
+            this.result = result;
+        }
+
+        @Override
+        Map<String, Object> content() {
+            return result;
+        }
+
+    }
+
+    /**
+     * A weakly referenced shared copy.
+     */
+    private static final class Shared extends Content {
+
+        private final DeduplicationStatistics statistics;
+
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private final long size;
+
+        Shared(Map<String, Object> result, int hash, DeduplicationStatistics statistics,
+            ReferenceQueue<Map<String, Object>> queue) {
+            super(result, hash, queue);
+            this.statistics = statistics;
+            this.size = ResultSizes.estimate(result);
+        }
+
+        @Override
+        Map<String, Object> content() {
+            return get();
+        }
+
+        long getSize() {
+            return size;
+        }
+
+    }
+
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.dependency;
+
+import java.util.LinkedList;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+/**
+ * Records the entities a command reads while its result is computed for the cache.
+ * Commands call {@link #register(String, Object)} for every entity their result depends on,
+ * the cache then indexes the result by these entities, see {@link DependencyIndex}.
+ *
+ * <p>
+ * Recording is bound to the computing thread. Registrations outside of a computation are ignored.
+ * Computations started while another one is recorded on the same thread add their entities
+ * to the outer computation as well, because its result includes theirs.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class Dependencies {
+
+    private static final ThreadLocal<LinkedList<Set<Entity>>> RECORDINGS = new ThreadLocal<LinkedList<Set<Entity>>>() {
+
+        @Override
+        protected LinkedList<Set<Entity>> initialValue() {
+            return new LinkedList<Set<Entity>>();
+        }
+
+    };
+
+    private Dependencies() {
+
+    }
+
+    /**
+     * Registers an entity the currently computed result depends on.
+     *
+     * @param type the entity type, e.g. "account"
+     * @param id the entity id
+     * @throws NullPointerException if type or id is null
+     */
+    public static void register(String type, Object id) {
+        final Entity entity = new Entity(type, id);
+        final Set<Entity> current = RECORDINGS.get().peek();
+        if (current != null) {
+            current.add(entity);
+        }
+    }
+
+    /**
+     * Registers entities the currently computed result depends on, e.g. those of a nested result
+     * which was read from the cache instead of being computed.
+     *
+     * @param entities the entities
+     * @throws NullPointerException if entities is null
+     */
+    public static void registerAll(Set<Entity> entities) {
+        Preconditions.checkNotNull(entities, "Entities");
+        final Set<Entity> current = RECORDINGS.get().peek();
+        if (current != null) {
+            current.addAll(entities);
+        }
+    }
+
+    /**
+     * Checks whether a recording was started on the current thread.
+     *
+     * @return true if registrations are recorded, false otherwise
+     */
+    public static boolean isRecording() {
+        return RECORDINGS.get().peek() != null;
+    }
+
+    /**
+     * Starts recording on the current thread. Used by the cache when it computes a result,
+     * every call has to be followed by {@link #end()}.
+     */
+    public static void begin() {
+        RECORDINGS.get().push(Sets.<Entity>newHashSet());
+    }
+
+    /**
+     * Stops the recording started last on the current thread.
+     *
+     * @return the recorded entities
+     * @throws IllegalStateException if no recording was started
+     */
+    public static Set<Entity> end() {
+        final LinkedList<Set<Entity>> recordings = RECORDINGS.get();
+        if (recordings.isEmpty()) {
+            throw new IllegalStateException("No recording started");
+        }
+        final Set<Entity> recorded = recordings.pop();
+        if (recordings.isEmpty()) {
+            RECORDINGS.remove();
+        } else {
+            recordings.peek().addAll(recorded);
+        }
+        return ImmutableSet.copyOf(recorded);
+    }
+
+}
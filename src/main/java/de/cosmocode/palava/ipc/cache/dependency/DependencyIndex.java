@@ -0,0 +1,338 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.dependency;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicates;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.InvalidatingCache;
+import de.cosmocode.palava.ipc.cache.IpcCacheService;
+
+/**
+ * A reverse index from the entities recorded by {@link Dependencies} to the cache keys
+ * of the results which read them. {@link #invalidateEntity(String, Object)} evicts exactly
+ * these results, across all commands.
+ *
+ * <p>
+ * Each key is indexed by the entities of its latest computation only. The index holds at most
+ * {@link DependencyConfig#CAPACITY} keys. When it is full, the oldest tenth of the keys is dropped
+ * and their results are invalidated as well, because nothing would invalidate them any more.
+ * </p>
+ *
+ * <p>
+ * Computations register before their result is stored, see {@link #register(CacheKey, Set, long)}.
+ * An entity invalidated in between marks the {@link Registration}, the cache then drops the result
+ * it stored afterwards.
+ * </p>
+ *
+ * <p>
+ * Dependency tracking is off unless the {@link DependencyModule} is installed, which binds the index.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class DependencyIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DependencyIndex.class);
+
+    // number of recently invalidated entities remembered for computations still running
+    private static final int RECENT = 1024;
+
+    static final int DEFAULT_CAPACITY = 100000;
+
+    private final IpcCacheService service;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final SetMultimap<Entity, CacheKey> dependents = HashMultimap.create();
+
+    // in order of registration, oldest first
+    private final Map<CacheKey, Registration> registrations = Maps.newLinkedHashMap();
+
+    // sequence of the latest invalidation per recently invalidated entity, oldest first
+    private final Map<Entity, Long> recent = Maps.newLinkedHashMap();
+
+    private long sequence;
+
+    // latest sequence no longer remembered in recent
+    private long forgotten;
+
+    private int capacity = DEFAULT_CAPACITY;
+
+    DependencyIndex(IpcCacheService service) {
+        this.service = Preconditions.checkNotNull(service, "Service");
+    }
+
+    void setCapacity(int capacity) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive");
+        this.capacity = capacity;
+    }
+
+    /**
+     * Provides the current invalidation sequence. Computations read it before they start
+     * and pass it to {@link #register(CacheKey, Set, long)}.
+     *
+     * @return the current sequence
+     */
+    public long getSequence() {
+        lock.lock();
+        try {
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Indexes the given key by the given entities, replacing previously indexed entities.
+     *
+     * @param key the cache key
+     * @param entities the entities the cached result depends on
+     * @return the registration
+     * @throws NullPointerException if key or entities is null
+     */
+    public Registration register(CacheKey key, Set<Entity> entities) {
+        return register(key, entities, getSequence());
+    }
+
+    /**
+     * Indexes the given key by the given entities, replacing previously indexed entities.
+     * If one of the entities was invalidated after the given sequence, the computation read
+     * outdated data. The key is not indexed then and the returned registration is invalidated.
+     *
+     * @param key the cache key
+     * @param entities the entities the cached result depends on
+     * @param since the sequence read before the result was computed
+     * @return the registration, which is invalidated once one of the entities is
+     * @throws NullPointerException if key or entities is null
+     */
+    public Registration register(CacheKey key, Set<Entity> entities, long since) {
+        Preconditions.checkNotNull(key, "CacheKey");
+        Preconditions.checkNotNull(entities, "Entities");
+        final Registration registration = new Registration(ImmutableSet.copyOf(entities));
+        final List<CacheKey> evicted;
+        lock.lock();
+        try {
+            unindex(key);
+            if (isInvalidatedSince(entities, since)) {
+                registration.invalidated = true;
+                evicted = ImmutableList.of();
+            } else {
+                for (Entity entity : entities) {
+                    dependents.put(entity, key);
+                }
+                registrations.put(key, registration);
+                evicted = registrations.size() > capacity ? evict() : ImmutableList.<CacheKey>of();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!evicted.isEmpty()) {
+            final int invalidated = invalidate(evicted);
+            LOG.debug("Dropped {} keys from the full index and invalidated {} entries", evicted.size(), invalidated);
+        }
+        return registration;
+    }
+
+    private boolean isInvalidatedSince(Set<Entity> entities, long since) {
+        if (forgotten > since) {
+            // the invalidations in question are not remembered any more
+            return true;
+        }
+        for (Entity entity : entities) {
+            final Long invalidated = recent.get(entity);
+            if (invalidated != null && invalidated.longValue() > since) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Registration unindex(CacheKey key) {
+        final Registration registration = registrations.remove(key);
+        if (registration != null) {
+            for (Entity entity : registration.entities) {
+                dependents.remove(entity, key);
+            }
+        }
+        return registration;
+    }
+
+    private List<CacheKey> evict() {
+        final List<CacheKey> evicted = Lists.newArrayList();
+        final Iterator<CacheKey> iterator = registrations.keySet().iterator();
+        final int count = Math.max(1, capacity / 10);
+        while (evicted.size() < count && iterator.hasNext()) {
+            evicted.add(iterator.next());
+        }
+        for (CacheKey key : evicted) {
+            unindex(key).invalidated = true;
+        }
+        return evicted;
+    }
+
+    /**
+     * Provides the keys of all results which depend on the given entity.
+     *
+     * @param type the entity type
+     * @param id the entity id
+     * @return the dependent keys
+     * @throws NullPointerException if type or id is null
+     */
+    public Set<CacheKey> getDependents(String type, Object id) {
+        final Entity entity = new Entity(type, id);
+        lock.lock();
+        try {
+            return ImmutableSet.copyOf(dependents.get(entity));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Provides the entities the given key is indexed by.
+     *
+     * @param key the cache key
+     * @return the entities, empty if the key is not indexed
+     * @throws NullPointerException if key is null
+     */
+    public Set<Entity> getDependencies(CacheKey key) {
+        Preconditions.checkNotNull(key, "CacheKey");
+        lock.lock();
+        try {
+            final Registration registration = registrations.get(key);
+            return registration == null ? ImmutableSet.<Entity>of() : registration.entities;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Invalidates all results which depend on the given entity.
+     *
+     * @param type the entity type
+     * @param id the entity id
+     * @return the number of invalidated entries, the number of dependent keys if the service
+     *         is no {@link InvalidatingCache}
+     * @throws NullPointerException if type or id is null
+     */
+    public int invalidateEntity(String type, Object id) {
+        final Entity entity = new Entity(type, id);
+        final List<CacheKey> keys;
+        lock.lock();
+        try {
+            sequence++;
+            recent.remove(entity);
+            recent.put(entity, Long.valueOf(sequence));
+            if (recent.size() > RECENT) {
+                final Iterator<Long> eldest = recent.values().iterator();
+                forgotten = eldest.next().longValue();
+                eldest.remove();
+            }
+            keys = ImmutableList.copyOf(dependents.get(entity));
+            for (CacheKey key : keys) {
+                unindex(key).invalidated = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        final int invalidated = invalidate(keys);
+        LOG.debug("Invalidated {} entries depending on {}", invalidated, entity);
+        return invalidated;
+    }
+
+    private int invalidate(List<CacheKey> keys) {
+        if (service instanceof InvalidatingCache) {
+            final InvalidatingCache invalidating = InvalidatingCache.class.cast(service);
+            int invalidated = 0;
+            for (CacheKey key : keys) {
+                if (invalidating.invalidateKey(key)) {
+                    invalidated++;
+                }
+            }
+            return invalidated;
+        }
+        final SetMultimap<Class<? extends IpcCommand>, CacheKey> byCommand = HashMultimap.create();
+        for (CacheKey key : keys) {
+            byCommand.put(key.getCommand(), key);
+        }
+        // one invalidation per command, so scanning services scan once per command instead of once per key
+        for (Class<? extends IpcCommand> command : byCommand.keySet()) {
+            service.invalidate(command, Predicates.in(byCommand.get(command)));
+        }
+        return keys.size();
+    }
+
+    /**
+     * Provides the number of indexed keys.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return registrations.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The registration of a computed result.
+     */
+    public static final class Registration {
+
+        private final Set<Entity> entities;
+
+        private volatile boolean invalidated;
+
+        private Registration(Set<Entity> entities) {
+            this.entities = entities;
+        }
+
+        /**
+         * Checks whether one of the entities was invalidated since the result was computed.
+         * The result must not be cached then.
+         *
+         * @return true if the result is outdated, false otherwise
+         */
+        public boolean isInvalidated() {
+            return invalidated;
+        }
+
+    }
+
+}
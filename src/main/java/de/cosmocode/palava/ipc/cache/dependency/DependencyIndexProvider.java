@@ -0,0 +1,56 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.dependency;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.ipc.cache.IpcCacheService;
+
+/**
+ * Creates the {@link DependencyIndex} bound by the {@link DependencyModule}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class DependencyIndexProvider implements Provider<DependencyIndex> {
+
+    private final IpcCacheService service;
+
+    private int capacity = DependencyIndex.DEFAULT_CAPACITY;
+
+    @Inject
+    DependencyIndexProvider(IpcCacheService service) {
+        this.service = Preconditions.checkNotNull(service, "Service");
+    }
+
+    @Inject(optional = true)
+    void setCapacity(@Named(DependencyConfig.CAPACITY) int capacity) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive");
+        this.capacity = capacity;
+    }
+
+    @Override
+    public DependencyIndex get() {
+        final DependencyIndex index = new DependencyIndex(service);
+        index.setCapacity(capacity);
+        return index;
+    }
+
+}
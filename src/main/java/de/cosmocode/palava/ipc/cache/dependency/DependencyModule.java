@@ -0,0 +1,40 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.dependency;
+
+import com.google.inject.Binder;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+
+/**
+ * Enables dependency tracking by binding the {@link DependencyIndex}. The
+ * {@link de.cosmocode.palava.ipc.cache.CacheFilter} then indexes cached results by the entities
+ * recorded with {@link Dependencies} and {@link DependencyIndex#invalidateEntity(String, Object)}
+ * evicts them. Without this module nothing is indexed.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see DependencyConfig
+ */
+public final class DependencyModule implements Module {
+
+    @Override
+    public void configure(Binder binder) {
+        binder.bind(DependencyIndex.class).toProvider(DependencyIndexProvider.class).in(Singleton.class);
+    }
+
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.dependency;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Identifies a data entity cached results depend on, e.g. the account with id 5.
+ * Ids are compared by their string form, so 5, 5L and "5" denote the same entity.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class Entity {
+
+    private final String type;
+
+    private final String id;
+
+    /**
+     * Creates an entity.
+     *
+     * @param type the entity type
+     * @param id the entity id
+     * @throws NullPointerException if type or id is null
+     */
+    public Entity(String type, Object id) {
+        this.type = Preconditions.checkNotNull(type, "Type");
+        this.id = Preconditions.checkNotNull(id, "Id").toString();
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (this == that) {
+            return true;
+        } else if (that instanceof Entity) {
+            final Entity other = Entity.class.cast(that);
+            return type.equals(other.type) && id.equals(other.id);
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * type.hashCode() + id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return type + ":" + id;
+    }
+
+}
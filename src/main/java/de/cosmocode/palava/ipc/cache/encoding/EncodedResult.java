@@ -0,0 +1,70 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.encoding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * A cached result which carries its encoded wire representation. It is still a regular, but
+ * unmodifiable, result map, so code which does not know about encoded results keeps working.
+ *
+ * <p>
+ * Protocol writers check for this interface and write the encoded bytes directly if the content type
+ * matches their own, instead of encoding the map again:
+ * </p>
+ *
+ * <pre>
+ * if (result instanceof EncodedResult) {
+ *     final EncodedResult encoded = (EncodedResult) result;
+ *     if (CONTENT_TYPE.equals(encoded.getContentType())) {
+ *         encoded.writeTo(output);
+ *         return;
+ *     }
+ * }
+ * encode(result, output);
+ * </pre>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public interface EncodedResult extends Map<String, Object> {
+
+    /**
+     * Provides the content type of the encoded bytes.
+     *
+     * @return the content type
+     */
+    String getContentType();
+
+    /**
+     * Provides the length of the encoded bytes.
+     *
+     * @return the length in bytes
+     */
+    int getEncodedLength();
+
+    /**
+     * Writes the encoded bytes to the given stream.
+     *
+     * @param output the stream to write to
+     * @throws IOException if writing failed
+     */
+    void writeTo(OutputStream output) throws IOException;
+
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.encoding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+
+import com.google.common.collect.ForwardingMap;
+
+/**
+ * Default {@link EncodedResult} holding the result map next to its encoded bytes.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class EncodedResultMap extends ForwardingMap<String, Object> implements EncodedResult, Serializable {
+
+    private static final long serialVersionUID = 6024128409712937826L;
+
+    private final Map<String, Object> result;
+
+    private final String contentType;
+
+    private final byte[] encoded;
+
+    EncodedResultMap(Map<String, Object> result, String contentType, byte[] encoded) {
+        this.result = Collections.unmodifiableMap(result);
+        this.contentType = contentType;
+        this.encoded = encoded;
+    }
+
+    @Override
+    protected Map<String, Object> delegate() {
+        return result;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public int getEncodedLength() {
+        return encoded.length;
+    }
+
+    @Override
+    public void writeTo(OutputStream output) throws IOException {
+        output.write(encoded);
+    }
+
+}
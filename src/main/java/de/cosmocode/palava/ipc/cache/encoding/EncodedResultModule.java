@@ -0,0 +1,45 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.encoding;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Binder;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+
+/**
+ * Enables caching of encoded results by binding the given {@link ResultEncoder}.
+ * The {@link de.cosmocode.palava.ipc.cache.CacheFilter} then caches {@link EncodedResult}s,
+ * which protocol writers can send without encoding them again.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class EncodedResultModule implements Module {
+
+    private final Class<? extends ResultEncoder> encoder;
+
+    public EncodedResultModule(Class<? extends ResultEncoder> encoder) {
+        this.encoder = Preconditions.checkNotNull(encoder, "Encoder");
+    }
+
+    @Override
+    public void configure(Binder binder) {
+        binder.bind(ResultEncoder.class).to(encoder).in(Singleton.class);
+    }
+
+}
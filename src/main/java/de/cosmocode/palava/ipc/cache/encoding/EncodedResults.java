@@ -0,0 +1,87 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.encoding;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.IpcCommandExecution;
+
+/**
+ * Static utility methods for {@link EncodedResult}s.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class EncodedResults {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EncodedResults.class);
+
+    private EncodedResults() {
+
+    }
+
+    /**
+     * Encodes the given result. Results which the encoder declines or fails to encode
+     * are returned unchanged.
+     *
+     * @param result the result
+     * @param encoder the encoder
+     * @return an {@link EncodedResult} or the given result
+     */
+    public static Map<String, Object> encode(Map<String, Object> result, ResultEncoder encoder) {
+        Preconditions.checkNotNull(encoder, "Encoder");
+        if (result == null || result instanceof EncodedResult) {
+            return result;
+        }
+        final byte[] encoded;
+        try {
+            encoded = encoder.encode(result);
+        } catch (IOException e) {
+            LOG.warn("Unable to encode result, caching it unencoded", e);
+            return result;
+        }
+        return encoded == null ? result : new EncodedResultMap(result, encoder.getContentType(), encoded);
+    }
+
+    /**
+     * Decorates the given execution so its result is encoded before it gets cached.
+     *
+     * @param execution the execution
+     * @param encoder the encoder
+     * @return an encoding execution
+     */
+    public static IpcCommandExecution encoding(final IpcCommandExecution execution, final ResultEncoder encoder) {
+        Preconditions.checkNotNull(execution, "Execution");
+        Preconditions.checkNotNull(encoder, "Encoder");
+        return new IpcCommandExecution() {
+
+            @Override
+            public Map<String, Object> call() throws IpcCommandExecutionException {
+                return encode(execution.call(), encoder);
+            }
+
+        };
+    }
+
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.encoding;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Encodes command results into the wire format of a protocol. Protocol modules
+ * bind their implementation to enable caching of encoded results.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see EncodedResultModule
+ */
+public interface ResultEncoder {
+
+    /**
+     * Provides the content type of the encoded results, e.g. {@code application/json}.
+     *
+     * @return the content type
+     */
+    String getContentType();
+
+    /**
+     * Encodes the given result.
+     *
+     * @param result the result to encode
+     * @return the encoded result or null if this result should not be cached in encoded form
+     * @throws IOException if encoding failed
+     */
+    byte[] encode(Map<String, Object> result) throws IOException;
+
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.format;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Decodes values of an indexed result on demand. Only absolute reads are used,
+ * so one instance can be shared by all views of a result.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see IndexedWriter
+ */
+final class IndexedBuffer {
+
+    private final ByteBuffer buffer;
+
+    private final int table;
+
+    IndexedBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.table = buffer.getInt(4);
+    }
+
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    int getInt(int position) {
+        return buffer.getInt(position);
+    }
+
+    private long varint(int position) {
+        long value = 0L;
+        int shift = 0;
+        int current = position;
+        while (true) {
+            final byte next = buffer.get(current++);
+            value |= (long) (next & 0x7F) << shift;
+            if (next >= 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    private int varintSize(int position) {
+        int current = position;
+        while (buffer.get(current) < 0) {
+            current++;
+        }
+        return current - position + 1;
+    }
+
+    private long signed(int position) {
+        final long value = varint(position);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private byte[] bytes(int position) {
+        final int length = (int) varint(position);
+        final byte[] bytes = new byte[length];
+        final ByteBuffer view = buffer.duplicate();
+        view.position(position + varintSize(position));
+        view.get(bytes);
+        return bytes;
+    }
+
+    private int stringAt(int index) {
+        return table + buffer.getInt(table + 4 + index * 4);
+    }
+
+    String string(int index) {
+        return new String(bytes(stringAt(index)), Charsets.UTF_8);
+    }
+
+    /**
+     * Compares the table string with the given index with the given bytes.
+     */
+    int compare(int index, byte[] bytes) {
+        final int position = stringAt(index);
+        final int length = (int) varint(position);
+        final int start = position + varintSize(position);
+        final int common = Math.min(length, bytes.length);
+        for (int i = 0; i < common; i++) {
+            final int difference = (buffer.get(start + i) & 0xFF) - (bytes[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - bytes.length;
+    }
+
+    /**
+     * Decodes the value at the given position. Maps and lists are returned as views.
+     */
+    Object value(int position) {
+        final byte tag = buffer.get(position);
+        switch (tag) {
+            case IndexedFormat.NULL: {
+                return null;
+            }
+            case IndexedFormat.TRUE: {
+                return Boolean.TRUE;
+            }
+            case IndexedFormat.FALSE: {
+                return Boolean.FALSE;
+            }
+            case IndexedFormat.INT: {
+                return (int) signed(position + 1);
+            }
+            case IndexedFormat.LONG: {
+                return signed(position + 1);
+            }
+            case IndexedFormat.DOUBLE: {
+                return Double.longBitsToDouble(buffer.getLong(position + 1));
+            }
+            case IndexedFormat.STRING: {
+                return new String(bytes(position + 1), Charsets.UTF_8);
+            }
+            case IndexedFormat.REFERENCE: {
+                return string((int) varint(position + 1));
+            }
+            case IndexedFormat.MAP: {
+                return new IndexedMapView(this, position + 1);
+            }
+            case IndexedFormat.LIST: {
+                return new IndexedListView(this, position + 1);
+            }
+            case IndexedFormat.SERIALIZED: {
+                return deserialize(bytes(position + 1));
+            }
+            default: {
+                throw new IllegalStateException("Unknown tag " + tag + " at " + position);
+            }
+        }
+    }
+
+    private static Object deserialize(byte[] bytes) {
+        try {
+            final ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            try {
+                return input.readObject();
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Walks the value at the given position.
+     */
+    void accept(int position, ResultVisitor visitor) throws IOException {
+        final byte tag = buffer.get(position);
+        if (tag == IndexedFormat.MAP) {
+            acceptMap(position + 1, visitor);
+        } else if (tag == IndexedFormat.LIST) {
+            final int start = position + 1;
+            final int size = buffer.getInt(start);
+            visitor.visitListStart(size);
+            for (int i = 0; i < size; i++) {
+                accept(start + buffer.getInt(start + 4 + i * 4), visitor);
+            }
+            visitor.visitListEnd();
+        } else {
+            visitor.visitValue(value(position));
+        }
+    }
+
+    void acceptMap(int start, ResultVisitor visitor) throws IOException {
+        final int size = buffer.getInt(start);
+        visitor.visitMapStart(size);
+        for (int i = 0; i < size; i++) {
+            final int entry = start + 4 + i * 8;
+            visitor.visitKey(string(buffer.getInt(entry)));
+            accept(start + buffer.getInt(entry + 4), visitor);
+        }
+        visitor.visitMapEnd();
+    }
+
+    /**
+     * Checks whether the map starting at the given position is the whole result.
+     */
+    boolean isRoot(int start) {
+        return start == 8;
+    }
+
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.format;
+
+import java.util.Map;
+
+/**
+ * Constants and helpers of the indexed binary form.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see IndexedWriter
+ * @see IndexedBuffer
+ */
+final class IndexedFormat {
+
+    /**
+     * "PIRF", can't be confused with the 0xACED header of java serialization.
+     */
+    static final int MAGIC = 0x50495246;
+
+    static final byte NULL = 0;
+    static final byte TRUE = 1;
+    static final byte FALSE = 2;
+    static final byte INT = 3;
+    static final byte LONG = 4;
+    static final byte DOUBLE = 5;
+    static final byte STRING = 6;
+    static final byte MAP = 7;
+    static final byte LIST = 8;
+    static final byte SERIALIZED = 9;
+    static final byte REFERENCE = 10;
+
+    private IndexedFormat() {
+
+    }
+
+    static boolean hasStringKeys(Map<?, ?> map) {
+        for (Object key : map.keySet()) {
+            if (!(key instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int compare(byte[] left, byte[] right) {
+        final int length = Math.min(left.length, right.length);
+        for (int i = 0; i < length; i++) {
+            final int difference = (left[i] & 0xFF) - (right[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return left.length - right.length;
+    }
+
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.format;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list over a list block. Elements are decoded on every access.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class IndexedListView extends AbstractList<Object> implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 4816372503317152012L;
+
+    private final transient IndexedBuffer buffer;
+
+    private final transient int start;
+
+    private final transient int size;
+
+    IndexedListView(IndexedBuffer buffer, int start) {
+        this.buffer = buffer;
+        this.start = start;
+        this.size = buffer.getInt(start);
+    }
+
+    @Override
+    public Object get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return buffer.value(start + buffer.getInt(start + 4 + index * 4));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private Object writeReplace() {
+        return new ArrayList<Object>(this);
+    }
+
+}
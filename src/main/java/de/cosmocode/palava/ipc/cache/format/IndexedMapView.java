@@ -0,0 +1,205 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.format;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.google.common.base.Charsets;
+
+/**
+ * {@link IndexedResult} over a map block. Keys are looked up by binary search
+ * on their encoded bytes, values are decoded on every access.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class IndexedMapView extends AbstractMap<String, Object> implements IndexedResult, Serializable {
+
+    private static final long serialVersionUID = 2293617425604165233L;
+
+    private final transient IndexedBuffer buffer;
+
+    private final transient int start;
+
+    private final transient int size;
+
+    IndexedMapView(IndexedBuffer buffer, int start) {
+        this.buffer = buffer;
+        this.start = start;
+        this.size = buffer.getInt(start);
+    }
+
+    private int keyAt(int index) {
+        return buffer.getInt(start + 4 + index * 8);
+    }
+
+    private int valueAt(int index) {
+        return start + buffer.getInt(start + 8 + index * 8);
+    }
+
+    private int indexOf(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        final byte[] bytes = String.class.cast(key).getBytes(Charsets.UTF_8);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int comparison = buffer.compare(keyAt(middle), bytes);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        final int index = indexOf(key);
+        return index < 0 ? null : buffer.value(valueAt(index));
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new Iterator<Map.Entry<String, Object>>() {
+
+                    private int index;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < size;
+                    }
+
+                    @Override
+                    public Map.Entry<String, Object> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        final String key = buffer.string(keyAt(index));
+                        final Object value = buffer.value(valueAt(index));
+                        index++;
+                        return new AbstractMap.SimpleImmutableEntry<String, Object>(key, value);
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+        };
+    }
+
+    @Override
+    public void accept(ResultVisitor visitor) throws IOException {
+        buffer.acceptMap(start, visitor);
+    }
+
+    /**
+     * Provides the bytes of this map as a standalone result.
+     */
+    private ByteBuffer standalone() {
+        if (buffer.isRoot(start)) {
+            final ByteBuffer view = buffer.getBuffer().duplicate();
+            view.position(0);
+            return view;
+        } else {
+            // nested maps don't know their length, so they are written again
+            try {
+                return ByteBuffer.wrap(new IndexedWriter().write(this));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    @Override
+    public int getLength() {
+        return standalone().remaining();
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        final ByteBuffer bytes = standalone();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        final ByteBuffer bytes = standalone();
+        final byte[] copy = new byte[bytes.remaining()];
+        bytes.get(copy);
+        return new SerializedForm(copy);
+    }
+
+    /**
+     * Serialized form of an indexed map, which is its binary form.
+     */
+    private static final class SerializedForm implements Serializable {
+
+        private static final long serialVersionUID = -5360120932372316254L;
+
+        private final byte[] bytes;
+
+        SerializedForm(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            return IndexedResults.view(bytes);
+        }
+
+    }
+
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.format;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+
+/**
+ * A read-only result view over its {@link IndexedResults indexed} binary form.
+ * Values are decoded when they are accessed, nested maps and lists are views as well.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public interface IndexedResult extends Map<String, Object> {
+
+    /**
+     * Walks this result without building its object graph.
+     *
+     * @param visitor the visitor
+     * @throws IOException if the visitor failed
+     */
+    void accept(ResultVisitor visitor) throws IOException;
+
+    /**
+     * Provides the length of the binary form.
+     *
+     * @return the length in bytes
+     */
+    int getLength();
+
+    /**
+     * Writes the binary form to the given channel.
+     *
+     * @param channel the channel
+     * @throws IOException if writing failed
+     */
+    void writeTo(WritableByteChannel channel) throws IOException;
+
+}
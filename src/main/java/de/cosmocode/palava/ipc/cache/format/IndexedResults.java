@@ -0,0 +1,102 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Static utility methods to write results in an indexed binary form and to read them
+ * as {@link IndexedResult}s, without deserializing the whole object graph on every read.
+ *
+ * <p>
+ * Maps with string keys, lists, strings, booleans, integers, longs and doubles are
+ * written natively, without class descriptors, all other values using java serialization.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class IndexedResults {
+
+    private IndexedResults() {
+
+    }
+
+    /**
+     * Writes the given result in indexed binary form.
+     *
+     * @param result the result
+     * @return the binary form
+     * @throws IOException if a value could not be serialized
+     * @throws IllegalArgumentException if the result has keys which are not strings
+     */
+    public static byte[] write(Map<?, ?> result) throws IOException {
+        Preconditions.checkNotNull(result, "Result");
+        Preconditions.checkArgument(IndexedFormat.hasStringKeys(result), "%s has non string keys", result);
+        return new IndexedWriter().write(result);
+    }
+
+    /**
+     * Checks whether the given result can be written using {@link #write(Map)},
+     * which requires all its keys to be strings.
+     *
+     * @param result the result
+     * @return true if the result can be written in indexed form, false otherwise
+     * @throws NullPointerException if result is null
+     */
+    public static boolean isWritable(Map<?, ?> result) {
+        return IndexedFormat.hasStringKeys(Preconditions.checkNotNull(result, "Result"));
+    }
+
+    /**
+     * Checks whether the remaining bytes of the given buffer start like an indexed result.
+     *
+     * @param buffer the buffer
+     * @return true if the bytes can be read using {@link #view(ByteBuffer)}
+     */
+    public static boolean isIndexed(ByteBuffer buffer) {
+        return buffer.remaining() >= 12 && buffer.getInt(buffer.position()) == IndexedFormat.MAGIC;
+    }
+
+    /**
+     * Provides a view over the given bytes, which must not be modified afterwards.
+     *
+     * @param bytes the bytes of a result written by {@link #write(Map)}
+     * @return a read-only view
+     * @throws IllegalArgumentException if the bytes are no indexed result
+     */
+    public static IndexedResult view(byte[] bytes) {
+        return view(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Provides a view over the remaining bytes of the given buffer, which must not be modified afterwards.
+     *
+     * @param buffer the buffer holding a result written by {@link #write(Map)}
+     * @return a read-only view
+     * @throws IllegalArgumentException if the bytes are no indexed result
+     */
+    public static IndexedResult view(ByteBuffer buffer) {
+        Preconditions.checkArgument(isIndexed(buffer), "No indexed result");
+        return new IndexedMapView(new IndexedBuffer(buffer.slice()), 8);
+    }
+
+}
@@ -0,0 +1,253 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.format;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Writes the indexed binary form. Fixed size integers are big endian, varints are
+ * little endian base 128, signed ones zigzag encoded. Offsets are relative to the start
+ * of the enclosing map, list or table block.
+ *
+ * <pre>
+ * result := MAGIC tableStart map table
+ * value  := NULL | TRUE | FALSE | INT varint | LONG varint | DOUBLE double
+ *         | STRING length utf8 | REFERENCE index | MAP map | LIST list | SERIALIZED length bytes
+ * map    := size (keyIndex valueOffset){size} value{size}   keys sorted by their utf8 bytes
+ * list   := size valueOffset{size} value{size}
+ * table  := count stringOffset{count} (length utf8){count}
+ * </pre>
+ *
+ * All keys and short string values are stored once in the string table, so results
+ * with many maps of the same shape don't repeat their keys.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class IndexedWriter {
+
+    /**
+     * String values up to this length are stored in the table, longer ones inline.
+     */
+    private static final int MAX_REFERENCE_LENGTH = 32;
+
+    private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+
+        @Override
+        public int compare(Entry left, Entry right) {
+            return IndexedFormat.compare(left.key, right.key);
+        }
+
+    };
+
+    private final Map<String, Integer> indices = Maps.newHashMap();
+
+    private final List<byte[]> strings = Lists.newArrayList();
+
+    private byte[] buffer = new byte[256];
+
+    private int size;
+
+    byte[] write(Map<?, ?> result) throws IOException {
+        writeInt(IndexedFormat.MAGIC);
+        writeInt(0);
+        writeMap(result);
+        putInt(4, size);
+        writeTable();
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private void ensure(int additional) {
+        if (size + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+        }
+    }
+
+    private void writeByte(int value) {
+        ensure(1);
+        buffer[size++] = (byte) value;
+    }
+
+    private void writeInt(int value) {
+        ensure(4);
+        putInt(size, value);
+        size += 4;
+    }
+
+    private void putInt(int position, int value) {
+        buffer[position] = (byte) (value >>> 24);
+        buffer[position + 1] = (byte) (value >>> 16);
+        buffer[position + 2] = (byte) (value >>> 8);
+        buffer[position + 3] = (byte) value;
+    }
+
+    private void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    private void writeVarint(long value) {
+        ensure(10);
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        buffer[size++] = (byte) remaining;
+    }
+
+    private void writeSigned(long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    private void writeBytes(byte[] bytes) {
+        writeVarint(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private int reference(String string, byte[] bytes) {
+        final Integer existing = indices.get(string);
+        if (existing == null) {
+            final int index = strings.size();
+            strings.add(bytes == null ? string.getBytes(Charsets.UTF_8) : bytes);
+            indices.put(string, index);
+            return index;
+        } else {
+            return existing.intValue();
+        }
+    }
+
+    private void writeTable() {
+        final int start = size;
+        final int count = strings.size();
+        writeInt(count);
+        final int offsets = size;
+        ensure(count * 4);
+        size += count * 4;
+        for (int i = 0; i < count; i++) {
+            putInt(offsets + i * 4, size - start);
+            writeBytes(strings.get(i));
+        }
+    }
+
+    private void writeMap(Map<?, ?> map) throws IOException {
+        final int start = size;
+        final int count = map.size();
+        final Entry[] entries = new Entry[count];
+        int index = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            final String key = String.class.cast(entry.getKey());
+            entries[index++] = new Entry(key, key.getBytes(Charsets.UTF_8), entry.getValue());
+        }
+        Arrays.sort(entries, ORDER);
+        writeInt(count);
+        final int table = size;
+        ensure(count * 8);
+        size += count * 8;
+        for (int i = 0; i < count; i++) {
+            putInt(table + i * 8, reference(entries[i].name, entries[i].key));
+            putInt(table + i * 8 + 4, size - start);
+            writeValue(entries[i].value);
+        }
+    }
+
+    private void writeList(List<?> list) throws IOException {
+        final int start = size;
+        final int count = list.size();
+        writeInt(count);
+        final int table = size;
+        ensure(count * 4);
+        size += count * 4;
+        int index = 0;
+        for (Object element : list) {
+            putInt(table + index * 4, size - start);
+            writeValue(element);
+            index++;
+        }
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value == null) {
+            writeByte(IndexedFormat.NULL);
+        } else if (value instanceof Boolean) {
+            writeByte(Boolean.TRUE.equals(value) ? IndexedFormat.TRUE : IndexedFormat.FALSE);
+        } else if (value instanceof Integer) {
+            writeByte(IndexedFormat.INT);
+            writeSigned(Integer.class.cast(value).intValue());
+        } else if (value instanceof Long) {
+            writeByte(IndexedFormat.LONG);
+            writeSigned(Long.class.cast(value).longValue());
+        } else if (value instanceof Double) {
+            writeByte(IndexedFormat.DOUBLE);
+            writeLong(Double.doubleToRawLongBits(Double.class.cast(value).doubleValue()));
+        } else if (value instanceof String) {
+            final String string = String.class.cast(value);
+            if (string.length() <= MAX_REFERENCE_LENGTH) {
+                writeByte(IndexedFormat.REFERENCE);
+                writeVarint(reference(string, null));
+            } else {
+                writeByte(IndexedFormat.STRING);
+                writeBytes(string.getBytes(Charsets.UTF_8));
+            }
+        } else if (value instanceof Map<?, ?> && IndexedFormat.hasStringKeys((Map<?, ?>) value)) {
+            writeByte(IndexedFormat.MAP);
+            writeMap((Map<?, ?>) value);
+        } else if (value instanceof List<?>) {
+            writeByte(IndexedFormat.LIST);
+            writeList((List<?>) value);
+        } else {
+            writeByte(IndexedFormat.SERIALIZED);
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            final ObjectOutputStream output = new ObjectOutputStream(bytes);
+            output.writeObject(value);
+            output.close();
+            writeBytes(bytes.toByteArray());
+        }
+    }
+
+    /**
+     * A map entry with its encoded key.
+     */
+    private static final class Entry {
+
+        private final String name;
+
+        private final byte[] key;
+
+        private final Object value;
+
+        Entry(String name, byte[] key, Object value) {
+            this.name = name;
+            this.key = key;
+            this.value = value;
+        }
+
+    }
+
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.format;
+
+import java.io.IOException;
+
+/**
+ * Receives the structure of an {@link IndexedResult} in document order,
+ * e.g. to write it as a response without building the object graph first.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see IndexedResult#accept(ResultVisitor)
+ */
+public interface ResultVisitor {
+
+    /**
+     * Called when a map starts.
+     *
+     * @param size the number of entries
+     * @throws IOException if visiting failed
+     */
+    void visitMapStart(int size) throws IOException;
+
+    /**
+     * Called for every key of a map, followed by the visit of its value.
+     *
+     * @param key the key
+     * @throws IOException if visiting failed
+     */
+    void visitKey(String key) throws IOException;
+
+    /**
+     * Called when a map ends.
+     *
+     * @throws IOException if visiting failed
+     */
+    void visitMapEnd() throws IOException;
+
+    /**
+     * Called when a list starts.
+     *
+     * @param size the number of elements
+     * @throws IOException if visiting failed
+     */
+    void visitListStart(int size) throws IOException;
+
+    /**
+     * Called when a list ends.
+     *
+     * @throws IOException if visiting failed
+     */
+    void visitListEnd() throws IOException;
+
+    /**
+     * Called for every value which is neither a map nor a list.
+     *
+     * @param value the value, may be null
+     * @throws IOException if visiting failed
+     */
+    void visitValue(Object value) throws IOException;
+
+}
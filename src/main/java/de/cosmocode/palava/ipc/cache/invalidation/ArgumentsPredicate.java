@@ -0,0 +1,100 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.invalidation;
+
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+
+import de.cosmocode.palava.ipc.cache.CacheKey;
+
+/**
+ * A {@link Predicate} matching cache keys whose arguments contain all of the given
+ * argument values. Values are compared loosely, because the same argument may be
+ * passed as a string by one client and as a number by another.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class ArgumentsPredicate implements Predicate<CacheKey> {
+
+    private final Map<String, Object> arguments;
+
+    /**
+     * Creates a predicate matching the given argument values.
+     *
+     * @param arguments the argument values keys have to contain
+     * @throws NullPointerException if arguments is null or contains null
+     */
+    public ArgumentsPredicate(Map<String, ?> arguments) {
+        this.arguments = ImmutableMap.copyOf(Preconditions.checkNotNull(arguments, "Arguments"));
+    }
+
+    /**
+     * Provides the argument values keys have to contain.
+     *
+     * @return the argument values
+     */
+    public Map<String, Object> getArguments() {
+        return arguments;
+    }
+
+    @Override
+    public boolean apply(CacheKey input) {
+        final Map<String, Object> actual = input.getArguments();
+        for (Map.Entry<String, Object> entry : arguments.entrySet()) {
+            if (!matches(entry.getValue(), actual.get(entry.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(Object expected, Object actual) {
+        if (Objects.equal(expected, actual)) {
+            return true;
+        } else if (actual == null) {
+            return false;
+        } else if (expected instanceof Number && actual instanceof Number) {
+            final Number left = Number.class.cast(expected);
+            final Number right = Number.class.cast(actual);
+            return left.longValue() == right.longValue() && left.doubleValue() == right.doubleValue();
+        } else {
+            return expected.toString().equals(actual.toString());
+        }
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        return this == that || that instanceof ArgumentsPredicate
+            && arguments.equals(ArgumentsPredicate.class.cast(that).arguments);
+    }
+
+    @Override
+    public int hashCode() {
+        return arguments.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ArgumentsPredicate " + arguments;
+    }
+
+}
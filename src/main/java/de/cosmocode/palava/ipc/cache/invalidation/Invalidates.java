@@ -0,0 +1,57 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.invalidation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Marks a mutating command whose successful execution invalidates cached results
+ * of other commands. Cached results of the given commands are invalidated if their
+ * arguments equal the given arguments of the mutating call, e.g.
+ * {@code @Invalidates(commands = GetAccount.class, arguments = "account_id")}
+ * evicts all cached accounts with the same account id. Without arguments, all
+ * cached results of the given commands are invalidated.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see InvalidatesModule
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Invalidates {
+
+    /**
+     * The commands whose cached results should be invalidated.
+     *
+     * @return the invalidated commands
+     */
+    Class<? extends IpcCommand>[] commands();
+
+    /**
+     * The names of the arguments cached results have to share with the mutating call.
+     * Arguments missing in the mutating call match any value.
+     *
+     * @return the argument names
+     */
+    String[] arguments() default { };
+
+}
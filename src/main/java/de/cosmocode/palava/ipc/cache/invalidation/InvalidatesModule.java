@@ -0,0 +1,53 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.invalidation;
+
+import de.cosmocode.palava.ipc.Commands;
+import de.cosmocode.palava.ipc.FilterModule;
+
+/**
+ * Provides {@link Invalidates} by filtering annotated commands through
+ * the {@link InvalidationFilter}. Requires an
+ * {@link de.cosmocode.palava.ipc.cache.IpcCacheService} which implements
+ * {@link de.cosmocode.palava.ipc.cache.InvalidatingCache}, the filter is created eagerly so startup fails otherwise.
+ *
+ * <p>
+ * The default {@link de.cosmocode.palava.ipc.cache.GenericIpcCacheService} can't invalidate by predicate,
+ * hence an application using {@link Invalidates} won't start with it. Bind a service like
+ * {@link de.cosmocode.palava.ipc.cache.LocalIpcCacheService} or
+ * {@link de.cosmocode.palava.ipc.cache.store.TieredIpcCacheService} instead.
+ * </p>
+ *
+ * <p>
+ * The module binds the {@link InvalidationGenerations} as well, which lets the
+ * {@link de.cosmocode.palava.ipc.cache.CacheFilter} detect invalidations racing with a computation.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see Invalidates
+ */
+public final class InvalidatesModule extends FilterModule {
+
+    @Override
+    public void configure() {
+        bind(InvalidationGenerations.class).toInstance(new InvalidationGenerations(InvalidationGenerations.RECENT));
+        bind(InvalidationFilter.class).asEagerSingleton();
+        filter(Commands.annotatedWith(Invalidates.class)).through(InvalidationFilter.class);
+    }
+
+}
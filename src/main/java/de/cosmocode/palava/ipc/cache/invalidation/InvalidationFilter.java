@@ -0,0 +1,131 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.invalidation;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCallFilter;
+import de.cosmocode.palava.ipc.IpcCallFilterChain;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.DecoratingCache;
+import de.cosmocode.palava.ipc.cache.InvalidatingCache;
+import de.cosmocode.palava.ipc.cache.IpcCacheService;
+
+/**
+ * An {@link IpcCallFilter} which invalidates cached results as declared by {@link Invalidates}
+ * once the mutating command succeeded. Failed commands invalidate nothing.
+ *
+ * <p>
+ * The write is committed once the command succeeded, so a failing invalidation is logged but never
+ * reported to the client, which might retry a write that is not idempotent. Services which are not
+ * an {@link InvalidatingCache}, down to the innermost backing service, are rejected when the filter is created.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see InvalidatesModule
+ */
+@Singleton
+public final class InvalidationFilter implements IpcCallFilter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InvalidationFilter.class);
+
+    private final IpcCacheService service;
+
+    private final InvalidationGenerations generations;
+
+    private final ConcurrentMap<Class<? extends IpcCommand>, Invalidates> cache = Maps.newConcurrentMap();
+
+    @Inject
+    public InvalidationFilter(IpcCacheService service, InvalidationGenerations generations) {
+        this.service = Preconditions.checkNotNull(service, "Service");
+        this.generations = Preconditions.checkNotNull(generations, "Generations");
+        Preconditions.checkState(canInvalidate(service),
+            "%s can't invalidate by predicate, which @Invalidates requires", service);
+    }
+
+    private static boolean canInvalidate(IpcCacheService service) {
+        IpcCacheService backing = service;
+        while (backing instanceof DecoratingCache) {
+            if (!(backing instanceof InvalidatingCache)) {
+                return false;
+            }
+            backing = DecoratingCache.class.cast(backing).getBacking();
+        }
+        return backing instanceof InvalidatingCache;
+    }
+
+    @Override
+    public Map<String, Object> filter(IpcCall call, IpcCommand command, IpcCallFilterChain chain)
+        throws IpcCommandExecutionException {
+
+        final Invalidates invalidates = checkAndGetAnnotation(command);
+        final Map<String, Object> result = chain.filter(call, command);
+
+        final ArgumentsPredicate predicate = new ArgumentsPredicate(valuesOf(invalidates, call.getArguments()));
+        for (Class<? extends IpcCommand> invalidated : invalidates.commands()) {
+            generations.increment(invalidated, predicate);
+            try {
+                final int count = InvalidatingCache.class.cast(service).invalidateMatching(invalidated, predicate);
+                LOG.debug("{} invalidated {} entries of {} matching {}", new Object[] {
+                    command.getClass(), count, invalidated, predicate
+                });
+            } catch (RuntimeException e) {
+                LOG.error("Unable to invalidate " + invalidated + " after " + command.getClass()
+                    + ", cached results may be stale", e);
+            }
+        }
+        return result;
+    }
+
+    private Map<String, Object> valuesOf(Invalidates invalidates, IpcArguments arguments) {
+        final Map<String, Object> values = Maps.newHashMap();
+        for (String name : invalidates.arguments()) {
+            final Object value = arguments.get(name);
+            if (value != null) {
+                values.put(name, value);
+            }
+        }
+        return values;
+    }
+
+    private Invalidates checkAndGetAnnotation(IpcCommand command) {
+        final Class<? extends IpcCommand> type = command.getClass();
+        final Invalidates cached = cache.get(type);
+        if (cached == null) {
+            final Invalidates found = type.getAnnotation(Invalidates.class);
+            Preconditions.checkState(found != null, "No @Invalidates found on %s", type);
+            cache.putIfAbsent(type, found);
+            return found;
+        } else {
+            return cached;
+        }
+    }
+
+}
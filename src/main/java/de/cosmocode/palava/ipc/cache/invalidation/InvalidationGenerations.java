@@ -0,0 +1,189 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.invalidation;
+
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+
+/**
+ * Remembers the recent invalidations of every command. The {@link InvalidationFilter} records an
+ * invalidation after the write committed and before it invalidates, and the
+ * {@link de.cosmocode.palava.ipc.cache.CacheFilter} reads the generation of a command before computing
+ * a result and checks afterwards whether an invalidation recorded since then matches the key it stored
+ * the result under. A result computed before a write, but stored after its invalidation, is invalidated
+ * again instead of living for its whole life time, while results of other arguments stay cached.
+ *
+ * <p>
+ * The last {@value #RECENT} invalidations per command are remembered. Results computed while more
+ * invalidations of their command happened are treated as invalidated.
+ * </p>
+ *
+ * <p>
+ * Only the {@link InvalidatesModule} binds the generations, without it results are not checked.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class InvalidationGenerations {
+
+    static final int RECENT = 64;
+
+    private final ConcurrentMap<Class<? extends IpcCommand>, Generation> generations = Maps.newConcurrentMap();
+
+    private final int recent;
+
+    /**
+     * Creates generations which remember the given number of invalidations per command.
+     *
+     * @param recent the number of remembered invalidations per command
+     * @throws IllegalArgumentException if recent is not positive
+     */
+    public InvalidationGenerations(int recent) {
+        Preconditions.checkArgument(recent > 0, "Recent must be positive");
+        this.recent = recent;
+    }
+
+    /**
+     * Provides the current generation of the given command.
+     *
+     * @param command the command
+     * @return the generation, 0 if the command was never invalidated
+     * @throws NullPointerException if command is null
+     */
+    public long get(Class<? extends IpcCommand> command) {
+        Preconditions.checkNotNull(command, "Command");
+        final Generation generation = generations.get(command);
+        return generation == null ? 0L : generation.current;
+    }
+
+    /**
+     * Starts a new generation of the given command, caused by an invalidation of the keys
+     * matching the given predicate.
+     *
+     * @param command the command
+     * @param predicate the predicate of the invalidation
+     * @throws NullPointerException if command or predicate is null
+     */
+    public void increment(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+        Preconditions.checkNotNull(command, "Command");
+        Preconditions.checkNotNull(predicate, "Predicate");
+        Generation generation = generations.get(command);
+        if (generation == null) {
+            final Generation created = new Generation(recent);
+            final Generation raced = generations.putIfAbsent(command, created);
+            generation = raced == null ? created : raced;
+        }
+        generation.increment(predicate);
+    }
+
+    /**
+     * Checks whether an invalidation matching the given key was recorded after the given generation
+     * of its command.
+     *
+     * @param key the cache key
+     * @param since the generation of the key's command read before the result was computed
+     * @return true if the result stored under the key may predate a write, false otherwise
+     * @throws NullPointerException if key is null
+     */
+    public boolean isInvalidatedSince(CacheKey key, long since) {
+        Preconditions.checkNotNull(key, "CacheKey");
+        final Generation generation = generations.get(key.getCommand());
+        if (generation == null || generation.current == since) {
+            return false;
+        }
+        return generation.matches(key, since);
+    }
+
+    /**
+     * The recent invalidations of a single command.
+     */
+    private static final class Generation {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final int capacity;
+
+        // oldest first
+        private final LinkedList<Invalidation> recent = Lists.newLinkedList();
+
+        private volatile long current;
+
+        // latest generation no longer remembered in recent
+        private long forgotten;
+
+        Generation(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void increment(Predicate<? super CacheKey> predicate) {
+            lock.lock();
+            try {
+                recent.add(new Invalidation(current + 1, predicate));
+                if (recent.size() > capacity) {
+                    forgotten = recent.removeFirst().generation;
+                }
+                current++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean matches(CacheKey key, long since) {
+            lock.lock();
+            try {
+                if (forgotten > since) {
+                    return true;
+                }
+                for (Invalidation invalidation : recent) {
+                    if (invalidation.generation > since && invalidation.predicate.apply(key)) {
+                        return true;
+                    }
+                }
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+    }
+
+    /**
+     * A recorded invalidation.
+     */
+    private static final class Invalidation {
+
+        private final long generation;
+        private final Predicate<? super CacheKey> predicate;
+
+        Invalidation(long generation, Predicate<? super CacheKey> predicate) {
+            this.generation = generation;
+            this.predicate = predicate;
+        }
+
+    }
+
+}
@@ -0,0 +1,391 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.snapshot;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import de.cosmocode.palava.ipc.cache.CacheEntry;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.Snapshottable;
+import de.cosmocode.palava.ipc.cache.codec.BinaryKeyCodec;
+import de.cosmocode.palava.ipc.cache.codec.BinaryResultCodec;
+import de.cosmocode.palava.ipc.cache.codec.KeyCodec;
+import de.cosmocode.palava.ipc.cache.codec.ResultCodec;
+
+/**
+ * Reads and writes binary snapshots of {@link Snapshottable} caches.
+ *
+ * <p>
+ * A snapshot starts with magic (int), version (int) and creation time (long).
+ * Each record consists of its length (int, excluding itself), created, last access,
+ * life time and idle time (long each), the key length (int), the encoded key and
+ * the encoded value. Records are self contained, which allows to skip expired
+ * ones without decoding them and to decode the rest in parallel.
+ * </p>
+ *
+ * <p>
+ * Keys and values are written by a {@link KeyCodec} and a {@link ResultCodec}, by default
+ * the binary ones, which also read snapshots written using java serialization.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class SnapshotFile {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SnapshotFile.class);
+
+    private static final int MAGIC = 0x50494353;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 36;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int BATCH_SIZE = 1024;
+
+    private SnapshotFile() {
+
+    }
+
+    /**
+     * Writes all live entries of the given source into the given file. The snapshot is written
+     * into a temporary file first and renamed afterwards, so a crash never leaves a partial snapshot.
+     * Entries whose key or value can't be encoded are skipped.
+     *
+     * @param file the target file
+     * @param source the cache
+     * @return the number of written entries
+     * @throws IOException if writing failed
+     */
+    public static long write(File file, Snapshottable source) throws IOException {
+        return write(file, source, BinaryKeyCodec.INSTANCE, BinaryResultCodec.INSTANCE);
+    }
+
+    /**
+     * Writes all live entries of the given source into the given file using the given codecs.
+     *
+     * @since 3.1
+     * @param file the target file
+     * @param source the cache
+     * @param keyCodec the codec for keys
+     * @param resultCodec the codec for values
+     * @return the number of written entries
+     * @throws IOException if writing failed
+     * @see #write(File, Snapshottable)
+     */
+    public static long write(File file, Snapshottable source, KeyCodec keyCodec, ResultCodec resultCodec)
+        throws IOException {
+        Preconditions.checkNotNull(file, "File");
+        Preconditions.checkNotNull(source, "Source");
+        Preconditions.checkNotNull(keyCodec, "KeyCodec");
+        Preconditions.checkNotNull(resultCodec, "ResultCodec");
+
+        final File temporary = new File(file.getPath() + ".tmp");
+        final FileOutputStream stream = new FileOutputStream(temporary);
+        final FileChannel channel = stream.getChannel();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long written = 0;
+        long skipped = 0;
+
+        try {
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+
+            final Iterator<Map.Entry<CacheKey, CacheEntry>> iterator = source.liveEntries();
+            while (iterator.hasNext()) {
+                final Map.Entry<CacheKey, CacheEntry> next = iterator.next();
+                final CacheEntry entry = next.getValue();
+                final byte[] key;
+                final byte[] value;
+                try {
+                    key = keyCodec.encodeKey(next.getKey());
+                    value = resultCodec.encodeResult(entry.getValue());
+                } catch (IOException e) {
+                    LOG.debug("Skipping {}: {}", next.getKey(), e.toString());
+                    skipped++;
+                    continue;
+                }
+
+                final int length = RECORD_HEADER_SIZE + key.length + value.length;
+                if (buffer.remaining() < 4 + length) {
+                    flush(buffer, channel);
+                }
+                final ByteBuffer target = buffer.capacity() < 4 + length ? ByteBuffer.allocate(4 + length) : buffer;
+                target.putInt(length);
+                target.putLong(entry.getCreated());
+                target.putLong(entry.getLastAccess());
+                target.putLong(entry.getLifeTime());
+                target.putLong(entry.getIdleTime());
+                target.putInt(key.length);
+                target.put(key);
+                target.put(value);
+                if (target != buffer) {
+                    flush(target, channel);
+                }
+                written++;
+            }
+            flush(buffer, channel);
+            channel.force(true);
+        } finally {
+            stream.close();
+        }
+
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to replace " + file);
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Unable to rename " + temporary + " to " + file);
+        }
+        if (skipped > 0) {
+            LOG.info("Skipped {} entries which could not be encoded", skipped);
+        }
+        return written;
+    }
+
+    private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Reads the given snapshot into the given target. Expired entries are dropped
+     * before they are decoded, all other entries are decoded and restored by the
+     * given number of threads while the file is still being read.
+     *
+     * @param file the snapshot file
+     * @param target the cache
+     * @param threads the number of decoding threads
+     * @return the number of restored entries
+     * @throws IOException if reading failed
+     */
+    public static long read(File file, Snapshottable target, int threads) throws IOException {
+        return read(file, target, threads, BinaryKeyCodec.INSTANCE, BinaryResultCodec.INSTANCE);
+    }
+
+    /**
+     * Reads the given snapshot into the given target using the given codecs.
+     *
+     * @since 3.1
+     * @param file the snapshot file
+     * @param target the cache
+     * @param threads the number of decoding threads
+     * @param keyCodec the codec for keys
+     * @param resultCodec the codec for values
+     * @return the number of restored entries
+     * @throws IOException if reading failed
+     * @see #read(File, Snapshottable, int)
+     */
+    public static long read(File file, final Snapshottable target, int threads,
+        final KeyCodec keyCodec, final ResultCodec resultCodec) throws IOException {
+        Preconditions.checkNotNull(file, "File");
+        Preconditions.checkNotNull(target, "Target");
+        Preconditions.checkArgument(threads > 0, "Threads must be positive");
+        Preconditions.checkNotNull(keyCodec, "KeyCodec");
+        Preconditions.checkNotNull(resultCodec, "ResultCodec");
+        final Codecs codecs = new Codecs(keyCodec, resultCodec);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads,
+            new ThreadFactoryBuilder().setNameFormat("ipc-cache-snapshot-%d").setDaemon(true).build());
+        // bounds the number of decoded but not yet restored batches
+        final Semaphore permits = new Semaphore(threads * 2);
+        final AtomicLong restored = new AtomicLong();
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        final long now = System.currentTimeMillis();
+        long expired = 0;
+
+        final FileInputStream stream = new FileInputStream(file);
+        try {
+            final FileChannel channel = stream.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.flip();
+
+            buffer = require(channel, buffer, HEADER_SIZE);
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a snapshot");
+            } else if (buffer.getInt() != VERSION) {
+                throw new IOException("Unsupported snapshot version in " + file);
+            }
+            buffer.getLong();
+
+            List<byte[]> batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+            while (failure.get() == null) {
+                buffer = require(channel, buffer, 4);
+                if (buffer.remaining() < 4) {
+                    break;
+                }
+                final int length = buffer.getInt();
+                // snapshots are renamed into place once complete, so a length beyond the end is corruption too
+                final long available = channel.size() - channel.position() + buffer.remaining();
+                if (length < RECORD_HEADER_SIZE || length > available) {
+                    throw new IOException("Corrupt snapshot " + file + ", invalid record length " + length);
+                }
+                buffer = require(channel, buffer, length);
+                if (buffer.remaining() < length) {
+                    throw new IOException("Corrupt snapshot " + file + ", truncated record");
+                }
+
+                final int position = buffer.position();
+                if (CacheEntry.isExpired(now, buffer.getLong(position), buffer.getLong(position + 8),
+                    buffer.getLong(position + 16), buffer.getLong(position + 24))) {
+                    buffer.position(position + length);
+                    expired++;
+                    continue;
+                }
+
+                final byte[] record = new byte[length];
+                buffer.get(record);
+                batch.add(record);
+                if (batch.size() == BATCH_SIZE) {
+                    submit(executor, permits, batch, target, codecs, restored, failure);
+                    batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                submit(executor, permits, batch, target, codecs, restored, failure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + file);
+        } finally {
+            stream.close();
+            executor.shutdown();
+        }
+
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while restoring " + file);
+        }
+
+        if (failure.get() != null) {
+            throw new IOException("Unable to restore " + file, failure.get());
+        }
+        LOG.debug("Dropped {} expired entries from {}", expired, file);
+        return restored.get();
+    }
+
+    private static void submit(ExecutorService executor, final Semaphore permits, final List<byte[]> batch,
+        final Snapshottable target, final Codecs codecs, final AtomicLong restored,
+        final AtomicReference<Exception> failure) throws InterruptedException {
+
+        permits.acquire();
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    for (byte[] record : batch) {
+                        restore(record, target, codecs);
+                        restored.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                } catch (RuntimeException e) {
+                    // codecs may fail on corrupt input with unchecked exceptions
+                    failure.compareAndSet(null, e);
+                } finally {
+                    permits.release();
+                }
+            }
+
+        });
+    }
+
+    private static void restore(byte[] record, Snapshottable target, Codecs codecs) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(record);
+        final long created = buffer.getLong();
+        final long lastAccess = buffer.getLong();
+        final long lifeTime = buffer.getLong();
+        final long idleTime = buffer.getLong();
+        final int keyLength = buffer.getInt();
+        if (keyLength < 0 || keyLength > record.length - RECORD_HEADER_SIZE) {
+            throw new IOException("Corrupt snapshot record, invalid key length " + keyLength);
+        }
+        final CacheKey key = codecs.keyCodec.decodeKey(ByteBuffer.wrap(record, buffer.position(), keyLength));
+        final int valueOffset = buffer.position() + keyLength;
+        final Map<String, Object> value = codecs.resultCodec.decodeResult(
+            ByteBuffer.wrap(record, valueOffset, record.length - valueOffset));
+        target.restore(key, new CacheEntry(value, created, lastAccess, lifeTime, idleTime));
+    }
+
+    /**
+     * Makes sure the given buffer has at least the given number of bytes remaining,
+     * reading from the channel if necessary. The returned buffer has less remaining
+     * bytes only if the end of the channel has been reached.
+     */
+    private static ByteBuffer require(ReadableByteChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        final ByteBuffer target;
+        if (buffer.capacity() < bytes) {
+            target = ByteBuffer.allocate(bytes);
+            target.put(buffer);
+        } else {
+            target = buffer;
+            target.compact();
+        }
+        while (target.position() < bytes) {
+            if (channel.read(target) < 0) {
+                break;
+            }
+        }
+        target.flip();
+        return target;
+    }
+
+    /**
+     * The codecs used to restore a snapshot.
+     */
+    private static final class Codecs {
+
+        private final KeyCodec keyCodec;
+
+        private final ResultCodec resultCodec;
+
+        Codecs(KeyCodec keyCodec, ResultCodec resultCodec) {
+            this.keyCodec = keyCodec;
+            this.resultCodec = resultCodec;
+        }
+
+    }
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.cache.DecoratingCache;
+import de.cosmocode.palava.ipc.cache.IpcCacheService;
+import de.cosmocode.palava.ipc.cache.Snapshottable;
+import de.cosmocode.palava.ipc.cache.codec.BinaryKeyCodec;
+import de.cosmocode.palava.ipc.cache.codec.BinaryResultCodec;
+import de.cosmocode.palava.ipc.cache.codec.KeyCodec;
+import de.cosmocode.palava.ipc.cache.codec.ResultCodec;
+
+/**
+ * Restores the bound {@link IpcCacheService} from its snapshot on startup
+ * and writes a new snapshot on shutdown. Decorating services are unwrapped down to
+ * the service storing the entries, which has to be {@link Snapshottable}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class SnapshotLifecycle implements Initializable, Disposable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SnapshotLifecycle.class);
+
+    private final Snapshottable cache;
+    private final File file;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private KeyCodec keyCodec = BinaryKeyCodec.INSTANCE;
+    private ResultCodec resultCodec = BinaryResultCodec.INSTANCE;
+
+    @Inject
+    SnapshotLifecycle(IpcCacheService service, @Named(SnapshotConfig.FILE) File file) {
+        Preconditions.checkNotNull(service, "Service");
+        IpcCacheService backing = service;
+        while (backing instanceof DecoratingCache) {
+            backing = DecoratingCache.class.cast(backing).getBacking();
+        }
+        Preconditions.checkArgument(backing instanceof Snapshottable,
+            "%s does not support snapshots", backing);
+        this.cache = Snapshottable.class.cast(backing);
+        this.file = Preconditions.checkNotNull(file, "File");
+    }
+
+    @Inject(optional = true)
+    void setThreads(@Named(SnapshotConfig.THREADS) int threads) {
+        Preconditions.checkArgument(threads > 0, "Threads must be positive");
+        this.threads = threads;
+    }
+
+    @Inject(optional = true)
+    void setKeyCodec(KeyCodec keyCodec) {
+        this.keyCodec = Preconditions.checkNotNull(keyCodec, "KeyCodec");
+    }
+
+    @Inject(optional = true)
+    void setResultCodec(ResultCodec resultCodec) {
+        this.resultCodec = Preconditions.checkNotNull(resultCodec, "ResultCodec");
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        if (!file.exists()) {
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        try {
+            final long restored = SnapshotFile.read(file, cache, threads, keyCodec, resultCodec);
+            LOG.info("Restored {} entries from {} in {}ms", new Object[] {
+                restored, file, System.currentTimeMillis() - start
+            });
+        } catch (IOException e) {
+            LOG.error("Unable to restore snapshot " + file + ", starting cold", e);
+        }
+        // a stale snapshot must not be restored again after a crash
+        if (!file.delete()) {
+            LOG.warn("Unable to delete restored snapshot {}", file);
+        }
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        final long start = System.currentTimeMillis();
+        try {
+            final long written = SnapshotFile.write(file, cache, keyCodec, resultCodec);
+            LOG.info("Wrote {} entries to {} in {}ms", new Object[] {
+                written, file, System.currentTimeMillis() - start
+            });
+        } catch (IOException e) {
+            throw new LifecycleException(e);
+        }
+    }
+
+}
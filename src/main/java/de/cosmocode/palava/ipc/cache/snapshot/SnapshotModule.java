@@ -0,0 +1,38 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.snapshot;
+
+import com.google.inject.Binder;
+import com.google.inject.Module;
+
+/**
+ * Persists the bound {@link de.cosmocode.palava.ipc.cache.IpcCacheService} into the file
+ * configured by {@link SnapshotConfig#FILE} on shutdown and restores it on startup.
+ * The service, or the one it decorates, has to implement
+ * {@link de.cosmocode.palava.ipc.cache.Snapshottable}, otherwise startup fails.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class SnapshotModule implements Module {
+
+    @Override
+    public void configure(Binder binder) {
+        binder.bind(SnapshotLifecycle.class).asEagerSingleton();
+    }
+
+}
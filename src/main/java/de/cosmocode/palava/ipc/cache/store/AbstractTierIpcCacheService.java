@@ -0,0 +1,113 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+
+import de.cosmocode.palava.cache.CacheExpiration;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.AbstractIpcCacheService;
+import de.cosmocode.palava.ipc.cache.CacheEntry;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.InvalidatingCache;
+import de.cosmocode.palava.ipc.cache.IpcCommandExecution;
+import de.cosmocode.palava.ipc.cache.SerializingCache;
+import de.cosmocode.palava.ipc.cache.Snapshottable;
+
+/**
+ * Abstract {@link de.cosmocode.palava.ipc.cache.IpcCacheService} storing all entries
+ * in a single {@link CacheTier}. Snapshots read the entries without marking them as accessed.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+abstract class AbstractTierIpcCacheService extends AbstractIpcCacheService
+    implements InvalidatingCache, SerializingCache, Snapshottable {
+
+    /**
+     * Provides the tier holding the entries.
+     *
+     * @return the tier
+     */
+    protected abstract CacheTier getTier();
+
+    @Override
+    public Map<String, Object> read(CacheKey key) {
+        Preconditions.checkNotNull(key, "CacheKey");
+        final CacheEntry entry = getTier().get(key, System.currentTimeMillis());
+        return entry == null ? null : entry.getValue();
+    }
+
+    @Override
+    public Map<String, Object> computeAndStore(CacheKey key, CacheExpiration expiration,
+        IpcCommandExecution computation) throws IpcCommandExecutionException {
+
+        Preconditions.checkNotNull(key, "CacheKey");
+        Preconditions.checkNotNull(expiration, "Expiration");
+        Preconditions.checkNotNull(computation, "Computation");
+
+        final Map<String, Object> cached = read(key);
+        if (cached == null) {
+            final Map<String, Object> value = computation.call();
+            getTier().put(key, new CacheEntry(value, expiration, System.currentTimeMillis()));
+            return value;
+        } else {
+            return cached;
+        }
+    }
+
+    @Override
+    public void invalidate(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+        invalidateMatching(command, predicate);
+    }
+
+    @Override
+    public int invalidateMatching(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+        Preconditions.checkNotNull(command, "Command");
+        Preconditions.checkNotNull(predicate, "Predicate");
+        final CacheTier tier = getTier();
+        return invalidate(tier.keySegments(), command, predicate, TierSegments.removal(tier));
+    }
+
+    @Override
+    public boolean invalidateKey(CacheKey key) {
+        Preconditions.checkNotNull(key, "CacheKey");
+        return getTier().remove(key);
+    }
+
+    @Override
+    public Iterator<Map.Entry<CacheKey, CacheEntry>> liveEntries() {
+        return TierSegments.liveEntries(getTier(), System.currentTimeMillis());
+    }
+
+    @Override
+    public void restore(CacheKey key, CacheEntry entry) {
+        Preconditions.checkNotNull(key, "CacheKey");
+        Preconditions.checkNotNull(entry, "Entry");
+        final CacheTier tier = getTier();
+        final long now = System.currentTimeMillis();
+        if (!entry.isExpired(now) && tier.peek(key, now) == null) {
+            tier.put(key, entry);
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A thread safe Bloom filter over 64 bit hashes. Bit positions are derived by double hashing
+ * from the two halves of the hash. Elements can't be removed, filters are replaced instead.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+    private final AtomicLong insertions = new AtomicLong();
+
+    /**
+     * Creates a filter sized for the given number of elements and false positive probability.
+     *
+     * @param expected the expected number of elements
+     * @param fpp the desired false positive probability
+     */
+    BloomFilter(long expected, double fpp) {
+        Preconditions.checkArgument(expected > 0, "Expected elements must be positive");
+        Preconditions.checkArgument(fpp > 0 && fpp < 1, "False positive probability must be in (0, 1)");
+        final long optimal = (long) Math.ceil(-expected * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        // positions are derived from 31 bits
+        this.words = new AtomicLongArray((int) Math.min(1 << 25, (optimal + 63) / 64));
+        this.bits = (long) words.length() * 64;
+        this.hashes = Math.max(1, (int) Math.round((double) bits / expected * Math.log(2)));
+    }
+
+    void put(long hash) {
+        final int low = (int) hash;
+        final int high = (int) (hash >>> 32);
+        boolean changed = false;
+        for (int i = 1; i <= hashes; i++) {
+            final long bit = index(low + i * high);
+            final int word = (int) (bit >>> 6);
+            final long mask = 1L << bit;
+            while (true) {
+                final long current = words.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                } else if (words.compareAndSet(word, current, current | mask)) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        // repeated insertions don't count towards the fill level
+        if (changed) {
+            insertions.incrementAndGet();
+        }
+    }
+
+    boolean mightContain(long hash) {
+        final int low = (int) hash;
+        final int high = (int) (hash >>> 32);
+        for (int i = 1; i <= hashes; i++) {
+            final long bit = index(low + i * high);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long index(int combined) {
+        return (combined & 0x7FFFFFFFL) % bits;
+    }
+
+    /**
+     * Estimates the false positive probability based on the number of insertions.
+     *
+     * @return the expected false positive probability
+     */
+    double getExpectedFpp() {
+        return Math.pow(1 - Math.exp(-hashes * (double) insertions.get() / bits), hashes);
+    }
+
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Preconditions;
+
+import de.cosmocode.palava.ipc.cache.CacheEntry;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+
+/**
+ * A {@link CacheTier} decorator which keeps a {@link BloomFilter} of the stored keys and skips
+ * the decorated tier for keys which were definitely never stored.
+ *
+ * <p>
+ * Removed and expired keys stay in the filter until the next {@link #rebuild()}, which creates
+ * a fresh filter from the keys of the decorated tier and sizes it for the current number of entries.
+ * Keys stored during a rebuild are added to both filters.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class BloomFilteredTier implements CacheTier {
+
+    private final CacheTier tier;
+    private final long expected;
+    private final double fpp;
+    private final FilterStatistics statistics;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile BloomFilter filter;
+    private volatile BloomFilter building;
+
+    BloomFilteredTier(CacheTier tier, String name, long expected, double fpp) {
+        this.tier = Preconditions.checkNotNull(tier, "Tier");
+        this.expected = expected;
+        this.fpp = fpp;
+        this.statistics = new FilterStatistics(name);
+        this.filter = new BloomFilter(expected, fpp);
+        rebuild();
+    }
+
+    private static long hash(CacheKey key) {
+        final long hash = key.hashCode() * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 32);
+    }
+
+    @Override
+    public CacheEntry get(CacheKey key, long now) {
+        if (!filter.mightContain(hash(key))) {
+            statistics.skipped();
+            return null;
+        }
+        final CacheEntry entry = tier.get(key, now);
+        if (entry == null) {
+            statistics.falsePositive();
+        } else {
+            statistics.truePositive();
+        }
+        return entry;
+    }
+
+    @Override
+    public CacheEntry peek(CacheKey key, long now) {
+        return filter.mightContain(hash(key)) ? tier.peek(key, now) : null;
+    }
+
+    @Override
+    public boolean put(CacheKey key, CacheEntry entry) {
+        final long hash = hash(key);
+        // added before storing, so concurrent reads never skip a stored key
+        add(hash);
+        final boolean stored = tier.put(key, entry);
+        // a rebuild which started in the meantime may not have seen the key
+        add(hash);
+        return stored;
+    }
+
+    private void add(long hash) {
+        final BloomFilter next = building;
+        if (next != null) {
+            next.put(hash);
+        }
+        filter.put(hash);
+    }
+
+    @Override
+    public boolean remove(CacheKey key) {
+        return tier.remove(key);
+    }
+
+    @Override
+    public Set<CacheKey> keys() {
+        return tier.keys();
+    }
+
+    @Override
+    public List<? extends Iterable<CacheKey>> keySegments() {
+        return tier.keySegments();
+    }
+
+    @Override
+    public int size() {
+        return tier.size();
+    }
+
+    /**
+     * Replaces the filter with one built from the keys currently stored in the decorated tier.
+     */
+    void rebuild() {
+        lock.lock();
+        try {
+            final BloomFilter next = new BloomFilter(Math.max(expected, 2L * tier.size()), fpp);
+            building = next;
+            for (CacheKey key : tier.keys()) {
+                next.put(hash(key));
+            }
+            filter = next;
+            statistics.setExpectedFalsePositiveRate(next.getExpectedFpp());
+        } finally {
+            building = null;
+            lock.unlock();
+        }
+    }
+
+    FilterStatistics getStatistics() {
+        statistics.setExpectedFalsePositiveRate(filter.getExpectedFpp());
+        return statistics;
+    }
+
+}
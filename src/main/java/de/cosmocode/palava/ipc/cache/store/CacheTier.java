@@ -0,0 +1,95 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.util.List;
+import java.util.Set;
+
+import de.cosmocode.palava.ipc.cache.CacheEntry;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+
+/**
+ * One level of a cache hierarchy. Tiers store {@link CacheEntry entries} including their
+ * expiration metadata, so an entry keeps its remaining life time when it moves between tiers.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public interface CacheTier {
+
+    /**
+     * Reads the entry stored for the given key and marks it as accessed.
+     * Expired entries are removed and reported as absent.
+     *
+     * @param key the key
+     * @param now the current time in milliseconds
+     * @return the entry or null if there is none or it expired
+     */
+    CacheEntry get(CacheKey key, long now);
+
+    /**
+     * Reads the entry stored for the given key without updating its last access time,
+     * e.g. to write a snapshot. Expired entries are reported as absent.
+     *
+     * @param key the key
+     * @param now the current time in milliseconds
+     * @return the entry or null if there is none or it expired
+     */
+    CacheEntry peek(CacheKey key, long now);
+
+    /**
+     * Stores the given entry, replacing a previous one.
+     *
+     * @param key the key
+     * @param entry the entry
+     * @return true if the entry was stored, false if this tier refused it
+     */
+    boolean put(CacheKey key, CacheEntry entry);
+
+    /**
+     * Removes the entry for the given key, if any.
+     *
+     * @param key the key
+     * @return true if an entry was removed, false if there was none
+     */
+    boolean remove(CacheKey key);
+
+    /**
+     * Provides the keys of all stored entries, including expired ones which were not yet removed.
+     * The returned set may or may not reflect concurrent modifications.
+     *
+     * @return the keys
+     */
+    Set<CacheKey> keys();
+
+    /**
+     * Splits the keys of all stored entries into segments which can be scanned concurrently,
+     * e.g. by a {@link de.cosmocode.palava.ipc.cache.ParallelInvalidation}. Like {@link #keys()},
+     * the segments may or may not reflect concurrent modifications.
+     *
+     * @return the segments of the keys
+     */
+    List<? extends Iterable<CacheKey>> keySegments();
+
+    /**
+     * The number of stored entries, including expired ones which were not yet removed.
+     *
+     * @return the number of entries
+     */
+    int size();
+
+}
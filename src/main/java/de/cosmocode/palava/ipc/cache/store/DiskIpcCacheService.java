@@ -0,0 +1,227 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.cache.codec.BinaryKeyCodec;
+import de.cosmocode.palava.ipc.cache.codec.BinaryResultCodec;
+import de.cosmocode.palava.ipc.cache.codec.KeyCodec;
+import de.cosmocode.palava.ipc.cache.codec.ResultCodec;
+
+/**
+ * An {@link de.cosmocode.palava.ipc.cache.IpcCacheService} which keeps serialized results
+ * on disk, using a {@link LogStructuredTier}. Entries survive restarts; the index is rebuilt
+ * on initialization and segments are compacted in the background.
+ *
+ * <p>
+ * If {@link StoreConfig#DISK_FILTER_ENTRIES} is configured, the log is guarded by a
+ * {@link BloomFilteredTier}, built from the reopened index and rebuilt periodically to forget removed,
+ * expired and compacted keys. Rebuilds run on the compaction thread.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class DiskIpcCacheService extends AbstractTierIpcCacheService
+    implements FilteredCache, Initializable, Disposable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DiskIpcCacheService.class);
+
+    private final File directory;
+
+    private int segmentSize = 64 * 1024 * 1024;
+
+    private int segments = 64;
+
+    private double compactionThreshold = 0.5;
+
+    private long compactionInterval = 1;
+
+    private TimeUnit compactionIntervalUnit = TimeUnit.MINUTES;
+
+    private KeyCodec keyCodec = BinaryKeyCodec.INSTANCE;
+
+    private ResultCodec resultCodec = BinaryResultCodec.INSTANCE;
+
+    private long filterEntries;
+
+    private double filterFpp = 0.01;
+
+    private long filterRebuildInterval = 10;
+
+    private TimeUnit filterRebuildIntervalUnit = TimeUnit.MINUTES;
+
+    private LogStructuredTier tier;
+
+    private BloomFilteredTier filtered;
+
+    private ScheduledExecutorService compactor;
+
+    @Inject
+    DiskIpcCacheService(@Named(StoreConfig.DISK_DIRECTORY) File directory) {
+        this.directory = Preconditions.checkNotNull(directory, "Directory");
+    }
+
+    @Inject(optional = true)
+    void setSegmentSize(@Named(StoreConfig.DISK_SEGMENT_SIZE) int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    @Inject(optional = true)
+    void setSegments(@Named(StoreConfig.DISK_SEGMENTS) int segments) {
+        this.segments = segments;
+    }
+
+    @Inject(optional = true)
+    void setCompactionThreshold(@Named(StoreConfig.DISK_COMPACTION_THRESHOLD) double compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    @Inject(optional = true)
+    void setCompactionInterval(@Named(StoreConfig.DISK_COMPACTION_INTERVAL) long compactionInterval) {
+        Preconditions.checkArgument(compactionInterval > 0, "Compaction interval must be positive");
+        this.compactionInterval = compactionInterval;
+    }
+
+    @Inject(optional = true)
+    void setCompactionIntervalUnit(
+        @Named(StoreConfig.DISK_COMPACTION_INTERVAL_UNIT) TimeUnit compactionIntervalUnit) {
+        this.compactionIntervalUnit = Preconditions.checkNotNull(compactionIntervalUnit, "Unit");
+    }
+
+    @Inject(optional = true)
+    void setFilterEntries(@Named(StoreConfig.DISK_FILTER_ENTRIES) long filterEntries) {
+        Preconditions.checkArgument(filterEntries > 0, "Filter entries must be positive");
+        this.filterEntries = filterEntries;
+    }
+
+    @Inject(optional = true)
+    void setFilterFpp(@Named(StoreConfig.DISK_FILTER_FPP) double filterFpp) {
+        this.filterFpp = filterFpp;
+    }
+
+    @Inject(optional = true)
+    void setFilterRebuildInterval(@Named(StoreConfig.DISK_FILTER_REBUILD_INTERVAL) long filterRebuildInterval) {
+        Preconditions.checkArgument(filterRebuildInterval > 0, "Rebuild interval must be positive");
+        this.filterRebuildInterval = filterRebuildInterval;
+    }
+
+    @Inject(optional = true)
+    void setFilterRebuildIntervalUnit(
+        @Named(StoreConfig.DISK_FILTER_REBUILD_INTERVAL_UNIT) TimeUnit filterRebuildIntervalUnit) {
+        this.filterRebuildIntervalUnit = Preconditions.checkNotNull(filterRebuildIntervalUnit, "Unit");
+    }
+
+    @Inject(optional = true)
+    void setKeyCodec(KeyCodec keyCodec) {
+        this.keyCodec = Preconditions.checkNotNull(keyCodec, "KeyCodec");
+    }
+
+    @Inject(optional = true)
+    void setResultCodec(ResultCodec resultCodec) {
+        this.resultCodec = Preconditions.checkNotNull(resultCodec, "ResultCodec");
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        tier = new LogStructuredTier(directory, segmentSize, segments, compactionThreshold, keyCodec, resultCodec);
+        try {
+            tier.open();
+        } catch (IOException e) {
+            throw new LifecycleException(e);
+        }
+        compactor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("ipc-cache-compactor").setDaemon(true).build());
+        compactor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    final int compacted = tier.compact();
+                    if (compacted > 0) {
+                        LOG.debug("Compacted {} segments", compacted);
+                    }
+                } catch (RuntimeException e) {
+                    LOG.error("Compaction failed", e);
+                }
+            }
+
+        }, compactionInterval, compactionInterval, compactionIntervalUnit);
+        if (filterEntries > 0) {
+            filtered = new BloomFilteredTier(tier, "disk", filterEntries, filterFpp);
+            compactor.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        filtered.rebuild();
+                    } catch (RuntimeException e) {
+                        LOG.error("Rebuilding filter failed", e);
+                    }
+                }
+
+            }, filterRebuildInterval, filterRebuildInterval, filterRebuildIntervalUnit);
+        }
+    }
+
+    @Override
+    protected CacheTier getTier() {
+        return filtered == null ? tier : filtered;
+    }
+
+    @Override
+    public List<FilterStatistics> getFilterStatistics() {
+        if (filtered == null) {
+            return ImmutableList.of();
+        } else {
+            return ImmutableList.of(filtered.getStatistics());
+        }
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        if (filtered != null) {
+            LOG.info("Filter statistics: {}", getFilterStatistics());
+        }
+        compactor.shutdownNow();
+        try {
+            compactor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        tier.close();
+    }
+
+}
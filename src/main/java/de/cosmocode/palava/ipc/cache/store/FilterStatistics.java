@@ -0,0 +1,117 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a {@link BloomFilteredTier}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class FilterStatistics {
+
+    private final String name;
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    private final AtomicLong truePositives = new AtomicLong();
+
+    private volatile double expectedFalsePositiveRate;
+
+    FilterStatistics(String name) {
+        this.name = name;
+    }
+
+    void skipped() {
+        skipped.incrementAndGet();
+    }
+
+    void falsePositive() {
+        falsePositives.incrementAndGet();
+    }
+
+    void truePositive() {
+        truePositives.incrementAndGet();
+    }
+
+    void setExpectedFalsePositiveRate(double expectedFalsePositiveRate) {
+        this.expectedFalsePositiveRate = expectedFalsePositiveRate;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The number of reads which skipped the tier because the filter ruled the key out.
+     *
+     * @return the number of skipped reads
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * The number of reads the filter let through which then missed, including keys
+     * which were removed or expired since the last rebuild.
+     *
+     * @return the number of false positives
+     */
+    public long getFalsePositives() {
+        return falsePositives.get();
+    }
+
+    /**
+     * The number of reads the filter let through which then hit.
+     *
+     * @return the number of true positives
+     */
+    public long getTruePositives() {
+        return truePositives.get();
+    }
+
+    /**
+     * The observed ratio of false positives to all reads of absent keys.
+     *
+     * @return the false positive rate, 0 if there were no reads of absent keys
+     */
+    public double getFalsePositiveRate() {
+        final long positives = falsePositives.get();
+        final long negatives = positives + skipped.get();
+        return negatives == 0 ? 0d : (double) positives / negatives;
+    }
+
+    /**
+     * The false positive rate the current filter should have according to its fill level.
+     *
+     * @return the expected false positive rate
+     */
+    public double getExpectedFalsePositiveRate() {
+        return expectedFalsePositiveRate;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d skipped, %d false positives (%.2f%%, expected %.2f%%)", name,
+            getSkipped(), getFalsePositives(), getFalsePositiveRate() * 100, expectedFalsePositiveRate * 100);
+    }
+
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.cache.CacheEntry;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+
+/**
+ * A bounded tier of live result maps in least recently used order. Entries evicted
+ * because of the bound are demoted into the overflow tier unless they already expired.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class HeapTier implements CacheTier {
+
+    private final int capacity;
+
+    private final CacheTier overflow;
+
+    private final LinkedHashMap<CacheKey, CacheEntry> entries;
+
+    private Map.Entry<CacheKey, CacheEntry> evicted;
+
+    // an explicit lock doesn't pin virtual threads while waiting, unlike a monitor
+    private final ReentrantLock lock = new ReentrantLock();
+
+    HeapTier(int capacity, CacheTier overflow) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive");
+        this.capacity = capacity;
+        this.overflow = Preconditions.checkNotNull(overflow, "Overflow");
+        this.entries = new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest) {
+                if (size() > HeapTier.this.capacity) {
+                    evicted = eldest;
+                    return true;
+                } else {
+                    return false;
+                }
+            }
+
+        };
+    }
+
+    @Override
+    public CacheEntry get(CacheKey key, long now) {
+        lock.lock();
+        try {
+            final CacheEntry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            } else if (entry.isExpired(now)) {
+                entries.remove(key);
+                return null;
+            } else {
+                entry.touch(now);
+                return entry;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CacheEntry peek(CacheKey key, long now) {
+        lock.lock();
+        try {
+            final CacheEntry entry = entries.get(key);
+            return entry == null || entry.isExpired(now) ? null : entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Looks up all given keys while holding the lock once.
+     *
+     * @param keys the keys to look up
+     * @param now the current time in milliseconds
+     * @return the live entries by key, missing and expired keys are left out
+     */
+    Map<CacheKey, CacheEntry> getAll(Collection<? extends CacheKey> keys, long now) {
+        final Map<CacheKey, CacheEntry> found = Maps.newHashMap();
+        lock.lock();
+        try {
+            for (CacheKey key : keys) {
+                final CacheEntry entry = entries.get(key);
+                if (entry == null) {
+                    continue;
+                } else if (entry.isExpired(now)) {
+                    entries.remove(key);
+                } else {
+                    entry.touch(now);
+                    found.put(key, entry);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return found;
+    }
+
+    @Override
+    public boolean put(CacheKey key, CacheEntry entry) {
+        final CacheKey demotedKey;
+        final CacheEntry demoted;
+        lock.lock();
+        try {
+            entries.put(key, entry);
+            if (evicted == null) {
+                return true;
+            }
+            demotedKey = evicted.getKey();
+            demoted = evicted.getValue();
+            evicted = null;
+        } finally {
+            lock.unlock();
+        }
+        // serializing into the overflow tier happens outside of the lock
+        if (!demoted.isExpired(System.currentTimeMillis())) {
+            overflow.put(demotedKey, demoted);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(CacheKey key) {
+        lock.lock();
+        try {
+            return entries.remove(key) != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Set<CacheKey> keys() {
+        lock.lock();
+        try {
+            return ImmutableSet.copyOf(entries.keySet());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<? extends Iterable<CacheKey>> keySegments() {
+        // bounded by the heap capacity, so the copy stays small
+        return TierSegments.partition(keys());
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,689 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import de.cosmocode.palava.ipc.cache.CacheEntry;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.codec.BinaryKeyCodec;
+import de.cosmocode.palava.ipc.cache.codec.BinaryResultCodec;
+import de.cosmocode.palava.ipc.cache.codec.KeyCodec;
+import de.cosmocode.palava.ipc.cache.codec.ResultCodec;
+
+/**
+ * A {@link CacheTier} which appends serialized entries to a log of memory-mapped segment files.
+ *
+ * <p>
+ * Each record consists of a CRC32 checksum (int) over the rest of the record, the key length (int),
+ * the value length (int, -1 for tombstones written on removal), created, life time and idle time
+ * (long each), the serialized key and the serialized value. Segments are mapped completely,
+ * unwritten space is zero filled.
+ * </p>
+ *
+ * <p>
+ * The in-memory index only points to records which were written completely. {@link #open()} rebuilds
+ * it by scanning the segments from oldest to newest and stops scanning a segment at the first record
+ * which fails its checksum, so a write torn by a crash is never indexed.
+ * </p>
+ *
+ * <p>
+ * Values are deserialized straight from the mapped segment. Every write, removal and compaction step
+ * holds the tier's lock, reads don't lock. Replaced, removed and expired records count as garbage of
+ * their segment; {@link #compact()} first removes expired entries from the index, so entries which
+ * expire without being read again count as well, then copies the live records of sealed segments
+ * whose garbage ratio exceeds the threshold to the end of the log and deletes them. Tombstones are
+ * copied only as long as an older segment may still contain a record of their key, which a filter of
+ * keys per segment tells. If the log grows beyond the maximum number of segments, the oldest segment
+ * is dropped with all its entries.
+ * </p>
+ *
+ * <p>
+ * A removal whose tombstone could not be appended still removes the entry from the index. The tombstone
+ * is retried before every later append and on {@link #close()}, so a later record of the same key
+ * always follows it and the removed entry doesn't come back on the next {@link #open()}.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class LogStructuredTier implements CacheTier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LogStructuredTier.class);
+
+    static final String SUFFIX = ".log";
+
+    private static final int HEADER_SIZE = 36;
+    private static final int TOMBSTONE = -1;
+
+    // sizes the key filter of a segment
+    private static final int EXPECTED_RECORD_SIZE = 1024;
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final double compactionThreshold;
+    private final KeyCodec keyCodec;
+    private final ResultCodec resultCodec;
+
+    private final SegmentedIndex<Location> index = new SegmentedIndex<Location>();
+
+    // oldest first, the last one is the active segment; guarded by lock
+    private final LinkedList<Segment> segments = Lists.newLinkedList();
+
+    // tombstones which failed to append, oldest first; guarded by lock
+    private final LinkedList<byte[]> unwritten = Lists.newLinkedList();
+
+    // appends do file I/O, which must not pin virtual threads as a monitor would
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private long nextId;
+
+    LogStructuredTier(File directory, int segmentSize, int maxSegments, double compactionThreshold) {
+        this(directory, segmentSize, maxSegments, compactionThreshold,
+            BinaryKeyCodec.INSTANCE, BinaryResultCodec.INSTANCE);
+    }
+
+    LogStructuredTier(File directory, int segmentSize, int maxSegments, double compactionThreshold,
+        KeyCodec keyCodec, ResultCodec resultCodec) {
+        Preconditions.checkArgument(segmentSize > HEADER_SIZE, "Segment size too small");
+        Preconditions.checkArgument(maxSegments > 1, "At least two segments required");
+        Preconditions.checkArgument(compactionThreshold > 0 && compactionThreshold <= 1,
+            "Compaction threshold must be in (0, 1]");
+        this.directory = Preconditions.checkNotNull(directory, "Directory");
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.compactionThreshold = compactionThreshold;
+        this.keyCodec = Preconditions.checkNotNull(keyCodec, "KeyCodec");
+        this.resultCodec = Preconditions.checkNotNull(resultCodec, "ResultCodec");
+    }
+
+    /**
+     * Opens all existing segments and rebuilds the index.
+     *
+     * @throws IOException if reading the segments failed
+     */
+    void open() throws IOException {
+        lock.lock();
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Unable to create " + directory);
+            }
+            final File[] files = directory.listFiles(new FileFilter() {
+
+                @Override
+                public boolean accept(File file) {
+                    return file.isFile() && file.getName().endsWith(SUFFIX);
+                }
+
+            });
+            // fixed width hex names sort by id
+            Arrays.sort(files);
+            final long now = System.currentTimeMillis();
+            for (File file : files) {
+                final String name = file.getName();
+                final long id = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()), 16);
+                final Segment segment = new Segment(file, segmentSize);
+                rebuild(segment, now);
+                segments.add(segment);
+                nextId = id + 1;
+            }
+            if (segments.isEmpty()) {
+                roll();
+            }
+            LOG.info("Rebuilt index with {} entries from {} segments", index.size(), segments.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void rebuild(Segment segment, long now) {
+        int position = 0;
+        while (true) {
+            final byte[] record = readRecord(segment, position);
+            if (record == null) {
+                break;
+            }
+            final ByteBuffer buffer = ByteBuffer.wrap(record);
+            buffer.position(4);
+            final int keyLength = buffer.getInt();
+            final int valueLength = buffer.getInt();
+            final long created = buffer.getLong();
+            final long lifeTime = buffer.getLong();
+            final long idleTime = buffer.getLong();
+            final CacheKey key = readKey(record, keyLength);
+            if (key == null) {
+                segment.garbage.addAndGet(record.length);
+            } else if (valueLength == TOMBSTONE) {
+                discard(index.remove(key));
+                segment.garbage.addAndGet(record.length);
+            } else if (CacheEntry.isExpired(now, created, now, lifeTime, idleTime)) {
+                segment.keys.put(hash(key));
+                discard(index.remove(key));
+                segment.garbage.addAndGet(record.length);
+            } else {
+                segment.keys.put(hash(key));
+                final Location location = new Location(segment, position, record.length, keyLength,
+                    created, now, lifeTime, idleTime);
+                discard(index.put(key, location));
+            }
+            position += record.length;
+        }
+        segment.position = position;
+    }
+
+    /**
+     * Reads the complete record at the given position if it is valid.
+     */
+    private byte[] readRecord(Segment segment, int position) {
+        if (position + HEADER_SIZE > segmentSize) {
+            return null;
+        }
+        final ByteBuffer view = segment.buffer.duplicate();
+        view.position(position);
+        final int checksum = view.getInt();
+        final int keyLength = view.getInt();
+        final int valueLength = view.getInt();
+        if (keyLength <= 0 || valueLength < TOMBSTONE) {
+            return null;
+        }
+        final long length = (long) HEADER_SIZE + keyLength + Math.max(0, valueLength);
+        if (position + length > segmentSize) {
+            return null;
+        }
+        final byte[] record = new byte[(int) length];
+        view.position(position);
+        view.get(record);
+        return checksum(record) == checksum ? record : null;
+    }
+
+    private CacheKey readKey(byte[] record, int keyLength) {
+        try {
+            return keyCodec.decodeKey(ByteBuffer.wrap(record, HEADER_SIZE, keyLength));
+        } catch (IOException e) {
+            LOG.warn("Unable to read key: {}", e.toString());
+            return null;
+        }
+    }
+
+    private static byte[] record(byte[] key, byte[] value, long created, long lifeTime, long idleTime) {
+        final int valueLength = value == null ? 0 : value.length;
+        final ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + key.length + valueLength);
+        record.putInt(0);
+        record.putInt(key.length);
+        record.putInt(value == null ? TOMBSTONE : value.length);
+        record.putLong(created).putLong(lifeTime).putLong(idleTime);
+        record.put(key);
+        if (value != null) {
+            record.put(value);
+        }
+        final byte[] bytes = record.array();
+        record.putInt(0, checksum(bytes));
+        return bytes;
+    }
+
+    private static long hash(CacheKey key) {
+        final long hash = key.hashCode() * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 32);
+    }
+
+    private static int checksum(byte[] record) {
+        final CRC32 crc = new CRC32();
+        crc.update(record, 4, record.length - 4);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public CacheEntry get(CacheKey key, long now) {
+        return lookup(key, now, true);
+    }
+
+    @Override
+    public CacheEntry peek(CacheKey key, long now) {
+        return lookup(key, now, false);
+    }
+
+    private CacheEntry lookup(CacheKey key, long now, boolean touch) {
+        final Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        if (CacheEntry.isExpired(now, location.created, location.lastAccess, location.lifeTime, location.idleTime)) {
+            if (index.remove(key, location)) {
+                discard(location);
+            }
+            return null;
+        }
+        final ByteBuffer view = location.segment.buffer.duplicate();
+        final int start = location.offset + HEADER_SIZE + location.keyLength;
+        view.limit(location.offset + location.length);
+        view.position(start);
+        final Map<String, Object> value;
+        try {
+            value = resultCodec.decodeResult(view);
+        } catch (IOException e) {
+            LOG.warn("Unable to read entry for {}: {}", key, e.toString());
+            if (index.remove(key, location)) {
+                discard(location);
+            }
+            return null;
+        }
+        if (touch) {
+            location.lastAccess = now;
+            return new CacheEntry(value, location.created, now, location.lifeTime, location.idleTime);
+        } else {
+            return new CacheEntry(value, location.created, location.lastAccess, location.lifeTime, location.idleTime);
+        }
+    }
+
+    @Override
+    public boolean put(CacheKey key, CacheEntry entry) {
+        final byte[] record;
+        try {
+            record = record(keyCodec.encodeKey(key), resultCodec.encodeResult(entry.getValue()),
+                entry.getCreated(), entry.getLifeTime(), entry.getIdleTime());
+        } catch (IOException e) {
+            LOG.warn("Unable to serialize entry for {}: {}", key, e.toString());
+            return false;
+        }
+        if (record.length > segmentSize) {
+            LOG.debug("Entry for {} exceeds the segment size of {} bytes", key, segmentSize);
+            return false;
+        }
+        lock.lock();
+        try {
+            final Location location;
+            try {
+                location = append(record, entry.getCreated(), entry.getLastAccess(),
+                    entry.getLifeTime(), entry.getIdleTime());
+            } catch (IOException e) {
+                LOG.warn("Unable to append entry for {}: {}", key, e.toString());
+                return false;
+            }
+            location.segment.keys.put(hash(key));
+            discard(index.put(key, location));
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(CacheKey key) {
+        if (!index.containsKey(key)) {
+            return false;
+        }
+        final byte[] tombstone;
+        try {
+            tombstone = record(keyCodec.encodeKey(key), null, 0L, 0L, 0L);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        lock.lock();
+        try {
+            final Location removed = index.remove(key);
+            if (removed == null) {
+                return false;
+            }
+            discard(removed);
+            unwritten.add(tombstone);
+            try {
+                appendUnwritten();
+            } catch (IOException e) {
+                LOG.warn("Unable to append tombstone for {}, retrying with the next append: {}", key, e.toString());
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the tombstones which failed to append before. Requires the lock.
+     */
+    private void appendUnwritten() throws IOException {
+        while (!unwritten.isEmpty()) {
+            final byte[] tombstone = unwritten.getFirst();
+            // tombstones are garbage from the start, they only matter when rebuilding
+            write(tombstone, 0L, 0L, 0L, 0L).segment.garbage.addAndGet(tombstone.length);
+            unwritten.removeFirst();
+        }
+    }
+
+    /**
+     * Appends the given record to the active segment, after all tombstones which failed to append before.
+     * Requires the lock.
+     */
+    private Location append(byte[] record, long created, long lastAccess, long lifeTime, long idleTime)
+        throws IOException {
+        appendUnwritten();
+        return write(record, created, lastAccess, lifeTime, idleTime);
+    }
+
+    private Location write(byte[] record, long created, long lastAccess, long lifeTime, long idleTime)
+        throws IOException {
+        Segment active = segments.getLast();
+        if (active.position + record.length > segmentSize) {
+            active = roll();
+        }
+        final int offset = active.position;
+        final ByteBuffer view = active.buffer.duplicate();
+        view.position(offset);
+        view.put(record);
+        active.position = offset + record.length;
+        final int keyLength = ByteBuffer.wrap(record, 4, 4).getInt();
+        return new Location(active, offset, record.length, keyLength, created, lastAccess, lifeTime, idleTime);
+    }
+
+    /**
+     * Seals the active segment and starts a new one, dropping the oldest if necessary. Requires the lock.
+     */
+    private Segment roll() throws IOException {
+        if (!segments.isEmpty()) {
+            segments.getLast().buffer.force();
+        }
+        final Segment segment = new Segment(new File(directory, String.format("%016x%s", nextId, SUFFIX)),
+            segmentSize);
+        nextId++;
+        segments.add(segment);
+        if (segments.size() > maxSegments) {
+            drop(segments.removeFirst());
+        }
+        return segment;
+    }
+
+    private void drop(Segment segment) {
+        final Iterator<Map.Entry<CacheKey, Location>> iterator = index.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue().segment == segment) {
+                iterator.remove();
+            }
+        }
+        segment.delete();
+    }
+
+    private void discard(Location location) {
+        if (location != null) {
+            location.segment.garbage.addAndGet(location.length);
+        }
+    }
+
+    /**
+     * Compacts all sealed segments whose garbage ratio exceeds the threshold.
+     *
+     * @return the number of compacted segments
+     */
+    int compact() {
+        expire(System.currentTimeMillis());
+        final List<Segment> candidates = Lists.newArrayList();
+        lock.lock();
+        try {
+            for (Segment segment : segments.subList(0, segments.size() - 1)) {
+                if (segment.getGarbageRatio() >= compactionThreshold) {
+                    candidates.add(segment);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        int compacted = 0;
+        for (Segment segment : candidates) {
+            try {
+                if (compact(segment)) {
+                    compacted++;
+                }
+            } catch (IOException e) {
+                LOG.warn("Unable to compact " + segment.file, e);
+            }
+        }
+        return compacted;
+    }
+
+    /**
+     * Removes all expired entries from the index, so their records count as garbage.
+     */
+    private void expire(long now) {
+        for (Map.Entry<CacheKey, Location> entry : index.entrySet()) {
+            final Location location = entry.getValue();
+            if (CacheEntry.isExpired(now, location.created, location.lastAccess, location.lifeTime, location.idleTime)
+                && index.remove(entry.getKey(), location)) {
+                discard(location);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a segment older than the given one may contain a record of the given key.
+     * Requires the lock.
+     */
+    private boolean isContainedBefore(Segment segment, CacheKey key) {
+        final long hash = hash(key);
+        for (Segment older : segments) {
+            if (older == segment) {
+                return false;
+            } else if (older.keys.mightContain(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean compact(Segment segment) throws IOException {
+        int position = 0;
+        while (position < segment.position) {
+            final byte[] record = readRecord(segment, position);
+            if (record == null) {
+                break;
+            }
+            final int offset = position;
+            position += record.length;
+            final ByteBuffer buffer = ByteBuffer.wrap(record);
+            buffer.position(4);
+            final int keyLength = buffer.getInt();
+            final boolean tombstone = buffer.getInt() == TOMBSTONE;
+            final CacheKey key = readKey(record, keyLength);
+            if (key == null) {
+                continue;
+            }
+            lock.lock();
+            try {
+                if (!segments.contains(segment)) {
+                    // dropped in the meantime
+                    return false;
+                }
+                if (tombstone) {
+                    // needed as long as an older segment may contain records it hides, unless the key
+                    // was stored again, a copy at the end of the log would hide that newer record
+                    if (!index.containsKey(key) && isContainedBefore(segment, key)) {
+                        append(record, 0L, 0L, 0L, 0L).segment.garbage.addAndGet(record.length);
+                    }
+                    continue;
+                }
+                final Location location = index.get(key);
+                if (location == null || location.segment != segment || location.offset != offset) {
+                    continue;
+                }
+                final long now = System.currentTimeMillis();
+                if (CacheEntry.isExpired(now, location.created, location.lastAccess,
+                    location.lifeTime, location.idleTime)) {
+                    index.remove(key, location);
+                } else {
+                    final Location moved = append(record, location.created, location.lastAccess,
+                        location.lifeTime, location.idleTime);
+                    moved.segment.keys.put(hash(key));
+                    index.replace(key, location, moved);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        lock.lock();
+        try {
+            if (!segments.remove(segment)) {
+                return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+        segment.delete();
+        return true;
+    }
+
+    @Override
+    public Set<CacheKey> keys() {
+        return index.keySet();
+    }
+
+    @Override
+    public List<? extends Iterable<CacheKey>> keySegments() {
+        return index.keySegments();
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Provides the number of segments currently in use.
+     *
+     * @return the number of segments
+     */
+    int getSegments() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes the active segment and releases all segments. The segment files are kept
+     * for the next {@link #open()}.
+     */
+    void close() {
+        lock.lock();
+        try {
+            if (!segments.isEmpty()) {
+                try {
+                    appendUnwritten();
+                } catch (IOException e) {
+                    LOG.warn("Unable to append {} tombstones, their entries may reappear: {}",
+                        unwritten.size(), e.toString());
+                }
+                unwritten.clear();
+                segments.getLast().buffer.force();
+            }
+            segments.clear();
+            index.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Position of a complete record and the metadata of its entry.
+     */
+    private static final class Location {
+
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        private final int keyLength;
+        private final long created;
+        private final long lifeTime;
+        private final long idleTime;
+        private volatile long lastAccess;
+
+        Location(Segment segment, int offset, int length, int keyLength,
+            long created, long lastAccess, long lifeTime, long idleTime) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.keyLength = keyLength;
+            this.created = created;
+            this.lastAccess = lastAccess;
+            this.lifeTime = lifeTime;
+            this.idleTime = idleTime;
+        }
+
+    }
+
+    /**
+     * A memory-mapped segment file.
+     */
+    private static final class Segment {
+
+        private final File file;
+        private final MappedByteBuffer buffer;
+
+        // keys of all records but tombstones, decides whether tombstones of later segments are still needed
+        private final BloomFilter keys;
+        private final AtomicLong garbage = new AtomicLong();
+
+        // written under the tier's lock, read by compaction
+        private volatile int position;
+
+        Segment(File file, int size) throws IOException {
+            this.file = file;
+            this.keys = new BloomFilter(Math.max(1, size / EXPECTED_RECORD_SIZE), 0.01);
+            final RandomAccessFile access = new RandomAccessFile(file, "rw");
+            try {
+                // the mapping stays valid after closing the file
+                this.buffer = access.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } finally {
+                access.close();
+            }
+        }
+
+        double getGarbageRatio() {
+            final int written = position;
+            return written == 0 ? 0d : (double) garbage.get() / written;
+        }
+
+        void delete() {
+            // readers may still use the mapping, which is released once it is garbage collected
+            if (!file.delete()) {
+                LOG.warn("Unable to delete {}", file);
+            }
+        }
+
+    }
+
+}
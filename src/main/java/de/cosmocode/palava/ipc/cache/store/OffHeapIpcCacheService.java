@@ -0,0 +1,75 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.ipc.cache.codec.ResultCodec;
+
+/**
+ * An {@link de.cosmocode.palava.ipc.cache.IpcCacheService} which keeps serialized results
+ * outside of the java heap, using an {@link OffHeapStore}.
+ *
+ * <p>
+ * Results are written using the bound {@link ResultCodec}. Results which can't be encoded or
+ * exceed the slab size are returned but not cached.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class OffHeapIpcCacheService extends AbstractTierIpcCacheService {
+
+    private final OffHeapStore store;
+
+    @Inject
+    OffHeapIpcCacheService(
+        @Named(StoreConfig.OFF_HEAP_CAPACITY) long capacity,
+        @Named(StoreConfig.OFF_HEAP_SLAB_SIZE) int slabSize) {
+        this.store = new OffHeapStore(capacity, slabSize);
+    }
+
+    @Inject(optional = true)
+    void setResultCodec(ResultCodec resultCodec) {
+        store.setResultCodec(resultCodec);
+    }
+
+    @Override
+    protected CacheTier getTier() {
+        return store;
+    }
+
+    /**
+     * Provides the number of entries, including expired ones which were not yet removed.
+     *
+     * @return the number of entries
+     */
+    int size() {
+        return store.size();
+    }
+
+    /**
+     * Provides the number of off-heap bytes used by entries.
+     *
+     * @return the used bytes
+     */
+    long getUsedBytes() {
+        return store.getUsedBytes();
+    }
+
+}
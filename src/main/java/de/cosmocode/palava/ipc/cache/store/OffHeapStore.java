@@ -0,0 +1,258 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import de.cosmocode.palava.ipc.cache.CacheEntry;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.codec.BinaryResultCodec;
+import de.cosmocode.palava.ipc.cache.codec.ResultCodec;
+
+/**
+ * Keeps serialized results in memory allocated by a {@link SlabAllocator}.
+ *
+ * <p>
+ * Only the keys and a small {@link Slot} per entry, holding the address and the expiration
+ * metadata, live on the heap. Values are encoded on write and decoded on every read.
+ * When the allocator runs out of space, entries of the same size class are evicted by sweeping
+ * over the index, which approximates random eviction without keeping any further per-entry state.
+ * Entries of other size classes would not free a usable chunk, so they are skipped, and a put
+ * which finds no entry to evict within a bounded number of steps fails instead.
+ * </p>
+ *
+ * <p>
+ * Readers do not lock. A slot is invalidated before its chunk is freed and readers check
+ * the slot after copying the bytes, so a chunk which was reused concurrently is reported as a miss.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class OffHeapStore implements CacheTier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OffHeapStore.class);
+
+    // bound the work of a single put whose size class is exhausted
+    private static final int MAX_EVICTIONS = 8;
+    private static final int MAX_SWEEP = 1024;
+
+    private final SlabAllocator allocator;
+
+    private final SegmentedIndex<Slot> index = new SegmentedIndex<Slot>();
+
+    private Iterator<CacheKey> sweep = index.keySet().iterator();
+
+    // guards sweep
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile ResultCodec resultCodec = BinaryResultCodec.INSTANCE;
+
+    OffHeapStore(long capacity, int slabSize) {
+        this.allocator = new SlabAllocator(capacity, slabSize);
+    }
+
+    OffHeapStore(long capacity, int slabSize, FileChannel file) {
+        this.allocator = new SlabAllocator(capacity, slabSize, file);
+    }
+
+    /**
+     * Changes the codec used for results. Entries written using the previous codec
+     * may no longer be readable, so this has to be called before the first write.
+     *
+     * @param resultCodec the new codec
+     */
+    void setResultCodec(ResultCodec resultCodec) {
+        this.resultCodec = Preconditions.checkNotNull(resultCodec, "ResultCodec");
+    }
+
+    @Override
+    public CacheEntry get(CacheKey key, long now) {
+        return lookup(key, now, true);
+    }
+
+    @Override
+    public CacheEntry peek(CacheKey key, long now) {
+        return lookup(key, now, false);
+    }
+
+    private CacheEntry lookup(CacheKey key, long now, boolean touch) {
+        final Slot slot = index.get(key);
+        if (slot == null) {
+            return null;
+        }
+        if (CacheEntry.isExpired(now, slot.created, slot.lastAccess, slot.lifeTime, slot.idleTime)) {
+            remove(key, slot);
+            return null;
+        }
+        final byte[] bytes = allocator.read(slot.address, slot.length);
+        if (!slot.valid) {
+            return null;
+        }
+        final Map<String, Object> value;
+        try {
+            value = resultCodec.decodeResult(ByteBuffer.wrap(bytes));
+        } catch (IOException e) {
+            LOG.warn("Unable to read off-heap entry for {}: {}", key, e.toString());
+            remove(key, slot);
+            return null;
+        }
+        if (touch) {
+            slot.lastAccess = now;
+            return new CacheEntry(value, slot.created, now, slot.lifeTime, slot.idleTime);
+        } else {
+            return new CacheEntry(value, slot.created, slot.lastAccess, slot.lifeTime, slot.idleTime);
+        }
+    }
+
+    @Override
+    public boolean put(CacheKey key, CacheEntry entry) {
+        final byte[] bytes;
+        try {
+            bytes = resultCodec.encodeResult(entry.getValue());
+        } catch (IOException e) {
+            LOG.warn("Unable to serialize result for {}: {}", key, e.toString());
+            return false;
+        }
+        if (bytes.length > allocator.getMaxLength()) {
+            LOG.debug("Result for {} exceeds the maximum length of {} bytes", key, allocator.getMaxLength());
+            return false;
+        }
+        final int chunk = SlabAllocator.chunkSize(bytes.length);
+        long address = allocator.allocate(bytes.length);
+        for (int evictions = 0; address == SlabAllocator.NONE; evictions++) {
+            if (evictions == MAX_EVICTIONS || !evict(chunk)) {
+                LOG.debug("No space left for {} bytes for {}", chunk, key);
+                return false;
+            }
+            address = allocator.allocate(bytes.length);
+        }
+        allocator.write(address, bytes);
+        final Slot slot = new Slot(address, bytes.length, entry);
+        final Slot previous = index.put(key, slot);
+        if (previous != null) {
+            release(previous);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(CacheKey key) {
+        final Slot slot = index.remove(key);
+        if (slot == null) {
+            return false;
+        }
+        release(slot);
+        return true;
+    }
+
+    private boolean evict(int chunk) {
+        lock.lock();
+        try {
+            final int steps = Math.min(MAX_SWEEP, index.size());
+            for (int step = 0; step < steps; step++) {
+                if (!sweep.hasNext()) {
+                    sweep = index.keySet().iterator();
+                    if (!sweep.hasNext()) {
+                        return false;
+                    }
+                }
+                final CacheKey key = sweep.next();
+                final Slot slot = index.get(key);
+                if (slot != null && SlabAllocator.chunkSize(slot.length) == chunk) {
+                    remove(key, slot);
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(CacheKey key, Slot slot) {
+        if (index.remove(key, slot)) {
+            release(slot);
+        }
+    }
+
+    private void release(Slot slot) {
+        slot.valid = false;
+        allocator.free(slot.address, slot.length);
+    }
+
+    @Override
+    public Set<CacheKey> keys() {
+        return index.keySet();
+    }
+
+    @Override
+    public List<? extends Iterable<CacheKey>> keySegments() {
+        return index.keySegments();
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * The number of off-heap bytes in use by entries.
+     *
+     * @return the used bytes
+     */
+    long getUsedBytes() {
+        return allocator.getUsed();
+    }
+
+    /**
+     * On-heap handle to an off-heap entry.
+     */
+    private static final class Slot {
+
+        private final long address;
+        private final int length;
+        private final long created;
+        private final long lifeTime;
+        private final long idleTime;
+        private volatile long lastAccess;
+        private volatile boolean valid = true;
+
+        Slot(long address, int length, CacheEntry entry) {
+            this.address = address;
+            this.length = length;
+            this.created = entry.getCreated();
+            this.lastAccess = entry.getLastAccess();
+            this.lifeTime = entry.getLifeTime();
+            this.idleTime = entry.getIdleTime();
+        }
+
+    }
+
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.cache.CacheKey;
+
+/**
+ * A concurrent index of cache keys which spreads its entries over a fixed number of segments
+ * by key hash, so a {@link de.cosmocode.palava.ipc.cache.ParallelInvalidation} can scan the
+ * segments in place instead of copying all keys first.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @param <V> the value type
+ */
+final class SegmentedIndex<V> extends AbstractMap<CacheKey, V> implements ConcurrentMap<CacheKey, V> {
+
+    private final List<ConcurrentMap<CacheKey, V>> segments;
+
+    private final Set<Map.Entry<CacheKey, V>> entries = new AbstractSet<Map.Entry<CacheKey, V>>() {
+
+        @Override
+        public Iterator<Map.Entry<CacheKey, V>> iterator() {
+            return Iterators.concat(Iterators.transform(segments.iterator(),
+                new Function<ConcurrentMap<CacheKey, V>, Iterator<Map.Entry<CacheKey, V>>>() {
+
+                    @Override
+                    public Iterator<Map.Entry<CacheKey, V>> apply(ConcurrentMap<CacheKey, V> segment) {
+                        return segment.entrySet().iterator();
+                    }
+
+                }));
+        }
+
+        @Override
+        public int size() {
+            return SegmentedIndex.this.size();
+        }
+
+    };
+
+    SegmentedIndex() {
+        final List<ConcurrentMap<CacheKey, V>> maps = Lists.newArrayListWithCapacity(TierSegments.SEGMENTS);
+        for (int i = 0; i < TierSegments.SEGMENTS; i++) {
+            maps.add(Maps.<CacheKey, V>newConcurrentMap());
+        }
+        this.segments = ImmutableList.copyOf(maps);
+    }
+
+    private ConcurrentMap<CacheKey, V> segment(Object key) {
+        final int hash = key.hashCode();
+        return segments.get(((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % TierSegments.SEGMENTS);
+    }
+
+    /**
+     * Provides live views of the keys of every segment. The views are weakly consistent
+     * like the key set of a {@link java.util.concurrent.ConcurrentHashMap}.
+     *
+     * @return the keys of every segment
+     */
+    List<Set<CacheKey>> keySegments() {
+        final List<Set<CacheKey>> keys = Lists.newArrayListWithCapacity(segments.size());
+        for (ConcurrentMap<CacheKey, V> segment : segments) {
+            keys.add(segment.keySet());
+        }
+        return keys;
+    }
+
+    @Override
+    public V get(Object key) {
+        return segment(key).get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return segment(key).containsKey(key);
+    }
+
+    @Override
+    public V put(CacheKey key, V value) {
+        return segment(key).put(key, value);
+    }
+
+    @Override
+    public V putIfAbsent(CacheKey key, V value) {
+        return segment(key).putIfAbsent(key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return segment(key).remove(key);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return segment(key).remove(key, value);
+    }
+
+    @Override
+    public boolean replace(CacheKey key, V oldValue, V newValue) {
+        return segment(key).replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public V replace(CacheKey key, V value) {
+        return segment(key).replace(key, value);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (ConcurrentMap<CacheKey, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (ConcurrentMap<CacheKey, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<CacheKey, V>> entrySet() {
+        return entries;
+    }
+
+}
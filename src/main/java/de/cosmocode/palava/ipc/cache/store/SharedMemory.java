@@ -0,0 +1,140 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+
+import sun.misc.Unsafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Atomic and volatile access to absolute offsets of a memory mapping, which
+ * {@link java.nio.ByteBuffer} does not provide. All accesses use native byte order.
+ *
+ * <p>
+ * Every access is checked against the bounds of the mapping, atomic and volatile accesses
+ * additionally have to be aligned to eight bytes.
+ * </p>
+ *
+ * <p>
+ * This is the only class using {@code sun.misc.Unsafe}. javac reports every use as internal proprietary
+ * API and that warning can not be suppressed by annotation, so the build compiles with
+ * {@code -XDignore.symbol.file}. Other code needing atomic access to mapped memory, e.g. in other packages,
+ * goes through this class instead of adding new ones.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class SharedMemory {
+
+    private static final Unsafe UNSAFE;
+
+    private static final long ADDRESS;
+
+    static {
+        try {
+            final Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            UNSAFE = (Unsafe) field.get(null);
+            ADDRESS = UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        } catch (NoSuchFieldException e) {
+            throw new ExceptionInInitializerError(e);
+        } catch (IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // keeps the mapping reachable as long as this instance is used
+    private final MappedByteBuffer buffer;
+
+    private final long base;
+
+    private final long capacity;
+
+    /**
+     * Wraps the given mapping.
+     *
+     * @param buffer the mapping
+     * @throws NullPointerException if buffer is null
+     */
+    public SharedMemory(MappedByteBuffer buffer) {
+        this.buffer = Preconditions.checkNotNull(buffer, "Buffer");
+        this.base = UNSAFE.getLong(buffer, ADDRESS);
+        this.capacity = buffer.capacity();
+    }
+
+    private long address(long offset, int size) {
+        if (offset < 0 || offset > capacity - size) {
+            throw new IndexOutOfBoundsException(String.format(
+                "%s bytes at offset %s exceed the mapping of %s bytes", size, offset, capacity));
+        }
+        return base + offset;
+    }
+
+    private long aligned(long offset) {
+        Preconditions.checkArgument((offset & 7L) == 0, "Offset %s is not aligned", offset);
+        return address(offset, 8);
+    }
+
+    public MappedByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public long getLong(long offset) {
+        return UNSAFE.getLong(address(offset, 8));
+    }
+
+    public void putLong(long offset, long value) {
+        UNSAFE.putLong(address(offset, 8), value);
+    }
+
+    public int getInt(long offset) {
+        return UNSAFE.getInt(address(offset, 4));
+    }
+
+    public void putInt(long offset, int value) {
+        UNSAFE.putInt(address(offset, 4), value);
+    }
+
+    public long getLongVolatile(long offset) {
+        return UNSAFE.getLongVolatile(null, aligned(offset));
+    }
+
+    public void putLongVolatile(long offset, long value) {
+        UNSAFE.putLongVolatile(null, aligned(offset), value);
+    }
+
+    /**
+     * Stores the given value after all preceding writes, without waiting for it to become visible.
+     * Sufficient to publish data to readers using {@link #getLongVolatile(long)}.
+     *
+     * @param offset the offset
+     * @param value the new value
+     */
+    public void putLongOrdered(long offset, long value) {
+        UNSAFE.putOrderedLong(null, aligned(offset), value);
+    }
+
+    public boolean compareAndSwapLong(long offset, long expected, long value) {
+        return UNSAFE.compareAndSwapLong(null, aligned(offset), expected, value);
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.cache.codec.BinaryKeyCodec;
+import de.cosmocode.palava.ipc.cache.codec.BinaryResultCodec;
+import de.cosmocode.palava.ipc.cache.codec.KeyCodec;
+import de.cosmocode.palava.ipc.cache.codec.ResultCodec;
+
+/**
+ * An {@link de.cosmocode.palava.ipc.cache.IpcCacheService} which shares its entries with all
+ * processes on the same host using the same file, based on a {@link SharedMemoryTier}.
+ * Invalidations affect every process.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class SharedMemoryIpcCacheService extends AbstractTierIpcCacheService implements Initializable {
+
+    private File file = new File("/dev/shm/palava-ipc-cache");
+
+    private int slots = 1 << 20;
+
+    private long dataSize = 512L * 1024 * 1024;
+
+    private long staleTimeout = 10;
+
+    private KeyCodec keyCodec = BinaryKeyCodec.INSTANCE;
+
+    private ResultCodec resultCodec = BinaryResultCodec.INSTANCE;
+
+    private SharedMemoryTier tier;
+
+    @Inject(optional = true)
+    void setFile(@Named(StoreConfig.SHARED_FILE) File file) {
+        this.file = Preconditions.checkNotNull(file, "File");
+    }
+
+    @Inject(optional = true)
+    void setSlots(@Named(StoreConfig.SHARED_SLOTS) int slots) {
+        this.slots = slots;
+    }
+
+    @Inject(optional = true)
+    void setDataSize(@Named(StoreConfig.SHARED_DATA_SIZE) long dataSize) {
+        this.dataSize = dataSize;
+    }
+
+    @Inject(optional = true)
+    void setStaleTimeout(@Named(StoreConfig.SHARED_STALE_TIMEOUT) long staleTimeout) {
+        this.staleTimeout = staleTimeout;
+    }
+
+    @Inject(optional = true)
+    void setKeyCodec(KeyCodec keyCodec) {
+        this.keyCodec = Preconditions.checkNotNull(keyCodec, "KeyCodec");
+    }
+
+    @Inject(optional = true)
+    void setResultCodec(ResultCodec resultCodec) {
+        this.resultCodec = Preconditions.checkNotNull(resultCodec, "ResultCodec");
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        try {
+            tier = new SharedMemoryTier(file, slots, dataSize, staleTimeout, keyCodec, resultCodec);
+        } catch (IOException e) {
+            throw new LifecycleException(e);
+        }
+    }
+
+    @Override
+    protected CacheTier getTier() {
+        return tier;
+    }
+
+}
@@ -0,0 +1,604 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import de.cosmocode.palava.ipc.cache.CacheEntry;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.codec.BinaryKeyCodec;
+import de.cosmocode.palava.ipc.cache.codec.BinaryResultCodec;
+import de.cosmocode.palava.ipc.cache.codec.KeyCodec;
+import de.cosmocode.palava.ipc.cache.codec.ResultCodec;
+
+/**
+ * A {@link CacheTier} in a memory-mapped file which is shared by all processes mapping the same file,
+ * usually located in {@code /dev/shm}.
+ *
+ * <p>
+ * The file consists of a header, a table of fixed size slots and a data ring. A record in the ring holds
+ * the expiration metadata and the lengths, followed by the serialized key and the serialized value.
+ * Writers reserve ring space by advancing the shared top position with compare-and-swap, so the ring
+ * overwrites the oldest records once it wrapped around. Slots are found by linear probing on a 64 bit
+ * hash of the serialized key and contain the hash, the ring position and the last access time of one entry.
+ * </p>
+ *
+ * <p>
+ * Every slot starts with a state word holding the state (empty, writing, ready or deleted),
+ * a version which is incremented on every claim and the claim time in seconds. A writer completes its
+ * record before it claims a slot by swapping its state word to writing, fills in the slot and publishes it
+ * by swapping the state word from its claim to ready. A writer which paused for longer than the stale
+ * timeout may have lost its slot to another claimant; its publish fails and the put is dropped. The fields
+ * it wrote in the meantime only point to its own complete record, which readers validate like any other.
+ * Readers compare the state word before and after reading a slot, check that its record was not
+ * overwritten by the ring and compare the stored key bytes, so they never return a foreign or torn result.
+ * A process which dies after claiming a slot leaves it in the writing state; such slots are
+ * reclaimed by other writers once the stale timeout passed.
+ * </p>
+ *
+ * <p>
+ * Concurrent puts of a key which is not present yet may claim different slots. After publishing,
+ * a writer removes ready slots with the same hash further down the probe sequence, or its own slot
+ * if an earlier one exists, so at most one ready slot per key survives.
+ * </p>
+ *
+ * <p>
+ * Keys are compared by their serialized form. The {@link BinaryKeyCodec} writes argument maps
+ * sorted, so equal keys always have equal forms. With other codecs, keys with equal content but
+ * a different serialized form, e.g. argument maps with a different iteration order, are treated
+ * as different keys. All processes sharing a file have to use the same codecs.
+ * The file must be smaller than 2 GB.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class SharedMemoryTier implements CacheTier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedMemoryTier.class);
+
+    private static final int MAGIC = 0x5049434D;
+    private static final int VERSION = 2;
+
+    private static final int HEADER_SIZE = 64;
+    private static final long MAGIC_OFFSET = 0;
+    private static final long VERSION_OFFSET = 4;
+    private static final long SLOTS_OFFSET = 8;
+    private static final long DATA_SIZE_OFFSET = 16;
+    private static final long TOP_OFFSET = 24;
+
+    private static final int SLOT_SIZE = 32;
+    private static final int STATE = 0;
+    private static final int HASH = 8;
+    private static final int POSITION = 16;
+    private static final int LAST_ACCESS = 24;
+
+    private static final int RECORD_HEADER = 32;
+    private static final int CREATED = 0;
+    private static final int LIFE_TIME = 8;
+    private static final int IDLE_TIME = 16;
+    private static final int KEY_LENGTH = 24;
+    private static final int VALUE_LENGTH = 28;
+
+    private static final long EMPTY = 0;
+    private static final long WRITING = 1;
+    private static final long READY = 2;
+    private static final long DELETED = 3;
+
+    private static final int MAX_PROBES = 16;
+    private static final int MAX_ATTEMPTS = 4;
+
+    private final SharedMemory memory;
+    private final KeyCodec keyCodec;
+    private final ResultCodec resultCodec;
+    private final int slots;
+    private final int mask;
+    private final long dataSize;
+    private final long dataOffset;
+    private final long staleTimeout;
+
+    /**
+     * Maps the given file, initializing it if it is new.
+     *
+     * @param file the shared file
+     * @param slots the number of slots, a power of two, used if the file is new
+     * @param dataSize the size of the data ring in bytes, used if the file is new
+     * @param staleTimeout seconds after which a claimed but unpublished slot may be reclaimed
+     * @throws IOException if mapping failed or the file has an incompatible format
+     */
+    SharedMemoryTier(File file, int slots, long dataSize, long staleTimeout) throws IOException {
+        this(file, slots, dataSize, staleTimeout, BinaryKeyCodec.INSTANCE, BinaryResultCodec.INSTANCE);
+    }
+
+    SharedMemoryTier(File file, int slots, long dataSize, long staleTimeout,
+        KeyCodec keyCodec, ResultCodec resultCodec) throws IOException {
+        Preconditions.checkArgument(Integer.bitCount(slots) == 1, "Slots must be a power of two");
+        Preconditions.checkArgument(dataSize > 0, "Data size must be positive");
+        Preconditions.checkArgument(HEADER_SIZE + (long) slots * SLOT_SIZE + dataSize <= Integer.MAX_VALUE,
+            "Shared file must be smaller than 2 GB");
+        this.staleTimeout = staleTimeout;
+        this.keyCodec = Preconditions.checkNotNull(keyCodec, "KeyCodec");
+        this.resultCodec = Preconditions.checkNotNull(resultCodec, "ResultCodec");
+
+        final RandomAccessFile access = new RandomAccessFile(file, "rw");
+        try {
+            final FileChannel channel = access.getChannel();
+            // serializes initialization between processes starting at the same time
+            final FileLock lock = channel.lock();
+            try {
+                if (access.length() == 0) {
+                    final long size = HEADER_SIZE + (long) slots * SLOT_SIZE + dataSize;
+                    access.setLength(size);
+                    memory = new SharedMemory(channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+                    memory.putInt(VERSION_OFFSET, VERSION);
+                    memory.putLong(SLOTS_OFFSET, slots);
+                    memory.putLong(DATA_SIZE_OFFSET, dataSize);
+                    memory.putLong(TOP_OFFSET, 0L);
+                    memory.getBuffer().force();
+                    memory.putInt(MAGIC_OFFSET, MAGIC);
+                    memory.getBuffer().force();
+                    LOG.info("Created shared cache {} with {} slots and {} data bytes", new Object[] {
+                        file, slots, dataSize
+                    });
+                } else {
+                    memory = new SharedMemory(channel.map(FileChannel.MapMode.READ_WRITE, 0, access.length()));
+                    if (memory.getInt(MAGIC_OFFSET) != MAGIC || memory.getInt(VERSION_OFFSET) != VERSION) {
+                        throw new IOException(file + " is not a compatible shared cache");
+                    }
+                    LOG.info("Attached to shared cache {}", file);
+                }
+            } finally {
+                lock.release();
+            }
+        } finally {
+            access.close();
+        }
+        this.slots = (int) memory.getLong(SLOTS_OFFSET);
+        this.mask = this.slots - 1;
+        this.dataSize = memory.getLong(DATA_SIZE_OFFSET);
+        this.dataOffset = HEADER_SIZE + (long) this.slots * SLOT_SIZE;
+    }
+
+    private static long hash(byte[] bytes) {
+        // FNV-1a followed by a final avalanche
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static long stateOf(long word) {
+        return word & 3L;
+    }
+
+    private static long claim(long word, long now) {
+        final long version = ((word >>> 2) + 1) & 0x3FFFFFFFL;
+        return ((now / 1000) << 32) | (version << 2) | WRITING;
+    }
+
+    private static long publish(long claimed) {
+        return (claimed & ~3L) | READY;
+    }
+
+    private static long delete(long word) {
+        return (word & ~3L) | DELETED;
+    }
+
+    private boolean isStale(long word, long now) {
+        return (now / 1000) - (word >>> 32) > staleTimeout;
+    }
+
+    private long slot(int index) {
+        return HEADER_SIZE + (long) index * SLOT_SIZE;
+    }
+
+    private boolean isOverwritten(long position) {
+        return memory.getLongVolatile(TOP_OFFSET) > position + dataSize;
+    }
+
+    private long record(long position) {
+        return dataOffset + position % dataSize;
+    }
+
+    private boolean isUsable(long slot, long now) {
+        final long position = memory.getLong(slot + POSITION);
+        final long record = record(position);
+        final boolean expired = CacheEntry.isExpired(now, memory.getLong(record + CREATED),
+            memory.getLong(slot + LAST_ACCESS), memory.getLong(record + LIFE_TIME), memory.getLong(record + IDLE_TIME));
+        return !expired && !isOverwritten(position);
+    }
+
+    private long allocate(int length) {
+        while (true) {
+            final long top = memory.getLongVolatile(TOP_OFFSET);
+            long start = top;
+            final long physical = start % dataSize;
+            if (physical + length > dataSize) {
+                // records never wrap, the tail of the ring is skipped
+                start += dataSize - physical;
+            }
+            if (memory.compareAndSwapLong(TOP_OFFSET, top, start + length)) {
+                return start;
+            }
+        }
+    }
+
+    private void write(long position, byte[] bytes, int offset) {
+        final ByteBuffer view = memory.getBuffer().duplicate();
+        view.position((int) (record(position) + offset));
+        view.put(bytes);
+    }
+
+    private byte[] read(long position, int offset, int length) {
+        final ByteBuffer view = memory.getBuffer().duplicate();
+        view.position((int) (record(position) + offset));
+        final byte[] bytes = new byte[length];
+        view.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public CacheEntry get(CacheKey key, long now) {
+        return lookup(key, now, true);
+    }
+
+    @Override
+    public CacheEntry peek(CacheKey key, long now) {
+        return lookup(key, now, false);
+    }
+
+    private CacheEntry lookup(CacheKey key, long now, boolean touch) {
+        final byte[] keyBytes = serialize(key);
+        if (keyBytes == null) {
+            return null;
+        }
+        final long hash = hash(keyBytes);
+        for (int i = 0; i < MAX_PROBES; i++) {
+            final long slot = slot((int) (hash + i) & mask);
+            final long word = memory.getLongVolatile(slot + STATE);
+            final long state = stateOf(word);
+            if (state == EMPTY) {
+                return null;
+            } else if (state != READY || memory.getLong(slot + HASH) != hash) {
+                continue;
+            }
+            final long position = memory.getLong(slot + POSITION);
+            final long lastAccess = memory.getLong(slot + LAST_ACCESS);
+            final long record = record(position);
+            final long created = memory.getLong(record + CREATED);
+            final long lifeTime = memory.getLong(record + LIFE_TIME);
+            final long idleTime = memory.getLong(record + IDLE_TIME);
+            final int keyLength = memory.getInt(record + KEY_LENGTH);
+            final int valueLength = memory.getInt(record + VALUE_LENGTH);
+            if (memory.getLongVolatile(slot + STATE) != word) {
+                continue;
+            } else if (isOverwritten(position) || CacheEntry.isExpired(now, created, lastAccess, lifeTime, idleTime)) {
+                memory.compareAndSwapLong(slot + STATE, word, delete(word));
+                return null;
+            } else if (keyLength != keyBytes.length || valueLength < 0
+                || RECORD_HEADER + (long) keyLength + valueLength > dataSize - position % dataSize) {
+                continue;
+            }
+            final byte[] storedKey = read(position, RECORD_HEADER, keyLength);
+            final byte[] value = read(position, RECORD_HEADER + keyLength, valueLength);
+            if (isOverwritten(position) || memory.getLongVolatile(slot + STATE) != word) {
+                return null;
+            } else if (!Arrays.equals(keyBytes, storedKey)) {
+                continue;
+            }
+            final Map<String, Object> result;
+            try {
+                result = resultCodec.decodeResult(ByteBuffer.wrap(value));
+            } catch (IOException e) {
+                LOG.warn("Unable to read shared entry for {}: {}", key, e.toString());
+                return null;
+            }
+            if (touch) {
+                // racy, but only ever moves forward by the amount of one concurrent read
+                memory.putLong(slot + LAST_ACCESS, now);
+                return new CacheEntry(result, created, now, lifeTime, idleTime);
+            } else {
+                return new CacheEntry(result, created, lastAccess, lifeTime, idleTime);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean put(CacheKey key, CacheEntry entry) {
+        final byte[] keyBytes = serialize(key);
+        final byte[] value = serializeResult(key, entry.getValue());
+        if (keyBytes == null || value == null) {
+            return false;
+        }
+        // records are aligned for their header words
+        final long length = (RECORD_HEADER + (long) keyBytes.length + value.length + 7) & ~7L;
+        if (length > dataSize) {
+            LOG.debug("Entry for {} exceeds the data size of {} bytes", key, dataSize);
+            return false;
+        }
+        final long hash = hash(keyBytes);
+        final long now = System.currentTimeMillis();
+
+        // the record is complete before any slot points to it
+        final long position = allocate((int) length);
+        final long record = record(position);
+        memory.putLong(record + CREATED, entry.getCreated());
+        memory.putLong(record + LIFE_TIME, entry.getLifeTime());
+        memory.putLong(record + IDLE_TIME, entry.getIdleTime());
+        memory.putInt(record + KEY_LENGTH, keyBytes.length);
+        memory.putInt(record + VALUE_LENGTH, value.length);
+        write(position, keyBytes, RECORD_HEADER);
+        write(position, value, RECORD_HEADER + keyBytes.length);
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            final long slot = findSlot(hash, now);
+            final long word = memory.getLongVolatile(slot + STATE);
+            final long claimed = claim(word, now);
+            if (!isClaimable(word, now) || !memory.compareAndSwapLong(slot + STATE, word, claimed)) {
+                continue;
+            }
+            memory.putLong(slot + HASH, hash);
+            memory.putLong(slot + POSITION, position);
+            memory.putLong(slot + LAST_ACCESS, entry.getLastAccess());
+            final long published = publish(claimed);
+            if (!memory.compareAndSwapLong(slot + STATE, claimed, published)) {
+                LOG.debug("Lost the slot for {} after the stale timeout, dropping the entry", key);
+                return false;
+            }
+            removeDuplicates(hash, slot, published);
+            return true;
+        }
+        LOG.debug("Unable to claim a slot for {}", key);
+        return false;
+    }
+
+    private void removeDuplicates(long hash, long own, long published) {
+        boolean passed = false;
+        for (int i = 0; i < MAX_PROBES; i++) {
+            final long slot = slot((int) (hash + i) & mask);
+            if (slot == own) {
+                passed = true;
+                continue;
+            }
+            final long word = memory.getLongVolatile(slot + STATE);
+            final long state = stateOf(word);
+            if (state == EMPTY) {
+                return;
+            } else if (state != READY || memory.getLong(slot + HASH) != hash) {
+                continue;
+            } else if (passed) {
+                memory.compareAndSwapLong(slot + STATE, word, delete(word));
+            } else {
+                // an earlier slot wins, the writer which published it removes ours as well if it sees it
+                memory.compareAndSwapLong(own + STATE, published, delete(published));
+                return;
+            }
+        }
+    }
+
+    private boolean isClaimable(long word, long now) {
+        return stateOf(word) != WRITING || isStale(word, now);
+    }
+
+    /**
+     * Finds the slot for the given hash: a ready slot with the same hash, the first slot which is free,
+     * stale, expired or overwritten, or the oldest ready slot in the probe window, in that order.
+     */
+    private long findSlot(long hash, long now) {
+        long free = -1;
+        long oldest = -1;
+        long oldestCreated = Long.MAX_VALUE;
+        for (int i = 0; i < MAX_PROBES; i++) {
+            final long slot = slot((int) (hash + i) & mask);
+            final long word = memory.getLongVolatile(slot + STATE);
+            final long state = stateOf(word);
+            if (state == EMPTY) {
+                return free == -1 ? slot : free;
+            } else if (state == READY) {
+                if (memory.getLong(slot + HASH) == hash) {
+                    return slot;
+                } else if (free == -1 && !isUsable(slot, now)) {
+                    free = slot;
+                } else {
+                    final long created = memory.getLong(record(memory.getLong(slot + POSITION)) + CREATED);
+                    if (created < oldestCreated) {
+                        oldestCreated = created;
+                        oldest = slot;
+                    }
+                }
+            } else if (free == -1 && (state == DELETED || isStale(word, now))) {
+                free = slot;
+            }
+        }
+        if (free != -1) {
+            return free;
+        } else if (oldest != -1) {
+            return oldest;
+        } else {
+            // every slot in the window is being written, the claim will fail unless one is stale
+            return slot((int) hash & mask);
+        }
+    }
+
+    @Override
+    public boolean remove(CacheKey key) {
+        final byte[] keyBytes = serialize(key);
+        if (keyBytes == null) {
+            return false;
+        }
+        final long hash = hash(keyBytes);
+        boolean removed = false;
+        for (int i = 0; i < MAX_PROBES; i++) {
+            final long slot = slot((int) (hash + i) & mask);
+            final long word = memory.getLongVolatile(slot + STATE);
+            final long state = stateOf(word);
+            if (state == EMPTY) {
+                break;
+            } else if (state == READY && memory.getLong(slot + HASH) == hash) {
+                removed |= memory.compareAndSwapLong(slot + STATE, word, delete(word));
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public Set<CacheKey> keys() {
+        final Set<CacheKey> keys = Sets.newHashSet();
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < slots; i++) {
+            final CacheKey key = keyAt(i, now);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Every segment covers a range of slots and decodes their keys while it is iterated,
+     * so segments are decoded concurrently and no key set is built up front.
+     * </p>
+     */
+    @Override
+    public List<? extends Iterable<CacheKey>> keySegments() {
+        final int count = Math.min(slots, TierSegments.SEGMENTS);
+        final List<Iterable<CacheKey>> segments = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            final int from = (int) ((long) slots * i / count);
+            final int to = (int) ((long) slots * (i + 1) / count);
+            segments.add(new Iterable<CacheKey>() {
+
+                @Override
+                public Iterator<CacheKey> iterator() {
+                    final long now = System.currentTimeMillis();
+                    return new AbstractIterator<CacheKey>() {
+
+                        private int next = from;
+
+                        @Override
+                        protected CacheKey computeNext() {
+                            while (next < to) {
+                                final CacheKey key = keyAt(next++, now);
+                                if (key != null) {
+                                    return key;
+                                }
+                            }
+                            return endOfData();
+                        }
+
+                    };
+                }
+
+            });
+        }
+        return segments;
+    }
+
+    /**
+     * Decodes the key of the given slot.
+     *
+     * @return the key, null if the slot holds no usable entry
+     */
+    private CacheKey keyAt(int index, long now) {
+        final long slot = slot(index);
+        final long word = memory.getLongVolatile(slot + STATE);
+        if (stateOf(word) != READY || !isUsable(slot, now)) {
+            return null;
+        }
+        final long position = memory.getLong(slot + POSITION);
+        final int keyLength = memory.getInt(record(position) + KEY_LENGTH);
+        if (keyLength < 0 || RECORD_HEADER + (long) keyLength > dataSize - position % dataSize) {
+            return null;
+        }
+        final byte[] keyBytes = read(position, RECORD_HEADER, keyLength);
+        if (isOverwritten(position) || memory.getLongVolatile(slot + STATE) != word) {
+            return null;
+        }
+        try {
+            return keyCodec.decodeKey(ByteBuffer.wrap(keyBytes));
+        } catch (IOException e) {
+            LOG.debug("Unable to read shared key: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Ready slots whose entry expired or whose record was overwritten by the ring are not counted.
+     * </p>
+     */
+    @Override
+    public int size() {
+        final long now = System.currentTimeMillis();
+        int size = 0;
+        for (int i = 0; i < slots; i++) {
+            final long slot = slot(i);
+            if (stateOf(memory.getLongVolatile(slot + STATE)) == READY && isUsable(slot, now)) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private byte[] serialize(CacheKey key) {
+        try {
+            return keyCodec.encodeKey(key);
+        } catch (IOException e) {
+            LOG.warn("Unable to serialize {}: {}", key, e.toString());
+            return null;
+        }
+    }
+
+    private byte[] serializeResult(CacheKey key, Map<String, Object> value) {
+        try {
+            return resultCodec.encodeResult(value);
+        } catch (IOException e) {
+            LOG.warn("Unable to serialize result for {}: {}", key, e.toString());
+            return null;
+        }
+    }
+
+}
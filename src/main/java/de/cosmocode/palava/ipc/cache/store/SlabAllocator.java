@@ -0,0 +1,244 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Allocates chunks of off-heap memory from direct {@link ByteBuffer} slabs or from
+ * consecutive regions of a memory-mapped file.
+ *
+ * <p>
+ * Chunk sizes are rounded up to the next power of two, starting at {@value #MIN_CHUNK} bytes.
+ * Freed chunks are kept in one free list per size class and reused before new space
+ * is carved from the current slab. Slabs are allocated lazily until the capacity is reached
+ * and are never released. As with any slab allocator, memory once carved for a size class
+ * stays in that class, so workloads whose result sizes shift over time may fail allocations
+ * even though enough memory is free in other classes.
+ * </p>
+ *
+ * <p>
+ * Addresses encode the slab index in the upper and the offset in the lower 32 bits.
+ * Reads and writes of allocated chunks do not lock, the slabs are published by replacing
+ * a volatile array whenever a new slab is added.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class SlabAllocator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SlabAllocator.class);
+
+    static final long NONE = -1L;
+
+    private static final int MIN_CHUNK = 64;
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_CHUNK);
+
+    private final int slabSize;
+    private final int maxSlabs;
+    private final FileChannel file;
+    private final ArrayDeque<Long>[] free;
+
+    // copied on grow, so readers never need the lock
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+
+    private int top;
+    private long used;
+
+    // guards free, top, used and growing slabs, mapping slabs from a file must not pin virtual threads
+    private final ReentrantLock lock = new ReentrantLock();
+
+    SlabAllocator(long capacity, int slabSize) {
+        this(capacity, slabSize, null);
+    }
+
+    /**
+     * Creates an allocator which maps its slabs from the given file if present.
+     *
+     * @param capacity the maximum number of bytes to reserve
+     * @param slabSize the size of one slab, a power of two
+     * @param file the file to map slabs from, null for direct buffers
+     */
+    @SuppressWarnings("unchecked")
+    SlabAllocator(long capacity, int slabSize, @Nullable FileChannel file) {
+        Preconditions.checkArgument(Integer.bitCount(slabSize) == 1, "Slab size must be a power of two");
+        Preconditions.checkArgument(slabSize >= MIN_CHUNK, "Slab size must be at least %s", MIN_CHUNK);
+        Preconditions.checkArgument(capacity >= slabSize, "Capacity must be at least one slab");
+        this.slabSize = slabSize;
+        this.maxSlabs = (int) Math.min(Integer.MAX_VALUE, capacity / slabSize);
+        this.file = file;
+        this.free = new ArrayDeque[Integer.numberOfTrailingZeros(slabSize) - MIN_SHIFT + 1];
+        for (int i = 0; i < free.length; i++) {
+            free[i] = new ArrayDeque<Long>();
+        }
+        // forces the first allocation to create a slab
+        this.top = slabSize;
+    }
+
+    /**
+     * The largest chunk this allocator can hand out.
+     *
+     * @return the maximum length
+     */
+    int getMaxLength() {
+        return slabSize;
+    }
+
+    static int chunkSize(int length) {
+        return Math.max(MIN_CHUNK, Integer.highestOneBit(length - 1) << 1);
+    }
+
+    private static int sizeClass(int chunk) {
+        return Integer.numberOfTrailingZeros(chunk) - MIN_SHIFT;
+    }
+
+    /**
+     * Allocates a chunk of at least the given length.
+     *
+     * @param length the required length
+     * @return the address or {@link #NONE} if there is no space left
+     */
+    long allocate(int length) {
+        lock.lock();
+        try {
+            Preconditions.checkArgument(length > 0 && length <= slabSize, "Illegal length %s", length);
+            final int chunk = chunkSize(length);
+            final Long reused = free[sizeClass(chunk)].pollFirst();
+            if (reused != null) {
+                used += chunk;
+                return reused.longValue();
+            }
+            if (top + chunk > slabSize) {
+                if (slabs.length == maxSlabs) {
+                    return NONE;
+                }
+                // the rest of the current slab is lost, which is bounded by one chunk per slab
+                final ByteBuffer slab = newSlab();
+                if (slab == null) {
+                    return NONE;
+                }
+                final ByteBuffer[] grown = Arrays.copyOf(slabs, slabs.length + 1);
+                grown[slabs.length] = slab;
+                slabs = grown;
+                top = 0;
+            }
+            final long address = ((long) (slabs.length - 1) << 32) | top;
+            top += chunk;
+            used += chunk;
+            return address;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ByteBuffer newSlab() {
+        if (file == null) {
+            return ByteBuffer.allocateDirect(slabSize);
+        }
+        try {
+            return file.map(FileChannel.MapMode.READ_WRITE, (long) slabs.length * slabSize, slabSize);
+        } catch (IOException e) {
+            LOG.warn("Unable to map slab #{}: {}", slabs.length, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Returns a chunk to its free list.
+     *
+     * @param address the address of the chunk
+     * @param length the length it was allocated with
+     */
+    void free(long address, int length) {
+        lock.lock();
+        try {
+            final int chunk = chunkSize(length);
+            free[sizeClass(chunk)].addFirst(address);
+            used -= chunk;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the given bytes at the given address.
+     *
+     * @param address the chunk address
+     * @param bytes the bytes
+     */
+    void write(long address, byte[] bytes) {
+        final ByteBuffer view = slab(address).duplicate();
+        view.position((int) address);
+        view.put(bytes);
+    }
+
+    /**
+     * Reads bytes from the given address.
+     *
+     * @param address the chunk address
+     * @param length the number of bytes to read
+     * @return the read bytes
+     */
+    byte[] read(long address, int length) {
+        final ByteBuffer view = slab(address).duplicate();
+        view.position((int) address);
+        final byte[] bytes = new byte[length];
+        view.get(bytes);
+        return bytes;
+    }
+
+    private ByteBuffer slab(long address) {
+        return slabs[(int) (address >>> 32)];
+    }
+
+    /**
+     * The number of bytes in allocated chunks.
+     *
+     * @return the used bytes
+     */
+    long getUsed() {
+        lock.lock();
+        try {
+            return used;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The number of bytes reserved from the operating system.
+     *
+     * @return the reserved bytes
+     */
+    long getReserved() {
+        return (long) slabs.length * slabSize;
+    }
+
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+/**
+ * Static constant holder class for store config key names.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class StoreConfig {
+
+    public static final String PREFIX = "ipc.cache.store.";
+
+    public static final String OFF_HEAP_CAPACITY = PREFIX + "offHeap.capacity";
+
+    public static final String OFF_HEAP_SLAB_SIZE = PREFIX + "offHeap.slabSize";
+
+    public static final String TIERED_HEAP_CAPACITY = PREFIX + "tiered.heapCapacity";
+
+    public static final String TIERED_FILE = PREFIX + "tiered.file";
+
+    public static final String TIERED_FILTER_ENTRIES = PREFIX + "tiered.filter.entries";
+
+    public static final String TIERED_FILTER_FPP = PREFIX + "tiered.filter.fpp";
+
+    public static final String TIERED_FILTER_REBUILD_INTERVAL = PREFIX + "tiered.filter.rebuildInterval";
+
+    public static final String TIERED_FILTER_REBUILD_INTERVAL_UNIT = PREFIX + "tiered.filter.rebuildIntervalUnit";
+
+    public static final String DISK_DIRECTORY = PREFIX + "disk.directory";
+
+    public static final String DISK_SEGMENT_SIZE = PREFIX + "disk.segmentSize";
+
+    public static final String DISK_SEGMENTS = PREFIX + "disk.segments";
+
+    public static final String DISK_COMPACTION_THRESHOLD = PREFIX + "disk.compactionThreshold";
+
+    public static final String DISK_COMPACTION_INTERVAL = PREFIX + "disk.compactionInterval";
+
+    public static final String DISK_COMPACTION_INTERVAL_UNIT = PREFIX + "disk.compactionIntervalUnit";
+
+    public static final String DISK_FILTER_ENTRIES = PREFIX + "disk.filter.entries";
+
+    public static final String DISK_FILTER_FPP = PREFIX + "disk.filter.fpp";
+
+    public static final String DISK_FILTER_REBUILD_INTERVAL = PREFIX + "disk.filter.rebuildInterval";
+
+    public static final String DISK_FILTER_REBUILD_INTERVAL_UNIT = PREFIX + "disk.filter.rebuildIntervalUnit";
+
+    public static final String SHARED_FILE = PREFIX + "shared.file";
+
+    public static final String SHARED_SLOTS = PREFIX + "shared.slots";
+
+    public static final String SHARED_DATA_SIZE = PREFIX + "shared.dataSize";
+
+    public static final String SHARED_STALE_TIMEOUT = PREFIX + "shared.staleTimeout";
+
+    private StoreConfig() {
+
+    }
+
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.cache.CacheEntry;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.ParallelInvalidation;
+
+/**
+ * Helps {@link CacheTier}s to split their keys into segments for a {@link ParallelInvalidation}
+ * and to walk through their entries for a snapshot.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class TierSegments {
+
+    // several segments per scanning thread, so uneven segments balance out
+    static final int SEGMENTS = 64;
+
+    private TierSegments() {
+
+    }
+
+    /**
+     * Takes a snapshot of the given keys and splits it into segments. Meant for small tiers only,
+     * large ones provide views of their own segments.
+     *
+     * @param keys the keys
+     * @return the segments of the keys
+     */
+    static List<List<CacheKey>> partition(Collection<CacheKey> keys) {
+        final List<CacheKey> copy = ImmutableList.copyOf(keys);
+        if (copy.isEmpty()) {
+            return ImmutableList.of();
+        }
+        final int size = (copy.size() + SEGMENTS - 1) / SEGMENTS;
+        return Lists.partition(copy, size);
+    }
+
+    /**
+     * Provides a weakly consistent view of the live entries of the given tier, using its
+     * {@link CacheTier#keySegments() key segments}. Reading an entry doesn't update its last access time.
+     *
+     * @param tier the tier
+     * @param now the current time in milliseconds
+     * @return an iterator over all live entries
+     */
+    static Iterator<Map.Entry<CacheKey, CacheEntry>> liveEntries(final CacheTier tier, final long now) {
+        final Iterator<CacheKey> keys = Iterables.concat(tier.keySegments()).iterator();
+        return new AbstractIterator<Map.Entry<CacheKey, CacheEntry>>() {
+
+            @Override
+            protected Map.Entry<CacheKey, CacheEntry> computeNext() {
+                while (keys.hasNext()) {
+                    final CacheKey key = keys.next();
+                    // removed or expired since the keys were read
+                    final CacheEntry entry = tier.peek(key, now);
+                    if (entry != null) {
+                        return Maps.immutableEntry(key, entry);
+                    }
+                }
+                return endOfData();
+            }
+
+        };
+    }
+
+    /**
+     * Creates a removal which removes keys from the given tier.
+     *
+     * @param tier the tier
+     * @return a removal for the given tier
+     */
+    static ParallelInvalidation.Removal removal(final CacheTier tier) {
+        return new ParallelInvalidation.Removal() {
+
+            @Override
+            public boolean remove(CacheKey key) {
+                return tier.remove(key);
+            }
+
+        };
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hit counters of a single {@link CacheTier}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class TierStatistics {
+
+    private final String name;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    TierStatistics(String name) {
+        this.name = name;
+    }
+
+    void hit() {
+        requests.incrementAndGet();
+        hits.incrementAndGet();
+    }
+
+    void miss() {
+        requests.incrementAndGet();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The number of reads which reached this tier.
+     *
+     * @return the number of requests
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * The number of reads this tier answered.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * The ratio of hits to requests which reached this tier.
+     *
+     * @return the hit ratio, 0 if there were no requests
+     */
+    public double getHitRatio() {
+        final long total = requests.get();
+        return total == 0 ? 0d : (double) hits.get() / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d/%d hits (%.1f%%)", name, getHits(), getRequests(), getHitRatio() * 100);
+    }
+
+}
@@ -0,0 +1,493 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.cache.CacheExpiration;
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.AbstractIpcCacheService;
+import de.cosmocode.palava.ipc.cache.CacheEntry;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.InvalidatingCache;
+import de.cosmocode.palava.ipc.cache.IpcCommandExecution;
+import de.cosmocode.palava.ipc.cache.ParallelInvalidation;
+import de.cosmocode.palava.ipc.cache.Snapshottable;
+import de.cosmocode.palava.ipc.cache.codec.BinaryResultCodec;
+import de.cosmocode.palava.ipc.cache.codec.ResultCodec;
+
+/**
+ * A two-tier {@link de.cosmocode.palava.ipc.cache.IpcCacheService} with a small {@link HeapTier}
+ * of live result maps in front of a large serialized {@link OffHeapStore}. Entries evicted from the
+ * heap are demoted, hits in the second tier are promoted back. The second tier uses direct memory
+ * by default or maps its slabs from {@link StoreConfig#TIERED_FILE} if configured.
+ *
+ * <p>
+ * If {@link StoreConfig#TIERED_FILTER_ENTRIES} is configured, the second tier is guarded by a
+ * {@link BloomFilteredTier} which is rebuilt periodically to forget removed and expired keys.
+ * </p>
+ *
+ * <p>
+ * An entry moving from the unscanned into the already scanned tier would survive an invalidation.
+ * Invalidations therefore register before they scan, and promotions and demotions drop entries
+ * matching a registered invalidation instead of moving them. Registering waits for the moves
+ * in progress, but neither reads nor moves wait for the scan.
+ * </p>
+ *
+ * <p>
+ * Snapshots contain the entries of both tiers. Restored entries go into the second tier,
+ * so they don't displace each other from the heap before they are used.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class TieredIpcCacheService extends AbstractIpcCacheService
+    implements InvalidatingCache, Snapshottable, TieredCache, Initializable, Disposable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TieredIpcCacheService.class);
+
+    private final int heapCapacity;
+    private final long capacity;
+    private final int slabSize;
+
+    private File file;
+    private RandomAccessFile mapped;
+
+    private long filterEntries;
+    private double filterFpp = 0.01;
+    private long filterRebuildInterval = 10;
+    private TimeUnit filterRebuildIntervalUnit = TimeUnit.MINUTES;
+
+    private ResultCodec resultCodec = BinaryResultCodec.INSTANCE;
+
+    private CacheTier second;
+    private HeapTier first;
+    private BloomFilteredTier filtered;
+    private ScheduledExecutorService rebuilder;
+
+    // shared by promotions and demotions, exclusive while an invalidation registers
+    private final ReentrantReadWriteLock moves = new ReentrantReadWriteLock();
+
+    private final List<Invalidation> invalidations = new CopyOnWriteArrayList<Invalidation>();
+
+    private final TierStatistics firstStatistics = new TierStatistics("heap");
+    private final TierStatistics secondStatistics = new TierStatistics("serialized");
+
+    @Inject
+    TieredIpcCacheService(
+        @Named(StoreConfig.TIERED_HEAP_CAPACITY) int heapCapacity,
+        @Named(StoreConfig.OFF_HEAP_CAPACITY) long capacity,
+        @Named(StoreConfig.OFF_HEAP_SLAB_SIZE) int slabSize) {
+        this.heapCapacity = heapCapacity;
+        this.capacity = capacity;
+        this.slabSize = slabSize;
+    }
+
+    @Inject(optional = true)
+    void setFile(@Named(StoreConfig.TIERED_FILE) File file) {
+        this.file = Preconditions.checkNotNull(file, "File");
+    }
+
+    @Inject(optional = true)
+    void setFilterEntries(@Named(StoreConfig.TIERED_FILTER_ENTRIES) long filterEntries) {
+        Preconditions.checkArgument(filterEntries > 0, "Filter entries must be positive");
+        this.filterEntries = filterEntries;
+    }
+
+    @Inject(optional = true)
+    void setFilterFpp(@Named(StoreConfig.TIERED_FILTER_FPP) double filterFpp) {
+        this.filterFpp = filterFpp;
+    }
+
+    @Inject(optional = true)
+    void setFilterRebuildInterval(@Named(StoreConfig.TIERED_FILTER_REBUILD_INTERVAL) long filterRebuildInterval) {
+        Preconditions.checkArgument(filterRebuildInterval > 0, "Rebuild interval must be positive");
+        this.filterRebuildInterval = filterRebuildInterval;
+    }
+
+    @Inject(optional = true)
+    void setFilterRebuildIntervalUnit(
+        @Named(StoreConfig.TIERED_FILTER_REBUILD_INTERVAL_UNIT) TimeUnit filterRebuildIntervalUnit) {
+        this.filterRebuildIntervalUnit = Preconditions.checkNotNull(filterRebuildIntervalUnit, "Unit");
+    }
+
+    @Inject(optional = true)
+    void setResultCodec(ResultCodec resultCodec) {
+        this.resultCodec = Preconditions.checkNotNull(resultCodec, "ResultCodec");
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        final OffHeapStore store;
+        if (file == null) {
+            store = new OffHeapStore(capacity, slabSize);
+        } else {
+            try {
+                mapped = new RandomAccessFile(file, "rw");
+                // contents of a previous run are meaningless without the index
+                mapped.setLength(0L);
+            } catch (IOException e) {
+                throw new LifecycleException(e);
+            }
+            final FileChannel channel = mapped.getChannel();
+            store = new OffHeapStore(capacity, slabSize, channel);
+        }
+        store.setResultCodec(resultCodec);
+        second = store;
+        if (filterEntries > 0) {
+            filtered = new BloomFilteredTier(second, "serialized", filterEntries, filterFpp);
+            second = filtered;
+            rebuilder = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("ipc-cache-filter-rebuild").setDaemon(true).build());
+            rebuilder.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        filtered.rebuild();
+                    } catch (RuntimeException e) {
+                        LOG.error("Rebuilding filter failed", e);
+                    }
+                }
+
+            }, filterRebuildInterval, filterRebuildInterval, filterRebuildIntervalUnit);
+        }
+        first = new HeapTier(heapCapacity, new Demotions());
+    }
+
+    @Override
+    public Map<String, Object> read(CacheKey key) {
+        Preconditions.checkNotNull(key, "CacheKey");
+        final long now = System.currentTimeMillis();
+        final CacheEntry cached = first.get(key, now);
+        if (cached != null) {
+            firstStatistics.hit();
+            return cached.getValue();
+        }
+        firstStatistics.miss();
+        final CacheEntry promoted = promote(key, now);
+        return promoted == null ? null : promoted.getValue();
+    }
+
+    /**
+     * Moves the entry of the given key from the second into the first tier, if there is one.
+     * Moves hold the shared move lock, so an invalidation never misses an entry in transit.
+     */
+    private CacheEntry promote(CacheKey key, long now) {
+        moves.readLock().lock();
+        try {
+            final CacheEntry demoted = second.get(key, now);
+            if (demoted == null) {
+                secondStatistics.miss();
+                return null;
+            }
+            final boolean removed = second.remove(key);
+            final Invalidation invalidation = invalidating(key);
+            if (invalidation != null) {
+                secondStatistics.miss();
+                if (removed) {
+                    invalidation.dropped.incrementAndGet();
+                }
+                return null;
+            }
+            secondStatistics.hit();
+            first.put(key, demoted);
+            return demoted;
+        } finally {
+            moves.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Resolves all heap hits in one pass holding the heap lock once and looks up
+     * only the remaining keys in the second tier.
+     * </p>
+     */
+    @Override
+    public Map<CacheKey, Map<String, Object>> readAll(Collection<? extends CacheKey> keys) {
+        Preconditions.checkNotNull(keys, "Keys");
+        final long now = System.currentTimeMillis();
+        final Map<CacheKey, CacheEntry> hot = first.getAll(keys, now);
+        final Map<CacheKey, Map<String, Object>> results = Maps.newLinkedHashMap();
+        for (CacheKey key : keys) {
+            final CacheEntry cached = hot.get(key);
+            if (cached != null) {
+                firstStatistics.hit();
+                results.put(key, cached.getValue());
+                continue;
+            }
+            firstStatistics.miss();
+            final CacheEntry promoted = promote(key, now);
+            if (promoted != null) {
+                results.put(key, promoted.getValue());
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public Map<String, Object> computeAndStore(CacheKey key, CacheExpiration expiration,
+        IpcCommandExecution computation) throws IpcCommandExecutionException {
+
+        Preconditions.checkNotNull(key, "CacheKey");
+        Preconditions.checkNotNull(expiration, "Expiration");
+        Preconditions.checkNotNull(computation, "Computation");
+
+        final Map<String, Object> cached = read(key);
+        if (cached == null) {
+            final Map<String, Object> value = computation.call();
+            // storing may demote another entry into the second tier
+            moves.readLock().lock();
+            try {
+                first.put(key, new CacheEntry(value, expiration, System.currentTimeMillis()));
+            } finally {
+                moves.readLock().unlock();
+            }
+            return value;
+        } else {
+            return cached;
+        }
+    }
+
+    @Override
+    public void invalidate(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+        invalidateMatching(command, predicate);
+    }
+
+    @Override
+    public int invalidateMatching(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+        Preconditions.checkNotNull(command, "Command");
+        Preconditions.checkNotNull(predicate, "Predicate");
+        final Invalidation invalidation = new Invalidation(command, predicate);
+        // waits for the moves in progress, all later moves see the invalidation
+        moves.writeLock().lock();
+        try {
+            invalidations.add(invalidation);
+        } finally {
+            moves.writeLock().unlock();
+        }
+        try {
+            return invalidate(first, command, predicate) + invalidate(second, command, predicate)
+                + invalidation.dropped.get();
+        } finally {
+            invalidations.remove(invalidation);
+        }
+    }
+
+    @Override
+    public boolean invalidateKey(CacheKey key) {
+        Preconditions.checkNotNull(key, "CacheKey");
+        // a promotion or demotion of the key in between would carry it past the removals
+        moves.writeLock().lock();
+        try {
+            final boolean heap = first.remove(key);
+            return second.remove(key) || heap;
+        } finally {
+            moves.writeLock().unlock();
+        }
+    }
+
+    private int invalidate(CacheTier tier, Class<? extends IpcCommand> command,
+        Predicate<? super CacheKey> predicate) {
+        return invalidate(tier.keySegments(), command, predicate, TierSegments.removal(tier));
+    }
+
+    @Override
+    public Iterator<Map.Entry<CacheKey, CacheEntry>> liveEntries() {
+        final long now = System.currentTimeMillis();
+        // an entry demoted in the meantime must not be written twice, the heap is small enough to copy
+        final Set<CacheKey> heap = ImmutableSet.copyOf(first.keys());
+        return Iterators.concat(
+            TierSegments.liveEntries(first, now),
+            Iterators.filter(TierSegments.liveEntries(second, now), new Predicate<Map.Entry<CacheKey, CacheEntry>>() {
+
+                @Override
+                public boolean apply(Map.Entry<CacheKey, CacheEntry> input) {
+                    return !heap.contains(input.getKey());
+                }
+
+            }));
+    }
+
+    @Override
+    public void restore(CacheKey key, CacheEntry entry) {
+        Preconditions.checkNotNull(key, "CacheKey");
+        Preconditions.checkNotNull(entry, "Entry");
+        final long now = System.currentTimeMillis();
+        if (entry.isExpired(now)) {
+            return;
+        }
+        moves.readLock().lock();
+        try {
+            if (invalidating(key) == null && first.peek(key, now) == null && second.peek(key, now) == null) {
+                second.put(key, entry);
+            }
+        } finally {
+            moves.readLock().unlock();
+        }
+    }
+
+    private Invalidation invalidating(CacheKey key) {
+        for (Invalidation invalidation : invalidations) {
+            if (invalidation.matches(key)) {
+                return invalidation;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<TierStatistics> getTierStatistics() {
+        return ImmutableList.of(firstStatistics, secondStatistics);
+    }
+
+    @Override
+    public List<FilterStatistics> getFilterStatistics() {
+        if (filtered == null) {
+            return ImmutableList.of();
+        } else {
+            return ImmutableList.of(filtered.getStatistics());
+        }
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        LOG.info("Tier statistics: {}", getTierStatistics());
+        if (rebuilder != null) {
+            LOG.info("Filter statistics: {}", getFilterStatistics());
+            rebuilder.shutdownNow();
+        }
+        if (mapped == null) {
+            return;
+        }
+        try {
+            mapped.close();
+        } catch (IOException e) {
+            throw new LifecycleException(e);
+        } finally {
+            if (!file.delete()) {
+                LOG.warn("Unable to delete {}", file);
+            }
+        }
+    }
+
+    /**
+     * An invalidation in progress.
+     */
+    private static final class Invalidation {
+
+        private final Class<? extends IpcCommand> command;
+        private final Predicate<? super CacheKey> predicate;
+
+        // entries dropped by moves instead of the scan
+        private final AtomicInteger dropped = new AtomicInteger();
+
+        Invalidation(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+            this.command = command;
+            this.predicate = predicate;
+        }
+
+        boolean matches(CacheKey key) {
+            return ParallelInvalidation.matches(key, command, predicate);
+        }
+
+    }
+
+    /**
+     * The overflow of the first tier, which drops demoted entries matching an invalidation in progress.
+     */
+    private final class Demotions implements CacheTier {
+
+        @Override
+        public CacheEntry get(CacheKey key, long now) {
+            return second.get(key, now);
+        }
+
+        @Override
+        public CacheEntry peek(CacheKey key, long now) {
+            return second.peek(key, now);
+        }
+
+        @Override
+        public boolean put(CacheKey key, CacheEntry entry) {
+            final Invalidation invalidation = invalidating(key);
+            if (invalidation == null) {
+                return second.put(key, entry);
+            } else {
+                invalidation.dropped.incrementAndGet();
+                return false;
+            }
+        }
+
+        @Override
+        public boolean remove(CacheKey key) {
+            return second.remove(key);
+        }
+
+        @Override
+        public Set<CacheKey> keys() {
+            return second.keys();
+        }
+
+        @Override
+        public List<? extends Iterable<CacheKey>> keySegments() {
+            return second.keySegments();
+        }
+
+        @Override
+        public int size() {
+            return second.size();
+        }
+
+    }
+
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.palava.ipc.cache.trace;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.ipc.cache.CacheKey;
+
+/**
+ * A {@link TraceRecorder} which passes every access to all recorders contributed using
+ * {@link TraceRecorders#contribute(com.google.inject.Binder, String)} which sample its key.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class CompositeTraceRecorder implements TraceRecorder {
+
+    private List<TraceRecorder> recorders = ImmutableList.of();
+
+    @Inject
+    CompositeTraceRecorder() {
+
+    }
+
+    @Inject(optional = true)
+    void setRingBuffer(@Named(TraceRecorders.RING_BUFFER) TraceRecorder recorder) {
+        add(recorder);
+    }
+
+    @Inject(optional = true)
+    void setHotKeys(@Named(TraceRecorders.HOT_KEYS) TraceRecorder recorder) {
+        add(recorder);
+    }
+
+    void add(TraceRecorder recorder) {
+        Preconditions.checkNotNull(recorder, "Recorder");
+        recorders = ImmutableList.<TraceRecorder>builder().addAll(recorders).add(recorder).build();
+    }
+
+    @Override
+    public boolean isSampled(CacheKey key) {
+        for (TraceRecorder recorder : recorders) {
+            if (recorder.isSampled(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void record(CacheKey key, boolean hit, long computeNanos, Map<String, Object> result) {
+        for (TraceRecorder recorder : recorders) {
+            // each recorder samples on its own
+            if (recorder.isSampled(key)) {
+                recorder.record(key, hit, computeNanos, result);
+            }
+        }
+    }
+
+}
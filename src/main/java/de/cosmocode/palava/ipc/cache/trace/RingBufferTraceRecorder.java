@@ -0,0 +1,402 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.trace;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.ResultSizes;
+
+/**
+ * A {@link TraceRecorder} which collects records in a lock-free bounded ring buffer
+ * and drains them on a background thread into rotating memory mapped files.
+ *
+ * <p>
+ * Producers never wait: if the buffer is full the record is dropped and counted.
+ * Sampling is done by key hash, so a sampled key is recorded on every access,
+ * which keeps reuse distances intact for offline simulation. Producers record the
+ * {@link ResultSizes#shallow(Object) shallow size} of the result, which takes constant time,
+ * and reuse the key hash computed by {@link #isSampled(CacheKey)} on the same thread,
+ * so it is computed once per access.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see TraceFormat
+ */
+final class RingBufferTraceRecorder implements TraceRecorder, Initializable, Disposable, Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RingBufferTraceRecorder.class);
+
+    private final File directory;
+
+    private double samplingRate = 1.0;
+    private int bufferSize = 65536;
+    private long fileSize = 64L * 1024 * 1024;
+    private int maxFiles = 16;
+    private long drainInterval = 100;
+    private TimeUnit drainIntervalUnit = TimeUnit.MILLISECONDS;
+
+    // written by the drainer when it stops
+    private volatile long threshold;
+    private int mask;
+
+    // ring buffer, slot i is written by the producer which claimed it and published through sequences
+    private long[] timestamps;
+    private int[] commands;
+    private long[] hashes;
+    private byte[] flags;
+    private long[] nanos;
+    private int[] sizes;
+    private AtomicLongArray sequences;
+
+    // the key most recently hashed by the current thread, reused by record and by composites
+    private final ThreadLocal<Hashed> lastHashed = new ThreadLocal<Hashed>() {
+
+        @Override
+        protected Hashed initialValue() {
+            return new Hashed();
+        }
+
+    };
+
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // consumer side, only touched by the drainer thread
+    private long head;
+    private final ConcurrentMap<Integer, String> names = Maps.newConcurrentMap();
+    private final Set<Integer> writtenNames = Sets.newHashSet();
+    private RandomAccessFile file;
+    private MappedByteBuffer buffer;
+    private long recordsInFile;
+    private int fileSequence;
+
+    private volatile boolean running;
+    private Thread drainer;
+
+    @Inject
+    RingBufferTraceRecorder(@Named(TraceConfig.DIRECTORY) File directory) {
+        this.directory = Preconditions.checkNotNull(directory, "Directory");
+    }
+
+    @Inject(optional = true)
+    void setSamplingRate(@Named(TraceConfig.SAMPLING_RATE) double samplingRate) {
+        Preconditions.checkArgument(samplingRate >= 0.0 && samplingRate <= 1.0, "Sampling rate must be in [0, 1]");
+        this.samplingRate = samplingRate;
+    }
+
+    @Inject(optional = true)
+    void setBufferSize(@Named(TraceConfig.BUFFER_SIZE) int bufferSize) {
+        Preconditions.checkArgument(Integer.bitCount(bufferSize) == 1, "Buffer size must be a power of two");
+        this.bufferSize = bufferSize;
+    }
+
+    @Inject(optional = true)
+    void setFileSize(@Named(TraceConfig.FILE_SIZE) long fileSize) {
+        Preconditions.checkArgument(fileSize > TraceFormat.HEADER_SIZE + TraceFormat.RECORD_SIZE,
+            "File size too small");
+        this.fileSize = fileSize;
+    }
+
+    @Inject(optional = true)
+    void setMaxFiles(@Named(TraceConfig.MAX_FILES) int maxFiles) {
+        Preconditions.checkArgument(maxFiles > 0, "Max files must be positive");
+        this.maxFiles = maxFiles;
+    }
+
+    @Inject(optional = true)
+    void setDrainInterval(@Named(TraceConfig.DRAIN_INTERVAL) long drainInterval) {
+        this.drainInterval = drainInterval;
+    }
+
+    @Inject(optional = true)
+    void setDrainIntervalUnit(@Named(TraceConfig.DRAIN_INTERVAL_UNIT) TimeUnit drainIntervalUnit) {
+        this.drainIntervalUnit = Preconditions.checkNotNull(drainIntervalUnit, "DrainIntervalUnit");
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new LifecycleException("Unable to create trace directory " + directory);
+        }
+
+        threshold = (long) (samplingRate * (1L << 53));
+        mask = bufferSize - 1;
+        timestamps = new long[bufferSize];
+        commands = new int[bufferSize];
+        hashes = new long[bufferSize];
+        flags = new byte[bufferSize];
+        nanos = new long[bufferSize];
+        sizes = new int[bufferSize];
+        sequences = new AtomicLongArray(bufferSize);
+        for (int i = 0; i < bufferSize; i++) {
+            sequences.set(i, i);
+        }
+
+        running = true;
+        drainer = new Thread(this, "ipc-cache-trace-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+        LOG.info("Recording {} of all cache accesses into {}", samplingRate, directory);
+    }
+
+    @Override
+    public boolean isSampled(CacheKey key) {
+        return (hash(key) >>> 11) < threshold;
+    }
+
+    private long hash(CacheKey key) {
+        final Hashed hashed = lastHashed.get();
+        if (hashed.key != key) {
+            hashed.key = key;
+            hashed.hash = TraceFormat.keyHash(key);
+        }
+        return hashed.hash;
+    }
+
+    @Override
+    public void record(CacheKey key, boolean hit, long computeNanos, Map<String, Object> result) {
+        final long hash = hash(key);
+        final int command = TraceFormat.commandId(key);
+        if (!names.containsKey(command)) {
+            names.putIfAbsent(command, key.getCommand().getName());
+        }
+
+        long position;
+        while (true) {
+            position = tail.get();
+            final long sequence = sequences.get((int) position & mask);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (sequence < position) {
+                // the drainer did not yet free this slot, buffer is full
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+
+        final int index = (int) position & mask;
+        timestamps[index] = System.currentTimeMillis();
+        commands[index] = command;
+        hashes[index] = hash;
+        flags[index] = hit ? TraceFormat.HIT : 0;
+        nanos[index] = computeNanos;
+        sizes[index] = (int) Math.min(Integer.MAX_VALUE, ResultSizes.shallow(result));
+        sequences.lazySet(index, position + 1);
+    }
+
+    /**
+     * Provides the number of records dropped because the buffer was full.
+     *
+     * @return the number of dropped records
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                if (drain() == 0) {
+                    drainIntervalUnit.sleep(drainInterval);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                LOG.error("Unable to write trace, stopping recorder", e);
+                running = false;
+                threshold = 0L;
+            }
+        }
+    }
+
+    private int drain() throws IOException {
+        int drained = 0;
+        while (true) {
+            final int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            if (buffer == null || buffer.remaining() < TraceFormat.RECORD_SIZE) {
+                rotate();
+            }
+            buffer.putLong(timestamps[index]);
+            buffer.putInt(commands[index]);
+            buffer.putLong(hashes[index]);
+            buffer.put(flags[index]);
+            buffer.putLong(nanos[index]);
+            buffer.putInt(sizes[index]);
+            recordsInFile++;
+            sequences.lazySet(index, head + bufferSize);
+            head++;
+            drained++;
+        }
+        if (drained > 0) {
+            buffer.putLong(TraceFormat.COUNT_OFFSET, recordsInFile);
+            writeNames();
+        }
+        return drained;
+    }
+
+    private void rotate() throws IOException {
+        closeFile();
+        final String name = String.format("%013d-%06d%s",
+            System.currentTimeMillis(), fileSequence++, TraceFormat.FILE_SUFFIX);
+        final RandomAccessFile next = new RandomAccessFile(new File(directory, name), "rw");
+        try {
+            buffer = next.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        } finally {
+            // e.g. closed by an interrupt, file and buffer have to be set together
+            if (buffer == null) {
+                next.close();
+            }
+        }
+        file = next;
+        buffer.putInt(TraceFormat.MAGIC);
+        buffer.putInt(TraceFormat.VERSION);
+        buffer.putLong(0L);
+        recordsInFile = 0;
+        deleteOldFiles();
+    }
+
+    private void deleteOldFiles() {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        int traces = 0;
+        for (File candidate : files) {
+            if (candidate.getName().endsWith(TraceFormat.FILE_SUFFIX)) {
+                traces++;
+            }
+        }
+        for (File candidate : files) {
+            if (traces <= maxFiles) {
+                break;
+            } else if (candidate.getName().endsWith(TraceFormat.FILE_SUFFIX)) {
+                LOG.debug("Deleting old trace {}", candidate);
+                if (!candidate.delete()) {
+                    LOG.warn("Unable to delete old trace {}", candidate);
+                }
+                traces--;
+            }
+        }
+    }
+
+    private void writeNames() throws IOException {
+        if (writtenNames.size() == names.size()) {
+            return;
+        }
+        final Writer writer = new OutputStreamWriter(
+            new FileOutputStream(new File(directory, TraceFormat.COMMANDS_FILE), true), Charsets.UTF_8);
+        try {
+            for (Map.Entry<Integer, String> entry : names.entrySet()) {
+                if (writtenNames.add(entry.getKey())) {
+                    writer.write(entry.getKey() + "," + entry.getValue() + "\n");
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void closeFile() throws IOException {
+        if (file != null) {
+            try {
+                buffer.putLong(TraceFormat.COUNT_OFFSET, recordsInFile);
+                buffer.force();
+            } finally {
+                file.close();
+                file = null;
+                buffer = null;
+            }
+        }
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        running = false;
+        threshold = 0L;
+        if (drainer != null) {
+            drainer.interrupt();
+            try {
+                drainer.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (drainer.isAlive()) {
+                // draining concurrently would corrupt the file, the remaining records are lost
+                LOG.warn("Trace drainer did not stop in time, skipping final drain");
+                return;
+            }
+        }
+        try {
+            drain();
+            closeFile();
+        } catch (IOException e) {
+            throw new LifecycleException(e);
+        }
+        if (dropped.get() > 0) {
+            LOG.warn("Dropped {} trace records because the buffer was full", dropped.get());
+        }
+    }
+
+    /**
+     * A key and its hash, kept per thread between {@link RingBufferTraceRecorder#isSampled(CacheKey)}
+     * and {@link RingBufferTraceRecorder#record(CacheKey, boolean, long, Map)}.
+     */
+    private static final class Hashed {
+
+        private CacheKey key;
+        private long hash;
+
+    }
+
+}
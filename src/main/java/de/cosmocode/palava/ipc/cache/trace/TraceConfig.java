@@ -0,0 +1,47 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.trace;
+
+/**
+ * Static constant holder class for trace recorder config key names.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class TraceConfig {
+
+    public static final String PREFIX = "ipc.cache.trace.";
+
+    public static final String DIRECTORY = PREFIX + "directory";
+
+    public static final String SAMPLING_RATE = PREFIX + "samplingRate";
+
+    public static final String BUFFER_SIZE = PREFIX + "bufferSize";
+
+    public static final String FILE_SIZE = PREFIX + "fileSize";
+
+    public static final String MAX_FILES = PREFIX + "maxFiles";
+
+    public static final String DRAIN_INTERVAL = PREFIX + "drainInterval";
+
+    public static final String DRAIN_INTERVAL_UNIT = PREFIX + "drainIntervalUnit";
+
+    private TraceConfig() {
+
+    }
+
+}
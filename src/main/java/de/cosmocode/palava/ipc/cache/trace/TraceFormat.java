@@ -0,0 +1,109 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.trace;
+
+import java.util.Map;
+
+import com.google.common.base.Objects;
+
+import de.cosmocode.palava.ipc.cache.CacheKey;
+
+/**
+ * Describes the binary layout of trace files written by {@link RingBufferTraceRecorder}.
+ *
+ * <p>
+ * A file starts with a {@value #HEADER_SIZE} byte header: magic (int), version (int)
+ * and the number of records (long). Records follow with a fixed size of
+ * {@value #RECORD_SIZE} bytes each, all big endian:
+ * </p>
+ * <ul>
+ *   <li>timestamp in milliseconds (long)</li>
+ *   <li>command id, the hash code of the command class name (int)</li>
+ *   <li>64 bit key hash (long)</li>
+ *   <li>flags, bit 0 set on hits (byte)</li>
+ *   <li>compute time in nanoseconds (long)</li>
+ *   <li>shallow estimate of the result size in bytes, see
+ *   {@link de.cosmocode.palava.ipc.cache.ResultSizes#shallow(Object)} (int)</li>
+ * </ul>
+ * <p>
+ * Command ids are resolved through the {@value #COMMANDS_FILE} file in the same directory,
+ * which contains one {@code id,class name} pair per line.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class TraceFormat {
+
+    public static final int MAGIC = 0x50494354;
+
+    public static final int VERSION = 2;
+
+    public static final int HEADER_SIZE = 16;
+
+    public static final int COUNT_OFFSET = 8;
+
+    public static final int RECORD_SIZE = 33;
+
+    public static final byte HIT = 1;
+
+    public static final String FILE_SUFFIX = ".trace";
+
+    public static final String COMMANDS_FILE = "commands.txt";
+
+    private TraceFormat() {
+
+    }
+
+    /**
+     * Computes the command id of the given key.
+     *
+     * @param key the key
+     * @return the command id
+     */
+    public static int commandId(CacheKey key) {
+        return key.getCommand().getName().hashCode();
+    }
+
+    /**
+     * Computes a well distributed 64 bit hash of the given key. Every argument contributes
+     * 64 bits, so keys don't collide as often as their 32 bit {@link Object#hashCode() hash codes} do.
+     *
+     * @param key the key
+     * @return the hash
+     */
+    public static long keyHash(CacheKey key) {
+        long h = mix(commandId(key));
+        for (Map.Entry<String, Object> argument : key.getArguments().entrySet()) {
+            // added up, so the hash doesn't depend on the iteration order
+            h += mix(((long) Objects.hashCode(argument.getKey()) << 32)
+                ^ (Objects.hashCode(argument.getValue()) & 0xFFFFFFFFL));
+        }
+        return mix(h);
+    }
+
+    private static long mix(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
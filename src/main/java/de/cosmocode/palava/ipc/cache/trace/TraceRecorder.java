@@ -0,0 +1,53 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.trace;
+
+import java.util.Map;
+
+import de.cosmocode.palava.ipc.cache.CacheKey;
+
+/**
+ * Records cache accesses of the {@code CacheFilter} for offline analysis.
+ * Implementations must never block the calling request thread.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see TraceRecorderModule
+ */
+public interface TraceRecorder {
+
+    /**
+     * Decides whether accesses to the given key are recorded. The filter only measures
+     * compute time for sampled keys, so unsampled accesses cost nothing but this check.
+     *
+     * @param key the cache key
+     * @return true if accesses to this key should be passed to
+     *         {@link #record(CacheKey, boolean, long, Map)}
+     */
+    boolean isSampled(CacheKey key);
+
+    /**
+     * Records a single access. May silently drop the record.
+     *
+     * @param key the cache key
+     * @param hit true if the result was read from the cache
+     * @param computeNanos the time spent computing the result, 0 on hits
+     * @param result the returned result
+     */
+    void record(CacheKey key, boolean hit, long computeNanos, Map<String, Object> result);
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.trace;
+
+import com.google.inject.Binder;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+
+/**
+ * Enables access tracing in the cache filter by binding a {@link TraceRecorder} which writes
+ * sampled accesses into rotating files in the directory configured by {@link TraceConfig#DIRECTORY}.
+ * Can be combined with other modules contributing recorders through {@link TraceRecorders}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see TraceFormat
+ */
+public final class TraceRecorderModule implements Module {
+
+    @Override
+    public void configure(Binder binder) {
+        TraceRecorders.contribute(binder, TraceRecorders.RING_BUFFER).to(RingBufferTraceRecorder.class)
+            .in(Singleton.class);
+    }
+
+}
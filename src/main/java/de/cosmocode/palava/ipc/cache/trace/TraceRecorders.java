@@ -0,0 +1,83 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cosmocode.palava.ipc.cache.trace;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Binder;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.binder.LinkedBindingBuilder;
+import com.google.inject.name.Names;
+
+/**
+ * Static utility methods to contribute {@link TraceRecorder}s, so several modules which record
+ * cache accesses can be combined. The {@code CacheFilter} passes every access to all contributed
+ * recorders which sample its key.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class TraceRecorders {
+
+    /**
+     * The name of the recorder contributed by the {@link TraceRecorderModule}.
+     */
+    public static final String RING_BUFFER = TraceConfig.PREFIX + "recorder.ringBuffer";
+
+    /**
+     * The name of the recorder contributed by the {@code WarmupModule}.
+     */
+    public static final String HOT_KEYS = TraceConfig.PREFIX + "recorder.hotKeys";
+
+    private TraceRecorders() {
+
+    }
+
+    /**
+     * Binds the {@link TraceRecorder} to a composite of all contributed recorders and starts
+     * the binding of the recorder contributed under the given name. Any number of modules
+     * may contribute, each under its own name.
+     *
+     * @param binder the binder of the contributing module
+     * @param name {@link #RING_BUFFER} or {@link #HOT_KEYS}
+     * @return the binding builder of the contributed recorder
+     * @throws NullPointerException if binder or name is null
+     * @throws IllegalArgumentException if name is unknown
+     */
+    public static LinkedBindingBuilder<TraceRecorder> contribute(Binder binder, String name) {
+        Preconditions.checkNotNull(binder, "Binder");
+        Preconditions.checkArgument(RING_BUFFER.equals(name) || HOT_KEYS.equals(name),
+            "Unknown recorder name %s", name);
+        // installed once, no matter how many modules contribute
+        binder.install(CompositeModule.INSTANCE);
+        return binder.bind(TraceRecorder.class).annotatedWith(Names.named(name));
+    }
+
+    /**
+     * Binds the {@link TraceRecorder} to the {@link CompositeTraceRecorder}.
+     */
+    private enum CompositeModule implements Module {
+
+        INSTANCE;
+
+        @Override
+        public void configure(Binder binder) {
+            binder.bind(TraceRecorder.class).to(CompositeTraceRecorder.class).in(Singleton.class);
+        }
+
+    }
+
+}
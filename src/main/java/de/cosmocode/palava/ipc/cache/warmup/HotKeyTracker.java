@@ -0,0 +1,327 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.warmup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.cache.CacheExecutors;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.codec.BinaryKeyCodec;
+import de.cosmocode.palava.ipc.cache.codec.KeyCodec;
+import de.cosmocode.palava.ipc.cache.trace.TraceRecorder;
+
+/**
+ * A {@link TraceRecorder} which counts accesses per {@link CacheKey} and writes
+ * the most popular keys into a file on shutdown, to be replayed by the
+ * {@link WarmupService} on the next start.
+ *
+ * <p>
+ * The number of tracked keys is bounded: whenever it exceeds the configured capacity,
+ * a background thread forgets the least popular half and halves the counts of the rest,
+ * so keys which were popular long ago age out and newly popular keys can catch up.
+ * Recording never sorts or waits, pruning works on a snapshot of the counts.
+ * </p>
+ *
+ * <p>
+ * The file holds the keys encoded by the {@link KeyCodec}, so it is independent of
+ * Java serialization. Keys which can't be decoded anymore, e.g. of removed commands, are skipped.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+@Singleton
+final class HotKeyTracker implements TraceRecorder, Initializable, Disposable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HotKeyTracker.class);
+
+    private static final int MAGIC = 0x5049484B;
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final ConcurrentMap<CacheKey, AtomicLong> counts = Maps.newConcurrentMap();
+    private final AtomicBoolean pruning = new AtomicBoolean();
+
+    private int keys = 10000;
+    private int capacity = 100000;
+
+    private KeyCodec keyCodec = BinaryKeyCodec.INSTANCE;
+
+    private ExecutorService pruner;
+
+    @Inject
+    HotKeyTracker(@Named(WarmupConfig.FILE) File file) {
+        this.file = Preconditions.checkNotNull(file, "File");
+    }
+
+    @Inject(optional = true)
+    void setKeys(@Named(WarmupConfig.KEYS) int keys) {
+        Preconditions.checkArgument(keys > 0, "Keys must be positive");
+        this.keys = keys;
+    }
+
+    @Inject(optional = true)
+    void setCapacity(@Named(WarmupConfig.CAPACITY) int capacity) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive");
+        this.capacity = capacity;
+    }
+
+    @Inject(optional = true)
+    void setKeyCodec(KeyCodec keyCodec) {
+        this.keyCodec = Preconditions.checkNotNull(keyCodec, "KeyCodec");
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        pruner = CacheExecutors.newExecutor("ipc-cache-hot-keys", 1, false);
+    }
+
+    @Override
+    public boolean isSampled(CacheKey key) {
+        return true;
+    }
+
+    @Override
+    public void record(CacheKey key, boolean hit, long computeNanos, Map<String, Object> result) {
+        final AtomicLong count = counts.get(key);
+        if (count == null) {
+            final AtomicLong previous = counts.putIfAbsent(key, new AtomicLong(1L));
+            if (previous != null) {
+                previous.incrementAndGet();
+            } else if (counts.size() > capacity) {
+                schedulePrune();
+            }
+        } else {
+            count.incrementAndGet();
+        }
+    }
+
+    private void schedulePrune() {
+        // only one prune is pending at a time, all threads keep counting
+        if (pruner == null || !pruning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            pruner.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        prune();
+                    } finally {
+                        pruning.set(false);
+                    }
+                    // keys added while pruning didn't schedule another prune
+                    if (counts.size() > capacity) {
+                        schedulePrune();
+                    }
+                }
+
+            });
+        } catch (RejectedExecutionException e) {
+            pruning.set(false);
+        }
+    }
+
+    /**
+     * Forgets all but the most popular half of the capacity and halves the remaining counts.
+     */
+    void prune() {
+        final Counted[] snapshot = snapshot();
+        final int kept = Math.min(capacity / 2, snapshot.length);
+        for (int i = 0; i < kept; i++) {
+            // subtracting keeps the accesses recorded since the snapshot
+            snapshot[i].count.addAndGet(-(snapshot[i].value / 2));
+        }
+        for (int i = kept; i < snapshot.length; i++) {
+            counts.remove(snapshot[i].key, snapshot[i].count);
+        }
+    }
+
+    private Counted[] snapshot() {
+        final List<Counted> entries = Lists.newArrayListWithExpectedSize(counts.size());
+        for (Map.Entry<CacheKey, AtomicLong> entry : counts.entrySet()) {
+            entries.add(new Counted(entry.getKey(), entry.getValue()));
+        }
+        final Counted[] snapshot = entries.toArray(new Counted[entries.size()]);
+        // sorting the copied values, the live counts keep changing
+        Arrays.sort(snapshot, Counted.BY_VALUE_DESCENDING);
+        return snapshot;
+    }
+
+    /**
+     * Provides the currently most popular keys, most popular first.
+     *
+     * @return the hot keys
+     */
+    List<CacheKey> getHotKeys() {
+        final Counted[] snapshot = snapshot();
+        final List<CacheKey> hot = Lists.newArrayListWithCapacity(Math.min(keys, snapshot.length));
+        for (int i = 0; i < snapshot.length && hot.size() < keys; i++) {
+            hot.add(snapshot[i].key);
+        }
+        return hot;
+    }
+
+    /**
+     * Provides the current count of the given key.
+     *
+     * @param key the key
+     * @return the count, 0 if the key is not tracked
+     */
+    long getCount(CacheKey key) {
+        final AtomicLong count = counts.get(key);
+        return count == null ? 0L : count.get();
+    }
+
+    /**
+     * Provides the number of tracked keys.
+     *
+     * @return the number of keys
+     */
+    int size() {
+        return counts.size();
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        if (pruner != null) {
+            pruner.shutdownNow();
+        }
+        final List<CacheKey> hot = getHotKeys();
+        if (hot.isEmpty()) {
+            return;
+        }
+        try {
+            write(file, hot, keyCodec);
+            LOG.info("Saved {} hot keys to {}", hot.size(), file);
+        } catch (IOException e) {
+            throw new LifecycleException(e);
+        }
+    }
+
+    static void write(File target, List<CacheKey> hot, KeyCodec codec) throws IOException {
+        final List<byte[]> encoded = Lists.newArrayListWithCapacity(hot.size());
+        for (CacheKey key : hot) {
+            try {
+                encoded.add(codec.encodeKey(key));
+            } catch (IOException e) {
+                LOG.debug("Skipping hot key {}: {}", key, e.toString());
+            }
+        }
+        final DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target)));
+        try {
+            stream.writeInt(MAGIC);
+            stream.writeInt(VERSION);
+            stream.writeInt(encoded.size());
+            for (byte[] key : encoded) {
+                stream.writeInt(key.length);
+                stream.write(key);
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    static List<CacheKey> read(File source, KeyCodec codec) throws IOException {
+        final DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(source)));
+        try {
+            if (stream.readInt() != MAGIC || stream.readInt() != VERSION) {
+                throw new IOException(source + " is not a compatible hot key file");
+            }
+            final int size = stream.readInt();
+            if (size < 0) {
+                throw new IOException("Invalid number of hot keys in " + source + ": " + size);
+            }
+            final List<CacheKey> hot = Lists.newArrayListWithCapacity(Math.min(size, 1 << 16));
+            for (int i = 0; i < size; i++) {
+                final int length = stream.readInt();
+                if (length < 0) {
+                    throw new IOException("Invalid hot key length in " + source + ": " + length);
+                }
+                final byte[] key = new byte[length];
+                stream.readFully(key);
+                try {
+                    hot.add(codec.decodeKey(ByteBuffer.wrap(key)));
+                } catch (IOException e) {
+                    // the command may have been removed since the keys were saved
+                    LOG.debug("Skipping unreadable hot key: {}", e.getMessage());
+                }
+            }
+            return hot;
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * A tracked key with the count it had when the snapshot was taken.
+     */
+    private static final class Counted {
+
+        private static final Comparator<Counted> BY_VALUE_DESCENDING = new Comparator<Counted>() {
+
+            @Override
+            public int compare(Counted left, Counted right) {
+                return left.value < right.value ? 1 : (left.value == right.value ? 0 : -1);
+            }
+
+        };
+
+        private final CacheKey key;
+        private final AtomicLong count;
+        private final long value;
+
+        Counted(CacheKey key, AtomicLong count) {
+            this.key = key;
+            this.count = count;
+            this.value = count.get();
+        }
+
+    }
+
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.warmup;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.MapIpcArguments;
+
+/**
+ * Creates synthetic {@link IpcCall}s for replayed keys. There is no connection
+ * or session behind a replayed call, so only {@link IpcCall#getArguments()} is supported.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+final class WarmupCall implements InvocationHandler {
+
+    private final IpcArguments arguments;
+
+    private WarmupCall(IpcArguments arguments) {
+        this.arguments = arguments;
+    }
+
+    /**
+     * Creates a call returning a copy of the given arguments.
+     *
+     * @param arguments the arguments
+     * @return a new call
+     */
+    static IpcCall of(IpcArguments arguments) {
+        final IpcArguments copy = new MapIpcArguments();
+        copy.putAll(arguments);
+        return IpcCall.class.cast(Proxy.newProxyInstance(IpcCall.class.getClassLoader(),
+            new Class<?>[] {IpcCall.class}, new WarmupCall(copy)));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        final String name = method.getName();
+        if ("getArguments".equals(name)) {
+            return arguments;
+        } else if ("equals".equals(name)) {
+            return proxy == args[0];
+        } else if ("hashCode".equals(name)) {
+            return System.identityHashCode(proxy);
+        } else if ("toString".equals(name)) {
+            return "WarmupCall " + arguments;
+        } else {
+            throw new UnsupportedOperationException(name + " is not supported during warmup");
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.warmup;
+
+/**
+ * Static constant holder class for warmup config key names.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class WarmupConfig {
+
+    public static final String PREFIX = "ipc.cache.warmup.";
+
+    public static final String FILE = PREFIX + "file";
+
+    public static final String KEYS = PREFIX + "keys";
+
+    public static final String CAPACITY = PREFIX + "capacity";
+
+    public static final String THREADS = PREFIX + "threads";
+
+    public static final String VIRTUAL_THREADS = PREFIX + "virtualThreads";
+
+    public static final String COMMAND_PERMITS = PREFIX + "commandPermits";
+
+    public static final String RATE = PREFIX + "rate";
+
+    public static final String READY_THRESHOLD = PREFIX + "readyThreshold";
+
+    private WarmupConfig() {
+
+    }
+
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.warmup;
+
+import com.google.inject.Binder;
+import com.google.inject.Module;
+
+import de.cosmocode.palava.ipc.cache.trace.TraceRecorder;
+import de.cosmocode.palava.ipc.cache.trace.TraceRecorders;
+
+/**
+ * Tracks the most popular cache keys, saves them into the file configured by
+ * {@link WarmupConfig#FILE} on shutdown and replays them on the next startup.
+ * The keys are tracked by a {@link TraceRecorder} contributed through {@link TraceRecorders},
+ * so this module can be combined with the {@link de.cosmocode.palava.ipc.cache.trace.TraceRecorderModule}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ * @see WarmupService
+ */
+public final class WarmupModule implements Module {
+
+    @Override
+    public void configure(Binder binder) {
+        TraceRecorders.contribute(binder, TraceRecorders.HOT_KEYS).to(HotKeyTracker.class);
+        binder.bind(HotKeyTracker.class).asEagerSingleton();
+        binder.bind(WarmupService.class).asEagerSingleton();
+    }
+
+}
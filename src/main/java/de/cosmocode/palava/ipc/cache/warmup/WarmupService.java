@@ -0,0 +1,276 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCallFilterChain;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.CacheFilter;
+import de.cosmocode.palava.ipc.cache.CacheExecutors;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.CommandPermits;
+import de.cosmocode.palava.ipc.cache.codec.BinaryKeyCodec;
+import de.cosmocode.palava.ipc.cache.codec.KeyCodec;
+
+/**
+ * Replays the hot keys saved by the {@link HotKeyTracker} of the previous run through the
+ * {@link CacheFilter}, so popular results are cached before real traffic asks for them.
+ *
+ * <p>
+ * Replays run in the background, optionally on virtual threads, and are throttled to the
+ * configured rate. Both the total number of concurrent replays and the number per command
+ * are bounded. The service reports {@link #isReady()} as soon as the
+ * configured fraction of keys has been replayed, whether successfully or not.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+@Singleton
+public final class WarmupService implements Initializable, Disposable, Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WarmupService.class);
+
+    private final File file;
+    private final CacheFilter filter;
+    private final Injector injector;
+
+    private int threads = 4;
+    private boolean virtualThreads;
+    private int commandPermits = Integer.MAX_VALUE;
+    private double rate = 100.0;
+    private double readyThreshold = 0.9;
+    private KeyCodec keyCodec = BinaryKeyCodec.INSTANCE;
+
+    private List<CacheKey> keys;
+    private ExecutorService executor;
+    private CommandPermits permits;
+    private Thread coordinator;
+    private final AtomicInteger replayed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile CountDownLatch ready = new CountDownLatch(1);
+    private int required;
+
+    @Inject
+    WarmupService(@Named(WarmupConfig.FILE) File file, CacheFilter filter, Injector injector) {
+        this.file = Preconditions.checkNotNull(file, "File");
+        this.filter = Preconditions.checkNotNull(filter, "Filter");
+        this.injector = Preconditions.checkNotNull(injector, "Injector");
+    }
+
+    @Inject(optional = true)
+    void setThreads(@Named(WarmupConfig.THREADS) int threads) {
+        Preconditions.checkArgument(threads > 0, "Threads must be positive");
+        this.threads = threads;
+    }
+
+    @Inject(optional = true)
+    void setVirtualThreads(@Named(WarmupConfig.VIRTUAL_THREADS) boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    @Inject(optional = true)
+    void setCommandPermits(@Named(WarmupConfig.COMMAND_PERMITS) int commandPermits) {
+        Preconditions.checkArgument(commandPermits > 0, "Command permits must be positive");
+        this.commandPermits = commandPermits;
+    }
+
+    @Inject(optional = true)
+    void setRate(@Named(WarmupConfig.RATE) double rate) {
+        Preconditions.checkArgument(rate > 0, "Rate must be positive");
+        this.rate = rate;
+    }
+
+    @Inject(optional = true)
+    void setReadyThreshold(@Named(WarmupConfig.READY_THRESHOLD) double readyThreshold) {
+        Preconditions.checkArgument(readyThreshold >= 0.0 && readyThreshold <= 1.0,
+            "Ready threshold must be in [0, 1]");
+        this.readyThreshold = readyThreshold;
+    }
+
+    @Inject(optional = true)
+    void setKeyCodec(KeyCodec keyCodec) {
+        this.keyCodec = Preconditions.checkNotNull(keyCodec, "KeyCodec");
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        if (file.exists()) {
+            try {
+                keys = HotKeyTracker.read(file, keyCodec);
+            } catch (IOException e) {
+                LOG.error("Unable to read hot keys from " + file + ", skipping warmup", e);
+            }
+        }
+        if (keys == null || keys.isEmpty()) {
+            ready.countDown();
+            return;
+        }
+
+        required = (int) Math.ceil(keys.size() * readyThreshold);
+        if (required == 0) {
+            ready.countDown();
+        }
+        executor = CacheExecutors.newExecutor("ipc-cache-warmup", threads, virtualThreads);
+        permits = new CommandPermits(commandPermits);
+        coordinator = new Thread(this, "ipc-cache-warmup");
+        coordinator.setDaemon(true);
+        coordinator.start();
+        LOG.info("Warming up {} keys with {} threads at {} keys/s", new Object[] {keys.size(), threads, rate});
+    }
+
+    @Override
+    public void run() {
+        final Semaphore permits = new Semaphore(threads);
+        final long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long next = System.nanoTime();
+
+        try {
+            for (final CacheKey key : keys) {
+                final long delay = next - System.nanoTime();
+                if (delay > 0) {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                }
+                next = Math.max(next, System.nanoTime() - interval) + interval;
+
+                permits.acquire();
+                executor.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            replay(key);
+                        } finally {
+                            permits.release();
+                        }
+                    }
+
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void replay(CacheKey key) {
+        try {
+            permits.acquire(key.getCommand());
+            try {
+                final IpcCommand command = injector.getInstance(key.getCommand());
+                filter.filter(WarmupCall.of(key.getArguments()), command, ExecutingChain.INSTANCE);
+            } finally {
+                permits.release(key.getCommand());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.incrementAndGet();
+        } catch (IpcCommandExecutionException e) {
+            failed.incrementAndGet();
+            LOG.debug("Replaying {} failed: {}", key, e.toString());
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            LOG.debug("Replaying {} failed: {}", key, e.toString());
+        }
+        if (replayed.incrementAndGet() == required) {
+            LOG.info("Warmup reached {} of {} keys, {} failed", new Object[] {required, keys.size(), failed.get()});
+            ready.countDown();
+        }
+    }
+
+    /**
+     * Checks whether the warmup has reached the configured threshold.
+     *
+     * @return true if enough keys have been replayed
+     */
+    public boolean isReady() {
+        return ready.getCount() == 0;
+    }
+
+    /**
+     * Waits until the warmup has reached the configured threshold.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of timeout
+     * @return true if the warmup is ready, false if the timeout elapsed
+     * @throws InterruptedException if the current thread has been interrupted
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return ready.await(timeout, unit);
+    }
+
+    /**
+     * Provides the fraction of saved keys replayed so far.
+     *
+     * @return the progress between 0 and 1
+     */
+    public double getProgress() {
+        return keys == null || keys.isEmpty() ? 1.0 : (double) replayed.get() / keys.size();
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        if (coordinator != null) {
+            coordinator.interrupt();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A filter chain which executes the command directly.
+     */
+    private enum ExecutingChain implements IpcCallFilterChain {
+
+        INSTANCE;
+
+        @Override
+        public Map<String, Object> filter(IpcCall call, IpcCommand command) throws IpcCommandExecutionException {
+            final Map<String, Object> result = Maps.newLinkedHashMap();
+            command.execute(call, result);
+            return result;
+        }
+
+    }
+
+}
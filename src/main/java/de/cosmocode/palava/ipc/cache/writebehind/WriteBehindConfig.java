@@ -0,0 +1,43 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.writebehind;
+
+/**
+ * Static constant holder class for write-behind config key names.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class WriteBehindConfig {
+
+    public static final String PREFIX = "ipc.cache.writeBehind.";
+
+    public static final String THREADS = PREFIX + "threads";
+
+    public static final String VIRTUAL_THREADS = PREFIX + "virtualThreads";
+
+    public static final String QUEUE_SIZE = PREFIX + "queueSize";
+
+    public static final String SHUTDOWN_TIMEOUT = PREFIX + "shutdownTimeout";
+
+    public static final String SHUTDOWN_TIMEOUT_UNIT = PREFIX + "shutdownTimeoutUnit";
+
+    private WriteBehindConfig() {
+
+    }
+
+}
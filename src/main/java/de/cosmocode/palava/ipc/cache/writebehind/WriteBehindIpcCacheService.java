@@ -0,0 +1,371 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.writebehind;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.cache.CacheExpiration;
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.AbstractIpcCacheService;
+import de.cosmocode.palava.ipc.cache.CacheExecutors;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.DecoratingCache;
+import de.cosmocode.palava.ipc.cache.InvalidatingCache;
+import de.cosmocode.palava.ipc.cache.IpcCacheService;
+import de.cosmocode.palava.ipc.cache.IpcCommandExecution;
+import de.cosmocode.palava.ipc.cache.ParallelInvalidation;
+import de.cosmocode.palava.ipc.cache.PreparingCache;
+
+/**
+ * An {@link IpcCacheService} which returns computed results immediately and stores them
+ * into the backing service in the background.
+ *
+ * <p>
+ * Results waiting to be stored are kept in an in-flight map, so reads see them before
+ * the backing service does. Invalidations cancel matching in-flight results and remove
+ * them again if they were stored concurrently. At most {@link WriteBehindConfig#QUEUE_SIZE}
+ * results wait at a time, callers beyond that store synchronously. Pending results are
+ * flushed on shutdown.
+ * </p>
+ *
+ * <p>
+ * The {@link de.cosmocode.palava.ipc.cache.CacheFilter} hands the preparation of results
+ * for caching (compaction, deduplication, compression and encoding) to
+ * {@link #computeAndStore(CacheKey, CacheExpiration, IpcCommandExecution, Function)},
+ * so that part runs in the background as well. Results stored in the background are copied
+ * first, so callers may modify the returned result while it is being prepared.
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class WriteBehindIpcCacheService extends AbstractIpcCacheService
+    implements DecoratingCache, InvalidatingCache, PreparingCache, Initializable, Disposable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindIpcCacheService.class);
+
+    private final IpcCacheService service;
+
+    private final ConcurrentMap<CacheKey, Pending> pending = Maps.newConcurrentMap();
+
+    private int threads = 2;
+    private boolean virtualThreads;
+    private int queueSize = 1024;
+    private long shutdownTimeout = 10;
+    private TimeUnit shutdownTimeoutUnit = TimeUnit.SECONDS;
+
+    private Semaphore slots;
+    private ExecutorService executor;
+
+    @Inject
+    WriteBehindIpcCacheService(@Backing IpcCacheService service) {
+        this.service = Preconditions.checkNotNull(service, "Service");
+    }
+
+    @Inject(optional = true)
+    void setThreads(@Named(WriteBehindConfig.THREADS) int threads) {
+        Preconditions.checkArgument(threads > 0, "Threads must be positive");
+        this.threads = threads;
+    }
+
+    @Inject(optional = true)
+    void setVirtualThreads(@Named(WriteBehindConfig.VIRTUAL_THREADS) boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    @Inject(optional = true)
+    void setQueueSize(@Named(WriteBehindConfig.QUEUE_SIZE) int queueSize) {
+        Preconditions.checkArgument(queueSize > 0, "Queue size must be positive");
+        this.queueSize = queueSize;
+    }
+
+    @Inject(optional = true)
+    void setShutdownTimeout(@Named(WriteBehindConfig.SHUTDOWN_TIMEOUT) long shutdownTimeout) {
+        Preconditions.checkArgument(shutdownTimeout >= 0, "Shutdown timeout must not be negative");
+        this.shutdownTimeout = shutdownTimeout;
+    }
+
+    @Inject(optional = true)
+    void setShutdownTimeoutUnit(@Named(WriteBehindConfig.SHUTDOWN_TIMEOUT_UNIT) TimeUnit shutdownTimeoutUnit) {
+        this.shutdownTimeoutUnit = Preconditions.checkNotNull(shutdownTimeoutUnit, "Unit");
+    }
+
+    @Override
+    public IpcCacheService getBacking() {
+        return service;
+    }
+
+    @Override
+    public void initialize() throws LifecycleException {
+        slots = new Semaphore(queueSize);
+        executor = CacheExecutors.newExecutor("ipc-cache-write-behind", threads, virtualThreads);
+    }
+
+    @Override
+    public Map<String, Object> read(CacheKey key) {
+        Preconditions.checkNotNull(key, "CacheKey");
+        final Pending entry = pending.get(key);
+        if (entry == null || entry.cancelled) {
+            return service.read(key);
+        } else {
+            return entry.result;
+        }
+    }
+
+    @Override
+    public Map<String, Object> computeAndStore(CacheKey key, CacheExpiration expiration,
+        IpcCommandExecution computation) throws IpcCommandExecutionException {
+        return computeAndStore(key, expiration, computation, Returning.INSTANCE);
+    }
+
+    @Override
+    public Map<String, Object> computeAndStore(final CacheKey key, final CacheExpiration expiration,
+        IpcCommandExecution computation, final Function<Map<String, Object>, IpcCommandExecution> preparation)
+        throws IpcCommandExecutionException {
+
+        Preconditions.checkNotNull(key, "CacheKey");
+        Preconditions.checkNotNull(expiration, "Expiration");
+        Preconditions.checkNotNull(computation, "Computation");
+        Preconditions.checkNotNull(preparation, "Preparation");
+
+        final Map<String, Object> cached = read(key);
+        if (cached != null) {
+            return cached;
+        }
+        final Map<String, Object> result = computation.call();
+        if (result == null) {
+            return null;
+        }
+
+        if (executor == null || !slots.tryAcquire()) {
+            final Pending entry = new Pending(result);
+            pending.put(key, entry);
+            store(key, expiration, entry, preparation);
+            return result;
+        }
+        // the caller owns the returned result and may modify it while it is being prepared
+        final Pending entry = new Pending(copy(result));
+        pending.put(key, entry);
+        try {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        store(key, expiration, entry, preparation);
+                    } finally {
+                        slots.release();
+                    }
+                }
+
+            });
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            store(key, expiration, entry, preparation);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> copy(Map<String, Object> result) {
+        return (Map<String, Object>) copyValue(result);
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof Map<?, ?>) {
+            final Map<Object, Object> copy = Maps.newLinkedHashMap();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), copyValue(entry.getValue()));
+            }
+            return copy;
+        } else if (value instanceof List<?>) {
+            final List<Object> copy = Lists.newArrayListWithCapacity(((List<?>) value).size());
+            for (Object element : (List<?>) value) {
+                copy.add(copyValue(element));
+            }
+            return copy;
+        } else {
+            return value;
+        }
+    }
+
+    private void store(CacheKey key, CacheExpiration expiration, Pending entry,
+        Function<Map<String, Object>, IpcCommandExecution> preparation) {
+
+        try {
+            if (!entry.cancelled) {
+                service.computeAndStore(key, expiration, preparation.apply(entry.result));
+            }
+        } catch (IpcCommandExecutionException e) {
+            LOG.warn("Unable to store result for " + key, e);
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to store result for " + key, e);
+        } finally {
+            pending.remove(key, entry);
+        }
+        if (entry.cancelled) {
+            // invalidated while being stored
+            removeStored(key);
+        }
+    }
+
+    @Override
+    public void invalidate(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+        Preconditions.checkNotNull(command, "Command");
+        Preconditions.checkNotNull(predicate, "Predicate");
+        cancel(command, predicate);
+        service.invalidate(command, predicate);
+    }
+
+    @Override
+    public int invalidateMatching(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+        Preconditions.checkNotNull(command, "Command");
+        Preconditions.checkNotNull(predicate, "Predicate");
+        if (service instanceof InvalidatingCache) {
+            final int cancelled = cancel(command, predicate);
+            return cancelled + InvalidatingCache.class.cast(service).invalidateMatching(command, predicate);
+        } else {
+            throw new UnsupportedOperationException(service + " does not count invalidated entries");
+        }
+    }
+
+    @Override
+    public boolean invalidateKey(CacheKey key) {
+        Preconditions.checkNotNull(key, "CacheKey");
+        final Pending entry = pending.remove(key);
+        if (entry != null) {
+            entry.cancelled = true;
+        }
+        final boolean removed = removeStored(key);
+        return entry != null || removed;
+    }
+
+    private boolean removeStored(CacheKey key) {
+        if (service instanceof InvalidatingCache) {
+            return InvalidatingCache.class.cast(service).invalidateKey(key);
+        } else {
+            service.invalidate(key.getCommand(), Predicates.equalTo(key));
+            return false;
+        }
+    }
+
+    private int cancel(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+        int cancelled = 0;
+        final Iterator<Map.Entry<CacheKey, Pending>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<CacheKey, Pending> entry = iterator.next();
+            final CacheKey key = entry.getKey();
+            if (ParallelInvalidation.matches(key, command, predicate)) {
+                entry.getValue().cancelled = true;
+                iterator.remove();
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * Provides the number of results waiting to be stored.
+     *
+     * @return the number of pending results
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    @Override
+    public void dispose() throws LifecycleException {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(shutdownTimeout, shutdownTimeoutUnit)) {
+                LOG.warn("Dropping {} results which were not stored in time", pending.size());
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WriteBehindIpcCacheService [service=" + service + "]";
+    }
+
+    /**
+     * A computed result waiting to be stored.
+     */
+    private static final class Pending {
+
+        private final Map<String, Object> result;
+
+        private volatile boolean cancelled;
+
+        Pending(Map<String, Object> result) {
+            this.result = result;
+        }
+
+    }
+
+    /**
+     * Stores results as they are.
+     */
+    private enum Returning implements Function<Map<String, Object>, IpcCommandExecution> {
+
+        INSTANCE;
+
+        @Override
+        public IpcCommandExecution apply(final Map<String, Object> result) {
+            return new IpcCommandExecution() {
+
+                @Override
+                public Map<String, Object> call() {
+                    return result;
+                }
+
+            };
+        }
+
+    }
+
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.writebehind;
+
+import java.lang.annotation.Annotation;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Binder;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+
+import de.cosmocode.palava.ipc.cache.IpcCacheService;
+
+/**
+ * Binds the {@link IpcCacheService} to a {@link WriteBehindIpcCacheService} which stores
+ * into the service bound with the given annotation.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class WriteBehindIpcCacheServiceModule implements Module {
+
+    private final Key<IpcCacheService> backing;
+
+    private WriteBehindIpcCacheServiceModule(Key<IpcCacheService> backing) {
+        this.backing = backing;
+    }
+
+    /**
+     * Creates a module which writes behind into the {@link IpcCacheService} bound
+     * with the given annotation.
+     *
+     * @param annotation the binding annotation of the backing service
+     * @return a new module
+     * @throws NullPointerException if annotation is null
+     */
+    public static Module backedBy(Class<? extends Annotation> annotation) {
+        Preconditions.checkNotNull(annotation, "Annotation");
+        return new WriteBehindIpcCacheServiceModule(Key.get(IpcCacheService.class, annotation));
+    }
+
+    @Override
+    public void configure(Binder binder) {
+        binder.bind(IpcCacheService.class).annotatedWith(Backing.class).to(backing);
+        binder.bind(WriteBehindIpcCacheService.class).in(Singleton.class);
+        binder.bind(IpcCacheService.class).to(WriteBehindIpcCacheService.class);
+    }
+
+}
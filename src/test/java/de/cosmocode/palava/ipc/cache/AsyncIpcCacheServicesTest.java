@@ -0,0 +1,110 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * Tests {@link AsyncIpcCacheServices#adapt(IpcCacheService, ExecutorService)}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class AsyncIpcCacheServicesTest {
+
+    private final CacheDecision decision = new EternalCacheDecision();
+
+    private ExecutorService executor;
+
+    private AsyncIpcCacheService unit;
+
+    /**
+     * Creates the executor and the unit.
+     */
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+        unit = AsyncIpcCacheServices.adapt(new LocalIpcCacheService(), executor);
+    }
+
+    /**
+     * Tests reading, computing and invalidating through futures.
+     *
+     * @throws InterruptedException should not happen
+     * @throws ExecutionException should not happen
+     */
+    @Test
+    public void computeReadInvalidate() throws InterruptedException, ExecutionException {
+        final Map<String, Object> result = Maps.newHashMap();
+        result.put("value", 42);
+
+        Assert.assertNull(unit.readAsync(CacheFixtures.key(1)).get());
+        Assert.assertEquals(result,
+            unit.getOrComputeAsync(CacheFixtures.key(1), decision, CacheFixtures.returning(result)).get());
+        Assert.assertEquals(result, unit.readAsync(CacheFixtures.key(1)).get());
+        Assert.assertEquals(result,
+            unit.getOrComputeAsync(CacheFixtures.key(1), decision, CacheFixtures.returning(null)).get());
+
+        unit.invalidateAsync(Calculate.class, Predicates.alwaysTrue()).get();
+        Assert.assertNull(unit.readAsync(CacheFixtures.key(1)).get());
+    }
+
+    /**
+     * Tests that failed computations fail the returned future.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void failure() throws InterruptedException {
+        final IpcCommandExecutionException failure = new IpcCommandExecutionException("failed");
+        try {
+            unit.getOrComputeAsync(CacheFixtures.key(2), decision, new IpcCommandExecution() {
+
+                @Override
+                public Map<String, Object> call() throws IpcCommandExecutionException {
+                    throw failure;
+                }
+
+            }).get();
+            Assert.fail("Expected the computation to fail");
+        } catch (ExecutionException e) {
+            Assert.assertSame(failure, e.getCause());
+        }
+    }
+
+    /**
+     * Stops the executor.
+     */
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+}
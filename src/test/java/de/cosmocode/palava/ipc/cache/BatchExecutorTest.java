@@ -0,0 +1,80 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link BatchExecutor}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class BatchExecutorTest {
+
+    private final Runnable nothing = new Runnable() {
+
+        @Override
+        public void run() {
+
+        }
+
+    };
+
+    /**
+     * Tests that tasks only run between initialize and dispose.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void lifecycle() throws InterruptedException {
+        final BatchExecutor unit = new BatchExecutor();
+        unit.setThreads(2);
+        try {
+            unit.execute(nothing);
+            Assert.fail("Expected rejection before initialize");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        unit.initialize();
+        final CountDownLatch ran = new CountDownLatch(1);
+        unit.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+
+        });
+        Assert.assertTrue(ran.await(5, TimeUnit.SECONDS));
+
+        unit.dispose();
+        try {
+            unit.execute(nothing);
+            Assert.fail("Expected rejection after dispose");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+    }
+
+}
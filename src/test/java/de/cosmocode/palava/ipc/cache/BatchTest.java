@@ -0,0 +1,150 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+
+/**
+ * Tests {@link IpcCacheService#readAll(java.util.Collection)} and
+ * {@link IpcCacheService#getOrComputeAll(Map, de.cosmocode.palava.cache.CacheExpiration)}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class BatchTest {
+
+    private final CacheDecision decision = new EternalCacheDecision();
+
+    private ExecutorService executor;
+
+    private LocalIpcCacheService unit;
+
+    /**
+     * Creates the executor and the unit.
+     */
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        unit = new LocalIpcCacheService();
+        unit.setBatchExecutor(executor);
+        unit.setBatchParallelism(3);
+    }
+
+    /**
+     * Tests that only hits are read, in the order of the given keys.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void readAll() throws IpcCommandExecutionException {
+        unit.computeAndStore(CacheFixtures.key(2), decision, CacheFixtures.returning(CacheFixtures.result(2)));
+        unit.computeAndStore(CacheFixtures.key(1), decision, CacheFixtures.returning(CacheFixtures.result(1)));
+        final Map<CacheKey, Map<String, Object>> results = unit.readAll(
+            Arrays.asList(CacheFixtures.key(1), CacheFixtures.key(2), CacheFixtures.key(3)));
+        Assert.assertEquals(ImmutableList.of(CacheFixtures.key(1), CacheFixtures.key(2)),
+            ImmutableList.copyOf(results.keySet()));
+        Assert.assertEquals(CacheFixtures.result(1), results.get(CacheFixtures.key(1)));
+        Assert.assertEquals(CacheFixtures.result(2), results.get(CacheFixtures.key(2)));
+    }
+
+    /**
+     * Tests that hits are not computed again and misses are computed concurrently.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void getOrComputeAll() throws IpcCommandExecutionException {
+        unit.computeAndStore(CacheFixtures.key(1), decision, CacheFixtures.returning(CacheFixtures.result(1)));
+        final CountDownLatch running = new CountDownLatch(3);
+        final Map<CacheKey, IpcCommandExecution> computations = Maps.newLinkedHashMap();
+        computations.put(CacheFixtures.key(1), CacheFixtures.returning(CacheFixtures.result(-1)));
+        for (int i = 2; i <= 4; i++) {
+            final Map<String, Object> result = CacheFixtures.result(i);
+            computations.put(CacheFixtures.key(i), new IpcCommandExecution() {
+
+                @Override
+                public Map<String, Object> call() throws IpcCommandExecutionException {
+                    running.countDown();
+                    try {
+                        // passes only if all three misses run at the same time
+                        Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new IpcCommandExecutionException(e);
+                    }
+                    return result;
+                }
+
+            });
+        }
+
+        final Map<CacheKey, Map<String, Object>> results = unit.getOrComputeAll(computations, decision);
+        Assert.assertEquals(ImmutableList.copyOf(computations.keySet()), ImmutableList.copyOf(results.keySet()));
+        Assert.assertEquals(CacheFixtures.result(1), results.get(CacheFixtures.key(1)));
+        for (int i = 2; i <= 4; i++) {
+            Assert.assertEquals(CacheFixtures.result(i), results.get(CacheFixtures.key(i)));
+            Assert.assertEquals(CacheFixtures.result(i), unit.read(CacheFixtures.key(i)));
+        }
+    }
+
+    /**
+     * Tests that a failing computation fails the batch.
+     */
+    @Test
+    public void failure() {
+        final IpcCommandExecutionException failure = new IpcCommandExecutionException("failed");
+        final Map<CacheKey, IpcCommandExecution> computations = Maps.newLinkedHashMap();
+        computations.put(CacheFixtures.key(1), CacheFixtures.returning(CacheFixtures.result(1)));
+        computations.put(CacheFixtures.key(2), new IpcCommandExecution() {
+
+            @Override
+            public Map<String, Object> call() throws IpcCommandExecutionException {
+                throw failure;
+            }
+
+        });
+        try {
+            unit.getOrComputeAll(computations, decision);
+            Assert.fail("Expected failure");
+        } catch (IpcCommandExecutionException e) {
+            Assert.assertSame(failure, e);
+        }
+    }
+
+    /**
+     * Stops the executor.
+     */
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+}
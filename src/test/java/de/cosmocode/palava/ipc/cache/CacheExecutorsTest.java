@@ -0,0 +1,197 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Tests {@link CacheExecutors} and {@link CommandPermits}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class CacheExecutorsTest {
+
+    private void assertExecutes(ExecutorService executor) throws InterruptedException, ExecutionException {
+        try {
+            Assert.assertEquals(Boolean.TRUE, executor.submit(new Callable<Boolean>() {
+
+                @Override
+                public Boolean call() {
+                    return Thread.currentThread().getName().startsWith("test-");
+                }
+
+            }).get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests a platform thread executor.
+     *
+     * @throws InterruptedException should not happen
+     * @throws ExecutionException should not happen
+     */
+    @Test
+    public void platform() throws InterruptedException, ExecutionException {
+        assertExecutes(CacheExecutors.newExecutor("test", 2, false));
+    }
+
+    /**
+     * Tests that virtual threads are used if supported and platform threads otherwise.
+     *
+     * @throws InterruptedException should not happen
+     * @throws ExecutionException should not happen
+     */
+    @Test
+    public void virtual() throws InterruptedException, ExecutionException {
+        assertExecutes(CacheExecutors.newExecutor("test", 2, true));
+    }
+
+    /**
+     * Tests that permits are counted per command.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void permits() throws InterruptedException {
+        final CommandPermits permits = new CommandPermits(2);
+        permits.acquire(Calculate.class);
+        permits.acquire(Calculate.class);
+        Assert.assertEquals(0, permits.getAvailable(Calculate.class));
+        Assert.assertEquals(2, permits.getAvailable(IpcCommand.class));
+        permits.release(Calculate.class);
+        Assert.assertEquals(1, permits.getAvailable(Calculate.class));
+    }
+
+    /**
+     * Tests that tasks waiting for a permit don't block executor threads
+     * and run once a permit is released.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void queued() throws InterruptedException {
+        final ExecutorService executor = CacheExecutors.newExecutor("test", 2, false);
+        final CommandPermits permits = new CommandPermits(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch other = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger concurrent = new AtomicInteger();
+        try {
+            for (int i = 0; i < 2; i++) {
+                permits.execute(Calculate.class, executor, new Runnable() {
+
+                    @Override
+                    public void run() {
+                        concurrent.set(Math.max(concurrent.get(), running.incrementAndGet()));
+                        try {
+                            blocked.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        running.decrementAndGet();
+                        done.countDown();
+                    }
+
+                });
+            }
+            permits.execute(IpcCommand.class, executor, new Runnable() {
+
+                @Override
+                public void run() {
+                    other.countDown();
+                }
+
+            });
+            // the second thread is free for other commands
+            Assert.assertTrue(other.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(2L, done.getCount());
+            blocked.countDown();
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, concurrent.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Tests that a queued execution which another caller dispatches to a rejecting executor
+     * fails its future.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void rejected() throws InterruptedException {
+        final ExecutorService executor = CacheExecutors.newExecutor("test", 2, false);
+        final CommandPermits permits = new CommandPermits(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        try {
+            permits.execute(Calculate.class, executor, new Runnable() {
+
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        blocked.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+            });
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            final SettableFuture<Map<String, Object>> future = SettableFuture.create();
+            permits.execute(Calculate.class, executor, CacheFixtures.returning(CacheFixtures.result(1)), future);
+            Assert.assertFalse(future.isDone());
+
+            // the running task dispatches the queued one once it releases its permit
+            executor.shutdown();
+            blocked.countDown();
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                Assert.fail("Expected the execution to be rejected");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            } catch (TimeoutException e) {
+                Assert.fail("Future was never completed");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.Map;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.inject.ConfigurationException;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.MapIpcArguments;
+import de.cosmocode.palava.ipc.cache.analyzer.TimeCached;
+import de.cosmocode.palava.ipc.cache.analyzer.TimeCachedModule;
+import de.cosmocode.palava.ipc.cache.dependency.Dependencies;
+import de.cosmocode.palava.ipc.cache.dependency.DependencyIndex;
+import de.cosmocode.palava.ipc.cache.dependency.DependencyModule;
+import de.cosmocode.palava.ipc.cache.invalidation.InvalidationGenerations;
+
+/**
+ * Tests that the {@link CacheFilter} only tracks dependencies and invalidations if enabled explicitly.
+ *
+ * @author CosmoCode GmbH
+ */
+public final class CacheFilterTrackingTest {
+
+    private Injector injector(Module... modules) {
+        final Module[] all = new Module[modules.length + 2];
+        all[0] = new IpcCacheTestModule();
+        all[1] = new TimeCachedModule();
+        System.arraycopy(modules, 0, all, 2, modules.length);
+        return Guice.createInjector(all);
+    }
+
+    private IpcCall call() {
+        final IpcArguments arguments = new MapIpcArguments();
+        arguments.put("id", 5);
+        final IpcCall call = EasyMock.createMock("call", IpcCall.class);
+        EasyMock.expect(call.getArguments()).andReturn(arguments).anyTimes();
+        EasyMock.replay(call);
+        return call;
+    }
+
+    /**
+     * Tests that neither the dependency index nor the generations are created by default.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void offByDefault() throws IpcCommandExecutionException {
+        final Injector injector = injector();
+        final CacheFilter unit = injector.getInstance(CacheFilter.class);
+        final Map<String, Object> result = unit.filter(call(), new GetAccount(), SimpleExecutingFilterChain.INSTANCE);
+        Assert.assertEquals(5, result.get("id"));
+        try {
+            injector.getInstance(DependencyIndex.class);
+            Assert.fail("DependencyIndex must not be created just in time");
+        } catch (ConfigurationException e) {
+            // expected
+        }
+        try {
+            injector.getInstance(InvalidationGenerations.class);
+            Assert.fail("InvalidationGenerations must not be created just in time");
+        } catch (ConfigurationException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests that the {@link DependencyModule} enables dependency tracking.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void dependencyModule() throws IpcCommandExecutionException {
+        final Injector injector = injector(new DependencyModule());
+        final CacheFilter unit = injector.getInstance(CacheFilter.class);
+        unit.filter(call(), new GetAccount(), SimpleExecutingFilterChain.INSTANCE);
+        final DependencyIndex index = injector.getInstance(DependencyIndex.class);
+        Assert.assertEquals(1, index.getDependents("account", 5).size());
+    }
+
+    /**
+     * Cached command which reads an account.
+     */
+    @TimeCached
+    private static final class GetAccount implements IpcCommand {
+
+        @Override
+        public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+            final Object id = call.getArguments().get("id");
+            Dependencies.register("account", id);
+            result.put("id", id);
+        }
+
+    }
+
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.MapIpcArguments;
+
+/**
+ * Keys, results and executions shared by the cache tests.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class CacheFixtures {
+
+    private CacheFixtures() {
+
+    }
+
+    /**
+     * Creates a key of {@link Calculate} with the given id as only argument.
+     *
+     * @param id the id
+     * @return a new key, equal to all keys created using the same id
+     */
+    public static CacheKey key(int id) {
+        return key("id", id);
+    }
+
+    /**
+     * Creates a key of {@link Calculate} with the given argument as only argument.
+     *
+     * @param name the name of the argument
+     * @param value the value of the argument
+     * @return a new key, equal to all keys created using the same argument
+     */
+    public static CacheKey key(String name, Object value) {
+        final IpcArguments arguments = new MapIpcArguments();
+        arguments.put(name, value);
+        return DefaultCacheKeyFactory.INSTANCE.create(Calculate.class, arguments);
+    }
+
+    /**
+     * Creates a mutable result holding the given id.
+     *
+     * @param id the id
+     * @return a new result
+     */
+    public static Map<String, Object> result(int id) {
+        final Map<String, Object> result = Maps.newHashMap();
+        result.put("id", id);
+        return result;
+    }
+
+    /**
+     * Creates an execution which returns the given result.
+     *
+     * @param result the result
+     * @return a new execution
+     */
+    public static IpcCommandExecution returning(final Map<String, Object> result) {
+        return new IpcCommandExecution() {
+
+            @Override
+            public Map<String, Object> call() {
+                return result;
+            }
+
+        };
+    }
+
+}
@@ -16,14 +16,21 @@
 
 package de.cosmocode.palava.ipc.cache;
 
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
 
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Test;
 
 import de.cosmocode.palava.core.Framework;
 import de.cosmocode.palava.core.Palava;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
 import de.cosmocode.palava.core.lifecycle.Startable;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
 
 /**
  * <p>
@@ -56,6 +63,38 @@ public class GenericIpcCacheServiceTest extends AbstractIpcCacheServiceTest impl
         return false;
     }
 
+    /**
+     * Tests that disposing the service cancels computations which are still pending.
+     *
+     * @since 3.1
+     * @throws InterruptedException should not happen
+     * @throws LifecycleException should not happen
+     */
+    @Test
+    public void disposeCancelsPending() throws InterruptedException, LifecycleException {
+        final GenericIpcCacheService unit = framework.getInstance(GenericIpcCacheService.class);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch never = new CountDownLatch(1);
+        final Future<Map<String, Object>> future = unit.getOrComputeAsync(CacheFixtures.key(1),
+            new EternalCacheDecision(), new IpcCommandExecution() {
+
+                @Override
+                public Map<String, Object> call() throws IpcCommandExecutionException {
+                    started.countDown();
+                    try {
+                        never.await();
+                    } catch (InterruptedException e) {
+                        throw new IpcCommandExecutionException(e);
+                    }
+                    return CacheFixtures.result(1);
+                }
+
+            });
+        started.await();
+        unit.dispose();
+        Assert.assertTrue(future.isCancelled());
+    }
+
     @After
     @Override
     public void stop() {
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import org.junit.Before;
+
+/**
+ * Tests {@link LocalIpcCacheService}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public class LocalIpcCacheServiceTest extends AbstractIpcCacheServiceTest {
+
+    private IpcCacheService unit;
+
+    /**
+     * Creates a new unit before each test.
+     */
+    @Before
+    public void createUnit() {
+        unit = new LocalIpcCacheService();
+    }
+
+    @Override
+    public IpcCacheService unit() {
+        return unit;
+    }
+
+}
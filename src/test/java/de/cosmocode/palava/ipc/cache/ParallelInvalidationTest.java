@@ -0,0 +1,160 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Tests {@link ParallelInvalidation}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class ParallelInvalidationTest {
+
+    private final ConcurrentMap<CacheKey, Boolean> entries = Maps.newConcurrentMap();
+
+    private final List<List<CacheKey>> segments = Lists.newArrayList();
+
+    private final ParallelInvalidation.Removal removal = new ParallelInvalidation.Removal() {
+
+        @Override
+        public boolean remove(CacheKey key) {
+            return entries.remove(key) != null;
+        }
+
+    };
+
+    private ExecutorService executor;
+
+    /**
+     * Creates 4 segments of 100 keys each and the executor.
+     */
+    @Before
+    public void setUp() {
+        for (int i = 0; i < 4; i++) {
+            final List<CacheKey> segment = Lists.newArrayList();
+            for (int j = 0; j < 100; j++) {
+                final CacheKey key = CacheFixtures.key(i * 100 + j);
+                segment.add(key);
+                entries.put(key, Boolean.TRUE);
+            }
+            segments.add(segment);
+        }
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    /**
+     * Tests that matching keys are removed and counted.
+     */
+    @Test
+    public void count() {
+        final Set<CacheKey> keys = Sets.newHashSet();
+        for (int i = 0; i < 400; i += 2) {
+            keys.add(CacheFixtures.key(i));
+        }
+        final Predicate<CacheKey> even = Predicates.in(keys);
+        Assert.assertEquals(200, ParallelInvalidation.invalidate(executor, 4, segments, Calculate.class,
+            even, removal));
+        Assert.assertEquals(200, entries.size());
+        Assert.assertEquals(0, ParallelInvalidation.invalidate(executor, 4, segments, Calculate.class,
+            even, removal));
+        // IpcCommand.class stands for all commands
+        Assert.assertEquals(200, ParallelInvalidation.invalidate(executor, 4, segments, IpcCommand.class,
+            Predicates.alwaysTrue(), removal));
+        Assert.assertEquals(0, entries.size());
+    }
+
+    /**
+     * Tests that segments are scanned concurrently.
+     */
+    @Test
+    public void parallel() {
+        final CountDownLatch scanning = new CountDownLatch(4);
+        final Set<Thread> threads = Sets.newSetFromMap(Maps.<Thread, Boolean>newConcurrentMap());
+        final Predicate<CacheKey> waiting = new Predicate<CacheKey>() {
+
+            @Override
+            public boolean apply(CacheKey input) {
+                if (threads.add(Thread.currentThread())) {
+                    scanning.countDown();
+                    try {
+                        // passes only if all four segments are scanned at the same time
+                        Assert.assertTrue(scanning.await(5, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return true;
+            }
+
+        };
+        Assert.assertEquals(400, ParallelInvalidation.invalidate(executor, 4, segments, Calculate.class,
+            waiting, removal));
+        Assert.assertTrue(entries.isEmpty());
+        Assert.assertTrue(threads.contains(Thread.currentThread()));
+    }
+
+    /**
+     * Tests that a failing predicate fails the invalidation.
+     */
+    @Test
+    public void failure() {
+        final IllegalStateException failure = new IllegalStateException();
+        try {
+            ParallelInvalidation.invalidate(null, 4, segments, Calculate.class, new Predicate<CacheKey>() {
+
+                @Override
+                public boolean apply(CacheKey input) {
+                    throw failure;
+                }
+
+            }, removal);
+            Assert.fail("Expected failure");
+        } catch (IllegalStateException e) {
+            Assert.assertSame(failure, e);
+        }
+    }
+
+    /**
+     * Stops the executor.
+     */
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,502 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.bus;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.cache.CacheExpiration;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.MapIpcArguments;
+import de.cosmocode.palava.ipc.cache.AbstractIpcCacheService;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.DefaultCacheKeyFactory;
+import de.cosmocode.palava.ipc.cache.InvalidatingCache;
+import de.cosmocode.palava.ipc.cache.IpcCommandExecution;
+import de.cosmocode.palava.ipc.cache.ParallelInvalidation;
+import de.cosmocode.palava.ipc.cache.invalidation.ArgumentsPredicate;
+import de.cosmocode.palava.ipc.cache.invalidation.InvalidationGenerations;
+
+/**
+ * Tests {@link InvalidationBusIpcCacheService} and its transports.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class InvalidationBusTest {
+
+    private final LoopbackChannel channel = new LoopbackChannel();
+
+    private final MapService first = new MapService();
+
+    private final MapService second = new MapService();
+
+    private CacheKey key(Class<? extends IpcCommand> command, int accountId) {
+        final IpcArguments arguments = new MapIpcArguments();
+        arguments.put("account_id", accountId);
+        return DefaultCacheKeyFactory.INSTANCE.create(command, arguments);
+    }
+
+    private void fill(MapService service) {
+        for (int i = 0; i < 3; i++) {
+            service.put(key(GetAccount.class, i));
+            service.put(key(ListUsers.class, i));
+        }
+    }
+
+    /**
+     * Tests that invalidations of one node are applied on the other node.
+     */
+    @Test
+    public void loopback() {
+        final InvalidationBusIpcCacheService a = new InvalidationBusIpcCacheService(first,
+            new LoopbackTransport(channel));
+        final InvalidationBusIpcCacheService b = new InvalidationBusIpcCacheService(second,
+            new LoopbackTransport(channel));
+        fill(first);
+        fill(second);
+
+        Assert.assertEquals(1, a.invalidateMatching(GetAccount.class, new ArgumentsPredicate(
+            ImmutableMap.of("account_id", 1))));
+        Assert.assertEquals(5, first.entries.size());
+        Assert.assertEquals(6, second.entries.size());
+
+        a.sync();
+        b.sync();
+        Assert.assertEquals(5, second.entries.size());
+        Assert.assertFalse(second.entries.containsKey(key(GetAccount.class, 1)));
+
+        // predicates which can't be published invalidate the whole command elsewhere
+        b.invalidate(ListUsers.class, new Predicate<CacheKey>() {
+
+            @Override
+            public boolean apply(CacheKey input) {
+                return false;
+            }
+
+        });
+        b.sync();
+        a.sync();
+        Assert.assertEquals(5, second.entries.size());
+        Assert.assertEquals(2, first.entries.size());
+    }
+
+    /**
+     * Tests that single keys are published as keys and start a new generation on the receiving node.
+     */
+    @Test
+    public void keys() {
+        final InvalidationBusIpcCacheService a = new InvalidationBusIpcCacheService(first,
+            new LoopbackTransport(channel));
+        final InvalidationBusIpcCacheService b = new InvalidationBusIpcCacheService(second,
+            new LoopbackTransport(channel));
+        final InvalidationGenerations generations = new InvalidationGenerations(16);
+        b.setInvalidationGenerations(generations);
+        fill(first);
+        fill(second);
+
+        Assert.assertTrue(a.invalidateKey(key(GetAccount.class, 1)));
+        a.sync();
+        Assert.assertNotNull(channel.read(0).get(0).getKey());
+        b.sync();
+        Assert.assertEquals(5, second.entries.size());
+        Assert.assertFalse(second.entries.containsKey(key(GetAccount.class, 1)));
+        Assert.assertEquals(1L, generations.get(GetAccount.class));
+        Assert.assertTrue(generations.isInvalidatedSince(key(GetAccount.class, 1), 0L));
+        Assert.assertFalse(generations.isInvalidatedSince(key(GetAccount.class, 2), 0L));
+
+        a.invalidate(ListUsers.class, new ArgumentsPredicate(ImmutableMap.of("account_id", 2)));
+        a.sync();
+        b.sync();
+        Assert.assertEquals(4, second.entries.size());
+        Assert.assertTrue(generations.isInvalidatedSince(key(ListUsers.class, 2), 0L));
+    }
+
+    /**
+     * Tests that an eager bus publishes without waiting for the interval.
+     *
+     * @throws LifecycleException should not happen
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void eager() throws LifecycleException, InterruptedException {
+        final InvalidationBusIpcCacheService a = new InvalidationBusIpcCacheService(first,
+            new LoopbackTransport(channel));
+        a.setInterval(1);
+        a.setIntervalUnit(TimeUnit.HOURS);
+        a.setEager(true);
+        a.initialize();
+        try {
+            a.invalidate(GetAccount.class, new ArgumentsPredicate(ImmutableMap.of("account_id", 1)));
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (channel.size() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            Assert.assertEquals(1, channel.size());
+        } finally {
+            a.dispose();
+        }
+    }
+
+    /**
+     * Tests that equal and covered invalidations of one batch are published once.
+     */
+    @Test
+    public void deduplicate() {
+        final InvalidationBusIpcCacheService a = new InvalidationBusIpcCacheService(first,
+            new LoopbackTransport(channel));
+        for (int i = 0; i < 3; i++) {
+            a.invalidate(GetAccount.class, new ArgumentsPredicate(ImmutableMap.of("account_id", 1)));
+            a.invalidate(ListUsers.class, new ArgumentsPredicate(ImmutableMap.of("account_id", i)));
+        }
+        a.invalidate(ListUsers.class);
+        a.invalidate(ListUsers.class, new ArgumentsPredicate(ImmutableMap.of("account_id", 1)));
+        a.sync();
+
+        Assert.assertEquals(2, channel.size());
+        final InvalidationEvent accounts = channel.read(0).get(0);
+        Assert.assertEquals(GetAccount.class.getName(), accounts.getCommand());
+        Assert.assertEquals(ImmutableMap.of("account_id", "1"), accounts.getArguments());
+        final InvalidationEvent users = channel.read(0).get(1);
+        Assert.assertEquals(ListUsers.class.getName(), users.getCommand());
+        Assert.assertTrue(users.getArguments().isEmpty());
+        Assert.assertTrue(users.getSequence() > accounts.getSequence());
+    }
+
+    /**
+     * Tests that failing publishes and applies are retried and never stop the bus.
+     */
+    @Test
+    public void failures() {
+        final FlakyTransport flaky = new FlakyTransport(new LoopbackTransport(channel));
+        final InvalidationBusIpcCacheService a = new InvalidationBusIpcCacheService(first, flaky);
+        final InvalidationBusIpcCacheService b = new InvalidationBusIpcCacheService(second,
+            new LoopbackTransport(channel));
+        fill(second);
+
+        flaky.failing = true;
+        a.invalidate(GetAccount.class, new ArgumentsPredicate(ImmutableMap.of("account_id", 1)));
+        a.sync();
+        Assert.assertEquals(0, channel.size());
+        flaky.failing = false;
+        a.sync();
+        Assert.assertEquals(1, channel.size());
+
+        second.failures = 1;
+        b.sync();
+        Assert.assertEquals(6, second.entries.size());
+        b.sync();
+        Assert.assertEquals(5, second.entries.size());
+        Assert.assertFalse(second.entries.containsKey(key(GetAccount.class, 1)));
+    }
+
+    /**
+     * Tests that journal transports on the same file see each other's events in order.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void journal() throws IOException {
+        final File file = File.createTempFile("journal", ".log");
+        try {
+            final FileJournalTransport writer = new FileJournalTransport(file);
+            final FileJournalTransport reader = new FileJournalTransport(file);
+            final InvalidationEvent event1 = new InvalidationEvent("a", 1, GetAccount.class.getName(),
+                ImmutableMap.of("account_id", "2"));
+            final InvalidationEvent event2 = new InvalidationEvent("a", 2, ListUsers.class.getName(),
+                ImmutableMap.<String, String>of());
+            writer.publish(ImmutableList.of(event1, event2));
+            Assert.assertEquals(ImmutableList.of(event1, event2), reader.poll());
+            Assert.assertTrue(reader.poll().isEmpty());
+            Assert.assertEquals(ImmutableList.of(event1, event2), writer.poll());
+
+            final InvalidationBusIpcCacheService b = new InvalidationBusIpcCacheService(second,
+                new FileJournalTransport(file));
+            fill(second);
+            writer.publish(ImmutableList.of(event1, new InvalidationEvent("a", 1, ListUsers.class.getName(),
+                ImmutableMap.<String, String>of())));
+            b.sync();
+            // the redelivered sequence number is skipped
+            Assert.assertEquals(5, second.entries.size());
+            writer.close();
+            reader.close();
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Tests that the journal is truncated to its retention, readers which keep up see every event
+     * and readers which fell behind are told to drop everything.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void journalRetention() throws IOException {
+        final File file = File.createTempFile("journal", ".log");
+        try {
+            final FileJournalTransport writer = new FileJournalTransport(file);
+            writer.setRetention(2 * FileJournalTransport.MAX_READ);
+            final FileJournalTransport follower = new FileJournalTransport(file);
+            final FileJournalTransport lagging = new FileJournalTransport(file);
+
+            long sequence = 0;
+            for (int batch = 0; batch < 100; batch++) {
+                final List<InvalidationEvent> events = Lists.newArrayList();
+                for (int i = 0; i < 1000; i++) {
+                    events.add(new InvalidationEvent("a", ++sequence, GetAccount.class.getName(),
+                        ImmutableMap.of("account_id", Long.toString(sequence))));
+                }
+                writer.publish(events);
+                final List<InvalidationEvent> received = Lists.newArrayList();
+                List<InvalidationEvent> polled = follower.poll();
+                while (!polled.isEmpty()) {
+                    received.addAll(polled);
+                    polled = follower.poll();
+                }
+                Assert.assertEquals(events, received);
+            }
+            Assert.assertTrue(file.length() < 3 * FileJournalTransport.MAX_READ);
+
+            final List<InvalidationEvent> polled = lagging.poll();
+            Assert.assertEquals(IpcCommand.class.getName(), polled.get(0).getCommand());
+            Assert.assertTrue(polled.get(0).getArguments().isEmpty());
+            Assert.assertTrue(polled.size() > 1);
+            writer.close();
+            follower.close();
+            lagging.close();
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Tests that readers resync past corrupt bytes and drop everything on the bus.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void journalCorruption() throws IOException {
+        final File file = File.createTempFile("journal", ".log");
+        try {
+            final FileJournalTransport writer = new FileJournalTransport(file);
+            final InvalidationBusIpcCacheService b = new InvalidationBusIpcCacheService(second,
+                new FileJournalTransport(file));
+            fill(second);
+            final InvalidationEvent event1 = new InvalidationEvent("a", 1, GetAccount.class.getName(),
+                ImmutableMap.of("account_id", "2"));
+            final InvalidationEvent event2 = new InvalidationEvent("a", 2, ListUsers.class.getName(),
+                ImmutableMap.of("account_id", "2"));
+            final FileJournalTransport reader = new FileJournalTransport(file);
+            writer.publish(ImmutableList.of(event1));
+            final RandomAccessFile raw = new RandomAccessFile(file, "rw");
+            raw.seek(raw.length());
+            raw.write(new byte[] {0x49, 0x43, 0x4A, 0x52, 0, 0, 0, 1, 0x55});
+            raw.close();
+            writer.publish(ImmutableList.of(event2));
+
+            final List<InvalidationEvent> polled = reader.poll();
+            Assert.assertEquals(3, polled.size());
+            Assert.assertEquals(event1, polled.get(0));
+            Assert.assertEquals(IpcCommand.class.getName(), polled.get(1).getCommand());
+            Assert.assertEquals(event2, polled.get(2));
+            Assert.assertTrue(reader.poll().isEmpty());
+
+            b.sync();
+            Assert.assertTrue(second.entries.isEmpty());
+            writer.close();
+            reader.close();
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Tests that mapped journal transports see each other's events across wrap arounds
+     * and readers which fell behind the retention skip to the end and drop everything.
+     *
+     * @throws IOException should not happen
+     * @throws LifecycleException should not happen
+     */
+    @Test
+    public void mapped() throws IOException, LifecycleException {
+        final File file = File.createTempFile("journal", ".map");
+        try {
+            final MappedJournalTransport writer = new MappedJournalTransport(file);
+            writer.setSize(4096);
+            writer.initialize();
+            final MappedJournalTransport reader = new MappedJournalTransport(file);
+            reader.initialize();
+
+            long sequence = 0;
+            for (int batch = 0; batch < 50; batch++) {
+                final List<InvalidationEvent> events = Lists.newArrayList();
+                for (int i = 0; i < 5; i++) {
+                    events.add(new InvalidationEvent("a", ++sequence, GetAccount.class.getName(),
+                        ImmutableMap.of("account_id", Long.toString(sequence))));
+                }
+                writer.publish(events);
+                Assert.assertEquals(events, reader.poll());
+            }
+            Assert.assertTrue(reader.poll().isEmpty());
+
+            for (int i = 0; i < 100; i++) {
+                writer.publish(ImmutableList.of(new InvalidationEvent("a", ++sequence, GetAccount.class.getName(),
+                    ImmutableMap.of("account_id", Long.toString(sequence)))));
+            }
+            final List<InvalidationEvent> lost = reader.poll();
+            Assert.assertEquals(1, lost.size());
+            Assert.assertEquals(IpcCommand.class.getName(), lost.get(0).getCommand());
+            Assert.assertTrue(lost.get(0).getArguments().isEmpty());
+            Assert.assertTrue(reader.poll().isEmpty());
+            final InvalidationEvent last = new InvalidationEvent("a", ++sequence, ListUsers.class.getName(),
+                ImmutableMap.<String, String>of());
+            writer.publish(ImmutableList.of(last));
+            Assert.assertEquals(ImmutableList.of(last), reader.poll());
+            writer.close();
+            reader.close();
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Cached read command.
+     */
+    private static final class GetAccount implements IpcCommand {
+
+        @Override
+        public void execute(IpcCall call, Map<String, Object> result) {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    /**
+     * Another cached read command.
+     */
+    private static final class ListUsers implements IpcCommand {
+
+        @Override
+        public void execute(IpcCall call, Map<String, Object> result) {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    /**
+     * Service which keeps keys in a map.
+     */
+    private static final class MapService extends AbstractIpcCacheService implements InvalidatingCache {
+
+        private final ConcurrentMap<CacheKey, Map<String, Object>> entries = Maps.newConcurrentMap();
+
+        private int failures;
+
+        void put(CacheKey key) {
+            entries.put(key, Maps.<String, Object>newHashMap());
+        }
+
+        @Override
+        public Map<String, Object> read(CacheKey key) {
+            return entries.get(key);
+        }
+
+        @Override
+        public Map<String, Object> computeAndStore(CacheKey key, CacheExpiration expiration,
+            IpcCommandExecution computation) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void invalidate(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+            invalidateMatching(command, predicate);
+        }
+
+        @Override
+        public int invalidateMatching(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("Failing on purpose");
+            }
+            int removed = 0;
+            for (CacheKey key : entries.keySet()) {
+                if (ParallelInvalidation.matches(key, command, predicate) && entries.remove(key) != null) {
+                    removed++;
+                }
+            }
+            return removed;
+        }
+
+        @Override
+        public boolean invalidateKey(CacheKey key) {
+            return entries.remove(key) != null;
+        }
+
+    }
+
+    /**
+     * Transport which fails to publish on demand.
+     */
+    private static final class FlakyTransport implements InvalidationTransport {
+
+        private final InvalidationTransport transport;
+
+        private boolean failing;
+
+        FlakyTransport(InvalidationTransport transport) {
+            this.transport = transport;
+        }
+
+        @Override
+        public void publish(List<InvalidationEvent> events) throws IOException {
+            if (failing) {
+                throw new IllegalStateException("Failing on purpose");
+            }
+            transport.publish(events);
+        }
+
+        @Override
+        public List<InvalidationEvent> poll() throws IOException {
+            return transport.poll();
+        }
+
+        @Override
+        public void close() throws IOException {
+            transport.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,221 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.codec;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.MapIpcArguments;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.DefaultCacheKeyFactory;
+import de.cosmocode.palava.ipc.cache.format.IndexedResult;
+
+/**
+ * Tests {@link BinaryKeyCodec} and {@link BinaryResultCodec}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class BinaryCodecTest {
+
+    private CacheKey key(Map<String, Object> arguments) {
+        return DefaultCacheKeyFactory.INSTANCE.create(CodecCommand.class, new MapIpcArguments(arguments));
+    }
+
+    private Map<String, Object> arguments() {
+        final Map<String, Object> arguments = Maps.newLinkedHashMap();
+        arguments.put("id", 42);
+        arguments.put("lang", "de");
+        arguments.put("ids", Arrays.asList(1L, 2L, 3L));
+        return arguments;
+    }
+
+    private Map<String, Object> result() {
+        final Map<String, Object> result = Maps.newLinkedHashMap();
+        for (int i = 0; i < 50; i++) {
+            final Map<String, Object> item = Maps.newLinkedHashMap();
+            item.put("id", i);
+            item.put("name", "name of " + i);
+            item.put("active", i % 2 == 0);
+            item.put("score", i * 0.5);
+            result.put("item" + i, item);
+        }
+        return result;
+    }
+
+    /**
+     * Tests that a decoded key equals the encoded one.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void keyRoundTrip() throws IOException {
+        final CacheKey key = key(arguments());
+        final byte[] bytes = BinaryKeyCodec.INSTANCE.encodeKey(key);
+        final CacheKey decoded = BinaryKeyCodec.INSTANCE.decodeKey(ByteBuffer.wrap(bytes));
+        Assert.assertEquals(key, decoded);
+        Assert.assertEquals(key.hashCode(), decoded.hashCode());
+    }
+
+    /**
+     * Tests that equal keys are encoded into equal bytes, regardless of the argument order.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void keyDeterministic() throws IOException {
+        final Map<String, Object> reversed = Maps.newLinkedHashMap();
+        reversed.put("ids", Arrays.asList(1L, 2L, 3L));
+        reversed.put("lang", "de");
+        reversed.put("id", 42);
+        Assert.assertArrayEquals(
+            BinaryKeyCodec.INSTANCE.encodeKey(key(arguments())),
+            BinaryKeyCodec.INSTANCE.encodeKey(key(reversed)));
+    }
+
+    /**
+     * Tests that keys written using java serialization can still be read.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void keyFallback() throws IOException {
+        final CacheKey key = new ForeignKey();
+        final byte[] bytes = BinaryKeyCodec.INSTANCE.encodeKey(key);
+        Assert.assertArrayEquals(JavaSerializationCodec.INSTANCE.encodeKey(key), bytes);
+        Assert.assertEquals(key, BinaryKeyCodec.INSTANCE.decodeKey(ByteBuffer.wrap(bytes)));
+
+        final CacheKey defaultKey = key(arguments());
+        final byte[] serialized = JavaSerializationCodec.INSTANCE.encodeKey(defaultKey);
+        Assert.assertEquals(defaultKey, BinaryKeyCodec.INSTANCE.decodeKey(ByteBuffer.wrap(serialized)));
+    }
+
+    /**
+     * Tests that a decoded result equals the encoded one and is read lazily.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void resultRoundTrip() throws IOException {
+        final Map<String, Object> result = result();
+        final byte[] bytes = BinaryResultCodec.INSTANCE.encodeResult(result);
+        final Map<String, Object> decoded = BinaryResultCodec.INSTANCE.decodeResult(ByteBuffer.wrap(bytes));
+        Assert.assertTrue(decoded instanceof IndexedResult);
+        Assert.assertEquals(result, decoded);
+        Assert.assertArrayEquals(bytes, BinaryResultCodec.INSTANCE.encodeResult(decoded));
+    }
+
+    /**
+     * Tests that results written using java serialization can still be read.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void resultFallback() throws IOException {
+        final Map<String, Object> result = result();
+        final byte[] bytes = JavaSerializationCodec.INSTANCE.encodeResult(result);
+        Assert.assertEquals(result, BinaryResultCodec.INSTANCE.decodeResult(ByteBuffer.wrap(bytes)));
+    }
+
+    /**
+     * Tests that results with keys the indexed form can't represent are serialized instead of failing.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void resultNonStringKeys() throws IOException {
+        final Map<String, Object> result = result();
+        result.put(null, "null key");
+        Map.class.cast(result).put(Integer.valueOf(5), "int key");
+        final byte[] bytes = BinaryResultCodec.INSTANCE.encodeResult(result);
+        final Map<String, Object> decoded = BinaryResultCodec.INSTANCE.decodeResult(ByteBuffer.wrap(bytes));
+        Assert.assertFalse(decoded instanceof IndexedResult);
+        Assert.assertEquals(result, decoded);
+    }
+
+    /**
+     * Tests that the binary forms are smaller than the serialized ones.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void smaller() throws IOException {
+        final Map<String, Object> result = result();
+        Assert.assertTrue(
+            BinaryResultCodec.INSTANCE.encodeResult(result).length <
+            JavaSerializationCodec.INSTANCE.encodeResult(result).length);
+        final CacheKey key = key(arguments());
+        Assert.assertTrue(
+            BinaryKeyCodec.INSTANCE.encodeKey(key).length <
+            JavaSerializationCodec.INSTANCE.encodeKey(key).length);
+    }
+
+    /**
+     * Command type used as part of the keys.
+     */
+    private static final class CodecCommand implements IpcCommand {
+
+        @Override
+        public void execute(IpcCall call, Map<String, Object> result) throws IpcCommandExecutionException {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    /**
+     * Key which was not created by the {@link DefaultCacheKeyFactory}.
+     */
+    private static final class ForeignKey implements CacheKey, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Class<? extends IpcCommand> getCommand() {
+            return CodecCommand.class;
+        }
+
+        @Override
+        public IpcArguments getArguments() {
+            return new MapIpcArguments();
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            return that instanceof ForeignKey;
+        }
+
+        @Override
+        public int hashCode() {
+            return 1;
+        }
+
+    }
+
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.compact;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Tests {@link InterningResultCompactor}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class InterningResultCompactorTest {
+
+    private Map<String, Object> result(int id) {
+        final Map<String, Object> child = Maps.newHashMap();
+        child.put("name", "child" + id);
+        child.put("tags", Lists.newArrayList("a", "b"));
+        final Map<String, Object> result = Maps.newHashMap();
+        result.put("id", id);
+        result.put("title", null);
+        result.put("child", child);
+        result.put("children", Lists.newArrayList(child, child));
+        return result;
+    }
+
+    /**
+     * Tests that compact results are equal to their source, including nested values.
+     */
+    @Test
+    public void equality() {
+        final InterningResultCompactor unit = new InterningResultCompactor();
+        final Map<String, Object> compacted = unit.compact(IpcCommand.class, result(1));
+        Assert.assertTrue(compacted instanceof CompactMap);
+        Assert.assertEquals(result(1), compacted);
+        Assert.assertEquals(compacted, result(1));
+        Assert.assertEquals(result(1).hashCode(), compacted.hashCode());
+        Assert.assertTrue(compacted.containsKey("title"));
+        Assert.assertNull(compacted.get("title"));
+        Assert.assertFalse(compacted.containsKey(1));
+        Assert.assertTrue(compacted.get("child") instanceof CompactMap);
+        final List<?> children = List.class.cast(compacted.get("children"));
+        Assert.assertTrue(children instanceof CompactList);
+        Assert.assertTrue(children.get(0) instanceof CompactMap);
+    }
+
+    /**
+     * Tests that compact results can't be modified.
+     */
+    @Test
+    public void immutable() {
+        final Map<String, Object> compacted = new InterningResultCompactor().compact(IpcCommand.class, result(1));
+        try {
+            compacted.put("id", 2);
+            Assert.fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            List.class.cast(compacted.get("children")).clear();
+            Assert.fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests that results of the same shape share their key arrays.
+     */
+    @Test
+    public void shapes() {
+        final InterningResultCompactor unit = new InterningResultCompactor();
+        final CompactMap first = CompactMap.class.cast(unit.compact(IpcCommand.class, result(1)));
+        final CompactMap second = CompactMap.class.cast(unit.compact(IpcCommand.class, result(2)));
+        Assert.assertSame(first.getKeys(), second.getKeys());
+        Assert.assertSame(
+            CompactMap.class.cast(first.get("child")).getKeys(),
+            CompactMap.class.cast(second.get("child")).getKeys());
+        Assert.assertEquals(2, unit.getShapes(IpcCommand.class));
+    }
+
+    /**
+     * Tests that the number of interned shapes is bounded.
+     */
+    @Test
+    public void maxShapes() {
+        final InterningResultCompactor unit = new InterningResultCompactor();
+        unit.setMaxShapes(1);
+        final Map<String, Object> first = Maps.newHashMap();
+        first.put("a", 1);
+        final Map<String, Object> second = Maps.newHashMap();
+        second.put("b", 2);
+        unit.compact(IpcCommand.class, first);
+        Assert.assertEquals(second, unit.compact(IpcCommand.class, second));
+        Assert.assertEquals(1, unit.getShapes(IpcCommand.class));
+    }
+
+    /**
+     * Tests that maps with non-string keys are kept as unmodifiable copies.
+     */
+    @Test
+    public void foreignKeys() {
+        final Map<Object, Object> foreign = Maps.newHashMap();
+        foreign.put(1, "one");
+        final Map<String, Object> result = Maps.newHashMap();
+        result.put("foreign", foreign);
+        final Map<String, Object> compacted = new InterningResultCompactor().compact(IpcCommand.class, result);
+        Assert.assertEquals(result, compacted);
+        Assert.assertEquals(Arrays.asList("foreign"), Lists.newArrayList(compacted.keySet()));
+    }
+
+}
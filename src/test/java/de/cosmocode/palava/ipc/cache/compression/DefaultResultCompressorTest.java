@@ -0,0 +1,184 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.compression;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.cache.encoding.EncodedResults;
+import de.cosmocode.palava.ipc.cache.encoding.ResultEncoder;
+
+/**
+ * Tests {@link DefaultResultCompressor}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class DefaultResultCompressorTest {
+
+    /**
+     * Command which compresses all results.
+     */
+    @Compressed(threshold = 0, codec = CompressionCodec.DEFLATE_BEST)
+    private abstract static class Always implements IpcCommand {
+
+    }
+
+    /**
+     * Command which compresses all results using the configured codec.
+     */
+    @Compressed(threshold = 0)
+    private abstract static class Configured implements IpcCommand {
+
+    }
+
+    /**
+     * Command which never compresses results.
+     */
+    @Compressed(enabled = false)
+    private abstract static class Never implements IpcCommand {
+
+    }
+
+    /**
+     * Command with an invalid annotation.
+     */
+    @Compressed(codec = { CompressionCodec.DEFLATE_BEST, CompressionCodec.DEFLATE_FAST })
+    private abstract static class TwoCodecs implements IpcCommand {
+
+    }
+
+    private Map<String, Object> large() {
+        final List<Object> rows = Lists.newArrayList();
+        for (int i = 0; i < 2000; i++) {
+            rows.add(Strings.repeat("row", 20) + i);
+        }
+        final Map<String, Object> result = Maps.newHashMap();
+        result.put("rows", rows);
+        return result;
+    }
+
+    /**
+     * Tests that large results get compressed and decompress to an equal result.
+     */
+    @Test
+    public void compress() {
+        final DefaultResultCompressor unit = new DefaultResultCompressor();
+        final Map<String, Object> compressed = unit.compress(IpcCommand.class, large());
+        Assert.assertTrue(compressed instanceof CompressedResultMap);
+        Assert.assertEquals(large(), unit.decompress(compressed));
+        Assert.assertEquals(large(), compressed);
+
+        final CompressionStatistics statistics = unit.getStatistics().get(IpcCommand.class);
+        Assert.assertEquals(1, statistics.getCompressed());
+        Assert.assertEquals(1, statistics.getDecompressions());
+        Assert.assertTrue(statistics.getRatio() > 5);
+    }
+
+    /**
+     * Tests that results below the threshold are kept unchanged.
+     */
+    @Test
+    public void threshold() {
+        final DefaultResultCompressor unit = new DefaultResultCompressor();
+        final Map<String, Object> small = Maps.newHashMap();
+        small.put("id", 1);
+        Assert.assertSame(small, unit.compress(IpcCommand.class, small));
+        Assert.assertSame(small, unit.decompress(small));
+        Assert.assertEquals(1, unit.getStatistics().get(IpcCommand.class).getSkipped());
+
+        unit.setThreshold(Long.MAX_VALUE);
+        Assert.assertFalse(unit.compress(IpcCommand.class, large()) instanceof CompressedResultMap);
+    }
+
+    /**
+     * Tests that the annotation overrides the configuration.
+     */
+    @Test
+    public void annotation() {
+        final DefaultResultCompressor unit = new DefaultResultCompressor();
+        unit.setThreshold(Long.MAX_VALUE);
+        Assert.assertTrue(unit.compress(Always.class, large()) instanceof CompressedResultMap);
+        unit.setThreshold(0L);
+        Assert.assertFalse(unit.compress(Never.class, large()) instanceof CompressedResultMap);
+    }
+
+    /**
+     * Tests that an annotation which only overrides the threshold uses the configured codec.
+     */
+    @Test
+    public void configuredCodec() {
+        final DefaultResultCompressor unit = new DefaultResultCompressor();
+        unit.setCodec(CompressionCodec.DEFLATE_BEST);
+        final int best = CompressedResultMap.class.cast(unit.compress(Always.class, large())).getCompressedLength();
+        final int configured = CompressedResultMap.class.cast(
+            unit.compress(Configured.class, large())).getCompressedLength();
+        Assert.assertEquals(best, configured);
+    }
+
+    /**
+     * Tests that an annotation naming two codecs is rejected, even for results below the threshold.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void twoCodecs() {
+        new DefaultResultCompressor().compress(TwoCodecs.class, Maps.<String, Object>newHashMap());
+    }
+
+    /**
+     * Tests that accessing a compressed result directly inflates it once.
+     */
+    @Test
+    public void inflatesOnce() {
+        final Map<String, Object> compressed = new DefaultResultCompressor().compress(Always.class, large());
+        Assert.assertTrue(compressed instanceof CompressedResultMap);
+        Assert.assertSame(compressed.get("rows"), compressed.get("rows"));
+        Assert.assertEquals(large(), compressed);
+    }
+
+    /**
+     * Tests that encoded results are never compressed.
+     */
+    @Test
+    public void encoded() {
+        final DefaultResultCompressor unit = new DefaultResultCompressor();
+        unit.setThreshold(0L);
+        final Map<String, Object> encoded = EncodedResults.encode(large(), new ResultEncoder() {
+
+            @Override
+            public String getContentType() {
+                return "text/plain";
+            }
+
+            @Override
+            public byte[] encode(Map<String, Object> result) throws IOException {
+                return result.toString().getBytes("UTF-8");
+            }
+
+        });
+        Assert.assertSame(encoded, unit.compress(IpcCommand.class, encoded));
+    }
+
+}
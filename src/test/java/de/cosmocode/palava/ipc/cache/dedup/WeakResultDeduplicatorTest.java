@@ -0,0 +1,110 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.dedup;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+
+/**
+ * Tests {@link WeakResultDeduplicator}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class WeakResultDeduplicatorTest {
+
+    private Map<String, Object> result(int id) {
+        final Map<String, Object> result = Maps.newHashMap();
+        result.put("id", id);
+        result.put("items", Lists.newArrayList());
+        return result;
+    }
+
+    /**
+     * Tests that equal results share one copy and are counted per command.
+     */
+    @Test
+    public void deduplicate() {
+        final WeakResultDeduplicator unit = new WeakResultDeduplicator();
+        final Map<String, Object> first = unit.deduplicate(IpcCommand.class, result(1));
+        Assert.assertSame(first, unit.deduplicate(IpcCommand.class, result(1)));
+        Assert.assertSame(first, unit.deduplicate(IpcCommand.class, result(1)));
+        Assert.assertNotSame(first, unit.deduplicate(IpcCommand.class, result(2)));
+        Assert.assertEquals(2, unit.size());
+
+        final DeduplicationStatistics statistics = unit.getStatistics().get(IpcCommand.class);
+        Assert.assertEquals(4, statistics.getStores());
+        Assert.assertEquals(2, statistics.getDuplicates());
+        Assert.assertEquals(2, statistics.getDistinct());
+        Assert.assertTrue(statistics.getSavedBytes() > 0);
+    }
+
+    /**
+     * Tests that shared copies can't be modified, including nested values.
+     */
+    @Test
+    public void unmodifiable() {
+        final WeakResultDeduplicator unit = new WeakResultDeduplicator();
+        final Map<String, Object> original = result(1);
+        final Map<String, Object> shared = unit.deduplicate(IpcCommand.class, original);
+        Assert.assertEquals(original, shared);
+        try {
+            shared.put("id", 2);
+            Assert.fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {
+            Assert.assertEquals(1, shared.get("id"));
+        }
+        try {
+            List.class.cast(shared.get("items")).add("item");
+            Assert.fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {
+            Assert.assertSame(shared, unit.deduplicate(IpcCommand.class, result(1)));
+        }
+        // modifying the original doesn't affect the shared copy
+        original.put("id", 3);
+        Assert.assertSame(shared, unit.deduplicate(IpcCommand.class, result(1)));
+    }
+
+    /**
+     * Tests that copies which are no longer referenced get released.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void release() throws InterruptedException {
+        final WeakResultDeduplicator unit = new WeakResultDeduplicator();
+        unit.deduplicate(IpcCommand.class, result(1));
+        unit.deduplicate(IpcCommand.class, result(1));
+        for (int i = 0; i < 50 && unit.getStatistics().get(IpcCommand.class).getDistinct() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        final DeduplicationStatistics statistics = unit.getStatistics().get(IpcCommand.class);
+        Assert.assertEquals(0, statistics.getDistinct());
+        Assert.assertEquals(0, statistics.getSavedBytes());
+        Assert.assertEquals(0, unit.size());
+    }
+
+}
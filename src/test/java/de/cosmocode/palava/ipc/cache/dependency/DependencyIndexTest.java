@@ -0,0 +1,234 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.dependency;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.cache.CacheExpiration;
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.MapIpcArguments;
+import de.cosmocode.palava.ipc.cache.AbstractIpcCacheService;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.DefaultCacheKeyFactory;
+import de.cosmocode.palava.ipc.cache.InvalidatingCache;
+import de.cosmocode.palava.ipc.cache.IpcCommandExecution;
+import de.cosmocode.palava.ipc.cache.ParallelInvalidation;
+
+/**
+ * Tests {@link Dependencies} and {@link DependencyIndex}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class DependencyIndexTest {
+
+    private final MapService service = new MapService();
+
+    private final DependencyIndex unit = new DependencyIndex(service);
+
+    private CacheKey key(Class<? extends IpcCommand> command, int id) {
+        final IpcArguments arguments = new MapIpcArguments();
+        arguments.put("id", id);
+        return DefaultCacheKeyFactory.INSTANCE.create(command, arguments);
+    }
+
+    private void store(CacheKey key, Set<Entity> entities) {
+        service.entries.put(key, Maps.<String, Object>newHashMap());
+        unit.register(key, entities);
+    }
+
+    /**
+     * Tests that nested recordings add their entities to the outer one
+     * and registrations outside of recordings are ignored.
+     */
+    @Test
+    public void record() {
+        Dependencies.register("account", 1);
+        Dependencies.begin();
+        Dependencies.register("account", 5);
+        Dependencies.begin();
+        Dependencies.register("user", "7");
+        Assert.assertEquals(ImmutableSet.of(new Entity("user", 7)), Dependencies.end());
+        Assert.assertEquals(ImmutableSet.of(new Entity("account", 5L), new Entity("user", 7)), Dependencies.end());
+        try {
+            Dependencies.end();
+            Assert.fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            return;
+        }
+    }
+
+    /**
+     * Tests that exactly the dependent results are invalidated, across commands.
+     */
+    @Test
+    public void invalidateEntity() {
+        final Entity account5 = new Entity("account", 5);
+        final Entity account6 = new Entity("account", 6);
+        final Entity user7 = new Entity("user", 7);
+        store(key(GetAccount.class, 5), ImmutableSet.of(account5));
+        store(key(GetAccount.class, 6), ImmutableSet.of(account6));
+        store(key(ListUsers.class, 5), ImmutableSet.of(account5, user7));
+        store(key(ListUsers.class, 6), ImmutableSet.of(account6, user7));
+
+        Assert.assertEquals(2, unit.invalidateEntity("account", "5"));
+        Assert.assertEquals(2, service.entries.size());
+        Assert.assertTrue(service.entries.containsKey(key(GetAccount.class, 6)));
+        Assert.assertTrue(service.entries.containsKey(key(ListUsers.class, 6)));
+        Assert.assertEquals(ImmutableSet.of(key(ListUsers.class, 6)), unit.getDependents("user", 7));
+        Assert.assertEquals(2, unit.size());
+
+        Assert.assertEquals(0, unit.invalidateEntity("account", 5));
+    }
+
+    /**
+     * Tests that recomputed results are indexed by their latest entities only.
+     */
+    @Test
+    public void replace() {
+        store(key(GetAccount.class, 5), ImmutableSet.of(new Entity("account", 5)));
+        store(key(GetAccount.class, 5), ImmutableSet.of(new Entity("account", 6)));
+        Assert.assertTrue(unit.getDependents("account", 5).isEmpty());
+        Assert.assertEquals(1, unit.invalidateEntity("account", 6));
+        Assert.assertEquals(0, unit.size());
+    }
+
+    /**
+     * Tests that a computation which read an entity invalidated before it registered is not indexed
+     * and that registrations are marked when their entities are invalidated.
+     */
+    @Test
+    public void invalidatedWhileComputing() {
+        final long since = unit.getSequence();
+        unit.invalidateEntity("account", 5);
+        final DependencyIndex.Registration outdated =
+            unit.register(key(GetAccount.class, 5), ImmutableSet.of(new Entity("account", 5)), since);
+        Assert.assertTrue(outdated.isInvalidated());
+        Assert.assertEquals(0, unit.size());
+
+        final DependencyIndex.Registration current =
+            unit.register(key(GetAccount.class, 6), ImmutableSet.of(new Entity("account", 6)), since);
+        Assert.assertFalse(current.isInvalidated());
+        unit.invalidateEntity("account", 6);
+        Assert.assertTrue(current.isInvalidated());
+    }
+
+    /**
+     * Tests that a full index drops its oldest keys and invalidates their results.
+     */
+    @Test
+    public void bounded() {
+        unit.setCapacity(10);
+        for (int i = 0; i < 11; i++) {
+            store(key(GetAccount.class, i), ImmutableSet.of(new Entity("account", i)));
+        }
+        Assert.assertEquals(10, unit.size());
+        Assert.assertFalse(service.entries.containsKey(key(GetAccount.class, 0)));
+        Assert.assertTrue(unit.getDependencies(key(GetAccount.class, 0)).isEmpty());
+        Assert.assertEquals(ImmutableSet.of(new Entity("account", 10)),
+            unit.getDependencies(key(GetAccount.class, 10)));
+    }
+
+    /**
+     * Tests that entities of nested hits are added to the running recording.
+     */
+    @Test
+    public void registerAll() {
+        Assert.assertFalse(Dependencies.isRecording());
+        Dependencies.begin();
+        Assert.assertTrue(Dependencies.isRecording());
+        Dependencies.registerAll(ImmutableSet.of(new Entity("account", 5)));
+        Assert.assertEquals(ImmutableSet.of(new Entity("account", 5)), Dependencies.end());
+    }
+
+    /**
+     * Cached read command.
+     */
+    private static final class GetAccount implements IpcCommand {
+
+        @Override
+        public void execute(IpcCall call, Map<String, Object> result) {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    /**
+     * Another cached read command.
+     */
+    private static final class ListUsers implements IpcCommand {
+
+        @Override
+        public void execute(IpcCall call, Map<String, Object> result) {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    /**
+     * Service which keeps results in a map.
+     */
+    private static final class MapService extends AbstractIpcCacheService implements InvalidatingCache {
+
+        private final ConcurrentMap<CacheKey, Map<String, Object>> entries = Maps.newConcurrentMap();
+
+        @Override
+        public Map<String, Object> read(CacheKey key) {
+            return entries.get(key);
+        }
+
+        @Override
+        public Map<String, Object> computeAndStore(CacheKey key, CacheExpiration expiration,
+            IpcCommandExecution computation) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void invalidate(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+            invalidateMatching(command, predicate);
+        }
+
+        @Override
+        public int invalidateMatching(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+            int removed = 0;
+            for (CacheKey key : entries.keySet()) {
+                if (ParallelInvalidation.matches(key, command, predicate) && entries.remove(key) != null) {
+                    removed++;
+                }
+            }
+            return removed;
+        }
+
+        @Override
+        public boolean invalidateKey(CacheKey key) {
+            return entries.remove(key) != null;
+        }
+
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.encoding;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+
+/**
+ * Tests {@link EncodedResults}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class EncodedResultsTest {
+
+    private final ResultEncoder encoder = new ResultEncoder() {
+
+        @Override
+        public String getContentType() {
+            return "text/plain";
+        }
+
+        @Override
+        public byte[] encode(Map<String, Object> result) {
+            return result.containsKey("skip") ? null : result.toString().getBytes(Charsets.UTF_8);
+        }
+
+    };
+
+    private Map<String, Object> result() {
+        final Map<String, Object> result = Maps.newHashMap();
+        result.put("id", 5);
+        return result;
+    }
+
+    /**
+     * Tests that encoded results still behave like the original map and write their bytes.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void encode() throws IOException {
+        final Map<String, Object> encoded = EncodedResults.encode(result(), encoder);
+        Assert.assertTrue(encoded instanceof EncodedResult);
+        Assert.assertEquals(result(), encoded);
+        final EncodedResult view = EncodedResult.class.cast(encoded);
+        Assert.assertEquals("text/plain", view.getContentType());
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        view.writeTo(output);
+        Assert.assertEquals(result().toString(), new String(output.toByteArray(), Charsets.UTF_8));
+        Assert.assertEquals(output.size(), view.getEncodedLength());
+    }
+
+    /**
+     * Tests that encoded results can't be modified, which would make the bytes stale.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void unmodifiable() {
+        EncodedResults.encode(result(), encoder).put("id", 6);
+    }
+
+    /**
+     * Tests that declined results are returned unchanged.
+     */
+    @Test
+    public void declined() {
+        final Map<String, Object> result = result();
+        result.put("skip", true);
+        Assert.assertSame(result, EncodedResults.encode(result, encoder));
+    }
+
+    /**
+     * Tests that encoded results survive serialization, as done by serializing stores.
+     *
+     * @throws IOException should not happen
+     * @throws ClassNotFoundException should not happen
+     */
+    @Test
+    public void serializable() throws IOException, ClassNotFoundException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(EncodedResults.encode(result(), encoder));
+        output.close();
+        final Object read = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        Assert.assertTrue(read instanceof EncodedResult);
+        Assert.assertEquals(result(), read);
+    }
+
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.format;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.channels.Channels;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Tests {@link IndexedResults}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class IndexedResultsTest {
+
+    private Map<String, Object> result() {
+        final Map<String, Object> child = Maps.newHashMap();
+        child.put("name", "k\u00e4se");
+        child.put("active", true);
+        final Map<Object, Object> foreign = Maps.newHashMap();
+        foreign.put(1, "one");
+        final Map<String, Object> result = Maps.newHashMap();
+        result.put("id", 5);
+        result.put("total", 5000000000L);
+        result.put("ratio", 0.5d);
+        result.put("title", null);
+        result.put("date", new Date(0L));
+        result.put("child", child);
+        result.put("foreign", foreign);
+        result.put("children", Lists.newArrayList(child, "text", 1));
+        result.put("", "empty key");
+        return result;
+    }
+
+    /**
+     * Tests that views equal the written result, including value types.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        final IndexedResult view = IndexedResults.view(IndexedResults.write(result()));
+        Assert.assertEquals(result(), view);
+        Assert.assertEquals(view, result());
+        Assert.assertEquals(result().hashCode(), view.hashCode());
+        Assert.assertEquals(Integer.valueOf(5), view.get("id"));
+        Assert.assertEquals(Long.valueOf(5000000000L), view.get("total"));
+        Assert.assertTrue(view.containsKey("title"));
+        Assert.assertFalse(view.containsKey("missing"));
+        Assert.assertNull(view.get("missing"));
+        Assert.assertTrue(view.get("child") instanceof IndexedResult);
+        Assert.assertEquals(ImmutableList.of("", "child", "children", "date"),
+            ImmutableList.copyOf(view.keySet()).subList(0, 4));
+    }
+
+    /**
+     * Tests that views can't be modified.
+     *
+     * @throws IOException should not happen
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void readOnly() throws IOException {
+        IndexedResults.view(IndexedResults.write(result())).put("id", 6);
+    }
+
+    /**
+     * Tests that the visitor sees the whole structure in key order.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void accept() throws IOException {
+        final Map<String, Object> source = Maps.newHashMap();
+        source.put("b", Lists.newArrayList(1, 2));
+        source.put("a", null);
+        final StringBuilder builder = new StringBuilder();
+        IndexedResults.view(IndexedResults.write(source)).accept(new ResultVisitor() {
+
+            @Override
+            public void visitMapStart(int size) {
+                builder.append('{');
+            }
+
+            @Override
+            public void visitKey(String key) {
+                builder.append(key).append('=');
+            }
+
+            @Override
+            public void visitMapEnd() {
+                builder.append('}');
+            }
+
+            @Override
+            public void visitListStart(int size) {
+                builder.append('[');
+            }
+
+            @Override
+            public void visitListEnd() {
+                builder.append(']');
+            }
+
+            @Override
+            public void visitValue(Object value) {
+                builder.append(value).append(';');
+            }
+
+        });
+        Assert.assertEquals("{a=null;b=[1;2;]}", builder.toString());
+    }
+
+    /**
+     * Tests that views write and serialize as their binary form.
+     *
+     * @throws IOException should not happen
+     * @throws ClassNotFoundException should not happen
+     */
+    @Test
+    public void writeTo() throws IOException, ClassNotFoundException {
+        final byte[] bytes = IndexedResults.write(result());
+        final IndexedResult view = IndexedResults.view(bytes);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        view.writeTo(Channels.newChannel(output));
+        Assert.assertArrayEquals(bytes, output.toByteArray());
+        Assert.assertEquals(bytes.length, view.getLength());
+
+        final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        final ObjectOutputStream stream = new ObjectOutputStream(serialized);
+        stream.writeObject(view);
+        stream.close();
+        final Object copy = new ObjectInputStream(new ByteArrayInputStream(serialized.toByteArray())).readObject();
+        Assert.assertTrue(copy instanceof IndexedResult);
+        Assert.assertEquals(result(), copy);
+
+        final List<?> children = List.class.cast(view.get("children"));
+        Assert.assertEquals(3, children.size());
+        Assert.assertEquals(IndexedResult.class.cast(children.get(0)).getLength(),
+            IndexedResults.write(IndexedResult.class.cast(children.get(0))).length);
+    }
+
+}
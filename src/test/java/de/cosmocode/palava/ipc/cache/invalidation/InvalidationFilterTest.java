@@ -0,0 +1,327 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.invalidation;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.cache.CacheExpiration;
+import de.cosmocode.palava.ipc.IpcArguments;
+import de.cosmocode.palava.ipc.IpcCall;
+import de.cosmocode.palava.ipc.IpcCallFilterChain;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.MapIpcArguments;
+import de.cosmocode.palava.ipc.cache.AbstractIpcCacheService;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.DecoratingCache;
+import de.cosmocode.palava.ipc.cache.DefaultCacheKeyFactory;
+import de.cosmocode.palava.ipc.cache.InvalidatingCache;
+import de.cosmocode.palava.ipc.cache.IpcCacheService;
+import de.cosmocode.palava.ipc.cache.IpcCommandExecution;
+import de.cosmocode.palava.ipc.cache.ParallelInvalidation;
+
+/**
+ * Tests {@link InvalidationFilter}, {@link InvalidationGenerations} and {@link ArgumentsPredicate}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class InvalidationFilterTest {
+
+    private final MapService service = new MapService();
+
+    private final InvalidationGenerations generations = new InvalidationGenerations(InvalidationGenerations.RECENT);
+
+    private final InvalidationFilter unit = new InvalidationFilter(service, generations);
+
+    private IpcArguments arguments(Object accountId, Object userId) {
+        final IpcArguments arguments = new MapIpcArguments();
+        arguments.put("account_id", accountId);
+        arguments.put("user_id", userId);
+        return arguments;
+    }
+
+    private CacheKey key(Class<? extends IpcCommand> command, Object accountId, Object userId) {
+        return DefaultCacheKeyFactory.INSTANCE.create(command, arguments(accountId, userId));
+    }
+
+    private IpcCall call(final IpcArguments arguments) {
+        return IpcCall.class.cast(Proxy.newProxyInstance(IpcCall.class.getClassLoader(),
+            new Class<?>[] {IpcCall.class}, new InvocationHandler() {
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if ("getArguments".equals(method.getName())) {
+                        return arguments;
+                    } else {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+
+            }));
+    }
+
+    private IpcCallFilterChain chain(final IpcCommandExecutionException failure) {
+        return new IpcCallFilterChain() {
+
+            @Override
+            public Map<String, Object> filter(IpcCall call, IpcCommand command) throws IpcCommandExecutionException {
+                if (failure == null) {
+                    return Maps.newHashMap();
+                } else {
+                    throw failure;
+                }
+            }
+
+        };
+    }
+
+    /**
+     * Tests that values are compared loosely.
+     */
+    @Test
+    public void predicate() {
+        final CacheKey key = key(GetAccount.class, 5, "7");
+        Assert.assertTrue(new ArgumentsPredicate(ImmutableMap.of("account_id", 5L)).apply(key));
+        Assert.assertTrue(new ArgumentsPredicate(ImmutableMap.of("account_id", "5", "user_id", 7)).apply(key));
+        Assert.assertTrue(new ArgumentsPredicate(ImmutableMap.<String, Object>of()).apply(key));
+        Assert.assertFalse(new ArgumentsPredicate(ImmutableMap.of("account_id", 6)).apply(key));
+        Assert.assertFalse(new ArgumentsPredicate(ImmutableMap.of("other", 5)).apply(key));
+    }
+
+    /**
+     * Tests that a successful write invalidates matching entries of all declared commands.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void invalidate() throws IpcCommandExecutionException {
+        service.put(key(GetAccount.class, 5, 1));
+        service.put(key(GetAccount.class, 6, 1));
+        service.put(key(ListUsers.class, 5, 2));
+        service.put(key(ListUsers.class, 6, 2));
+
+        unit.filter(call(arguments(5, 3)), new UpdateAccount(), chain(null));
+        Assert.assertEquals(2, service.entries.size());
+        Assert.assertTrue(service.entries.containsKey(key(GetAccount.class, 6, 1)));
+        Assert.assertTrue(service.entries.containsKey(key(ListUsers.class, 6, 2)));
+
+        final IpcArguments missing = new MapIpcArguments();
+        unit.filter(call(missing), new UpdateAccount(), chain(null));
+        Assert.assertTrue(service.entries.isEmpty());
+        Assert.assertEquals(2L, generations.get(GetAccount.class));
+        Assert.assertEquals(2L, generations.get(ListUsers.class));
+        Assert.assertEquals(0L, generations.get(UpdateAccount.class));
+    }
+
+    /**
+     * Tests that a failing invalidation does not turn a committed write into a failure.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void invalidationFailure() throws IpcCommandExecutionException {
+        service.put(key(GetAccount.class, 5, 1));
+        service.failing = true;
+        Assert.assertNotNull(unit.filter(call(arguments(5, 1)), new UpdateAccount(), chain(null)));
+        Assert.assertEquals(1L, generations.get(GetAccount.class));
+    }
+
+    /**
+     * Tests that services which decorate an invalidating service without being one are rejected.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void unsupported() {
+        new InvalidationFilter(new Decorator(service), generations);
+    }
+
+    /**
+     * Tests that generations only report invalidations matching the key.
+     */
+    @Test
+    public void generations() {
+        final long before = generations.get(GetAccount.class);
+        generations.increment(GetAccount.class, new ArgumentsPredicate(ImmutableMap.of("account_id", 5)));
+        Assert.assertTrue(generations.isInvalidatedSince(key(GetAccount.class, 5, 1), before));
+        Assert.assertFalse(generations.isInvalidatedSince(key(GetAccount.class, 6, 1), before));
+        Assert.assertFalse(generations.isInvalidatedSince(key(ListUsers.class, 5, 1), 0L));
+        Assert.assertFalse(generations.isInvalidatedSince(key(GetAccount.class, 5, 1), before + 1));
+    }
+
+    /**
+     * Tests that generations treat keys as invalidated once too many invalidations happened.
+     */
+    @Test
+    public void forgotten() {
+        final InvalidationGenerations generations = new InvalidationGenerations(4);
+        final long before = generations.get(GetAccount.class);
+        for (int i = 0; i <= 4; i++) {
+            generations.increment(GetAccount.class, new ArgumentsPredicate(ImmutableMap.of("account_id", 100 + i)));
+        }
+        Assert.assertTrue(generations.isInvalidatedSince(key(GetAccount.class, 5, 1), before));
+        Assert.assertFalse(generations.isInvalidatedSince(key(GetAccount.class, 5, 1), before + 1));
+    }
+
+    /**
+     * Tests that a failed write invalidates nothing.
+     */
+    @Test
+    public void failure() {
+        service.put(key(GetAccount.class, 5, 1));
+        final IpcCommandExecutionException failure = new IpcCommandExecutionException("failed");
+        try {
+            unit.filter(call(arguments(5, 1)), new UpdateAccount(), chain(failure));
+            Assert.fail("Expected failure");
+        } catch (IpcCommandExecutionException e) {
+            Assert.assertSame(failure, e);
+        }
+        Assert.assertEquals(1, service.entries.size());
+    }
+
+    /**
+     * Cached read command.
+     */
+    private static final class GetAccount implements IpcCommand {
+
+        @Override
+        public void execute(IpcCall call, Map<String, Object> result) {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    /**
+     * Another cached read command.
+     */
+    private static final class ListUsers implements IpcCommand {
+
+        @Override
+        public void execute(IpcCall call, Map<String, Object> result) {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    /**
+     * Mutating command.
+     */
+    @Invalidates(commands = {GetAccount.class, ListUsers.class}, arguments = "account_id")
+    private static final class UpdateAccount implements IpcCommand {
+
+        @Override
+        public void execute(IpcCall call, Map<String, Object> result) {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    /**
+     * Service which keeps keys in a map.
+     */
+    private static final class MapService extends AbstractIpcCacheService implements InvalidatingCache {
+
+        private final ConcurrentMap<CacheKey, Map<String, Object>> entries = Maps.newConcurrentMap();
+
+        private boolean failing;
+
+        void put(CacheKey key) {
+            entries.put(key, Maps.<String, Object>newHashMap());
+        }
+
+        @Override
+        public Map<String, Object> read(CacheKey key) {
+            return entries.get(key);
+        }
+
+        @Override
+        public Map<String, Object> computeAndStore(CacheKey key, CacheExpiration expiration,
+            IpcCommandExecution computation) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void invalidate(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+            invalidateMatching(command, predicate);
+        }
+
+        @Override
+        public int invalidateMatching(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+            if (failing) {
+                throw new UnsupportedOperationException();
+            }
+            int removed = 0;
+            for (CacheKey key : entries.keySet()) {
+                if (ParallelInvalidation.matches(key, command, predicate) && entries.remove(key) != null) {
+                    removed++;
+                }
+            }
+            return removed;
+        }
+
+        @Override
+        public boolean invalidateKey(CacheKey key) {
+            return entries.remove(key) != null;
+        }
+
+    }
+
+    /**
+     * Service which decorates another one, but can't invalidate by predicate.
+     */
+    private static final class Decorator extends AbstractIpcCacheService implements DecoratingCache {
+
+        private final IpcCacheService backing;
+
+        Decorator(IpcCacheService backing) {
+            this.backing = backing;
+        }
+
+        @Override
+        public IpcCacheService getBacking() {
+            return backing;
+        }
+
+        @Override
+        public Map<String, Object> read(CacheKey key) {
+            return backing.read(key);
+        }
+
+        @Override
+        public Map<String, Object> computeAndStore(CacheKey key, CacheExpiration expiration,
+            IpcCommandExecution computation) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void invalidate(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+import com.google.inject.Guice;
+
+import de.cosmocode.palava.ipc.cache.CacheEntry;
+import de.cosmocode.palava.ipc.cache.CacheFixtures;
+import de.cosmocode.palava.ipc.cache.IpcCacheService;
+import de.cosmocode.palava.ipc.cache.LocalIpcCacheServiceModule;
+import de.cosmocode.palava.ipc.cache.Snapshottable;
+
+/**
+ * Tests {@link SnapshotFile}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class SnapshotFileTest {
+
+    private File file;
+
+    /**
+     * Creates the snapshot file.
+     *
+     * @throws IOException should not happen
+     */
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("snapshot", ".bin");
+    }
+
+    private IpcCacheService newService() {
+        return Guice.createInjector(new LocalIpcCacheServiceModule()).getInstance(IpcCacheService.class);
+    }
+
+    private Map<String, Object> value(int id) {
+        final Map<String, Object> value = Maps.newHashMap();
+        value.put("id", id);
+        value.put("name", "name of " + id);
+        return value;
+    }
+
+    /**
+     * Tests that live entries survive a write/read round trip and expired ones are dropped.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        final IpcCacheService source = newService();
+        final Snapshottable snapshottable = Snapshottable.class.cast(source);
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < 5000; i++) {
+            snapshottable.restore(CacheFixtures.key(i),
+                new CacheEntry(value(i), now, now, TimeUnit.HOURS.toMillis(1), 0L));
+        }
+        Assert.assertEquals(5000L, SnapshotFile.write(file, snapshottable));
+
+        final IpcCacheService target = newService();
+        Assert.assertEquals(5000L, SnapshotFile.read(file, Snapshottable.class.cast(target), 4));
+        for (int i = 0; i < 5000; i += 499) {
+            Assert.assertEquals(value(i), target.read(CacheFixtures.key(i)));
+        }
+    }
+
+    /**
+     * Tests that entries which expired while the snapshot was on disk are not restored.
+     *
+     * @throws IOException should not happen
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void dropsExpired() throws IOException, InterruptedException {
+        final IpcCacheService source = newService();
+        final Snapshottable snapshottable = Snapshottable.class.cast(source);
+        final long now = System.currentTimeMillis();
+        snapshottable.restore(CacheFixtures.key(1), new CacheEntry(value(1), now, now, TimeUnit.HOURS.toMillis(1), 0L));
+        snapshottable.restore(CacheFixtures.key(2), new CacheEntry(value(2), now - 1000L, now, 1200L, 0L));
+        Assert.assertEquals(2L, SnapshotFile.write(file, snapshottable));
+        Thread.sleep(300L);
+
+        final IpcCacheService target = newService();
+        Assert.assertEquals(1L, SnapshotFile.read(file, Snapshottable.class.cast(target), 1));
+        Assert.assertNull(target.read(CacheFixtures.key(2)));
+    }
+
+    /**
+     * Tests that a record length beyond the end of the file is reported as corruption.
+     *
+     * @throws IOException expected
+     */
+    @Test(expected = IOException.class)
+    public void corruptLength() throws IOException {
+        final IpcCacheService source = newService();
+        final Snapshottable snapshottable = Snapshottable.class.cast(source);
+        final long now = System.currentTimeMillis();
+        snapshottable.restore(CacheFixtures.key(1), new CacheEntry(value(1), now, now, TimeUnit.HOURS.toMillis(1), 0L));
+        Assert.assertEquals(1L, SnapshotFile.write(file, snapshottable));
+
+        final RandomAccessFile corrupt = new RandomAccessFile(file, "rw");
+        try {
+            corrupt.seek(16);
+            corrupt.writeInt(Integer.MAX_VALUE);
+        } finally {
+            corrupt.close();
+        }
+        SnapshotFile.read(file, Snapshottable.class.cast(newService()), 1);
+    }
+
+    /**
+     * Deletes the snapshot file.
+     */
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+}
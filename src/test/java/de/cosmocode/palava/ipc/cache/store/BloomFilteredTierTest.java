@@ -0,0 +1,101 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.cache.CacheEntry;
+import de.cosmocode.palava.ipc.cache.CacheFixtures;
+
+/**
+ * Tests {@link BloomFilteredTier}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class BloomFilteredTierTest {
+
+    private BloomFilteredTier unit;
+
+    /**
+     * Creates a filtered off-heap tier before each test.
+     */
+    @Before
+    public void createUnit() {
+        unit = new BloomFilteredTier(new OffHeapStore(1 << 22, 1 << 16), "test", 1000, 0.01);
+    }
+
+    private CacheEntry entry(int id) {
+        final Map<String, Object> value = Maps.newHashMap();
+        value.put("id", id);
+        final long now = System.currentTimeMillis();
+        return new CacheEntry(value, now, now, 0L, 0L);
+    }
+
+    /**
+     * Tests that stored keys are found and most absent keys skip the tier.
+     */
+    @Test
+    public void skipsAbsent() {
+        for (int i = 0; i < 1000; i++) {
+            unit.put(CacheFixtures.key(i), entry(i));
+        }
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertNotNull(unit.get(CacheFixtures.key(i), now));
+        }
+        for (int i = 1000; i < 11000; i++) {
+            Assert.assertNull(unit.get(CacheFixtures.key(i), now));
+        }
+        final FilterStatistics statistics = unit.getStatistics();
+        Assert.assertEquals(1000L, statistics.getTruePositives());
+        Assert.assertEquals(10000L, statistics.getSkipped() + statistics.getFalsePositives());
+        Assert.assertTrue(statistics.getFalsePositiveRate() < 0.05);
+    }
+
+    /**
+     * Tests that a rebuild forgets removed keys.
+     */
+    @Test
+    public void rebuildForgetsRemoved() {
+        for (int i = 0; i < 100; i++) {
+            unit.put(CacheFixtures.key(i), entry(i));
+        }
+        for (int i = 0; i < 50; i++) {
+            unit.remove(CacheFixtures.key(i));
+        }
+        final long now = System.currentTimeMillis();
+        Assert.assertNull(unit.get(CacheFixtures.key(0), now));
+        Assert.assertEquals(1L, unit.getStatistics().getFalsePositives());
+
+        unit.rebuild();
+        for (int i = 0; i < 50; i++) {
+            Assert.assertNull(unit.get(CacheFixtures.key(i), now));
+        }
+        for (int i = 50; i < 100; i++) {
+            Assert.assertNotNull(unit.get(CacheFixtures.key(i), now));
+        }
+        Assert.assertTrue(unit.getStatistics().getSkipped() > 45L);
+    }
+
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.CacheFixtures;
+import de.cosmocode.palava.ipc.cache.EternalCacheDecision;
+
+/**
+ * Tests {@link DiskIpcCacheService}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class DiskIpcCacheServiceTest {
+
+    private File directory;
+
+    /**
+     * Creates the segment directory.
+     */
+    @Before
+    public void createDirectory() {
+        directory = Files.createTempDir();
+    }
+
+    private DiskIpcCacheService open() throws LifecycleException {
+        final DiskIpcCacheService unit = new DiskIpcCacheService(directory);
+        unit.setSegmentSize(1024 * 1024);
+        unit.setSegments(4);
+        unit.setFilterEntries(1000);
+        unit.initialize();
+        return unit;
+    }
+
+    /**
+     * Tests that reads of absent keys skip the log and entries of a previous run pass the filter.
+     *
+     * @throws LifecycleException should not happen
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void filter() throws LifecycleException, IpcCommandExecutionException {
+        final DiskIpcCacheService unit = open();
+        unit.computeAndStore(CacheFixtures.key(1), new EternalCacheDecision(),
+            CacheFixtures.returning(CacheFixtures.result(1)));
+        Assert.assertEquals(CacheFixtures.result(1), unit.read(CacheFixtures.key(1)));
+        for (int i = 2; i < 102; i++) {
+            Assert.assertNull(unit.read(CacheFixtures.key(i)));
+        }
+        final FilterStatistics statistics = unit.getFilterStatistics().get(0);
+        Assert.assertEquals(1L, statistics.getTruePositives());
+        Assert.assertTrue(statistics.getSkipped() > 90);
+        unit.dispose();
+
+        // the filter of the next run is built from the reopened log
+        final DiskIpcCacheService reopened = open();
+        Assert.assertEquals(CacheFixtures.result(1), reopened.read(CacheFixtures.key(1)));
+        Assert.assertEquals(1L, reopened.getFilterStatistics().get(0).getTruePositives());
+        reopened.dispose();
+    }
+
+    /**
+     * Deletes the segment directory.
+     */
+    @After
+    public void deleteDirectory() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+}
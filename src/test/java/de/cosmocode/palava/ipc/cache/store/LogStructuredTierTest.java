@@ -0,0 +1,254 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import de.cosmocode.palava.ipc.cache.CacheEntry;
+import de.cosmocode.palava.ipc.cache.CacheFixtures;
+
+/**
+ * Tests {@link LogStructuredTier}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class LogStructuredTierTest {
+
+    private static final int SEGMENT_SIZE = 16 * 1024;
+
+    private File directory;
+
+    /**
+     * Creates the segment directory.
+     */
+    @Before
+    public void createDirectory() {
+        directory = Files.createTempDir();
+    }
+
+    private LogStructuredTier open() throws IOException {
+        final LogStructuredTier tier = new LogStructuredTier(directory, SEGMENT_SIZE, 16, 0.5);
+        tier.open();
+        return tier;
+    }
+
+    private CacheEntry entry(int id) {
+        final Map<String, Object> value = Maps.newHashMap();
+        value.put("id", id);
+        value.put("name", "name of " + id);
+        final long now = System.currentTimeMillis();
+        return new CacheEntry(value, now, now, 0L, 0L);
+    }
+
+    /**
+     * Tests that entries and removals survive reopening.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void reopen() throws IOException {
+        final LogStructuredTier tier = open();
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(tier.put(CacheFixtures.key(i), entry(i)));
+        }
+        tier.remove(CacheFixtures.key(7));
+        tier.close();
+
+        final LogStructuredTier reopened = open();
+        Assert.assertEquals(99, reopened.size());
+        Assert.assertEquals(entry(42).getValue(),
+            reopened.get(CacheFixtures.key(42), System.currentTimeMillis()).getValue());
+        Assert.assertNull(reopened.get(CacheFixtures.key(7), System.currentTimeMillis()));
+        reopened.close();
+    }
+
+    /**
+     * Tests that tombstones which could not be appended are retried, so their entries stay removed.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void unwrittenTombstones() throws IOException {
+        final LogStructuredTier tier = open();
+        for (int i = 0; i < 20; i++) {
+            Assert.assertTrue(tier.put(CacheFixtures.key(i), entry(i)));
+        }
+
+        // without its directory the log can't start a new segment once the active one is full
+        final File moved = new File(directory.getPath() + ".moved");
+        Assert.assertTrue(directory.renameTo(moved));
+        for (int i = 100; tier.put(CacheFixtures.key(i), entry(i)); i++) {
+            Assert.assertTrue(i < 1000);
+        }
+        for (int i = 0; i < 20; i++) {
+            Assert.assertTrue(tier.remove(CacheFixtures.key(i)));
+            Assert.assertNull(tier.get(CacheFixtures.key(i), System.currentTimeMillis()));
+        }
+        Assert.assertTrue(moved.renameTo(directory));
+
+        Assert.assertTrue(tier.put(CacheFixtures.key(1000), entry(1000)));
+        tier.close();
+
+        final LogStructuredTier reopened = open();
+        for (int i = 0; i < 20; i++) {
+            Assert.assertNull(reopened.get(CacheFixtures.key(i), System.currentTimeMillis()));
+        }
+        Assert.assertNotNull(reopened.get(CacheFixtures.key(1000), System.currentTimeMillis()));
+        reopened.close();
+    }
+
+    /**
+     * Tests that a torn record at the end of the log is ignored when reopening.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void tornWrite() throws IOException {
+        final LogStructuredTier tier = open();
+        tier.put(CacheFixtures.key(1), entry(1));
+        tier.put(CacheFixtures.key(2), entry(2));
+        tier.close();
+
+        final File[] segments = directory.listFiles();
+        Assert.assertEquals(1, segments.length);
+        final RandomAccessFile file = new RandomAccessFile(segments[0], "rw");
+        try {
+            // the first non-zero byte from the end belongs to the second record
+            long position = file.length() - 1;
+            file.seek(position);
+            while (file.read() == 0) {
+                file.seek(--position);
+            }
+            file.seek(position);
+            file.write(0);
+        } finally {
+            file.close();
+        }
+
+        final LogStructuredTier reopened = open();
+        Assert.assertEquals(1, reopened.size());
+        Assert.assertNotNull(reopened.get(CacheFixtures.key(1), System.currentTimeMillis()));
+        Assert.assertNull(reopened.get(CacheFixtures.key(2), System.currentTimeMillis()));
+        reopened.close();
+    }
+
+    /**
+     * Tests that compaction reclaims segments full of replaced entries and keeps live ones.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void compact() throws IOException {
+        final LogStructuredTier tier = open();
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 50; i++) {
+                tier.put(CacheFixtures.key(i), entry(i));
+            }
+        }
+        final int before = tier.getSegments();
+        Assert.assertTrue(before > 2);
+        Assert.assertTrue(tier.compact() > 0);
+        Assert.assertTrue(tier.getSegments() < before);
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals(entry(i).getValue(),
+                tier.get(CacheFixtures.key(i), System.currentTimeMillis()).getValue());
+        }
+        tier.close();
+
+        final LogStructuredTier reopened = open();
+        Assert.assertEquals(50, reopened.size());
+        reopened.close();
+    }
+
+    /**
+     * Tests that compaction reclaims entries which expired without being read again.
+     *
+     * @throws IOException should not happen
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void compactExpired() throws IOException, InterruptedException {
+        final LogStructuredTier tier = open();
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < 500; i++) {
+            tier.put(CacheFixtures.key(i), new CacheEntry(entry(i).getValue(), now, now, 1L, 0L));
+        }
+        final int before = tier.getSegments();
+        Assert.assertTrue(before > 2);
+        Thread.sleep(10L);
+        Assert.assertEquals(before - 1, tier.compact());
+        Assert.assertEquals(0, tier.size());
+        Assert.assertEquals(1, tier.getSegments());
+        tier.close();
+    }
+
+    /**
+     * Tests that compaction drops tombstones of keys which were stored again,
+     * even if older segments remain.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void compactTombstones() throws IOException {
+        final LogStructuredTier tier = open();
+        for (int i = 1000; i < 1200; i++) {
+            tier.put(CacheFixtures.key(i), entry(i));
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 50; i++) {
+                tier.put(CacheFixtures.key(i), entry(i));
+                tier.remove(CacheFixtures.key(i));
+            }
+        }
+        for (int i = 0; i < 25; i++) {
+            tier.put(CacheFixtures.key(i), entry(i));
+        }
+        Assert.assertTrue(tier.compact() > 0);
+        tier.close();
+
+        final LogStructuredTier reopened = open();
+        Assert.assertEquals(225, reopened.size());
+        for (int i = 0; i < 25; i++) {
+            Assert.assertNotNull(reopened.get(CacheFixtures.key(i), System.currentTimeMillis()));
+        }
+        reopened.close();
+    }
+
+    /**
+     * Deletes the segment directory.
+     */
+    @After
+    public void deleteDirectory() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+}
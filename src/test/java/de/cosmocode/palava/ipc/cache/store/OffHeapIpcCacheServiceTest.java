@@ -0,0 +1,142 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.AbstractIpcCacheServiceTest;
+import de.cosmocode.palava.ipc.cache.CacheEntry;
+import de.cosmocode.palava.ipc.cache.CacheFixtures;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.EternalCacheDecision;
+import de.cosmocode.palava.ipc.cache.IpcCacheService;
+
+/**
+ * Tests {@link OffHeapIpcCacheService}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public class OffHeapIpcCacheServiceTest extends AbstractIpcCacheServiceTest {
+
+    private OffHeapIpcCacheService unit;
+
+    /**
+     * Creates a new unit before each test.
+     */
+    @Before
+    public void createUnit() {
+        unit = new OffHeapIpcCacheService(1 << 20, 1 << 16);
+    }
+
+    @Override
+    public IpcCacheService unit() {
+        return unit;
+    }
+
+    /**
+     * Tests that a full store evicts entries instead of failing and never
+     * exceeds its capacity.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void evictsWhenFull() throws IpcCommandExecutionException {
+        final OffHeapStore store = new OffHeapStore(1 << 16, 1 << 12);
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++) {
+            final Map<String, Object> value = Maps.newHashMap();
+            value.put("id", i);
+            value.put("payload", new byte[512]);
+            Assert.assertTrue(store.put(CacheFixtures.key(i), new CacheEntry(value, now, now, 0L, 0L)));
+        }
+        Assert.assertTrue(store.size() < 1000);
+        Assert.assertTrue(store.getUsedBytes() <= 1 << 16);
+        final CacheEntry last = store.get(CacheFixtures.key(999), now);
+        Assert.assertNotNull(last);
+        Assert.assertEquals(999, last.getValue().get("id"));
+    }
+
+    /**
+     * Tests that a put whose size class is exhausted fails instead of evicting
+     * entries of other size classes.
+     */
+    @Test
+    public void keepsOtherSizeClasses() {
+        final OffHeapStore store = new OffHeapStore(1 << 16, 1 << 12);
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++) {
+            final Map<String, Object> value = Maps.newHashMap();
+            value.put("id", i);
+            value.put("payload", new byte[512]);
+            store.put(CacheFixtures.key(i), new CacheEntry(value, now, now, 0L, 0L));
+        }
+        final int size = store.size();
+        final Map<String, Object> large = Maps.newHashMap();
+        large.put("payload", new byte[3000]);
+        Assert.assertFalse(store.put(CacheFixtures.key(1000), new CacheEntry(large, now, now, 0L, 0L)));
+        Assert.assertEquals(size, store.size());
+    }
+
+    /**
+     * Tests that snapshots read entries without marking them as accessed and can be restored.
+     */
+    @Test
+    public void snapshot() {
+        final long now = System.currentTimeMillis();
+        final CacheEntry idle = new CacheEntry(CacheFixtures.result(1), now - 1000L, now - 1000L, 0L, 60000L);
+        unit.restore(CacheFixtures.key(1), idle);
+        unit.restore(CacheFixtures.key(2), new CacheEntry(CacheFixtures.result(2), now - 1000L, now - 1000L, 0L, 10L));
+
+        final Iterator<Map.Entry<CacheKey, CacheEntry>> entries = unit.liveEntries();
+        Assert.assertTrue(entries.hasNext());
+        final Map.Entry<CacheKey, CacheEntry> entry = entries.next();
+        Assert.assertFalse(entries.hasNext());
+        Assert.assertEquals(CacheFixtures.key(1), entry.getKey());
+        Assert.assertEquals(CacheFixtures.result(1), entry.getValue().getValue());
+        Assert.assertEquals(now - 1000L, entry.getValue().getLastAccess());
+
+        // present keys are kept
+        unit.restore(CacheFixtures.key(1), new CacheEntry(CacheFixtures.result(3), now, now, 0L, 0L));
+        Assert.assertEquals(CacheFixtures.result(1), unit.read(CacheFixtures.key(1)));
+    }
+
+    /**
+     * Tests that results larger than a slab are returned but not cached.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void skipsOversized() throws IpcCommandExecutionException {
+        final Map<String, Object> value = Maps.newHashMap();
+        value.put("payload", new byte[1 << 17]);
+        final CacheKey key = CacheFixtures.key(1);
+        final Map<String, Object> computed = unit.computeAndStore(key, new EternalCacheDecision(),
+            CacheFixtures.returning(value));
+        Assert.assertSame(value, computed);
+        Assert.assertNull(unit.read(key));
+    }
+
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import de.cosmocode.palava.ipc.cache.CacheEntry;
+import de.cosmocode.palava.ipc.cache.CacheFixtures;
+
+/**
+ * Tests {@link SharedMemoryTier}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class SharedMemoryTierTest {
+
+    private static final int WORKERS = 4;
+
+    private static final int KEYS = 500;
+
+    private File file;
+
+    /**
+     * Picks a file name for the shared cache.
+     *
+     * @throws IOException should not happen
+     */
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("shared", ".cache");
+        // the tier initializes empty files only
+        file.delete();
+    }
+
+    /**
+     * Tests that several processes on one host share their entries.
+     *
+     * @throws IOException should not happen
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void processes() throws IOException, InterruptedException {
+        runWorkers();
+
+        final SharedMemoryTier tier = new SharedMemoryTier(file, SharedMemoryWorker.SLOTS,
+            SharedMemoryWorker.DATA_SIZE, 10);
+        Assert.assertEquals(WORKERS * KEYS, tier.size());
+        tier.remove(CacheFixtures.key(3));
+        Assert.assertNull(tier.get(CacheFixtures.key(3), System.currentTimeMillis()));
+        Assert.assertEquals(WORKERS * KEYS - 1, tier.keys().size());
+    }
+
+    /**
+     * Tests that processes storing the same keys at the same time never read foreign values
+     * and leave exactly one entry per key.
+     *
+     * @throws IOException should not happen
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void contention() throws IOException, InterruptedException {
+        runWorkers("contend");
+
+        final SharedMemoryTier tier = new SharedMemoryTier(file, SharedMemoryWorker.SLOTS,
+            SharedMemoryWorker.DATA_SIZE, 10);
+        Assert.assertEquals(KEYS, tier.size());
+        for (int id = 0; id < KEYS; id++) {
+            final CacheEntry entry = tier.get(CacheFixtures.key(id), System.currentTimeMillis());
+            Assert.assertNotNull(entry);
+            Assert.assertTrue(SharedMemoryWorker.isValid(id, WORKERS, entry));
+        }
+    }
+
+    private void runWorkers(String... mode) throws IOException, InterruptedException {
+        final String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        final List<Process> processes = Lists.newArrayList();
+        for (int worker = 0; worker < WORKERS; worker++) {
+            final List<String> command = Lists.newArrayList(java, "-cp", System.getProperty("java.class.path"),
+                SharedMemoryWorker.class.getName(), file.getPath(), Integer.toString(worker),
+                Integer.toString(WORKERS), Integer.toString(KEYS));
+            command.addAll(Arrays.asList(mode));
+            processes.add(new ProcessBuilder(command).redirectErrorStream(true).start());
+        }
+        for (Process process : processes) {
+            Assert.assertEquals(0, process.waitFor());
+        }
+    }
+
+    /**
+     * Tests that expired and overwritten entries are not counted.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void sizeSkipsUnusable() throws IOException {
+        final SharedMemoryTier tier = new SharedMemoryTier(file, 16, 4096, 10);
+        final long now = System.currentTimeMillis();
+        Assert.assertTrue(tier.put(CacheFixtures.key(1), new CacheEntry(CacheFixtures.result(1),
+            now - 10000, now - 10000, 1L, 0L)));
+        Assert.assertTrue(tier.put(CacheFixtures.key(2), SharedMemoryWorker.entry(2)));
+        Assert.assertEquals(1, tier.size());
+
+        // rewrites another key until the ring overwrote the record of the second key
+        for (int i = 0; i < 200; i++) {
+            Assert.assertTrue(tier.put(CacheFixtures.key(3), SharedMemoryWorker.entry(3)));
+        }
+        Assert.assertEquals(1, tier.size());
+        Assert.assertEquals(1, tier.keys().size());
+        Assert.assertNull(tier.get(CacheFixtures.key(2), System.currentTimeMillis()));
+    }
+
+    /**
+     * Tests that slots claimed by a writer which died are reclaimed after the stale timeout only.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void staleWriters() throws IOException {
+        final int slots = 16;
+        final SharedMemoryTier tier = new SharedMemoryTier(file, slots, 1024 * 1024, 10);
+
+        // simulates writers which claimed every slot and never published
+        final RandomAccessFile access = new RandomAccessFile(file, "rw");
+        final SharedMemory memory;
+        try {
+            memory = new SharedMemory(access.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, access.length()));
+        } finally {
+            access.close();
+        }
+        final long writing = 1L;
+        final long recent = (System.currentTimeMillis() / 1000) << 32;
+        for (int i = 0; i < slots; i++) {
+            memory.putLongVolatile(64 + i * 32, recent | writing);
+        }
+        Assert.assertFalse(tier.put(CacheFixtures.key(1), SharedMemoryWorker.entry(1)));
+
+        final long old = (System.currentTimeMillis() / 1000 - 60) << 32;
+        for (int i = 0; i < slots; i++) {
+            memory.putLongVolatile(64 + i * 32, old | writing);
+        }
+        Assert.assertTrue(tier.put(CacheFixtures.key(1), SharedMemoryWorker.entry(1)));
+        Assert.assertEquals(SharedMemoryWorker.entry(1).getValue(),
+            tier.get(CacheFixtures.key(1), System.currentTimeMillis()).getValue());
+    }
+
+    /**
+     * Tests that a put which finds a second ready slot of its key removes the later one.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void duplicates() throws IOException {
+        final SharedMemoryTier tier = new SharedMemoryTier(file, 16, 1024 * 1024, 10);
+        Assert.assertTrue(tier.put(CacheFixtures.key(1), SharedMemoryWorker.entry(1)));
+
+        // hides the first slot of the key as if a concurrent writer had claimed it
+        final RandomAccessFile access = new RandomAccessFile(file, "rw");
+        final SharedMemory memory;
+        try {
+            memory = new SharedMemory(access.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, access.length()));
+        } finally {
+            access.close();
+        }
+        long first = -1;
+        long word = 0;
+        for (int i = 0; i < 16; i++) {
+            word = memory.getLongVolatile(64 + i * 32);
+            if (word != 0) {
+                first = 64 + i * 32;
+                break;
+            }
+        }
+        final long writing = (word & ~3L) | 1L;
+        memory.putLongVolatile(first, writing);
+        Assert.assertTrue(tier.put(CacheFixtures.key(1), SharedMemoryWorker.entry(1)));
+        Assert.assertEquals(1, tier.size());
+
+        // the concurrent writer publishes, both slots are ready now
+        memory.putLongVolatile(first, word);
+        Assert.assertEquals(2, tier.size());
+        Assert.assertTrue(tier.put(CacheFixtures.key(1), SharedMemoryWorker.entry(1)));
+        Assert.assertEquals(1, tier.size());
+        Assert.assertNotNull(tier.get(CacheFixtures.key(1), System.currentTimeMillis()));
+    }
+
+    /**
+     * Tests that accesses outside the mapping and unaligned atomic accesses are rejected.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void memoryBounds() throws IOException {
+        final RandomAccessFile access = new RandomAccessFile(file, "rw");
+        final SharedMemory memory;
+        try {
+            memory = new SharedMemory(access.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 64));
+        } finally {
+            access.close();
+        }
+        memory.putLong(56, 1L);
+        Assert.assertEquals(1L, memory.getLongVolatile(56));
+        try {
+            memory.getLong(60);
+            Assert.fail("Expected an access beyond the mapping to fail");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        try {
+            memory.putInt(-4, 1);
+            Assert.fail("Expected a negative offset to fail");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        try {
+            memory.compareAndSwapLong(4, 0L, 1L);
+            Assert.fail("Expected an unaligned atomic access to fail");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Deletes the shared file.
+     */
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.cache.CacheEntry;
+import de.cosmocode.palava.ipc.cache.CacheFixtures;
+
+/**
+ * Process used by {@link SharedMemoryTierTest} and usable as a manual harness: attaches to a shared
+ * cache, stores its own range of keys and waits until it sees the keys of all other workers.
+ * Exits with 0 on success and 1 if not all keys showed up within ten seconds.
+ * In {@code contend} mode all workers store the same keys for {@link #ROUNDS} rounds instead,
+ * so they compete for the same slots, and read them back in between.
+ * Exits with 2 whenever a read returned the value of another key.
+ *
+ * <p>
+ * Usage: {@code SharedMemoryWorker <file> <worker> <workers> <keys> [contend]}
+ * </p>
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class SharedMemoryWorker {
+
+    static final int SLOTS = 1 << 14;
+
+    static final long DATA_SIZE = 16L * 1024 * 1024;
+
+    static final int ROUNDS = 20;
+
+    private SharedMemoryWorker() {
+
+    }
+
+    static CacheEntry entry(int id) {
+        final Map<String, Object> value = Maps.newHashMap();
+        value.put("id", id);
+        final long now = System.currentTimeMillis();
+        return new CacheEntry(value, now, now, 0L, 0L);
+    }
+
+    static CacheEntry entry(int id, int worker) {
+        final CacheEntry entry = entry(id);
+        entry.getValue().put("worker", worker);
+        return entry;
+    }
+
+    static boolean isValid(int id, int workers, CacheEntry entry) {
+        final Object worker = entry.getValue().get("worker");
+        return Integer.valueOf(id).equals(entry.getValue().get("id")) && entry.getValue().size() == 2
+            && worker instanceof Integer && (Integer) worker >= 0 && (Integer) worker < workers;
+    }
+
+    private static void contend(SharedMemoryTier tier, int worker, int workers, int keys) {
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int id = 0; id < keys; id++) {
+                tier.put(CacheFixtures.key(id), entry(id, worker));
+                final int other = (id * 7 + round) % keys;
+                final CacheEntry entry = tier.get(CacheFixtures.key(other), System.currentTimeMillis());
+                if (entry != null && !isValid(other, workers, entry)) {
+                    System.err.println("Wrong value for " + other + ": " + entry.getValue());
+                    System.exit(2);
+                }
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Runs a worker.
+     *
+     * @param args file, worker index, number of workers, keys per worker and optionally {@code contend}
+     * @throws IOException if attaching failed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final File file = new File(args[0]);
+        final int worker = Integer.parseInt(args[1]);
+        final int workers = Integer.parseInt(args[2]);
+        final int keys = Integer.parseInt(args[3]);
+        final SharedMemoryTier tier = new SharedMemoryTier(file, SLOTS, DATA_SIZE, 10);
+
+        if (args.length > 4 && "contend".equals(args[4])) {
+            contend(tier, worker, workers, keys);
+        }
+        for (int id = worker * keys; id < (worker + 1) * keys; id++) {
+            tier.put(CacheFixtures.key(id), entry(id));
+        }
+
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            int missing = 0;
+            for (int id = 0; id < workers * keys; id++) {
+                final CacheEntry entry = tier.get(CacheFixtures.key(id), System.currentTimeMillis());
+                if (entry == null) {
+                    missing++;
+                } else if (!entry(id).getValue().equals(entry.getValue())) {
+                    System.err.println("Wrong value for " + id + ": " + entry.getValue());
+                    System.exit(2);
+                }
+            }
+            if (missing == 0) {
+                System.exit(0);
+            }
+            Thread.sleep(50);
+        }
+        System.exit(1);
+    }
+
+}
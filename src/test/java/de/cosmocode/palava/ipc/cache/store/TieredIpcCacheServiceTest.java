@@ -0,0 +1,236 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.store;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.AbstractIpcCacheServiceTest;
+import de.cosmocode.palava.ipc.cache.CacheEntry;
+import de.cosmocode.palava.ipc.cache.CacheFixtures;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.EternalCacheDecision;
+import de.cosmocode.palava.ipc.cache.IpcCacheService;
+
+/**
+ * Tests {@link TieredIpcCacheService}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public class TieredIpcCacheServiceTest extends AbstractIpcCacheServiceTest {
+
+    private TieredIpcCacheService unit;
+
+    /**
+     * Creates and initializes a new unit before each test.
+     */
+    @Before
+    public void createUnit() {
+        unit = new TieredIpcCacheService(2, 1 << 20, 1 << 16);
+        unit.initialize();
+    }
+
+    @Override
+    public IpcCacheService unit() {
+        return unit;
+    }
+
+    /**
+     * Tests that entries evicted from the heap are demoted and promoted back on the next hit.
+     */
+    @Test
+    public void demoteAndPromote() {
+        final long now = System.currentTimeMillis();
+        final CacheTier second = new OffHeapStore(1 << 20, 1 << 16);
+        final CacheTier first = new HeapTier(2, second);
+        for (int i = 0; i < 3; i++) {
+            first.put(CacheFixtures.key(i), new CacheEntry(CacheFixtures.result(i), now, now, 0L, 0L));
+        }
+        Assert.assertEquals(2, first.size());
+        Assert.assertEquals(1, second.size());
+        Assert.assertNull(first.get(CacheFixtures.key(0), now));
+        Assert.assertEquals(CacheFixtures.result(0), second.get(CacheFixtures.key(0), now).getValue());
+    }
+
+    /**
+     * Tests that snapshots contain the entries of both tiers once and can be restored.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void snapshot() throws IpcCommandExecutionException {
+        for (int i = 0; i < 3; i++) {
+            unit.computeAndStore(CacheFixtures.key(i), new EternalCacheDecision(),
+                CacheFixtures.returning(CacheFixtures.result(i)));
+        }
+        final Map<CacheKey, CacheEntry> entries = Maps.newHashMap();
+        final Iterator<Map.Entry<CacheKey, CacheEntry>> iterator = unit.liveEntries();
+        while (iterator.hasNext()) {
+            final Map.Entry<CacheKey, CacheEntry> entry = iterator.next();
+            Assert.assertNull(entries.put(entry.getKey(), entry.getValue()));
+        }
+        Assert.assertEquals(3, entries.size());
+
+        final TieredIpcCacheService restored = new TieredIpcCacheService(2, 1 << 20, 1 << 16);
+        restored.initialize();
+        try {
+            for (Map.Entry<CacheKey, CacheEntry> entry : entries.entrySet()) {
+                restored.restore(entry.getKey(), entry.getValue());
+            }
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(CacheFixtures.result(i), restored.read(CacheFixtures.key(i)));
+            }
+        } finally {
+            restored.dispose();
+        }
+    }
+
+    /**
+     * Tests that reads promote demoted entries and count hits per tier.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void statistics() throws IpcCommandExecutionException {
+        for (int i = 0; i < 3; i++) {
+            // misses in both tiers, the third store demotes the first entry
+            unit.computeAndStore(CacheFixtures.key(i), new EternalCacheDecision(),
+                CacheFixtures.returning(CacheFixtures.result(i)));
+        }
+        // promotes
+        Assert.assertEquals(CacheFixtures.result(0), unit.read(CacheFixtures.key(0)));
+        Assert.assertEquals(CacheFixtures.result(0), unit.read(CacheFixtures.key(0)));
+        Assert.assertNull(unit.read(CacheFixtures.key(5)));
+        final TierStatistics heap = unit.getTierStatistics().get(0);
+        final TierStatistics serialized = unit.getTierStatistics().get(1);
+        Assert.assertEquals(6L, heap.getRequests());
+        Assert.assertEquals(1L, heap.getHits());
+        Assert.assertEquals(5L, serialized.getRequests());
+        Assert.assertEquals(1L, serialized.getHits());
+    }
+
+    /**
+     * Tests that demoted entries keep their remaining life time.
+     */
+    @Test
+    public void expiryCarriesOver() {
+        final long now = System.currentTimeMillis();
+        final CacheTier second = new OffHeapStore(1 << 20, 1 << 16);
+        final CacheTier first = new HeapTier(1, second);
+        first.put(CacheFixtures.key(0), new CacheEntry(CacheFixtures.result(0), now, now, 100L, 0L));
+        first.put(CacheFixtures.key(1), new CacheEntry(CacheFixtures.result(1), now, now, 0L, 0L));
+        Assert.assertNotNull(second.get(CacheFixtures.key(0), now));
+        Assert.assertNull(second.get(CacheFixtures.key(0), now + 200L));
+    }
+
+    /**
+     * Tests that invalidations count removed entries of both tiers exactly once.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     */
+    @Test
+    public void invalidateCounts() throws IpcCommandExecutionException {
+        for (int i = 0; i < 3; i++) {
+            unit.computeAndStore(CacheFixtures.key(i), new EternalCacheDecision(),
+                CacheFixtures.returning(CacheFixtures.result(i)));
+        }
+        final Class<? extends IpcCommand> command = CacheFixtures.key(0).getCommand();
+        Assert.assertEquals(3, unit.invalidateMatching(command, Predicates.alwaysTrue()));
+        Assert.assertEquals(0, unit.invalidateMatching(command, Predicates.alwaysTrue()));
+        Assert.assertNull(unit.read(CacheFixtures.key(0)));
+    }
+
+    /**
+     * Tests that reads don't wait for an invalidation scan and never promote an entry it is about to remove.
+     *
+     * @throws Exception should not happen
+     */
+    @Test(timeout = 10000)
+    public void readDuringInvalidation() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            // the third store demotes the first entry
+            unit.computeAndStore(CacheFixtures.key(i), new EternalCacheDecision(),
+                CacheFixtures.returning(CacheFixtures.result(i)));
+        }
+        final CountDownLatch scanning = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean blocking = new AtomicBoolean(true);
+        final Predicate<CacheKey> first = new Predicate<CacheKey>() {
+
+            @Override
+            public boolean apply(CacheKey input) {
+                if (blocking.compareAndSet(true, false)) {
+                    scanning.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return input.equals(CacheFixtures.key(0));
+            }
+
+        };
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Integer> invalidated = executor.submit(new Callable<Integer>() {
+
+                @Override
+                public Integer call() {
+                    return unit.invalidateMatching(CacheFixtures.key(0).getCommand(), first);
+                }
+
+            });
+            scanning.await();
+            Assert.assertNull(unit.read(CacheFixtures.key(0)));
+            Assert.assertEquals(CacheFixtures.result(1), unit.read(CacheFixtures.key(1)));
+            release.countDown();
+            Assert.assertEquals(1, invalidated.get().intValue());
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertNull(unit.read(CacheFixtures.key(0)));
+        Assert.assertEquals(CacheFixtures.result(2), unit.read(CacheFixtures.key(2)));
+    }
+
+    /**
+     * Disposes the unit.
+     */
+    @After
+    public void disposeUnit() {
+        unit.dispose();
+    }
+
+}
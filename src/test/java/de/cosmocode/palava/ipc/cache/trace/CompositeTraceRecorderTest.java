@@ -0,0 +1,97 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.trace;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import de.cosmocode.palava.ipc.cache.CacheFixtures;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+
+/**
+ * Tests {@link CompositeTraceRecorder}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class CompositeTraceRecorderTest {
+
+    private final Map<String, Object> result = ImmutableMap.<String, Object>of("key", "value");
+
+    /**
+     * Tests that an empty composite samples nothing.
+     */
+    @Test
+    public void empty() {
+        final CompositeTraceRecorder unit = new CompositeTraceRecorder();
+        Assert.assertFalse(unit.isSampled(CacheFixtures.key(1)));
+        unit.record(CacheFixtures.key(1), true, 0L, result);
+    }
+
+    /**
+     * Tests that accesses are passed only to the recorders which sample their key.
+     */
+    @Test
+    public void sampling() {
+        final Recording odd = new Recording(ImmutableSet.of(CacheFixtures.key(1), CacheFixtures.key(3)));
+        final Recording all = new Recording(null);
+        final CompositeTraceRecorder unit = new CompositeTraceRecorder();
+        unit.setRingBuffer(odd);
+        unit.setHotKeys(all);
+
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(unit.isSampled(CacheFixtures.key(i)));
+            unit.record(CacheFixtures.key(i), false, 0L, result);
+        }
+        Assert.assertEquals(Lists.newArrayList(CacheFixtures.key(1), CacheFixtures.key(3)), odd.keys);
+        Assert.assertEquals(4, all.keys.size());
+    }
+
+    /**
+     * Records the accesses to the sampled keys.
+     */
+    private static final class Recording implements TraceRecorder {
+
+        private final List<CacheKey> keys = Lists.newArrayList();
+
+        private final Set<CacheKey> sampled;
+
+        Recording(Set<CacheKey> sampled) {
+            this.sampled = sampled;
+        }
+
+        @Override
+        public boolean isSampled(CacheKey key) {
+            return sampled == null || sampled.contains(key);
+        }
+
+        @Override
+        public void record(CacheKey key, boolean hit, long computeNanos, Map<String, Object> result) {
+            keys.add(key);
+        }
+
+    }
+
+}
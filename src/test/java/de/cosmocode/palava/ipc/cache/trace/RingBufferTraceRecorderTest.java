@@ -0,0 +1,188 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+import de.cosmocode.junit.UnitProvider;
+import de.cosmocode.palava.ipc.cache.CacheFixtures;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.ResultSizes;
+
+/**
+ * Tests {@link RingBufferTraceRecorder}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class RingBufferTraceRecorderTest implements UnitProvider<RingBufferTraceRecorder> {
+
+    private File directory;
+
+    /**
+     * Creates the trace directory.
+     */
+    @Before
+    public void createDirectory() {
+        directory = Files.createTempDir();
+    }
+
+    @Override
+    public RingBufferTraceRecorder unit() {
+        final RingBufferTraceRecorder unit = new RingBufferTraceRecorder(directory);
+        unit.setBufferSize(4);
+        unit.initialize();
+        return unit;
+    }
+
+    private File[] traces() {
+        final File[] files = directory.listFiles();
+        Assert.assertNotNull(files);
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(TraceFormat.FILE_SUFFIX)) {
+                files[count++] = file;
+            }
+        }
+        final File[] traces = new File[count];
+        System.arraycopy(files, 0, traces, 0, count);
+        return traces;
+    }
+
+    /**
+     * Tests that recorded accesses end up in a trace file after dispose.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void recordAndDispose() throws IOException {
+        final RingBufferTraceRecorder unit = unit();
+        final Map<String, Object> result = ImmutableMap.<String, Object>of("name", "value");
+        final CacheKey key = CacheFixtures.key(5);
+        Assert.assertTrue(unit.isSampled(key));
+        unit.record(key, false, 1000L, result);
+        unit.record(key, true, 0L, result);
+        unit.dispose();
+
+        final File[] traces = traces();
+        Assert.assertEquals(1, traces.length);
+        final RandomAccessFile file = new RandomAccessFile(traces[0], "r");
+        try {
+            final ByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            Assert.assertEquals(TraceFormat.MAGIC, buffer.getInt());
+            Assert.assertEquals(TraceFormat.VERSION, buffer.getInt());
+            Assert.assertEquals(2L, buffer.getLong());
+            buffer.getLong();
+            Assert.assertEquals(TraceFormat.commandId(key), buffer.getInt());
+            Assert.assertEquals(TraceFormat.keyHash(key), buffer.getLong());
+            Assert.assertEquals(0, buffer.get());
+            Assert.assertEquals(1000L, buffer.getLong());
+            Assert.assertEquals((int) ResultSizes.shallow(result), buffer.getInt());
+        } finally {
+            file.close();
+        }
+        Assert.assertTrue(new File(directory, TraceFormat.COMMANDS_FILE).isFile());
+    }
+
+    /**
+     * Tests that producers drop records instead of waiting while the buffer is full.
+     *
+     * @throws IOException should not happen
+     */
+    @Test(timeout = 10000)
+    public void dropsWhenFull() throws IOException {
+        final RingBufferTraceRecorder unit = new RingBufferTraceRecorder(directory);
+        unit.setBufferSize(4);
+        // the drainer sleeps after finding the buffer empty, so the buffer fills up
+        unit.setDrainInterval(1L);
+        unit.setDrainIntervalUnit(TimeUnit.HOURS);
+        unit.initialize();
+        final Map<String, Object> result = ImmutableMap.<String, Object>of("name", "value");
+        long recorded = 0L;
+        while (unit.getDropped() == 0L) {
+            unit.record(CacheFixtures.key(5), true, 0L, result);
+            recorded++;
+        }
+        unit.record(CacheFixtures.key(5), true, 0L, result);
+        Assert.assertEquals(2L, unit.getDropped());
+        unit.dispose();
+
+        long written = 0L;
+        for (File trace : traces()) {
+            final RandomAccessFile file = new RandomAccessFile(trace, "r");
+            try {
+                file.seek(TraceFormat.COUNT_OFFSET);
+                written += file.readLong();
+            } finally {
+                file.close();
+            }
+        }
+        Assert.assertEquals(recorded - 1L, written);
+    }
+
+    /**
+     * Tests that keys with equal hash codes get different key hashes.
+     */
+    @Test
+    public void keyHash() {
+        final CacheKey a = CacheFixtures.key("a", 0);
+        final CacheKey b = CacheFixtures.key("b", 3);
+        Assert.assertEquals(a.hashCode(), b.hashCode());
+        Assert.assertFalse(TraceFormat.keyHash(a) == TraceFormat.keyHash(b));
+    }
+
+    /**
+     * Tests that a zero sampling rate samples nothing.
+     */
+    @Test
+    public void samplingRateZero() {
+        final RingBufferTraceRecorder unit = new RingBufferTraceRecorder(directory);
+        unit.setSamplingRate(0.0);
+        unit.initialize();
+        Assert.assertFalse(unit.isSampled(CacheFixtures.key(5)));
+        unit.dispose();
+    }
+
+    /**
+     * Deletes the trace directory.
+     */
+    @After
+    public void deleteDirectory() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+}
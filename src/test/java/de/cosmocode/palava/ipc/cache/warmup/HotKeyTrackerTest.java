@@ -0,0 +1,217 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+import de.cosmocode.junit.UnitProvider;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.cache.CacheFixtures;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.codec.BinaryKeyCodec;
+import de.cosmocode.palava.ipc.cache.codec.KeyCodec;
+
+/**
+ * Tests {@link HotKeyTracker}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class HotKeyTrackerTest implements UnitProvider<HotKeyTracker> {
+
+    private final Map<String, Object> result = ImmutableMap.<String, Object>of("key", "value");
+
+    private File file;
+
+    /**
+     * Creates the key file.
+     *
+     * @throws IOException should not happen
+     */
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("hotkeys", ".bin");
+        file.delete();
+    }
+
+    @Override
+    public HotKeyTracker unit() {
+        final HotKeyTracker unit = new HotKeyTracker(file);
+        unit.setKeys(2);
+        return unit;
+    }
+
+    private void access(HotKeyTracker unit, int id, int times) {
+        for (int i = 0; i < times; i++) {
+            unit.record(CacheFixtures.key(id), i > 0, 0L, result);
+        }
+    }
+
+    /**
+     * Tests that the most popular keys are returned in order.
+     */
+    @Test
+    public void hotKeys() {
+        final HotKeyTracker unit = unit();
+        access(unit, 1, 3);
+        access(unit, 2, 10);
+        access(unit, 3, 1);
+
+        final List<CacheKey> hot = unit.getHotKeys();
+        Assert.assertEquals(2, hot.size());
+        Assert.assertEquals(CacheFixtures.key(2), hot.get(0));
+        Assert.assertEquals(CacheFixtures.key(1), hot.get(1));
+    }
+
+    /**
+     * Tests that dispose saves the hot keys so they can be read again.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void disposeAndRead() throws IOException {
+        final HotKeyTracker unit = unit();
+        access(unit, 1, 3);
+        access(unit, 2, 10);
+        unit.dispose();
+
+        final List<CacheKey> hot = HotKeyTracker.read(file, BinaryKeyCodec.INSTANCE);
+        Assert.assertEquals(2, hot.size());
+        Assert.assertEquals(CacheFixtures.key(2), hot.get(0));
+    }
+
+    /**
+     * Tests that pruning keeps the most popular half of the capacity and halves their counts.
+     */
+    @Test
+    public void prune() {
+        final HotKeyTracker unit = unit();
+        unit.setCapacity(10);
+        access(unit, 0, 100);
+        for (int i = 1; i < 20; i++) {
+            access(unit, i, i);
+        }
+        unit.prune();
+        Assert.assertEquals(5, unit.size());
+        Assert.assertEquals(CacheFixtures.key(0), unit.getHotKeys().get(0));
+        Assert.assertEquals(50L, unit.getCount(CacheFixtures.key(0)));
+        Assert.assertEquals(10L, unit.getCount(CacheFixtures.key(19)));
+        Assert.assertEquals(0L, unit.getCount(CacheFixtures.key(15)));
+    }
+
+    /**
+     * Tests that keys which were popular long ago get overtaken by newly popular keys.
+     */
+    @Test
+    public void decay() {
+        final HotKeyTracker unit = unit();
+        unit.setCapacity(4);
+        access(unit, 0, 64);
+        for (int round = 0; round < 5; round++) {
+            access(unit, 1, 8);
+            unit.prune();
+        }
+        Assert.assertEquals(CacheFixtures.key(1), unit.getHotKeys().get(0));
+    }
+
+    /**
+     * Tests that the number of tracked keys stays bounded by pruning in the background.
+     *
+     * @throws LifecycleException should not happen
+     * @throws InterruptedException should not happen
+     */
+    @Test(timeout = 10000)
+    public void bounded() throws LifecycleException, InterruptedException {
+        final HotKeyTracker unit = unit();
+        unit.setCapacity(10);
+        unit.initialize();
+        try {
+            for (int i = 1; i < 1000; i++) {
+                // pruning halves all counts, so the hot key has to stay hot
+                access(unit, 0, 2);
+                access(unit, i, 1);
+            }
+            while (unit.size() > 100) {
+                Thread.sleep(1L);
+            }
+            Assert.assertEquals(CacheFixtures.key(0), unit.getHotKeys().get(0));
+        } finally {
+            unit.dispose();
+        }
+    }
+
+    /**
+     * Tests that keys which can't be decoded are skipped.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void skipsUnreadable() throws IOException {
+        final KeyCodec codec = new KeyCodec() {
+
+            @Override
+            public byte[] encodeKey(CacheKey key) throws IOException {
+                return BinaryKeyCodec.INSTANCE.encodeKey(key);
+            }
+
+            @Override
+            public CacheKey decodeKey(ByteBuffer buffer) throws IOException {
+                final CacheKey key = BinaryKeyCodec.INSTANCE.decodeKey(buffer);
+                if (CacheFixtures.key(1).equals(key)) {
+                    throw new IOException("unreadable");
+                }
+                return key;
+            }
+
+        };
+        HotKeyTracker.write(file, Arrays.asList(CacheFixtures.key(1), CacheFixtures.key(2)), codec);
+        Assert.assertEquals(Arrays.asList(CacheFixtures.key(2)), HotKeyTracker.read(file, codec));
+    }
+
+    /**
+     * Tests that files in a foreign format are rejected.
+     *
+     * @throws IOException expected
+     */
+    @Test(expected = IOException.class)
+    public void foreignFile() throws IOException {
+        Files.write(new byte[] {(byte) 0xAC, (byte) 0xED, 0, 5, 0, 0, 0, 1}, file);
+        HotKeyTracker.read(file, BinaryKeyCodec.INSTANCE);
+    }
+
+    /**
+     * Deletes the key file.
+     */
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.cache.writebehind;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Maps;
+
+import de.cosmocode.palava.cache.CacheExpiration;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.IpcCommand;
+import de.cosmocode.palava.ipc.IpcCommandExecutionException;
+import de.cosmocode.palava.ipc.cache.AbstractIpcCacheService;
+import de.cosmocode.palava.ipc.cache.CacheFixtures;
+import de.cosmocode.palava.ipc.cache.CacheKey;
+import de.cosmocode.palava.ipc.cache.EternalCacheDecision;
+import de.cosmocode.palava.ipc.cache.InvalidatingCache;
+import de.cosmocode.palava.ipc.cache.IpcCommandExecution;
+
+/**
+ * Tests {@link WriteBehindIpcCacheService}.
+ *
+ * @since 3.1
+ * @author CosmoCode GmbH
+ */
+public final class WriteBehindIpcCacheServiceTest {
+
+    private final CacheExpiration expiration = new EternalCacheDecision();
+
+    private final CountDownLatch stores = new CountDownLatch(1);
+
+    private final BlockingService backing = new BlockingService();
+
+    private WriteBehindIpcCacheService unit;
+
+    /**
+     * Creates the unit.
+     *
+     * @throws LifecycleException should not happen
+     */
+    @Before
+    public void setUp() throws LifecycleException {
+        unit = new WriteBehindIpcCacheService(backing);
+        unit.initialize();
+    }
+
+    private void awaitStored() throws InterruptedException {
+        stores.countDown();
+        while (unit.getPending() > 0) {
+            Thread.sleep(1L);
+        }
+    }
+
+    /**
+     * Tests that results are returned and readable before they are stored.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void writeBehind() throws IpcCommandExecutionException, InterruptedException {
+        Assert.assertEquals(CacheFixtures.result(1),
+            unit.computeAndStore(CacheFixtures.key(1), expiration, CacheFixtures.returning(CacheFixtures.result(1))));
+        Assert.assertNull(backing.read(CacheFixtures.key(1)));
+        Assert.assertEquals(1, unit.getPending());
+        Assert.assertEquals(CacheFixtures.result(1), unit.read(CacheFixtures.key(1)));
+        Assert.assertEquals(CacheFixtures.result(1),
+            unit.computeAndStore(CacheFixtures.key(1), expiration, CacheFixtures.returning(CacheFixtures.result(2))));
+
+        awaitStored();
+        Assert.assertEquals(CacheFixtures.result(1), backing.read(CacheFixtures.key(1)));
+        Assert.assertEquals(CacheFixtures.result(1), unit.read(CacheFixtures.key(1)));
+    }
+
+    /**
+     * Tests that invalidating a pending result keeps it out of the backing service.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void invalidatePending() throws IpcCommandExecutionException, InterruptedException {
+        unit.computeAndStore(CacheFixtures.key(1), expiration, CacheFixtures.returning(CacheFixtures.result(1)));
+        unit.computeAndStore(CacheFixtures.key(2), expiration, CacheFixtures.returning(CacheFixtures.result(2)));
+        unit.invalidate(CacheFixtures.key(1).getCommand(), Predicates.equalTo(CacheFixtures.key(1)));
+        Assert.assertNull(unit.read(CacheFixtures.key(1)));
+
+        awaitStored();
+        Assert.assertNull(backing.read(CacheFixtures.key(1)));
+        Assert.assertEquals(CacheFixtures.result(2), backing.read(CacheFixtures.key(2)));
+    }
+
+    /**
+     * Tests that modifying a returned result doesn't change what is stored in the background.
+     *
+     * @throws IpcCommandExecutionException should not happen
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void copiesResult() throws IpcCommandExecutionException, InterruptedException {
+        final Map<String, Object> nested = CacheFixtures.result(2);
+        final Map<String, Object> computed = CacheFixtures.result(1);
+        computed.put("nested", nested);
+        final Map<String, Object> result = unit.computeAndStore(CacheFixtures.key(1), expiration,
+            CacheFixtures.returning(computed));
+        Assert.assertSame(computed, result);
+        result.put("modified", true);
+        nested.put("modified", true);
+
+        awaitStored();
+        final Map<String, Object> expected = CacheFixtures.result(1);
+        expected.put("nested", CacheFixtures.result(2));
+        Assert.assertEquals(expected, backing.read(CacheFixtures.key(1)));
+    }
+
+    /**
+     * Flushes and stops the unit.
+     *
+     * @throws LifecycleException should not happen
+     */
+    @After
+    public void tearDown() throws LifecycleException {
+        stores.countDown();
+        unit.dispose();
+    }
+
+    /**
+     * Backing service which blocks stores until the test allows them.
+     */
+    private final class BlockingService extends AbstractIpcCacheService implements InvalidatingCache {
+
+        private final ConcurrentMap<CacheKey, Map<String, Object>> entries = Maps.newConcurrentMap();
+
+        @Override
+        public Map<String, Object> read(CacheKey key) {
+            return entries.get(key);
+        }
+
+        @Override
+        public Map<String, Object> computeAndStore(CacheKey key, CacheExpiration expiration,
+            IpcCommandExecution computation) throws IpcCommandExecutionException {
+            try {
+                stores.await();
+            } catch (InterruptedException e) {
+                throw new IpcCommandExecutionException(e);
+            }
+            final Map<String, Object> result = computation.call();
+            entries.put(key, result);
+            return result;
+        }
+
+        @Override
+        public void invalidate(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+            invalidateMatching(command, predicate);
+        }
+
+        @Override
+        public int invalidateMatching(Class<? extends IpcCommand> command, Predicate<? super CacheKey> predicate) {
+            int removed = 0;
+            for (CacheKey key : entries.keySet()) {
+                if (predicate.apply(key) && entries.remove(key) != null) {
+                    removed++;
+                }
+            }
+            return removed;
+        }
+
+        @Override
+        public boolean invalidateKey(CacheKey key) {
+            return entries.remove(key) != null;
+        }
+
+    }
+
+}